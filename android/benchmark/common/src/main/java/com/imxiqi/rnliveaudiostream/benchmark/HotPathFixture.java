@@ -0,0 +1,184 @@
+package com.imxiqi.rnliveaudiostream.benchmark;
+
+import com.imxiqi.rnliveaudiostream.AudioBufferRing;
+import com.imxiqi.rnliveaudiostream.FormatConverter;
+import com.imxiqi.rnliveaudiostream.LevelMeter;
+import com.imxiqi.rnliveaudiostream.PcmBatcher;
+import com.imxiqi.rnliveaudiostream.PcmSamples;
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+import com.imxiqi.rnliveaudiostream.VoiceActivityDetector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The per-chunk steps of the processing thread, shared by the JMH and the on-device
+ * benchmarks so both measure the same work. Each step handles one {@code bufferSize} read of
+ * 16-bit mono PCM and returns something derived from it for the harness to consume.
+ *
+ * Everything is allocated in the constructor; a step that allocates per chunk shows up in
+ * the allocation figures of the benchmark. The input is one second of synthetic speech-like
+ * audio (tone bursts over noise), read chunk by chunk so VAD and metering see changing levels.
+ * Not thread-safe.
+ */
+public class HotPathFixture {
+    // Typical speech recognition delivery rate, the target of the resampling step
+    public static final int RESAMPLE_TARGET_RATE = 16000;
+    private static final int RING_SLOTS = 8;
+    private static final int BATCH_MS = 100;
+    private static final int LEVEL_INTERVAL_MS = 33;
+    private static final int LEVEL_BANDS = 8;
+
+    private final int sampleRate;
+    private final int bufferSize;
+    private final long chunkNanos;
+
+    // One second of audio cut into bufferSize chunks
+    private final ByteBuffer[] chunks;
+    private int next;
+    private ByteBuffer chunk;
+
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final float[] floats;
+    private final float[] resampled;
+
+    private final AudioBufferRing ring;
+    private final PcmBatcher batcher;
+    private final VoiceActivityDetector vad;
+    private final LevelMeter meter;
+    private final FormatConverter converter;
+    private long nowNanos;
+    private int batchedBytes;
+
+    public HotPathFixture(int sampleRate, int bufferSize) {
+        this.sampleRate = sampleRate;
+        this.bufferSize = bufferSize;
+        int frames = bufferSize / 2;
+        this.chunkNanos = 1000000000L * frames / sampleRate;
+
+        int count = Math.max(1, sampleRate / frames);
+        ByteBuffer audio = ByteBuffer.allocateDirect(count * bufferSize).order(ByteOrder.nativeOrder());
+        fillSpeechLike(audio, sampleRate);
+        chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            audio.limit((i + 1) * bufferSize);
+            audio.position(i * bufferSize);
+            chunks[i] = audio.slice().order(ByteOrder.nativeOrder());
+        }
+        chunk = chunks[0];
+
+        bytes = new byte[bufferSize];
+        shorts = new short[frames];
+        floats = new float[frames];
+        ring = new AudioBufferRing(RING_SLOTS, bufferSize);
+        batcher = new PcmBatcher(sampleRate * 2 * BATCH_MS / 1000, BATCH_MS * 1000000L,
+                (data, length) -> batchedBytes += length);
+        vad = new VoiceActivityDetector(sampleRate, 1, -45f, 300);
+        meter = new LevelMeter(sampleRate, 1, LEVEL_INTERVAL_MS, LEVEL_BANDS);
+        converter = new FormatConverter(sampleRate, 1, RESAMPLE_TARGET_RATE, 1, frames);
+        resampled = new float[converter.getMaxOutputFrames()];
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    public int getBufferSize() { return bufferSize; }
+
+    /**
+     * Move on to the next chunk, as the next read would. Call once per measured operation.
+     */
+    public void advance() {
+        next = next + 1 == chunks.length ? 0 : next + 1;
+        chunk = chunks[next];
+        nowNanos += chunkNanos;
+    }
+
+    /**
+     * Current chunk as a heap array, the input of the Base64 step, which the harness encodes
+     * with its platform's encoder.
+     */
+    public byte[] copiedChunk() {
+        copyToArray();
+        return bytes;
+    }
+
+    /**
+     * Buffer copy of the Base64 path: the read buffer into a heap array.
+     */
+    public int copyToArray() {
+        chunk.get(bytes, 0, bufferSize);
+        chunk.rewind();
+        return bytes[bufferSize - 1];
+    }
+
+    /**
+     * Binary path: the read buffer into a ring slot, published and released as the JSI
+     * transport does.
+     */
+    public long copyToRing() {
+        ByteBuffer slot = ring.claim();
+        slot.put(chunk);
+        chunk.rewind();
+        long sequence = ring.publish(bufferSize, nowNanos, nowNanos, 0);
+        ring.release(sequence);
+        return sequence;
+    }
+
+    /**
+     * Batching of Base64 events with a {@value #BATCH_MS} ms window.
+     */
+    public int batch() {
+        copyToArray();
+        batcher.append(bytes, 0, bufferSize, nowNanos);
+        return batchedBytes;
+    }
+
+    /**
+     * 16-bit decode plus voice activity detection.
+     */
+    public int vad() {
+        int count = PcmSamples.toShorts(chunk, bufferSize, shorts);
+        return vad.process(shorts, 0, count);
+    }
+
+    /**
+     * Float decode plus conversion to {@link #RESAMPLE_TARGET_RATE}; a plain copy when the
+     * rates match.
+     */
+    public int resample() {
+        int count = PcmSamples.toFloats(chunk, bufferSize, SampleFormat.PCM_16BIT, floats);
+        return converter.process(floats, count, resampled);
+    }
+
+    /**
+     * Float decode plus peak/RMS and band metering, polled as the processing thread does.
+     */
+    public int level() {
+        int count = PcmSamples.toFloats(chunk, bufferSize, SampleFormat.PCM_16BIT, floats);
+        int metered = 0;
+        int intervals = 0;
+        while (metered < count) {
+            metered += meter.process(floats, metered, count - metered);
+            if (meter.poll()) {
+                intervals++;
+            }
+        }
+        return intervals;
+    }
+
+    // Alternating 200 ms of voiced tone and 200 ms of quiet noise, fixed seed
+    private static void fillSpeechLike(ByteBuffer audio, int sampleRate) {
+        int samples = audio.capacity() / 2;
+        int segment = sampleRate / 5;
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < samples; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            double noise = ((seed >>> 40) / (double) (1L << 24) - 0.5) * 0.01;
+            double value = noise;
+            if ((i / segment) % 2 == 0) {
+                double t = (double) i / sampleRate;
+                value += 0.25 * Math.sin(2 * Math.PI * 220 * t) + 0.1 * Math.sin(2 * Math.PI * 1760 * t);
+            }
+            audio.putShort(2 * i, (short) (value * 32767));
+        }
+    }
+}
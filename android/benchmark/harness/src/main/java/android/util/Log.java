@@ -0,0 +1,40 @@
+package android.util;
+
+/**
+ * android.util.Log for the JVM harness: warnings and errors go to stderr, debug output only
+ * with -Dharness.verbose=true.
+ */
+public final class Log {
+    private static final boolean VERBOSE = Boolean.getBoolean("harness.verbose");
+
+    private Log() {}
+
+    public static int d(String tag, String msg) {
+        if (VERBOSE) {
+            System.err.println("D/" + tag + ": " + msg);
+        }
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return d(tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return w(tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        System.err.println("W/" + tag + ": " + msg + (tr != null ? ": " + tr : ""));
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return e(tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println("E/" + tag + ": " + msg + (tr != null ? ": " + tr : ""));
+        return 0;
+    }
+}
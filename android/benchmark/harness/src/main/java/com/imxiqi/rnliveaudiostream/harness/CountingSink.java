@@ -0,0 +1,81 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+import com.imxiqi.rnliveaudiostream.StampedSink;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the JS event sink: Base64-encodes every chunk as the emitter does, optionally
+ * takes {@code delayMicros} per chunk like a busy JS thread, and checks that chunks follow
+ * each other in the stream. A jump without a new gap means audio went missing unnoticed;
+ * with VAD dropping silence the skipped stretches are jumps too.
+ */
+public class CountingSink implements StampedSink {
+    private final long delayMicros;
+    private final Base64.Encoder encoder = Base64.getEncoder();
+
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong encodedChars = new AtomicLong();
+    private final AtomicLong jumps = new AtomicLong();
+    private final AtomicLong unexplainedJumps = new AtomicLong();
+
+    // Sink thread only
+    private int frameSize;
+    private long nextFrame = -1;
+    private long lastGaps;
+
+    public CountingSink(long delayMicros) {
+        this.delayMicros = delayMicros;
+    }
+
+    public long getChunks() { return chunks.get(); }
+    public long getBytes() { return bytes.get(); }
+    public long getEncodedChars() { return encodedChars.get(); }
+    public long getJumps() { return jumps.get(); }
+    public long getUnexplainedJumps() { return unexplainedJumps.get(); }
+
+    @Override
+    public void open(int sampleRate, int channels, SampleFormat format) {
+        frameSize = channels * format.getBytesPerSample();
+        nextFrame = -1;
+        lastGaps = 0;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws InterruptedException {
+        write(data, offset, length, -1, 0, 0);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length, long framePosition, long timeNanos, long gaps)
+            throws InterruptedException {
+        byte[] chunk = new byte[length];
+        System.arraycopy(data, offset, chunk, 0, length);
+        encodedChars.addAndGet(encoder.encodeToString(chunk).length());
+        chunks.incrementAndGet();
+        bytes.addAndGet(length);
+
+        if (framePosition >= 0) {
+            // Rounding of resampled positions moves a chunk by a frame either way
+            if (nextFrame >= 0 && Math.abs(framePosition - nextFrame) > 1) {
+                jumps.incrementAndGet();
+                if (gaps == lastGaps) {
+                    unexplainedJumps.incrementAndGet();
+                }
+            }
+            nextFrame = framePosition + length / frameSize;
+            lastGaps = gaps;
+        }
+        if (delayMicros > 0) {
+            TimeUnit.MICROSECONDS.sleep(delayMicros);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,122 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.CaptureBackend;
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Wraps a source and, per read and with the given probabilities, stalls before returning,
+ * returns fewer bytes than asked for, loses frames to an overrun or fails with one of
+ * AudioRecord's error codes. Deterministic for a given seed. Capture thread only, apart from
+ * the counters.
+ */
+public class FaultInjectingBackend implements CaptureBackend {
+    // AudioRecord.ERROR, ERROR_INVALID_OPERATION, ERROR_DEAD_OBJECT
+    private static final int[] ERROR_CODES = {-1, -3, -6};
+
+    private final PcmSourceBackend source;
+    private final Random random;
+    private final double stallRate;
+    private final int maxStallMs;
+    private final double shortReadRate;
+    private final double overrunRate;
+    private final double errorRate;
+
+    private volatile long stalls;
+    private volatile long shortReads;
+    private volatile long overruns;
+    private volatile long framesLost;
+    private volatile long errors;
+
+    public FaultInjectingBackend(PcmSourceBackend source, long seed, double stallRate, int maxStallMs,
+                                 double shortReadRate, double overrunRate, double errorRate) {
+        this.source = source;
+        this.random = new Random(seed);
+        this.stallRate = stallRate;
+        this.maxStallMs = Math.max(1, maxStallMs);
+        this.shortReadRate = shortReadRate;
+        this.overrunRate = overrunRate;
+        this.errorRate = errorRate;
+    }
+
+    public PcmSourceBackend getSource() { return source; }
+    public long getStalls() { return stalls; }
+    public long getShortReads() { return shortReads; }
+    public long getOverruns() { return overruns; }
+    public long getFramesLost() { return framesLost; }
+    public long getErrors() { return errors; }
+
+    @Override
+    public String getName() {
+        return "faulty-" + source.getName();
+    }
+
+    @Override
+    public int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize)
+            throws IOException {
+        return source.open(audioSource, sampleRate, channels, format, bufferSize);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, int size) {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            errors++;
+            return ERROR_CODES[random.nextInt(ERROR_CODES.length)];
+        }
+        if (stallRate > 0 && random.nextDouble() < stallRate) {
+            stalls++;
+            // Stall lengths are in stream time, so a faster run stalls for less
+            long stallNanos = (1 + random.nextInt(maxStallMs)) * 1000000L;
+            if (source.getSpeed() > 0) {
+                stallNanos = (long) (stallNanos / source.getSpeed());
+            }
+            try {
+                Thread.sleep(stallNanos / 1000000, (int) (stallNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        int frameSize = source.frameSize;
+        int frames = size / frameSize;
+        if (overrunRate > 0 && random.nextDouble() < overrunRate) {
+            // One to four reads' worth
+            int lost = frames * (1 + random.nextInt(4));
+            overruns++;
+            framesLost += source.overrun(lost);
+        }
+        if (shortReadRate > 0 && frames > 1 && random.nextDouble() < shortReadRate) {
+            shortReads++;
+            size = (1 + random.nextInt(frames - 1)) * frameSize;
+        }
+        return source.read(dst, size);
+    }
+
+    @Override
+    public boolean getTimestamp(long[] positionAndNanos) {
+        return source.getTimestamp(positionAndNanos);
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
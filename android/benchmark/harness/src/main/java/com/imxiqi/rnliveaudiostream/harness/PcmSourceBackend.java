@@ -0,0 +1,137 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.CaptureBackend;
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Capture backend fed from memory instead of a microphone, for running the pipeline on a JVM.
+ *
+ * Reads return at once ({@code speed} 0) or paced to {@code speed} times real time. The
+ * frame position reported by {@link #getTimestamp} counts every frame the "input" captured,
+ * including those skipped by {@link #overrun}, so overruns are detected the same way as on a
+ * device.
+ */
+public abstract class PcmSourceBackend implements CaptureBackend {
+    private final double speed;
+
+    protected int sampleRate;
+    protected int channels;
+    protected SampleFormat format;
+    protected int frameSize;
+    private int bufferFrames;
+
+    private volatile boolean started;
+    // Capture thread only, apart from the volatile copy for the harness
+    private long framesCaptured;
+    private volatile long framesRead;
+    private long runStartNanos;
+    private long runStartFrame;
+
+    /**
+     * @param speed stream seconds per wall second, 0 to read as fast as possible
+     */
+    protected PcmSourceBackend(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Get ready to produce {@code format} PCM; returns the rate actually produced.
+     */
+    protected abstract int openSource(int sampleRate, int channels, SampleFormat format) throws IOException;
+
+    /**
+     * Write the next {@code frames} frames to the start of {@code dst}, position unchanged.
+     */
+    protected abstract void fill(ByteBuffer dst, int frames);
+
+    /**
+     * Move on by {@code frames} without producing them.
+     */
+    protected abstract void skip(long frames);
+
+    @Override
+    public int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize)
+            throws IOException {
+        this.channels = channels;
+        this.format = format;
+        this.frameSize = channels * format.getBytesPerSample();
+        this.sampleRate = openSource(sampleRate, channels, format);
+        // Like AudioRecord's minimum: a couple of reads of backlog before frames are lost
+        int bufferBytes = 2 * bufferSize;
+        bufferFrames = bufferBytes / frameSize;
+        return bufferBytes;
+    }
+
+    /** Stream seconds per wall second, 0 when unpaced */
+    public double getSpeed() { return speed; }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+        runStartNanos = System.nanoTime();
+        runStartFrame = framesCaptured;
+        started = true;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, int size) {
+        if (!started) {
+            return 0;
+        }
+        int frames = Math.min(size, dst.capacity()) / frameSize;
+        fill(dst, frames);
+        framesCaptured += frames;
+        framesRead += frames;
+        if (speed > 0) {
+            long due = runStartNanos + (long) ((framesCaptured - runStartFrame) * 1e9 / sampleRate / speed);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+            }
+        }
+        return frames * frameSize;
+    }
+
+    @Override
+    public boolean getTimestamp(long[] positionAndNanos) {
+        positionAndNanos[0] = framesCaptured;
+        positionAndNanos[1] = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Lose {@code frames} beyond what the input buffer holds, as a capture thread that was
+     * late by that much would; returns the frames lost. Capture thread only.
+     */
+    public long overrun(int frames) {
+        long lost = (long) bufferFrames + frames;
+        skip(lost);
+        framesCaptured += lost;
+        return lost;
+    }
+
+    /** Frames handed out by read so far, from any thread */
+    public long getFramesRead() { return framesRead; }
+
+    @Override
+    public void stop() {
+        started = false;
+    }
+
+    @Override
+    public void release() {
+        started = false;
+    }
+}
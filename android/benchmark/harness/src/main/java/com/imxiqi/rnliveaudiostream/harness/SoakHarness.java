@@ -0,0 +1,385 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.AudioBufferRing;
+import com.imxiqi.rnliveaudiostream.AudioConfig;
+import com.imxiqi.rnliveaudiostream.BoundedPcmQueue;
+import com.imxiqi.rnliveaudiostream.CaptureHealth;
+import com.imxiqi.rnliveaudiostream.CapturePipeline;
+import com.imxiqi.rnliveaudiostream.LevelMeter;
+import com.imxiqi.rnliveaudiostream.PhaseTimer;
+import com.imxiqi.rnliveaudiostream.SinkChannel;
+import com.imxiqi.rnliveaudiostream.SinkOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the capture pipeline (handoff, conversion, metering, VAD, lookback, ring, a sink
+ * channel into a Base64 "emitter") from synthetic or WAV input on a plain JVM, faster than
+ * real time, with injected stalls, short reads, overruns and read errors.
+ *
+ * Runs sessions of {@code sessionLength} stream time back to back until {@code duration} of
+ * stream is through; a read error ends a session early, as on a device, and the next one
+ * starts. After each session it reports throughput, drops and heap/thread growth since the
+ * first, and exits non-zero if audio went missing without a gap being counted, an error went
+ * unreported, or heap or threads keep growing.
+ *
+ * Options are {@code --name=value}: the harness options in {@link #usage}, plus the init()
+ * options {@code sampleRate}, {@code channels}, {@code bitsPerSample}, {@code sampleFormat},
+ * {@code bufferSize}, {@code targetLatencyMs}, {@code minBufferMs}, {@code maxBufferMs},
+ * {@code outputSampleRate}, {@code outputChannels}, {@code maxQueueBytes},
+ * {@code overflowPolicy}, {@code vadMode}, {@code levelIntervalMs}, {@code levelBands} and
+ * {@code lookbackMs}. Unlike init() it defaults to 16 kHz, 640-byte reads, VAD marking and
+ * level events every 100 ms so that all of it runs.
+ */
+public class SoakHarness {
+    private static final long PROCESSING_DRAIN_MS = 1000;
+    private static final long POLL_MS = 10;
+
+    // Harness options
+    private File wavFile;
+    private double speed = 100;
+    private double durationSeconds = 3600;
+    private double sessionSeconds = 600;
+    private long seed = 1;
+    private double stallRate = 0.001;
+    private int maxStallMs = 50;
+    private double shortReadRate = 0.01;
+    private double overrunRate = 0.0005;
+    private double errorRate = 0.00002;
+    private long sinkDelayMicros = 0;
+    private long maxHeapGrowthBytes = 32L * 1024 * 1024;
+
+    private final AudioConfig config;
+
+    // Totals over all sessions
+    private int sessions;
+    private int sessionsEndedByError;
+    private long framesCaptured;
+    private long bytesCaptured;
+    private long bytesEmitted;
+    private long encodedChars;
+    private long handoffDrops;
+    private long readSizeChanges;
+    private int lastReadBytes;
+    private long queueDrops;
+    private long overrunsDetected;
+    private long framesLostDetected;
+    private long jumps;
+    private long unexplainedJumps;
+    private long stalls;
+    private long shortReads;
+    private long overrunsInjected;
+    private long framesLostInjected;
+    private long errorsInjected;
+    private final AtomicLong errorsReported = new AtomicLong();
+    private final AtomicLong speechStarts = new AtomicLong();
+    private final AtomicLong levels = new AtomicLong();
+    private final AtomicLong unexpectedErrors = new AtomicLong();
+
+    private long baselineHeap = -1;
+    private long lastHeap;
+    private long maxHeap;
+    private int baselineThreads;
+
+    private final CapturePipeline.Listener listener = new CapturePipeline.Listener() {
+        @Override
+        public void onError(String message, Throwable cause) {
+            errorsReported.incrementAndGet();
+            if (!message.startsWith("Error reading audio data")) {
+                unexpectedErrors.incrementAndGet();
+                System.err.println("Unexpected error: " + message + (cause != null ? ": " + cause : ""));
+            }
+        }
+
+        @Override
+        public void onLevel(LevelMeter meter) {
+            levels.incrementAndGet();
+        }
+
+        @Override
+        public void onSpeechStart(float levelDb) {
+            speechStarts.incrementAndGet();
+        }
+
+        @Override
+        public void onSpeechEnd(float levelDb) {
+        }
+
+        @Override
+        public void onLookbackState(boolean triggered, String trigger) {
+        }
+
+        @Override
+        public void onRingAttached(AudioBufferRing ring) {
+        }
+
+        @Override
+        public void onRingDetached() {
+        }
+
+        @Override
+        public void onChunk(AudioBufferRing ring, long sequence) {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        SoakHarness harness;
+        try {
+            harness = new SoakHarness(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage());
+            System.exit(2);
+            return;
+        }
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    static String usage() {
+        return "Options (--name=value):\n"
+                + "  source          'synthetic' or a WAV file (default synthetic)\n"
+                + "  speed           times real time (default 100); 0 reads as fast as possible,\n"
+                + "                  faster than processing keeps up, so blocks are dropped.\n"
+                + "                  Read jitter, and so targetLatencyMs, only means much at 1\n"
+                + "  duration        stream time to run, e.g. 90s, 30m, 8h (default 1h)\n"
+                + "  sessionLength   stream time per session (default 10m)\n"
+                + "  seed            for input and faults (default 1)\n"
+                + "  stallRate       chance per read of a stall (default 0.001)\n"
+                + "  maxStallMs      longest stall, in stream time (default 50)\n"
+                + "  shortReadRate   chance per read of a short read (default 0.01)\n"
+                + "  overrunRate     chance per read of lost frames (default 0.0005)\n"
+                + "  errorRate       chance per read of an error code (default 0.00002)\n"
+                + "  sinkDelayUs     time the emitter takes per chunk (default 0)\n"
+                + "  maxHeapGrowthMb heap growth that fails the run (default 32)\n"
+                + "and the init() options listed in SoakHarness.";
+    }
+
+    SoakHarness(String[] args) {
+        config = AudioConfig.getInstance();
+        config.resetToDefaults();
+        config.setSampleRate(16000).setBufferSize(640).setVadMode(AudioConfig.VAD_MARK).setLevelIntervalMs(100);
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Bad option: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            apply(name, value);
+        }
+    }
+
+    private void apply(String name, String value) {
+        switch (name) {
+            case "source":
+                wavFile = "synthetic".equals(value) ? null : new File(value);
+                break;
+            case "speed": speed = Double.parseDouble(value); break;
+            case "duration": durationSeconds = parseSeconds(value); break;
+            case "sessionLength": sessionSeconds = parseSeconds(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            case "stallRate": stallRate = Double.parseDouble(value); break;
+            case "maxStallMs": maxStallMs = Integer.parseInt(value); break;
+            case "shortReadRate": shortReadRate = Double.parseDouble(value); break;
+            case "overrunRate": overrunRate = Double.parseDouble(value); break;
+            case "errorRate": errorRate = Double.parseDouble(value); break;
+            case "sinkDelayUs": sinkDelayMicros = Long.parseLong(value); break;
+            case "maxHeapGrowthMb": maxHeapGrowthBytes = Long.parseLong(value) * 1024 * 1024; break;
+            case "sampleRate": config.setSampleRate(Integer.parseInt(value)); break;
+            case "channels": config.setChannels(Integer.parseInt(value)); break;
+            case "bitsPerSample": config.setBitsPerSample(Integer.parseInt(value)); break;
+            case "sampleFormat": config.setSampleFormat(value); break;
+            case "bufferSize": config.setBufferSize(Integer.parseInt(value)); break;
+            case "targetLatencyMs": config.setTargetLatencyMs(Integer.parseInt(value)); break;
+            case "minBufferMs": config.setMinBufferMs(Integer.parseInt(value)); break;
+            case "maxBufferMs": config.setMaxBufferMs(Integer.parseInt(value)); break;
+            case "outputSampleRate": config.setOutputSampleRate(Integer.parseInt(value)); break;
+            case "outputChannels": config.setOutputChannels(Integer.parseInt(value)); break;
+            case "maxQueueBytes": config.setMaxQueueBytes(Integer.parseInt(value)); break;
+            case "overflowPolicy": config.setOverflowPolicy(value); break;
+            case "vadMode": config.setVadMode(value); break;
+            case "levelIntervalMs": config.setLevelIntervalMs(Integer.parseInt(value)); break;
+            case "levelBands": config.setLevelBands(Integer.parseInt(value)); break;
+            case "lookbackMs": config.setLookbackMs(Integer.parseInt(value)); break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    // "90s", "30m", "8h" or plain seconds
+    private static double parseSeconds(String value) {
+        char unit = value.charAt(value.length() - 1);
+        double scale = unit == 'h' ? 3600 : unit == 'm' ? 60 : 1;
+        String number = Character.isDigit(unit) ? value : value.substring(0, value.length() - 1);
+        return Double.parseDouble(number) * scale;
+    }
+
+    boolean run() throws Exception {
+        AudioConfig session = config.snapshot();
+        // The spill policy needs somewhere to spill to
+        File spillFile = File.createTempFile("rnliveaudiostream-harness", ".pcm");
+        spillFile.deleteOnExit();
+        System.out.println(String.format(Locale.US,
+                "%s input, %d Hz %dch %s, %s reads -> %d Hz %dch, vad %s, level %d ms, lookback %d ms",
+                wavFile != null ? wavFile.getName() : "synthetic", session.getSampleRate(), session.getChannels(),
+                session.getSampleFormat(), session.isAdaptiveReadSize()
+                        ? session.getMinBufferMs() + "-" + session.getMaxBufferMs() + " ms adaptive"
+                        : session.getBufferSize() + "-byte", session.getDeliverySampleRate(),
+                session.getDeliveryChannels(), session.getVadMode(), session.getLevelIntervalMs(),
+                session.getLookbackMs()));
+
+        long started = System.nanoTime();
+        double streamSeconds = 0;
+        while (streamSeconds < durationSeconds) {
+            double length = Math.min(sessionSeconds, durationSeconds - streamSeconds);
+            runSession(session, length, spillFile);
+            streamSeconds = (double) framesCaptured / session.getSampleRate();
+            measureHeap();
+            report(streamSeconds, (System.nanoTime() - started) / 1e9);
+        }
+        return verdict();
+    }
+
+    private void runSession(AudioConfig session, double seconds, File spillFile) throws Exception {
+        long sessionSeed = seed * 1000003 + sessions;
+        PcmSourceBackend source = wavFile != null
+                ? new WavFileBackend(wavFile, speed) : new SyntheticBackend(speed, sessionSeed);
+        FaultInjectingBackend backend = new FaultInjectingBackend(source, sessionSeed ^ 0x5DEECE66DL,
+                stallRate, maxStallMs, shortReadRate, overrunRate, errorRate);
+        int bufferBytes;
+        try {
+            bufferBytes = backend.open(session.getAudioSource(), session.getSampleRate(), session.getChannels(),
+                    session.getSampleFormat(), session.getMaxReadBytes(session.getSampleRate()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        CaptureHealth health = new CaptureHealth();
+        PhaseTimer timer = new PhaseTimer();
+        timer.begin();
+        CapturePipeline pipeline = new CapturePipeline(session, backend, health, timer, listener);
+        CountingSink sink = new CountingSink(sinkDelayMicros);
+        SinkChannel channel = new SinkChannel("js", sink, new SinkOptions()
+                .setMaxQueueBytes(session.getMaxQueueBytes())
+                .setOverflowPolicy(BoundedPcmQueue.OverflowPolicy.fromString(session.getOverflowPolicy())),
+                session.getDeliverySampleRate(), session.getDeliveryChannels(), session.getSampleFormat(),
+                pipeline.getSlotSize(), spillFile, health, null);
+        pipeline.setOutputs(new SinkChannel[]{channel}, false);
+
+        int captureRate = pipeline.getCaptureSampleRate();
+        int frameSize = session.getChannels() * session.getSampleFormat().getBytesPerSample();
+        health.reset(captureRate * frameSize, frameSize, pipeline.getReadSize(), bufferBytes);
+        pipeline.start();
+        channel.start();
+        Thread processing = new Thread(pipeline::runProcessing, "AudioProcessingThread");
+        Thread capture = new Thread(pipeline::runCapture, "AudioCaptureThread");
+        processing.start();
+        capture.start();
+
+        long limit = (long) (seconds * captureRate);
+        while (capture.isAlive() && source.getFramesRead() < limit) {
+            Thread.sleep(POLL_MS);
+        }
+        boolean endedByError = !capture.isAlive();
+
+        // Same order as the service's stopRecording
+        pipeline.stop();
+        backend.stop();
+        capture.interrupt();
+        capture.join(1000);
+        processing.join(PROCESSING_DRAIN_MS);
+        if (processing.isAlive()) {
+            System.err.println("Processing thread did not drain in time");
+            processing.interrupt();
+            processing.join(500);
+        }
+        channel.finish();
+        backend.release();
+
+        sessions++;
+        if (endedByError) {
+            sessionsEndedByError++;
+        }
+        framesCaptured += source.getFramesRead();
+        bytesCaptured += health.getBytesRead();
+        bytesEmitted += sink.getBytes();
+        encodedChars += sink.getEncodedChars();
+        handoffDrops += pipeline.getHandoff().getDroppedBlocks();
+        readSizeChanges += health.getReadSizeChanges();
+        lastReadBytes = health.getReadBytes();
+        queueDrops += channel.getQueue().getDroppedChunks();
+        overrunsDetected += health.getOverruns();
+        framesLostDetected += health.getFramesLost();
+        jumps += sink.getJumps();
+        unexplainedJumps += sink.getUnexplainedJumps();
+        stalls += backend.getStalls();
+        shortReads += backend.getShortReads();
+        overrunsInjected += backend.getOverruns();
+        framesLostInjected += backend.getFramesLost();
+        errorsInjected += backend.getErrors();
+    }
+
+    private void measureHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        lastHeap = runtime.totalMemory() - runtime.freeMemory();
+        maxHeap = Math.max(maxHeap, lastHeap);
+        if (baselineHeap < 0) {
+            // After the first session, once classes and the JIT have settled
+            baselineHeap = lastHeap;
+            baselineThreads = Thread.activeCount();
+        }
+    }
+
+    private void report(double streamSeconds, double wallSeconds) {
+        System.out.println(String.format(Locale.US,
+                "%s stream in %.1fs (%.0fx real time, %.1f MB/s) | sessions %d (%d ended by error) | "
+                        + "emitted %.1f MB as %.1f MB Base64 | reads %d bytes (%d changes) | "
+                        + "drops: handoff %d, queue %d | "
+                        + "overruns %d detected/%d injected, %d/%d frames | jumps %d (%d unexplained) | "
+                        + "stalls %d, short reads %d, errors %d/%d injected | speech %d, levels %d | "
+                        + "heap %.1f MB (%+.1f MB), threads %+d",
+                formatDuration(streamSeconds), wallSeconds, streamSeconds / wallSeconds,
+                bytesCaptured / 1e6 / wallSeconds, sessions, sessionsEndedByError,
+                bytesEmitted / 1e6, encodedChars / 1e6, lastReadBytes, readSizeChanges, handoffDrops, queueDrops,
+                overrunsDetected, overrunsInjected, framesLostDetected, framesLostInjected,
+                jumps, unexplainedJumps, stalls, shortReads, errorsReported.get(), errorsInjected,
+                speechStarts.get(), levels.get(), lastHeap / 1e6, (lastHeap - baselineHeap) / 1e6,
+                Thread.activeCount() - baselineThreads));
+    }
+
+    private boolean verdict() {
+        StringBuilder failures = new StringBuilder();
+        if (unexplainedJumps > 0) {
+            failures.append("\n  ").append(unexplainedJumps).append(" jumps in the stream without a gap");
+        }
+        if (errorsReported.get() - unexpectedErrors.get() != errorsInjected) {
+            failures.append("\n  ").append(errorsInjected).append(" read errors injected, ")
+                    .append(errorsReported.get() - unexpectedErrors.get()).append(" reported");
+        }
+        if (unexpectedErrors.get() > 0) {
+            failures.append("\n  ").append(unexpectedErrors.get()).append(" unexpected errors");
+        }
+        if (sessions > 1 && lastHeap - baselineHeap > maxHeapGrowthBytes) {
+            failures.append(String.format(Locale.US, "\n  heap grew by %.1f MB", (lastHeap - baselineHeap) / 1e6));
+        }
+        if (sessions > 1 && Thread.activeCount() > baselineThreads) {
+            failures.append("\n  ").append(Thread.activeCount() - baselineThreads).append(" threads left behind");
+        }
+        if (failures.length() > 0) {
+            System.out.println("FAIL" + failures);
+            return false;
+        }
+        System.out.println("OK");
+        return true;
+    }
+
+    private static String formatDuration(double seconds) {
+        long total = (long) seconds;
+        return String.format(Locale.US, "%d:%02d:%02d", total / 3600, total / 60 % 60, total % 60);
+    }
+}
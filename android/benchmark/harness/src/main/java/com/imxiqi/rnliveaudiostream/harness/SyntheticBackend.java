@@ -0,0 +1,79 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.PcmSamples;
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Generated speech-like input: voiced stretches (a few harmonics with a wandering pitch) of
+ * random length alternating with low background noise, so VAD, metering and lookback see
+ * utterances come and go. Deterministic for a given seed. Captures at the rate asked for.
+ */
+public class SyntheticBackend extends PcmSourceBackend {
+    private static final float NOISE_LEVEL = 0.003f;
+    private static final float VOICE_LEVEL = 0.2f;
+
+    private final Random random;
+    private float[] samples = new float[0];
+    // Frames left in the current stretch, and whether it is voiced
+    private long remaining;
+    private boolean voiced;
+    private double phase;
+    private double pitch;
+
+    public SyntheticBackend(double speed, long seed) {
+        super(speed);
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+
+    @Override
+    protected int openSource(int sampleRate, int channels, SampleFormat format) {
+        return sampleRate;
+    }
+
+    @Override
+    protected void fill(ByteBuffer dst, int frames) {
+        int count = frames * channels;
+        if (samples.length < count) {
+            samples = new float[count];
+        }
+        for (int frame = 0; frame < frames; frame++) {
+            if (remaining-- <= 0) {
+                nextStretch();
+            }
+            float value = (random.nextFloat() - 0.5f) * 2 * NOISE_LEVEL;
+            if (voiced) {
+                pitch += (random.nextFloat() - 0.5f) * 0.02;
+                phase += 2 * Math.PI * pitch / sampleRate;
+                if (phase > 2 * Math.PI) {
+                    phase -= 2 * Math.PI;
+                }
+                value += VOICE_LEVEL * (float) (Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase));
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                samples[frame * channels + channel] = value;
+            }
+        }
+        PcmSamples.fromFloats(samples, count, format, dst);
+    }
+
+    @Override
+    protected void skip(long frames) {
+        remaining -= frames;
+    }
+
+    // 0.3-2 s of speech or 0.2-1.5 s of silence
+    private void nextStretch() {
+        voiced = !voiced;
+        double seconds = voiced ? 0.3 + random.nextDouble() * 1.7 : 0.2 + random.nextDouble() * 1.3;
+        remaining = (long) (seconds * sampleRate);
+        pitch = 100 + random.nextDouble() * 150;
+    }
+}
@@ -0,0 +1,106 @@
+package com.imxiqi.rnliveaudiostream.harness;
+
+import com.imxiqi.rnliveaudiostream.SampleFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Input from a WAV file, looped for as long as it is read. The file's channel count and
+ * sample format must match the config; its rate is what the backend captures at, so a file
+ * at another rate exercises resampling.
+ */
+public class WavFileBackend extends PcmSourceBackend {
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final File file;
+    private byte[] data;
+    private int cursor;
+
+    public WavFileBackend(File file, double speed) {
+        super(speed);
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return "wav";
+    }
+
+    @Override
+    protected int openSource(int sampleRate, int channels, SampleFormat format) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+        }
+        ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) {
+            throw new IOException(file + " is not a WAV file");
+        }
+        int fileRate = 0;
+        int fileChannels = 0;
+        SampleFormat fileFormat = null;
+        int offset = 12;
+        while (offset + 8 <= bytes.length) {
+            int id = wav.getInt(offset);
+            int size = wav.getInt(offset + 4);
+            int body = offset + 8;
+            if (id == 0x20746d66) {
+                // "fmt "
+                int tag = wav.getShort(body) & 0xFFFF;
+                fileChannels = wav.getShort(body + 2);
+                fileRate = wav.getInt(body + 4);
+                int bits = wav.getShort(body + 14);
+                if (tag == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+                    tag = wav.getShort(body + 24) & 0xFFFF;
+                }
+                if (tag == WAVE_FORMAT_IEEE_FLOAT && bits == 32) {
+                    fileFormat = SampleFormat.PCM_FLOAT;
+                } else if (tag == WAVE_FORMAT_PCM) {
+                    fileFormat = SampleFormat.from(bits, false);
+                }
+            } else if (id == 0x61746164) {
+                // "data"
+                int length = Math.min(size, bytes.length - body);
+                data = new byte[length - length % Math.max(1, frameSize)];
+                System.arraycopy(bytes, body, data, 0, data.length);
+            }
+            offset = body + size + (size & 1);
+        }
+        if (fileFormat == null || data == null || data.length == 0) {
+            throw new IOException(file + ": no PCM data");
+        }
+        if (fileChannels != channels || fileFormat != format) {
+            throw new IOException(file + " is " + fileChannels + "ch " + fileFormat + ", config wants "
+                    + channels + "ch " + format);
+        }
+        cursor = 0;
+        return fileRate;
+    }
+
+    @Override
+    protected void fill(ByteBuffer dst, int frames) {
+        int position = dst.position();
+        int bytes = frames * frameSize;
+        int written = 0;
+        while (written < bytes) {
+            int n = Math.min(bytes - written, data.length - cursor);
+            dst.position(position + written);
+            dst.put(data, cursor, n);
+            written += n;
+            cursor = cursor + n == data.length ? 0 : cursor + n;
+        }
+        dst.position(position);
+    }
+
+    @Override
+    protected void skip(long frames) {
+        cursor = (int) ((cursor + frames * frameSize) % data.length);
+    }
+}
@@ -0,0 +1,82 @@
+package com.imxiqi.rnliveaudiostream.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One operation = one chunk of {@code bufferSize} bytes. Run with the gc profiler (the
+ * default in build.gradle) for bytes allocated per chunk, {@code gc.alloc.rate.norm}.
+ *
+ * Base64 uses java.util.Base64 here; the on-device variant measures android.util.Base64,
+ * which the module actually calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HotPathBenchmark {
+    @Param({"16000", "44100", "48000"})
+    public int sampleRate;
+
+    @Param({"640", "2048", "4096"})
+    public int bufferSize;
+
+    private HotPathFixture fixture;
+    private Base64.Encoder encoder;
+
+    @Setup
+    public void setUp() {
+        fixture = new HotPathFixture(sampleRate, bufferSize);
+        encoder = Base64.getEncoder();
+    }
+
+    @Benchmark
+    public String base64() {
+        fixture.advance();
+        return encoder.encodeToString(fixture.copiedChunk());
+    }
+
+    @Benchmark
+    public long binary() {
+        fixture.advance();
+        return fixture.copyToRing();
+    }
+
+    @Benchmark
+    public int copy() {
+        fixture.advance();
+        return fixture.copyToArray();
+    }
+
+    @Benchmark
+    public int batch() {
+        fixture.advance();
+        return fixture.batch();
+    }
+
+    @Benchmark
+    public int vad() {
+        fixture.advance();
+        return fixture.vad();
+    }
+
+    @Benchmark
+    public int resample() {
+        fixture.advance();
+        return fixture.resample();
+    }
+
+    @Benchmark
+    public int level() {
+        fixture.advance();
+        return fixture.level();
+    }
+}
@@ -0,0 +1,15 @@
+package android.media;
+
+/**
+ * The AudioFormat constants SampleFormat refers to, with the platform's values, so the
+ * JVM benchmarks and the soak harness build without android.jar.
+ */
+public final class AudioFormat {
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_PCM_FLOAT = 4;
+    public static final int ENCODING_PCM_24BIT_PACKED = 21;
+    public static final int ENCODING_PCM_32BIT = 22;
+
+    private AudioFormat() {}
+}
@@ -0,0 +1,15 @@
+package android.media;
+
+/**
+ * The MediaRecorder constants AudioConfig refers to, with the platform's values, so the
+ * JVM benchmarks and the soak harness build without android.jar.
+ */
+public final class MediaRecorder {
+    public static final class AudioSource {
+        public static final int VOICE_RECOGNITION = 6;
+
+        private AudioSource() {}
+    }
+
+    private MediaRecorder() {}
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * The Build constants SampleFormat refers to, with the platform's values, so the
+ * JVM benchmarks and the soak harness build without android.jar.
+ */
+public final class Build {
+    public static final class VERSION_CODES {
+        public static final int M = 23;
+        public static final int S = 31;
+
+        private VERSION_CODES() {}
+    }
+
+    private Build() {}
+}
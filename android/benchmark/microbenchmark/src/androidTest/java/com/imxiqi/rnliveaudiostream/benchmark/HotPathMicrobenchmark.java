@@ -0,0 +1,120 @@
+package com.imxiqi.rnliveaudiostream.benchmark;
+
+import android.util.Base64;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * On-device counterpart of the JMH HotPathBenchmark: the same steps, measured per chunk on
+ * ART. Reports time and allocation count per chunk; bytes per chunk only come from JMH.
+ */
+@RunWith(Parameterized.class)
+public class HotPathMicrobenchmark {
+    private static final int[] SAMPLE_RATES = {16000, 44100, 48000};
+    private static final int[] BUFFER_SIZES = {640, 2048, 4096};
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int sampleRate;
+    private final int bufferSize;
+    private HotPathFixture fixture;
+    // Keeps results alive so nothing is optimized away
+    private long sink;
+
+    public HotPathMicrobenchmark(int sampleRate, int bufferSize) {
+        this.sampleRate = sampleRate;
+        this.bufferSize = bufferSize;
+    }
+
+    @Parameterized.Parameters(name = "sampleRate={0},bufferSize={1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int sampleRate : SAMPLE_RATES) {
+            for (int bufferSize : BUFFER_SIZES) {
+                parameters.add(new Object[]{sampleRate, bufferSize});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new HotPathFixture(sampleRate, bufferSize);
+    }
+
+    @Test
+    public void base64() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            // As AudioEventEmitter.sendAudioData encodes
+            sink += Base64.encodeToString(fixture.copiedChunk(), 0, bufferSize, Base64.NO_WRAP).length();
+        }
+    }
+
+    @Test
+    public void binary() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.copyToRing();
+        }
+    }
+
+    @Test
+    public void copy() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.copyToArray();
+        }
+    }
+
+    @Test
+    public void batch() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.batch();
+        }
+    }
+
+    @Test
+    public void vad() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.vad();
+        }
+    }
+
+    @Test
+    public void resample() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.resample();
+        }
+    }
+
+    @Test
+    public void level() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            fixture.advance();
+            sink += fixture.level();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+#include <aaudio/AAudio.h>
+#include <android/log.h>
+#include <dlfcn.h>
+#include <jni.h>
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <condition_variable>
+#include <cstdint>
+#include <cstring>
+#include <ctime>
+#include <mutex>
+#include <vector>
+
+// Native side of AAudioBackend: an AAudio input stream whose data callback copies every
+// burst into a single-producer single-consumer ring, drained by blocking reads from the
+// capture thread.
+//
+// libaaudio is loaded with dlopen so this library still loads where AAudio does not exist
+// (and builds against any minSdkVersion); the symbols are declared here rather than taken
+// from the header, whose declarations are only available from API 26.
+
+namespace {
+
+constexpr const char *kTag = "AAudioCapture";
+// How long a read waits before looking again, bounding a missed wakeup
+constexpr auto kReadPoll = std::chrono::milliseconds(2);
+
+struct AAudioApi {
+    bool loaded = false;
+    aaudio_result_t (*createStreamBuilder)(AAudioStreamBuilder **);
+    void (*setDirection)(AAudioStreamBuilder *, aaudio_direction_t);
+    void (*setSharingMode)(AAudioStreamBuilder *, aaudio_sharing_mode_t);
+    void (*setPerformanceMode)(AAudioStreamBuilder *, aaudio_performance_mode_t);
+    void (*setSampleRate)(AAudioStreamBuilder *, int32_t);
+    void (*setChannelCount)(AAudioStreamBuilder *, int32_t);
+    void (*setFormat)(AAudioStreamBuilder *, aaudio_format_t);
+    // API 28+, may be null
+    void (*setInputPreset)(AAudioStreamBuilder *, aaudio_input_preset_t);
+    void (*setDataCallback)(AAudioStreamBuilder *, AAudioStream_dataCallback, void *);
+    void (*setErrorCallback)(AAudioStreamBuilder *, AAudioStream_errorCallback, void *);
+    aaudio_result_t (*openStream)(AAudioStreamBuilder *, AAudioStream **);
+    aaudio_result_t (*deleteBuilder)(AAudioStreamBuilder *);
+    aaudio_result_t (*requestStart)(AAudioStream *);
+    aaudio_result_t (*requestStop)(AAudioStream *);
+    aaudio_result_t (*close)(AAudioStream *);
+    int32_t (*getSampleRate)(AAudioStream *);
+    int32_t (*getFramesPerBurst)(AAudioStream *);
+    aaudio_sharing_mode_t (*getSharingMode)(AAudioStream *);
+    aaudio_result_t (*getTimestamp)(AAudioStream *, clockid_t, int64_t *, int64_t *);
+    const char *(*convertResultToText)(aaudio_result_t);
+};
+
+template <typename T>
+bool bind(void *library, const char *name, T &function) {
+    function = reinterpret_cast<T>(dlsym(library, name));
+    return function != nullptr;
+}
+
+const AAudioApi &api() {
+    static AAudioApi instance = [] {
+        AAudioApi a{};
+        void *library = dlopen("libaaudio.so", RTLD_NOW);
+        if (library == nullptr) {
+            return a;
+        }
+        a.loaded = bind(library, "AAudio_createStreamBuilder", a.createStreamBuilder)
+                && bind(library, "AAudioStreamBuilder_setDirection", a.setDirection)
+                && bind(library, "AAudioStreamBuilder_setSharingMode", a.setSharingMode)
+                && bind(library, "AAudioStreamBuilder_setPerformanceMode", a.setPerformanceMode)
+                && bind(library, "AAudioStreamBuilder_setSampleRate", a.setSampleRate)
+                && bind(library, "AAudioStreamBuilder_setChannelCount", a.setChannelCount)
+                && bind(library, "AAudioStreamBuilder_setFormat", a.setFormat)
+                && bind(library, "AAudioStreamBuilder_setDataCallback", a.setDataCallback)
+                && bind(library, "AAudioStreamBuilder_setErrorCallback", a.setErrorCallback)
+                && bind(library, "AAudioStreamBuilder_openStream", a.openStream)
+                && bind(library, "AAudioStreamBuilder_delete", a.deleteBuilder)
+                && bind(library, "AAudioStream_requestStart", a.requestStart)
+                && bind(library, "AAudioStream_requestStop", a.requestStop)
+                && bind(library, "AAudioStream_close", a.close)
+                && bind(library, "AAudioStream_getSampleRate", a.getSampleRate)
+                && bind(library, "AAudioStream_getFramesPerBurst", a.getFramesPerBurst)
+                && bind(library, "AAudioStream_getSharingMode", a.getSharingMode)
+                && bind(library, "AAudioStream_getTimestamp", a.getTimestamp)
+                && bind(library, "AAudio_convertResultToText", a.convertResultToText);
+        bind(library, "AAudioStreamBuilder_setInputPreset", a.setInputPreset);
+        return a;
+    }();
+    return instance;
+}
+
+class Capture {
+public:
+    Capture(int32_t frameSize, size_t ringBytes)
+            : frameSize_(frameSize),
+              // Whole frames, so a burst is never split across the end unevenly
+              ring_(ringBytes - ringBytes % frameSize) {}
+
+    ~Capture() {
+        if (stream_ != nullptr) {
+            api().requestStop(stream_);
+            api().close(stream_);
+        }
+    }
+
+    aaudio_result_t open(int32_t inputPreset, int32_t sampleRate, int32_t channels, aaudio_format_t format) {
+        const AAudioApi &a = api();
+        AAudioStreamBuilder *builder = nullptr;
+        aaudio_result_t result = a.createStreamBuilder(&builder);
+        if (result != AAUDIO_OK) {
+            return result;
+        }
+        a.setDirection(builder, AAUDIO_DIRECTION_INPUT);
+        // Falls back to a shared stream by itself when exclusive is not available
+        a.setSharingMode(builder, AAUDIO_SHARING_MODE_EXCLUSIVE);
+        a.setPerformanceMode(builder, AAUDIO_PERFORMANCE_MODE_LOW_LATENCY);
+        a.setSampleRate(builder, sampleRate);
+        a.setChannelCount(builder, channels);
+        a.setFormat(builder, format);
+        if (a.setInputPreset != nullptr && isInputPreset(inputPreset)) {
+            a.setInputPreset(builder, inputPreset);
+        }
+        a.setDataCallback(builder, onData, this);
+        a.setErrorCallback(builder, onError, this);
+        result = a.openStream(builder, &stream_);
+        if (result != AAUDIO_OK) {
+            // Some devices only open at their native rate; the service resamples
+            stream_ = nullptr;
+            a.setSampleRate(builder, AAUDIO_UNSPECIFIED);
+            result = a.openStream(builder, &stream_);
+        }
+        a.deleteBuilder(builder);
+        if (result != AAUDIO_OK) {
+            stream_ = nullptr;
+            return result;
+        }
+        __android_log_print(ANDROID_LOG_DEBUG, kTag, "Opened %s stream, %d Hz, burst %d frames",
+                            a.getSharingMode(stream_) == AAUDIO_SHARING_MODE_EXCLUSIVE ? "exclusive" : "shared",
+                            a.getSampleRate(stream_), a.getFramesPerBurst(stream_));
+        return AAUDIO_OK;
+    }
+
+    int32_t sampleRate() const { return api().getSampleRate(stream_); }
+
+    aaudio_result_t start() {
+        // The reader is not inside read() here: start runs before capture or on the capture
+        // thread itself after a pause
+        readCount_.store(writeCount_.load(std::memory_order_acquire), std::memory_order_release);
+        error_.store(AAUDIO_OK, std::memory_order_release);
+        running_.store(true, std::memory_order_release);
+        return api().requestStart(stream_);
+    }
+
+    void stop() {
+        running_.store(false, std::memory_order_release);
+        ready_.notify_all();
+        api().requestStop(stream_);
+    }
+
+    // Exactly size bytes, 0 once stopped, or a negative AAudio error
+    int32_t read(uint8_t *dst, size_t size) {
+        std::unique_lock<std::mutex> lock(mutex_);
+        while (true) {
+            uint64_t read = readCount_.load(std::memory_order_relaxed);
+            uint64_t available = writeCount_.load(std::memory_order_acquire) - read;
+            if (available >= size) {
+                size_t offset = read % ring_.size();
+                size_t first = std::min(size, ring_.size() - offset);
+                memcpy(dst, ring_.data() + offset, first);
+                memcpy(dst + first, ring_.data(), size - first);
+                readCount_.store(read + size, std::memory_order_release);
+                return static_cast<int32_t>(size);
+            }
+            aaudio_result_t error = error_.load(std::memory_order_acquire);
+            if (error != AAUDIO_OK) {
+                return error;
+            }
+            if (!running_.load(std::memory_order_acquire)) {
+                return 0;
+            }
+            ready_.wait_for(lock, kReadPoll);
+        }
+    }
+
+    bool timestamp(int64_t *framePosition, int64_t *timeNanos) const {
+        return api().getTimestamp(stream_, CLOCK_MONOTONIC, framePosition, timeNanos) == AAUDIO_OK;
+    }
+
+private:
+    static bool isInputPreset(int32_t preset) {
+        return preset == AAUDIO_INPUT_PRESET_GENERIC || preset == AAUDIO_INPUT_PRESET_CAMCORDER
+                || preset == AAUDIO_INPUT_PRESET_VOICE_RECOGNITION
+                || preset == AAUDIO_INPUT_PRESET_VOICE_COMMUNICATION
+                || preset == AAUDIO_INPUT_PRESET_UNPROCESSED || preset == AAUDIO_INPUT_PRESET_VOICE_PERFORMANCE;
+    }
+
+    // Real-time thread: no locks, no allocation. A burst that does not fit is dropped; the
+    // frame position then runs ahead of what was read and the loss shows up as an overrun.
+    static aaudio_data_callback_result_t onData(AAudioStream *, void *userData, void *audioData, int32_t numFrames) {
+        auto *self = static_cast<Capture *>(userData);
+        size_t bytes = static_cast<size_t>(numFrames) * self->frameSize_;
+        uint64_t write = self->writeCount_.load(std::memory_order_relaxed);
+        uint64_t used = write - self->readCount_.load(std::memory_order_acquire);
+        if (bytes <= self->ring_.size() - used) {
+            size_t offset = write % self->ring_.size();
+            size_t first = std::min(bytes, self->ring_.size() - offset);
+            auto *src = static_cast<const uint8_t *>(audioData);
+            memcpy(self->ring_.data() + offset, src, first);
+            memcpy(self->ring_.data(), src + first, bytes - first);
+            self->writeCount_.store(write + bytes, std::memory_order_release);
+        }
+        self->ready_.notify_one();
+        return AAUDIO_CALLBACK_RESULT_CONTINUE;
+    }
+
+    // E.g. the input device went away; reads report it and the capture thread stops
+    static void onError(AAudioStream *, void *userData, aaudio_result_t error) {
+        auto *self = static_cast<Capture *>(userData);
+        self->error_.store(error, std::memory_order_release);
+        self->ready_.notify_all();
+    }
+
+    AAudioStream *stream_ = nullptr;
+    const int32_t frameSize_;
+    std::vector<uint8_t> ring_;
+    // Bytes written / read since the stream was created; their difference is the fill
+    std::atomic<uint64_t> writeCount_{0};
+    std::atomic<uint64_t> readCount_{0};
+    std::atomic<bool> running_{false};
+    std::atomic<aaudio_result_t> error_{AAUDIO_OK};
+    std::mutex mutex_;
+    std::condition_variable ready_;
+};
+
+int32_t bytesPerSample(aaudio_format_t format) {
+    switch (format) {
+        case AAUDIO_FORMAT_PCM_I16:
+            return 2;
+        case AAUDIO_FORMAT_PCM_I24_PACKED:
+            return 3;
+        default:
+            return 4;
+    }
+}
+
+Capture *fromHandle(jlong handle) {
+    return reinterpret_cast<Capture *>(handle);
+}
+
+} // namespace
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeIsSupported(JNIEnv *, jclass) {
+    return api().loaded ? JNI_TRUE : JNI_FALSE;
+}
+
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeOpen(
+        JNIEnv *env, jclass, jint inputPreset, jint sampleRate, jint channels, jint format, jint ringBytes,
+        jlongArray result) {
+    jlong out[2] = {AAUDIO_ERROR_UNAVAILABLE, 0};
+    Capture *capture = nullptr;
+    if (api().loaded) {
+        capture = new Capture(channels * bytesPerSample(format), static_cast<size_t>(ringBytes));
+        aaudio_result_t opened = capture->open(inputPreset, sampleRate, channels, format);
+        out[0] = opened;
+        if (opened == AAUDIO_OK) {
+            out[1] = capture->sampleRate();
+        } else {
+            delete capture;
+            capture = nullptr;
+        }
+    }
+    env->SetLongArrayRegion(result, 0, 2, out);
+    return reinterpret_cast<jlong>(capture);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeStart(JNIEnv *, jclass, jlong handle) {
+    return fromHandle(handle)->start();
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeRead(
+        JNIEnv *env, jclass, jlong handle, jobject dst, jint size) {
+    auto *data = static_cast<uint8_t *>(env->GetDirectBufferAddress(dst));
+    if (data == nullptr) {
+        return AAUDIO_ERROR_ILLEGAL_ARGUMENT;
+    }
+    return fromHandle(handle)->read(data, static_cast<size_t>(size));
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeGetTimestamp(
+        JNIEnv *env, jclass, jlong handle, jlongArray positionAndNanos) {
+    int64_t framePosition = 0;
+    int64_t timeNanos = 0;
+    if (!fromHandle(handle)->timestamp(&framePosition, &timeNanos)) {
+        return JNI_FALSE;
+    }
+    jlong out[2] = {framePosition, timeNanos};
+    env->SetLongArrayRegion(positionAndNanos, 0, 2, out);
+    return JNI_TRUE;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeStop(JNIEnv *, jclass, jlong handle) {
+    fromHandle(handle)->stop();
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeClose(JNIEnv *, jclass, jlong handle) {
+    delete fromHandle(handle);
+}
+
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_imxiqi_rnliveaudiostream_AAudioBackend_nativeErrorText(JNIEnv *env, jclass, jint result) {
+    const char *text = api().loaded ? api().convertResultToText(result) : "AAudio not available";
+    return env->NewStringUTF(text != nullptr ? text : "unknown error");
+}
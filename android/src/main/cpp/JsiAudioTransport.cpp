@@ -0,0 +1,283 @@
+#include <jni.h>
+#include <jsi/jsi.h>
+
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <string>
+#include <vector>
+
+using namespace facebook;
+
+namespace {
+
+JavaVM *gJavaVm = nullptr;
+
+// JNIEnv for the current thread. A thread that was not attached yet, e.g. one the JS
+// runtime frees buffers on, is attached for the scope only and detached again, so no
+// native thread is left attached to the VM.
+class ScopedEnv {
+public:
+    ScopedEnv() {
+        if (gJavaVm->GetEnv(reinterpret_cast<void **>(&env_), JNI_VERSION_1_6) == JNI_EDETACHED
+                && gJavaVm->AttachCurrentThread(&env_, nullptr) == JNI_OK) {
+            attached_ = true;
+        }
+    }
+
+    ~ScopedEnv() {
+        if (attached_) {
+            gJavaVm->DetachCurrentThread();
+        }
+    }
+
+    ScopedEnv(const ScopedEnv &) = delete;
+    ScopedEnv &operator=(const ScopedEnv &) = delete;
+
+    JNIEnv *get() const { return env_; }
+
+private:
+    JNIEnv *env_ = nullptr;
+    bool attached_ = false;
+};
+
+// Global ref on a Java direct ByteBuffer so its memory outlives every JS view over it.
+class DirectBuffer {
+public:
+    DirectBuffer(JNIEnv *env, jobject buffer)
+            : ref_(env->NewGlobalRef(buffer)),
+              data_(static_cast<uint8_t *>(env->GetDirectBufferAddress(buffer))),
+              size_(static_cast<size_t>(env->GetDirectBufferCapacity(buffer))) {}
+
+    ~DirectBuffer() {
+        ScopedEnv env;
+        if (env.get() != nullptr) {
+            env.get()->DeleteGlobalRef(ref_);
+        }
+    }
+
+    DirectBuffer(const DirectBuffer &) = delete;
+    DirectBuffer &operator=(const DirectBuffer &) = delete;
+
+    uint8_t *data() const { return data_; }
+    size_t size() const { return size_; }
+
+private:
+    jobject ref_;
+    uint8_t *data_;
+    size_t size_;
+};
+
+class RingMemory : public jsi::MutableBuffer {
+public:
+    explicit RingMemory(std::shared_ptr<DirectBuffer> buffer) : buffer_(std::move(buffer)) {}
+
+    size_t size() const override { return buffer_->size(); }
+    uint8_t *data() override { return buffer_->data(); }
+
+private:
+    std::shared_ptr<DirectBuffer> buffer_;
+};
+
+// Mirrors the control block layout documented in AudioBufferRing.
+constexpr size_t kControlHeaderSize = 8;
+constexpr size_t kControlSlotSize = 40;
+
+// Slot metadata as of one consistent seqlock read
+struct SlotInfo {
+    int32_t length;
+    int64_t framePosition;
+    int64_t timeNanos;
+    int64_t gaps;
+};
+
+struct Ring {
+    std::shared_ptr<DirectBuffer> storage;
+    std::shared_ptr<DirectBuffer> control;
+    int slotSize;
+    int slotCount;
+
+    int64_t published() const {
+        return __atomic_load_n(reinterpret_cast<int64_t *>(control->data()), __ATOMIC_ACQUIRE);
+    }
+
+    // True while slot `index` still holds `sequence`, published and not being refilled
+    bool holds(int index, int64_t sequence) const {
+        return __atomic_load_n(word(index), __ATOMIC_ACQUIRE) == 2 * sequence + 2;
+    }
+
+    // Seqlock read: false if the producer started refilling the slot before we were done
+    bool readSlot(int index, int64_t sequence, SlotInfo &info) const {
+        int64_t before = __atomic_load_n(word(index), __ATOMIC_ACQUIRE);
+        if (before != 2 * sequence + 2) {
+            return false;
+        }
+        uint8_t *entry = control->data() + kControlHeaderSize + index * kControlSlotSize;
+        info.length = __atomic_load_n(reinterpret_cast<int32_t *>(entry + 8), __ATOMIC_RELAXED);
+        info.framePosition = __atomic_load_n(reinterpret_cast<int64_t *>(entry + 16), __ATOMIC_RELAXED);
+        info.timeNanos = __atomic_load_n(reinterpret_cast<int64_t *>(entry + 24), __ATOMIC_RELAXED);
+        info.gaps = __atomic_load_n(reinterpret_cast<int64_t *>(entry + 32), __ATOMIC_RELAXED);
+        // Keeps the loads above ahead of the re-check
+        __atomic_thread_fence(__ATOMIC_ACQUIRE);
+        return __atomic_load_n(word(index), __ATOMIC_RELAXED) == before;
+    }
+
+private:
+    int64_t *word(int index) const {
+        return reinterpret_cast<int64_t *>(control->data() + kControlHeaderSize + index * kControlSlotSize);
+    }
+};
+
+std::mutex gRingMutex;
+std::shared_ptr<Ring> gRing;
+
+std::shared_ptr<Ring> currentRing() {
+    std::lock_guard<std::mutex> lock(gRingMutex);
+    return gRing;
+}
+
+class AudioStreamHostObject : public jsi::HostObject {
+public:
+    jsi::Value get(jsi::Runtime &rt, const jsi::PropNameID &name) override {
+        std::string prop = name.utf8(rt);
+        std::shared_ptr<Ring> ring = currentRing();
+
+        if (prop == "buffer") {
+            if (!ring) {
+                return jsi::Value::null();
+            }
+            return jsi::Value(jsi::ArrayBuffer(rt, std::make_shared<RingMemory>(ring->storage)));
+        }
+        if (prop == "sequence") {
+            return ring ? jsi::Value(static_cast<double>(ring->published())) : jsi::Value(-1);
+        }
+        if (prop == "slotSize") {
+            return ring ? jsi::Value(ring->slotSize) : jsi::Value(0);
+        }
+        if (prop == "slotCount") {
+            return ring ? jsi::Value(ring->slotCount) : jsi::Value(0);
+        }
+        if (prop == "read") {
+            return jsi::Function::createFromHostFunction(
+                    rt, name, 0,
+                    [this](jsi::Runtime &runtime, const jsi::Value &, const jsi::Value *, size_t) {
+                        return read(runtime);
+                    });
+        }
+        if (prop == "verify") {
+            return jsi::Function::createFromHostFunction(
+                    rt, name, 1,
+                    [](jsi::Runtime &runtime, const jsi::Value &, const jsi::Value *args, size_t count) {
+                        return jsi::Value(count > 0 && args[0].isNumber() && verify(args[0].asNumber()));
+                    });
+        }
+        return jsi::Value::undefined();
+    }
+
+    std::vector<jsi::PropNameID> getPropertyNames(jsi::Runtime &rt) override {
+        std::vector<jsi::PropNameID> names;
+        names.push_back(jsi::PropNameID::forAscii(rt, "buffer"));
+        names.push_back(jsi::PropNameID::forAscii(rt, "sequence"));
+        names.push_back(jsi::PropNameID::forAscii(rt, "slotSize"));
+        names.push_back(jsi::PropNameID::forAscii(rt, "slotCount"));
+        names.push_back(jsi::PropNameID::forAscii(rt, "read"));
+        names.push_back(jsi::PropNameID::forAscii(rt, "verify"));
+        return names;
+    }
+
+private:
+    // Next unread chunk as {seq, offset, length, framePosition, timestampUs, gaps}, or null
+    // when JS is caught up.
+    // Chunks the producer already overwrote, or is overwriting, are skipped.
+    jsi::Value read(jsi::Runtime &rt) {
+        std::shared_ptr<Ring> ring = currentRing();
+        if (!ring) {
+            return jsi::Value::null();
+        }
+        if (ring != readRing_) {
+            readRing_ = ring;
+            readSequence_ = 0;
+        }
+
+        for (;;) {
+            int64_t published = ring->published();
+            if (readSequence_ > published) {
+                return jsi::Value::null();
+            }
+            if (published - readSequence_ >= ring->slotCount) {
+                readSequence_ = published - ring->slotCount + 1;
+            }
+
+            int index = static_cast<int>(readSequence_ % ring->slotCount);
+            SlotInfo info;
+            if (!ring->readSlot(index, readSequence_, info)) {
+                // Published, so only a refill can have changed the word: it is gone
+                readSequence_++;
+                continue;
+            }
+
+            jsi::Object chunk(rt);
+            chunk.setProperty(rt, "seq", static_cast<double>(readSequence_));
+            chunk.setProperty(rt, "offset", index * ring->slotSize);
+            chunk.setProperty(rt, "length", info.length);
+            chunk.setProperty(rt, "framePosition", static_cast<double>(info.framePosition));
+            chunk.setProperty(rt, "timestampUs", static_cast<double>(info.timeNanos / 1000));
+            chunk.setProperty(rt, "gaps", static_cast<double>(info.gaps));
+            readSequence_++;
+            return jsi::Value(std::move(chunk));
+        }
+    }
+
+    // Second half of the seqlock for the payload: JS copies the bytes, then checks that the
+    // slot was not refilled meanwhile.
+    static bool verify(double sequence) {
+        std::shared_ptr<Ring> ring = currentRing();
+        if (!ring || sequence < 0) {
+            return false;
+        }
+        auto seq = static_cast<int64_t>(sequence);
+        // Loads of the copied bytes stay ahead of the re-check
+        __atomic_thread_fence(__ATOMIC_ACQUIRE);
+        return ring->holds(static_cast<int>(seq % ring->slotCount), seq);
+    }
+
+    std::shared_ptr<Ring> readRing_;
+    int64_t readSequence_ = 0;
+};
+
+} // namespace
+
+extern "C" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *) {
+    gJavaVm = vm;
+    return JNI_VERSION_1_6;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_imxiqi_rnliveaudiostream_JsiAudioTransport_nativeInstall(JNIEnv *, jclass, jlong jsContext) {
+    auto *runtime = reinterpret_cast<jsi::Runtime *>(jsContext);
+    if (runtime == nullptr) {
+        return;
+    }
+    auto hostObject = std::make_shared<AudioStreamHostObject>();
+    runtime->global().setProperty(
+            *runtime, "__RNLiveAudioStream", jsi::Object::createFromHostObject(*runtime, hostObject));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_imxiqi_rnliveaudiostream_JsiAudioTransport_nativeAttach(
+        JNIEnv *env, jclass, jobject storage, jobject control, jint slotSize, jint slotCount) {
+    auto ring = std::make_shared<Ring>();
+    ring->storage = std::make_shared<DirectBuffer>(env, storage);
+    ring->control = std::make_shared<DirectBuffer>(env, control);
+    ring->slotSize = slotSize;
+    ring->slotCount = slotCount;
+
+    std::lock_guard<std::mutex> lock(gRingMutex);
+    gRing = ring;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_imxiqi_rnliveaudiostream_JsiAudioTransport_nativeDetach(JNIEnv *, jclass) {
+    std::lock_guard<std::mutex> lock(gRingMutex);
+    gRing.reset();
+}
@@ -0,0 +1,163 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Capture through AAudio (Android 8.0+) in low-latency mode, exclusive where the device
+ * allows it. AAudio calls back on its own real-time thread with every burst, a few
+ * milliseconds of audio, and the callback copies it into a native ring that {@link #read}
+ * drains. A read returns as soon as {@code bufferSize} bytes are in, so input latency is
+ * about one burst plus the read size instead of AudioRecord's minimum buffer.
+ *
+ * The native side is in librnliveaudiostream and loads libaaudio at runtime, so the library
+ * still loads on older versions; check {@link #isAvailable} first. 8-bit capture is not
+ * supported, 24- and 32-bit integer capture needs Android 12.
+ */
+public class AAudioBackend implements CaptureBackend {
+    private static final String TAG = "AAudioBackend";
+    // Native ring: this many reads, and at least this long, before the callback drops audio
+    private static final int RING_READS = 4;
+    private static final int MIN_RING_MS = 100;
+    // AAudio format codes (aaudio_format_t)
+    private static final int FORMAT_PCM_I16 = 1;
+    private static final int FORMAT_PCM_FLOAT = 2;
+    private static final int FORMAT_PCM_I24_PACKED = 3;
+    private static final int FORMAT_PCM_I32 = 4;
+
+    private static boolean libraryLoaded;
+
+    static {
+        try {
+            System.loadLibrary("rnliveaudiostream");
+            libraryLoaded = true;
+        } catch (Throwable e) {
+            Log.w(TAG, "Native library unavailable", e);
+            libraryLoaded = false;
+        }
+    }
+
+    // 0 once released. read and release are synchronized so the native stream is never
+    // closed under a read; stop only takes stopLock so it can wake a read up
+    private volatile long handle;
+    private final Object stopLock = new Object();
+    private int sampleRate;
+
+    /**
+     * Whether AAudio can be used on this device.
+     */
+    public static boolean isAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && libraryLoaded && nativeIsSupported();
+    }
+
+    /**
+     * Whether AAudio can capture {@code format} on this device.
+     */
+    public static boolean supports(SampleFormat format) {
+        return isAvailable() && toAAudioFormat(format) != 0;
+    }
+
+    @Override
+    public String getName() {
+        return "aaudio";
+    }
+
+    @Override
+    public int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize)
+            throws IOException {
+        int aaudioFormat = toAAudioFormat(format);
+        if (aaudioFormat == 0) {
+            throw new IOException(format + " capture is not supported by AAudio on this Android version");
+        }
+        int bytesPerSecond = sampleRate * channels * format.getBytesPerSample();
+        int ringBytes = Math.max(RING_READS * bufferSize, bytesPerSecond / 1000 * MIN_RING_MS);
+        // MediaRecorder.AudioSource and AAudio input presets share their values
+        long[] result = new long[2];
+        handle = nativeOpen(audioSource, sampleRate, channels, aaudioFormat, ringBytes, result);
+        if (handle == 0) {
+            throw new IOException("AAudio input could not be opened: " + nativeErrorText((int) result[0]));
+        }
+        // Only 16-bit PCM can be resampled to the requested rate
+        if (result[1] != sampleRate && format != SampleFormat.PCM_16BIT) {
+            release();
+            throw new IOException("AAudio input only available at " + result[1] + " Hz");
+        }
+        this.sampleRate = (int) result[1];
+        Log.d(TAG, "AAudio stream open at " + this.sampleRate + " Hz, ring " + ringBytes + " bytes");
+        return ringBytes;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        int result = nativeStart(handle);
+        if (result < 0) {
+            throw new IOException("AAudio input could not be started: " + nativeErrorText(result));
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, int size) {
+        if (handle == 0) {
+            return 0;
+        }
+        return nativeRead(handle, dst, Math.min(size, dst.capacity()));
+    }
+
+    @Override
+    public synchronized boolean getTimestamp(long[] positionAndNanos) {
+        return handle != 0 && nativeGetTimestamp(handle, positionAndNanos);
+    }
+
+    @Override
+    public void stop() {
+        synchronized (stopLock) {
+            if (handle != 0) {
+                nativeStop(handle);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        synchronized (stopLock) {
+            if (handle != 0) {
+                nativeClose(handle);
+                handle = 0;
+            }
+        }
+    }
+
+    private static int toAAudioFormat(SampleFormat format) {
+        switch (format) {
+            case PCM_16BIT:
+                return FORMAT_PCM_I16;
+            case PCM_FLOAT:
+                return FORMAT_PCM_FLOAT;
+            case PCM_24BIT:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? FORMAT_PCM_I24_PACKED : 0;
+            case PCM_32BIT:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? FORMAT_PCM_I32 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static native boolean nativeIsSupported();
+    // Returns 0 on failure with the AAudio result in result[0]; result[1] is the granted rate
+    private static native long nativeOpen(int inputPreset, int sampleRate, int channels, int format,
+                                          int ringBytes, long[] result);
+    private static native int nativeStart(long handle);
+    private static native int nativeRead(long handle, ByteBuffer dst, int size);
+    private static native boolean nativeGetTimestamp(long handle, long[] positionAndNanos);
+    private static native void nativeStop(long handle);
+    private static native void nativeClose(long handle);
+    private static native String nativeErrorText(int result);
+}
@@ -0,0 +1,109 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Read size of the capture thread with {@code targetLatencyMs} set. Starts at the target and
+ * doubles when reads run into trouble: the input overran, processing dropped a buffer or has
+ * half the handoff queued, or reads come in more than half a period off schedule on average.
+ * Larger reads mean fewer wake-ups and chunks, so each of those has more slack. After a quiet
+ * stretch it steps back down towards the target. Always a whole number of frames within
+ * {@code [minBufferMs, maxBufferMs]}.
+ *
+ * Capture thread only, apart from {@link #getReadBytes}.
+ */
+public class AdaptiveReadSize {
+    // After growing, let the new size settle before judging it
+    private static final long SETTLE_NANOS = 1000000000L;
+    // Trouble-free time before stepping down
+    private static final long QUIET_NANOS = 10000000000L;
+    // Weight of the latest read in the jitter average, as 1/n
+    private static final int JITTER_SMOOTHING = 8;
+
+    private final int frameSize;
+    private final int bytesPerSecond;
+    private final int targetFrames;
+    private final int minFrames;
+    private final int maxFrames;
+
+    private volatile int readBytes;
+    private long periodNanos;
+    private long averageJitterNanos;
+    private long lastOverruns;
+    private long lastDrops;
+    private long lastChangeNanos;
+    private long lastTroubleNanos;
+
+    /**
+     * @param sampleRate capture rate
+     * @param frameSize  capture bytes per frame
+     */
+    public AdaptiveReadSize(int sampleRate, int frameSize, int targetMs, int minMs, int maxMs) {
+        this.frameSize = frameSize;
+        this.bytesPerSecond = sampleRate * frameSize;
+        this.minFrames = framesFor(sampleRate, minMs);
+        this.maxFrames = Math.max(minFrames, framesFor(sampleRate, maxMs));
+        this.targetFrames = Math.min(maxFrames, Math.max(minFrames, framesFor(sampleRate, targetMs)));
+        setReadBytes(targetFrames);
+    }
+
+    /**
+     * Bytes the capture thread reads at most with these bounds: what read buffers must hold.
+     */
+    public static int maxReadBytes(int sampleRate, int frameSize, int minMs, int maxMs) {
+        return Math.max(framesFor(sampleRate, minMs), framesFor(sampleRate, maxMs)) * frameSize;
+    }
+
+    // Frames, at least one, for ms at sampleRate
+    private static int framesFor(int sampleRate, int ms) {
+        return (int) Math.max(1, (long) sampleRate * ms / 1000);
+    }
+
+    /** Current read size in bytes */
+    public int getReadBytes() { return readBytes; }
+
+    /**
+     * Start of capture or resume: the schedule starts over.
+     */
+    public void onStart(long nowNanos) {
+        averageJitterNanos = 0;
+        lastChangeNanos = nowNanos;
+        lastTroubleNanos = nowNanos;
+    }
+
+    /**
+     * After each read. {@code overruns} and {@code drops} are running totals, {@code queued}
+     * the buffers waiting for processing out of {@code capacity}. Returns true if the read
+     * size changed.
+     */
+    public boolean onRead(long nowNanos, long jitterNanos, long overruns, long drops, int queued, int capacity) {
+        averageJitterNanos += (jitterNanos - averageJitterNanos) / JITTER_SMOOTHING;
+        boolean trouble = overruns > lastOverruns || drops > lastDrops
+                || 2 * queued >= capacity || 2 * averageJitterNanos > periodNanos;
+        lastOverruns = overruns;
+        lastDrops = drops;
+
+        int frames = readBytes / frameSize;
+        if (trouble) {
+            lastTroubleNanos = nowNanos;
+            if (frames < maxFrames && nowNanos - lastChangeNanos >= SETTLE_NANOS) {
+                return change(Math.min(maxFrames, 2 * frames), nowNanos);
+            }
+        } else if (frames > targetFrames && nowNanos - lastTroubleNanos >= QUIET_NANOS
+                && nowNanos - lastChangeNanos >= QUIET_NANOS) {
+            return change(Math.max(targetFrames, frames * 3 / 4), nowNanos);
+        }
+        return false;
+    }
+
+    private boolean change(int frames, long nowNanos) {
+        setReadBytes(frames);
+        lastChangeNanos = nowNanos;
+        // Jitter measured against the old period says nothing about the new one
+        averageJitterNanos = 0;
+        return true;
+    }
+
+    private void setReadBytes(int frames) {
+        readBytes = frames * frameSize;
+        periodNanos = readBytes * 1000000000L / bytesPerSecond;
+    }
+}
@@ -0,0 +1,243 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed ring of preallocated direct buffers for the capture loop.
+ *
+ * The producer claims the next free slot, fills it (e.g. AudioRecord.read(ByteBuffer, int))
+ * and publishes it. Consumers address published slots by sequence number and release them
+ * when done so the slot can be recycled. No allocation happens after construction.
+ *
+ * Single producer, single consumer. Plain Java so it can be exercised off-device.
+ *
+ * A small direct control block mirrors the cursors so native readers (the JSI transport)
+ * can follow the ring without calling back into Java. Layout, native byte order:
+ *   [0]            long  published sequence (-1 before the first publish)
+ *   [8 + i * 40]   long  seqlock word of slot i: 2 * seq + 2 once seq is published,
+ *                        2 * seq + 1 while the slot is being refilled for seq, 0 if empty
+ *   [16 + i * 40]  int   valid bytes in slot i
+ *   [24 + i * 40]  long  stream frame position of slot i
+ *   [32 + i * 40]  long  capture time of slot i, System.nanoTime clock
+ *   [40 + i * 40]  long  gaps so far when slot i was published
+ *
+ * A native reader loads the word, reads the slot, then loads the word again; if it changed
+ * or was odd the producer overwrote the slot in between and the read is thrown away.
+ */
+public class AudioBufferRing {
+    private static final int CONTROL_HEADER_SIZE = 8;
+    private static final int CONTROL_SLOT_SIZE = 40;
+
+    private final ByteBuffer storage;
+    private final ByteBuffer control;
+    private final ByteBuffer[] slots;
+    private final int[] lengths;
+    private final long[] framePositions;
+    private final long[] timestamps;
+    private final long[] gaps;
+    private final int slotSize;
+    private final int slotCount;
+    private final int mask;
+
+    // Last sequence handed to consumers / last sequence given back by them
+    private volatile long publishedSequence = -1;
+    private volatile long releasedSequence = -1;
+    // Only written and read for the barrier, see storeFence()
+    private volatile int fence;
+
+    public AudioBufferRing(int slotCount, int slotSize) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount must be a power of two: " + slotCount);
+        }
+        if (slotSize <= 0) {
+            throw new IllegalArgumentException("slotSize must be positive: " + slotSize);
+        }
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.mask = slotCount - 1;
+        this.lengths = new int[slotCount];
+        this.framePositions = new long[slotCount];
+        this.timestamps = new long[slotCount];
+        this.gaps = new long[slotCount];
+        this.slots = new ByteBuffer[slotCount];
+
+        // One contiguous block, sliced into slots
+        storage = ByteBuffer.allocateDirect(slotCount * slotSize).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < slotCount; i++) {
+            storage.limit((i + 1) * slotSize);
+            storage.position(i * slotSize);
+            slots[i] = storage.slice().order(ByteOrder.nativeOrder());
+        }
+        storage.clear();
+
+        control = ByteBuffer.allocateDirect(CONTROL_HEADER_SIZE + slotCount * CONTROL_SLOT_SIZE)
+                .order(ByteOrder.nativeOrder());
+        resetControl();
+    }
+
+    public int getSlotSize() { return slotSize; }
+    public int getSlotCount() { return slotCount; }
+    public long getPublishedSequence() { return publishedSequence; }
+    public long getReleasedSequence() { return releasedSequence; }
+    public ByteBuffer getStorage() { return storage; }
+    public ByteBuffer getControl() { return control; }
+
+    /**
+     * Byte offset of the slot holding {@code sequence} inside {@link #getStorage()}.
+     */
+    public int offsetOf(long sequence) {
+        return (int) (sequence & mask) * slotSize;
+    }
+
+    /**
+     * Number of published slots not yet released by the consumer.
+     */
+    public int pending() {
+        return (int) (publishedSequence - releasedSequence);
+    }
+
+    /**
+     * Claim the slot for the next sequence, cleared and ready to be filled.
+     * Returns null when every slot is still held by the consumer.
+     */
+    public ByteBuffer claim() {
+        long next = publishedSequence + 1;
+        if (next - releasedSequence > slotCount) {
+            return null;
+        }
+        int index = (int) (next & mask);
+        // Odd word before the first payload byte lands: native readers drop the old chunk
+        control.putLong(CONTROL_HEADER_SIZE + index * CONTROL_SLOT_SIZE, 2 * next + 1);
+        storeFence();
+        ByteBuffer slot = slots[index];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Publish the slot returned by the last claim() holding {@code length} valid bytes.
+     */
+    public long publish(int length) {
+        return publish(length, -1, -1, 0);
+    }
+
+    /**
+     * Publish the slot returned by the last claim() along with where it belongs in the stream.
+     */
+    public long publish(int length, long framePosition, long timeNanos, long gapCount) {
+        long next = publishedSequence + 1;
+        int index = (int) (next & mask);
+        lengths[index] = length;
+        framePositions[index] = framePosition;
+        timestamps[index] = timeNanos;
+        gaps[index] = gapCount;
+        int controlOffset = CONTROL_HEADER_SIZE + index * CONTROL_SLOT_SIZE;
+        control.putInt(controlOffset + 8, length);
+        control.putLong(controlOffset + 16, framePosition);
+        control.putLong(controlOffset + 24, timeNanos);
+        control.putLong(controlOffset + 32, gapCount);
+        // Payload and metadata before the even word, the even word before the header
+        storeFence();
+        control.putLong(controlOffset, 2 * next + 2);
+        storeFence();
+        control.putLong(0, next);
+        publishedSequence = next;
+        return next;
+    }
+
+    /**
+     * Published slot for {@code sequence}, positioned over its valid bytes.
+     */
+    public ByteBuffer get(long sequence) {
+        checkReadable(sequence);
+        int index = (int) (sequence & mask);
+        ByteBuffer slot = slots[index];
+        slot.limit(lengths[index]);
+        slot.position(0);
+        return slot;
+    }
+
+    public int length(long sequence) {
+        checkReadable(sequence);
+        return lengths[(int) (sequence & mask)];
+    }
+
+    /** Stream frame position published with {@code sequence}, -1 if none */
+    public long framePosition(long sequence) {
+        checkReadable(sequence);
+        return framePositions[(int) (sequence & mask)];
+    }
+
+    /** Capture time published with {@code sequence}, -1 if none */
+    public long timeNanos(long sequence) {
+        checkReadable(sequence);
+        return timestamps[(int) (sequence & mask)];
+    }
+
+    public long gaps(long sequence) {
+        checkReadable(sequence);
+        return gaps[(int) (sequence & mask)];
+    }
+
+    /**
+     * Copy a published slot into {@code dst}; returns the number of bytes copied.
+     */
+    public int copyTo(long sequence, byte[] dst, int offset) {
+        ByteBuffer slot = get(sequence);
+        int length = Math.min(slot.remaining(), dst.length - offset);
+        slot.get(dst, offset, length);
+        return length;
+    }
+
+    /**
+     * Give every slot up to and including {@code sequence} back to the producer.
+     */
+    public void release(long sequence) {
+        if (sequence > publishedSequence) {
+            throw new IllegalStateException("Cannot release unpublished sequence " + sequence);
+        }
+        if (sequence > releasedSequence) {
+            releasedSequence = sequence;
+        }
+    }
+
+    /**
+     * Drop all sequencing state. Only call while producer and consumer are stopped.
+     */
+    public void reset() {
+        publishedSequence = -1;
+        releasedSequence = -1;
+        resetControl();
+    }
+
+    private void resetControl() {
+        control.putLong(0, -1);
+        for (int i = 0; i < slotCount; i++) {
+            control.putLong(CONTROL_HEADER_SIZE + i * CONTROL_SLOT_SIZE, 0);
+            control.putInt(CONTROL_HEADER_SIZE + i * CONTROL_SLOT_SIZE + 8, 0);
+            control.putLong(CONTROL_HEADER_SIZE + i * CONTROL_SLOT_SIZE + 16, -1);
+            control.putLong(CONTROL_HEADER_SIZE + i * CONTROL_SLOT_SIZE + 24, -1);
+            control.putLong(CONTROL_HEADER_SIZE + i * CONTROL_SLOT_SIZE + 32, 0);
+        }
+    }
+
+    /**
+     * Keeps control block and payload stores on either side in order for native readers.
+     * VarHandle fences need API 33, so this uses a volatile write then read, which the
+     * runtime has to compile to a full barrier.
+     */
+    private void storeFence() {
+        fence = 0;
+        if (fence != 0) {
+            throw new AssertionError();
+        }
+    }
+
+    private void checkReadable(long sequence) {
+        if (sequence <= releasedSequence || sequence > publishedSequence) {
+            throw new IllegalStateException("Sequence " + sequence + " is not readable (released="
+                    + releasedSequence + ", published=" + publishedSequence + ")");
+        }
+    }
+}
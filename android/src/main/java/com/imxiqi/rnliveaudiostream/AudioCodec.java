@@ -0,0 +1,32 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal encoder contract used by {@link EncoderStage}. Implemented by
+ * {@link MediaCodecEncoder} on device; a stub can stand in for it off-device.
+ */
+public interface AudioCodec {
+    interface PacketListener {
+        /**
+         * Encoded output. {@code packet} is only valid for the duration of the call.
+         */
+        void onPacket(ByteBuffer packet, long presentationTimeUs, boolean codecConfig, boolean endOfStream);
+
+        void onError(String message);
+    }
+
+    void start(PacketListener listener);
+
+    /**
+     * Empty input buffer for the next frame, or null if the codec has none free right now.
+     */
+    ByteBuffer dequeueInputBuffer();
+
+    /**
+     * Submit the buffer returned by the last {@link #dequeueInputBuffer()}.
+     */
+    void queueInputBuffer(ByteBuffer buffer, int length, long presentationTimeUs, boolean endOfStream);
+
+    void release();
+}
@@ -2,15 +2,99 @@ package com.imxiqi.rnliveaudiostream;
 
 import android.media.MediaRecorder;
 
-public class AudioConfig {
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings from {@code init()}. The shared instance is only written through its synchronized
+ * setters; every recording works on its own {@link #snapshot}, so changing settings never
+ * affects a stream that is already running.
+ */
+public class AudioConfig implements Cloneable {
+    // How PCM reaches JS: Base64 "data" events or the shared JSI ArrayBuffer
+    public static final String TRANSPORT_BASE64 = "base64";
+    public static final String TRANSPORT_JSI = "jsi";
+
+    // Integer PCM of bitsPerSample, or 32-bit float
+    public static final String SAMPLE_FORMAT_INT = "int";
+    public static final String SAMPLE_FORMAT_FLOAT = "float";
+
+    // Output codec: raw PCM or packets from an on-device encoder
+    public static final String CODEC_PCM = "pcm";
+    // Voice activity detection: off, report speechStart/speechEnd only, or also drop silence
+    public static final String VAD_OFF = "off";
+    public static final String VAD_MARK = "mark";
+    public static final String VAD_DROP = "drop";
+    // What ends the lookback's armed state: trigger() from JS, or speech detected natively
+    public static final String LOOKBACK_MANUAL = "manual";
+    public static final String LOOKBACK_VAD = "vad";
+    // Capture API: AudioRecord everywhere, or AAudio low-latency where available
+    public static final String CAPTURE_AUDIO_RECORD = "audioRecord";
+    public static final String CAPTURE_AAUDIO = "aaudio";
+
     private static AudioConfig instance;
 
     // Audio parameters với default values
     private int sampleRate = 44100;
     private int channels = 1;
     private int bitsPerSample = 16;
+    private String sampleFormat = SAMPLE_FORMAT_INT;
     private int audioSource = MediaRecorder.AudioSource.VOICE_RECOGNITION;
     private int bufferSize = 2048;
+    // Adaptive read size: starts at targetLatencyMs of audio per read and moves within
+    // [minBufferMs, maxBufferMs] with overruns, jitter and processing lag; 0 = fixed bufferSize
+    private int targetLatencyMs = 0;
+    private int minBufferMs = 10;
+    private int maxBufferMs = 200;
+    private String captureBackend = CAPTURE_AUDIO_RECORD;
+    // Delivered format when it differs from the capture format; 0 = same as capture.
+    // With outputSampleRate set, capture runs at the device's native rate
+    private int outputSampleRate = 0;
+    private int outputChannels = 0;
+    private String transport = TRANSPORT_BASE64;
+    // Event batching: 0 disables the time window / size limit respectively
+    private int batchMs = 0;
+    private int maxBatchBytes = 0;
+    // Bounded queue between the processing thread and the emitter
+    private int maxQueueBytes = 1024 * 1024;
+    private String overflowPolicy = "dropOldest";
+    // Encoder stage, used when codec is not "pcm". frameSize 0 = codec default
+    private String codec = CODEC_PCM;
+    private int bitRate = 64000;
+    private int frameSize = 0;
+    private String vadMode = VAD_OFF;
+    private float vadThresholdDb = -45f;
+    private int vadHangoverMs = 300;
+    private int vadPreRollMs = 200;
+    // Always-on capture into a circular store of this much audio, sent only once triggered; 0 = off
+    private int lookbackMs = 0;
+    private String lookbackTrigger = LOOKBACK_MANUAL;
+    // "level" events every levelIntervalMs, 0 = off; levelBands > 0 adds a coarse spectrum
+    private int levelIntervalMs = 0;
+    private int levelBands = 0;
+    // Native file sink; runs alongside the JS stream or alone with emitData off
+    private String wavFile = null;
+    private long segmentDurationMs = 0;
+    private long segmentMaxBytes = 0;
+    private boolean emitData = true;
+    // "data" events as objects with seq, frame position, capture time and gaps
+    private boolean timestamps = false;
+    // Send "metrics" events with start/stop phase timings
+    private boolean emitMetrics = false;
+    // Period of "health" metrics events while recording, 0 = off
+    private int metricsIntervalMs = 0;
+    // Native upload sink (ws/wss/http/https), null = off. Encoded sends codec packets instead of PCM
+    private String uploadUrl = null;
+    private Map<String, String> uploadHeaders = Collections.emptyMap();
+    private boolean uploadEncoded = false;
+    private int uploadReplayMs = 5000;
+    private int uploadMaxQueueBytes = 1024 * 1024;
+    // Disk budget for the upload backlog during outages, 0 = memory only
+    private long uploadSpillMaxBytes = 128L * 1024 * 1024;
+    // 0 = delivery format
+    private int uploadSampleRate = 0;
+    private int uploadChannels = 0;
 
     // Notification parameters với default values
     private String notificationTitle = "Audio Recording";
@@ -18,6 +102,9 @@ public class AudioConfig {
 
     private int notificationIcon = 0; // 0 = use default logic
 
+    // Snapshots are read-only
+    private boolean frozen;
+
     private AudioConfig() {
         // Private constructor để đảm bảo singleton
     }
@@ -29,76 +116,517 @@ public class AudioConfig {
         return instance;
     }
 
+    /**
+     * Read-only copy of the current settings for one session.
+     */
+    public synchronized AudioConfig snapshot() {
+        try {
+            AudioConfig copy = (AudioConfig) super.clone();
+            copy.frozen = true;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public boolean isSnapshot() { return frozen; }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("AudioConfig snapshot is read-only");
+        }
+    }
+
     // Getters
     public int getSampleRate() { return sampleRate; }
     public int getChannels() { return channels; }
     public int getBitsPerSample() { return bitsPerSample; }
+    public String getSampleFormatName() { return sampleFormat; }
     public int getAudioSource() { return audioSource; }
     public int getBufferSize() { return bufferSize; }
+    public int getTargetLatencyMs() { return targetLatencyMs; }
+    public int getMinBufferMs() { return minBufferMs; }
+    public int getMaxBufferMs() { return maxBufferMs; }
+    public String getCaptureBackend() { return captureBackend; }
+    public int getOutputSampleRate() { return outputSampleRate; }
+    public int getOutputChannels() { return outputChannels; }
+    public String getTransport() { return transport; }
+    public int getBatchMs() { return batchMs; }
+    public int getMaxBatchBytes() { return maxBatchBytes; }
+    public int getMaxQueueBytes() { return maxQueueBytes; }
+    public String getOverflowPolicy() { return overflowPolicy; }
+    public String getCodec() { return codec; }
+    public int getBitRate() { return bitRate; }
+    public int getFrameSize() { return frameSize; }
+    public String getVadMode() { return vadMode; }
+    public float getVadThresholdDb() { return vadThresholdDb; }
+    public int getVadHangoverMs() { return vadHangoverMs; }
+    public int getVadPreRollMs() { return vadPreRollMs; }
+    public int getLookbackMs() { return lookbackMs; }
+    public String getLookbackTrigger() { return lookbackTrigger; }
+    public int getLevelIntervalMs() { return levelIntervalMs; }
+    public int getLevelBands() { return levelBands; }
+    public String getWavFile() { return wavFile; }
+    public long getSegmentDurationMs() { return segmentDurationMs; }
+    public long getSegmentMaxBytes() { return segmentMaxBytes; }
+    public boolean isEmitData() { return emitData; }
+    public boolean isTimestamps() { return timestamps; }
+    public boolean isEmitMetrics() { return emitMetrics; }
+    public int getMetricsIntervalMs() { return metricsIntervalMs; }
+    public String getUploadUrl() { return uploadUrl; }
+    public Map<String, String> getUploadHeaders() { return uploadHeaders; }
+    public boolean isUploadEncoded() { return uploadEncoded; }
+    public int getUploadReplayMs() { return uploadReplayMs; }
+    public int getUploadMaxQueueBytes() { return uploadMaxQueueBytes; }
+    public long getUploadSpillMaxBytes() { return uploadSpillMaxBytes; }
+    public int getUploadSampleRate() { return uploadSampleRate; }
+    public int getUploadChannels() { return uploadChannels; }
     public String getNotificationTitle() { return notificationTitle; }
     public String getNotificationContent() { return notificationContent; }
     public int getNotificationIcon() { return notificationIcon; }
 
     // Setters với validation
-    public AudioConfig setSampleRate(int sampleRate) {
+    public synchronized AudioConfig setSampleRate(int sampleRate) {
+        checkMutable();
         if (sampleRate > 0) {
             this.sampleRate = sampleRate;
         }
         return this;
     }
 
-    public AudioConfig setChannels(int channels) {
+    public synchronized AudioConfig setChannels(int channels) {
+        checkMutable();
         if (channels == 1 || channels == 2) {
             this.channels = channels;
         }
         return this;
     }
 
-    public AudioConfig setBitsPerSample(int bitsPerSample) {
-        if (bitsPerSample == 8 || bitsPerSample == 16) {
+    public synchronized AudioConfig setBitsPerSample(int bitsPerSample) {
+        checkMutable();
+        if (bitsPerSample == 8 || bitsPerSample == 16 || bitsPerSample == 24 || bitsPerSample == 32) {
             this.bitsPerSample = bitsPerSample;
         }
         return this;
     }
 
-    public AudioConfig setAudioSource(int audioSource) {
+    public synchronized AudioConfig setSampleFormat(String sampleFormat) {
+        checkMutable();
+        if (SAMPLE_FORMAT_INT.equals(sampleFormat) || SAMPLE_FORMAT_FLOAT.equals(sampleFormat)) {
+            this.sampleFormat = sampleFormat;
+        }
+        return this;
+    }
+
+    /**
+     * Encoding captured and delivered; float is always 32-bit.
+     */
+    public SampleFormat getSampleFormat() {
+        return SampleFormat.from(bitsPerSample, SAMPLE_FORMAT_FLOAT.equals(sampleFormat));
+    }
+
+    public synchronized AudioConfig setAudioSource(int audioSource) {
+        checkMutable();
         this.audioSource = audioSource;
         return this;
     }
 
-    public AudioConfig setBufferSize(int bufferSize) {
+    public synchronized AudioConfig setBufferSize(int bufferSize) {
+        checkMutable();
         if (bufferSize > 0) {
             this.bufferSize = bufferSize;
         }
         return this;
     }
 
-    public AudioConfig setNotificationTitle(String notificationTitle) {
+    public synchronized AudioConfig setTargetLatencyMs(int targetLatencyMs) {
+        checkMutable();
+        if (targetLatencyMs >= 0) {
+            this.targetLatencyMs = targetLatencyMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setMinBufferMs(int minBufferMs) {
+        checkMutable();
+        if (minBufferMs > 0) {
+            this.minBufferMs = minBufferMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setMaxBufferMs(int maxBufferMs) {
+        checkMutable();
+        if (maxBufferMs > 0) {
+            this.maxBufferMs = maxBufferMs;
+        }
+        return this;
+    }
+
+    public boolean isAdaptiveReadSize() {
+        return targetLatencyMs > 0;
+    }
+
+    /**
+     * Bytes a read buffer must hold at the given capture rate: bufferSize, or the largest
+     * adaptive read.
+     */
+    public int getMaxReadBytes(int captureSampleRate) {
+        if (!isAdaptiveReadSize()) {
+            return bufferSize;
+        }
+        int frameSize = channels * getSampleFormat().getBytesPerSample();
+        return AdaptiveReadSize.maxReadBytes(captureSampleRate, frameSize, minBufferMs, maxBufferMs);
+    }
+
+    public synchronized AudioConfig setCaptureBackend(String captureBackend) {
+        checkMutable();
+        if (CAPTURE_AUDIO_RECORD.equals(captureBackend) || CAPTURE_AAUDIO.equals(captureBackend)) {
+            this.captureBackend = captureBackend;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setOutputSampleRate(int outputSampleRate) {
+        checkMutable();
+        if (outputSampleRate >= 0) {
+            this.outputSampleRate = outputSampleRate;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setOutputChannels(int outputChannels) {
+        checkMutable();
+        if (outputChannels >= 0 && outputChannels <= 2) {
+            this.outputChannels = outputChannels;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setTransport(String transport) {
+        checkMutable();
+        if (TRANSPORT_BASE64.equals(transport) || TRANSPORT_JSI.equals(transport)) {
+            this.transport = transport;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setBatchMs(int batchMs) {
+        checkMutable();
+        if (batchMs >= 0) {
+            this.batchMs = batchMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setMaxBatchBytes(int maxBatchBytes) {
+        checkMutable();
+        if (maxBatchBytes >= 0) {
+            this.maxBatchBytes = maxBatchBytes;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setMaxQueueBytes(int maxQueueBytes) {
+        checkMutable();
+        if (maxQueueBytes > 0) {
+            this.maxQueueBytes = maxQueueBytes;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setOverflowPolicy(String overflowPolicy) {
+        checkMutable();
+        if ("dropOldest".equals(overflowPolicy) || "dropNewest".equals(overflowPolicy)
+                || "block".equals(overflowPolicy) || "spill".equals(overflowPolicy)) {
+            this.overflowPolicy = overflowPolicy;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setCodec(String codec) {
+        checkMutable();
+        if (CODEC_PCM.equals(codec) || EncoderStage.CODEC_AAC.equals(codec)
+                || EncoderStage.CODEC_OPUS.equals(codec)) {
+            this.codec = codec;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setBitRate(int bitRate) {
+        checkMutable();
+        if (bitRate > 0) {
+            this.bitRate = bitRate;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setFrameSize(int frameSize) {
+        checkMutable();
+        if (frameSize >= 0) {
+            this.frameSize = frameSize;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setVadMode(String vadMode) {
+        checkMutable();
+        if (VAD_OFF.equals(vadMode) || VAD_MARK.equals(vadMode) || VAD_DROP.equals(vadMode)) {
+            this.vadMode = vadMode;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setVadThresholdDb(float vadThresholdDb) {
+        checkMutable();
+        if (vadThresholdDb < 0) {
+            this.vadThresholdDb = vadThresholdDb;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setVadHangoverMs(int vadHangoverMs) {
+        checkMutable();
+        if (vadHangoverMs >= 0) {
+            this.vadHangoverMs = vadHangoverMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setVadPreRollMs(int vadPreRollMs) {
+        checkMutable();
+        if (vadPreRollMs >= 0) {
+            this.vadPreRollMs = vadPreRollMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setLookbackMs(int lookbackMs) {
+        checkMutable();
+        if (lookbackMs >= 0) {
+            this.lookbackMs = lookbackMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setLookbackTrigger(String lookbackTrigger) {
+        checkMutable();
+        if (LOOKBACK_MANUAL.equals(lookbackTrigger) || LOOKBACK_VAD.equals(lookbackTrigger)) {
+            this.lookbackTrigger = lookbackTrigger;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setLevelIntervalMs(int levelIntervalMs) {
+        checkMutable();
+        if (levelIntervalMs >= 0) {
+            this.levelIntervalMs = levelIntervalMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setLevelBands(int levelBands) {
+        checkMutable();
+        if (levelBands >= 0 && levelBands <= LevelMeter.MAX_BANDS) {
+            this.levelBands = levelBands;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setWavFile(String wavFile) {
+        checkMutable();
+        this.wavFile = wavFile != null && !wavFile.trim().isEmpty() ? wavFile : null;
+        return this;
+    }
+
+    public synchronized AudioConfig setSegmentDurationMs(long segmentDurationMs) {
+        checkMutable();
+        if (segmentDurationMs >= 0) {
+            this.segmentDurationMs = segmentDurationMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setSegmentMaxBytes(long segmentMaxBytes) {
+        checkMutable();
+        if (segmentMaxBytes >= 0) {
+            this.segmentMaxBytes = segmentMaxBytes;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setEmitData(boolean emitData) {
+        checkMutable();
+        this.emitData = emitData;
+        return this;
+    }
+
+    public synchronized AudioConfig setTimestamps(boolean timestamps) {
+        checkMutable();
+        this.timestamps = timestamps;
+        return this;
+    }
+
+    public synchronized AudioConfig setEmitMetrics(boolean emitMetrics) {
+        checkMutable();
+        this.emitMetrics = emitMetrics;
+        return this;
+    }
+
+    public synchronized AudioConfig setMetricsIntervalMs(int metricsIntervalMs) {
+        checkMutable();
+        if (metricsIntervalMs >= 0) {
+            this.metricsIntervalMs = metricsIntervalMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadUrl(String uploadUrl) {
+        checkMutable();
+        this.uploadUrl = uploadUrl != null && !uploadUrl.trim().isEmpty() ? uploadUrl.trim() : null;
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadHeaders(Map<String, String> uploadHeaders) {
+        checkMutable();
+        this.uploadHeaders = uploadHeaders != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(uploadHeaders))
+                : Collections.<String, String>emptyMap();
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadEncoded(boolean uploadEncoded) {
+        checkMutable();
+        this.uploadEncoded = uploadEncoded;
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadReplayMs(int uploadReplayMs) {
+        checkMutable();
+        if (uploadReplayMs >= 0) {
+            this.uploadReplayMs = uploadReplayMs;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadMaxQueueBytes(int uploadMaxQueueBytes) {
+        checkMutable();
+        if (uploadMaxQueueBytes > 0) {
+            this.uploadMaxQueueBytes = uploadMaxQueueBytes;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadSpillMaxBytes(long uploadSpillMaxBytes) {
+        checkMutable();
+        if (uploadSpillMaxBytes >= 0) {
+            this.uploadSpillMaxBytes = uploadSpillMaxBytes;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadSampleRate(int uploadSampleRate) {
+        checkMutable();
+        if (uploadSampleRate >= 0) {
+            this.uploadSampleRate = uploadSampleRate;
+        }
+        return this;
+    }
+
+    public synchronized AudioConfig setUploadChannels(int uploadChannels) {
+        checkMutable();
+        if (uploadChannels >= 0 && uploadChannels <= 2) {
+            this.uploadChannels = uploadChannels;
+        }
+        return this;
+    }
+
+    /**
+     * Bytes of PCM delivered per second with the current format.
+     */
+    public int getBytesPerSecond() {
+        return getDeliverySampleRate() * getDeliveryChannels() * getSampleFormat().getBytesPerSample();
+    }
+
+    /**
+     * Sample rate of the PCM handed to outputs (JS, encoder, file).
+     */
+    public int getDeliverySampleRate() {
+        return outputSampleRate > 0 ? outputSampleRate : sampleRate;
+    }
+
+    public int getDeliveryChannels() {
+        return outputChannels > 0 ? outputChannels : channels;
+    }
+
+    public synchronized AudioConfig setNotificationTitle(String notificationTitle) {
+        checkMutable();
         if (notificationTitle != null && !notificationTitle.trim().isEmpty()) {
             this.notificationTitle = notificationTitle;
         }
         return this;
     }
 
-    public AudioConfig setNotificationContent(String notificationContent) {
+    public synchronized AudioConfig setNotificationContent(String notificationContent) {
+        checkMutable();
         if (notificationContent != null && !notificationContent.trim().isEmpty()) {
             this.notificationContent = notificationContent;
         }
         return this;
     }
 
-    public AudioConfig setNotificationIcon(int notificationIcon) {
+    public synchronized AudioConfig setNotificationIcon(int notificationIcon) {
+        checkMutable();
         this.notificationIcon = notificationIcon;
         return this;
     }
 
     // Reset về default values
-    public void resetToDefaults() {
+    public synchronized void resetToDefaults() {
+        checkMutable();
         this.sampleRate = 44100;
         this.channels = 1;
         this.bitsPerSample = 16;
         this.audioSource = MediaRecorder.AudioSource.VOICE_RECOGNITION;
         this.bufferSize = 2048;
+        this.targetLatencyMs = 0;
+        this.minBufferMs = 10;
+        this.maxBufferMs = 200;
+        this.captureBackend = CAPTURE_AUDIO_RECORD;
+        this.transport = TRANSPORT_BASE64;
+        this.batchMs = 0;
+        this.maxBatchBytes = 0;
+        this.maxQueueBytes = 1024 * 1024;
+        this.overflowPolicy = "dropOldest";
+        this.codec = CODEC_PCM;
+        this.bitRate = 64000;
+        this.frameSize = 0;
+        this.vadMode = VAD_OFF;
+        this.vadThresholdDb = -45f;
+        this.vadHangoverMs = 300;
+        this.vadPreRollMs = 200;
+        this.lookbackMs = 0;
+        this.lookbackTrigger = LOOKBACK_MANUAL;
+        this.levelIntervalMs = 0;
+        this.levelBands = 0;
+        this.wavFile = null;
+        this.segmentDurationMs = 0;
+        this.segmentMaxBytes = 0;
+        this.emitData = true;
+        this.timestamps = false;
+        this.emitMetrics = false;
+        this.outputSampleRate = 0;
+        this.sampleFormat = SAMPLE_FORMAT_INT;
+        this.outputChannels = 0;
+        this.metricsIntervalMs = 0;
+        this.uploadUrl = null;
+        this.uploadHeaders = Collections.emptyMap();
+        this.uploadEncoded = false;
+        this.uploadReplayMs = 5000;
+        this.uploadMaxQueueBytes = 1024 * 1024;
+        this.uploadSpillMaxBytes = 128L * 1024 * 1024;
+        this.uploadSampleRate = 0;
+        this.uploadChannels = 0;
         this.notificationTitle = "Audio Recording";
         this.notificationContent = "Recording audio in background";
         this.notificationIcon = 0;
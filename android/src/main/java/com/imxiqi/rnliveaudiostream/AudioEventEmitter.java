@@ -1,50 +1,353 @@
 package com.imxiqi.rnliveaudiostream;
 
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 public class AudioEventEmitter {
-    private static ReactContext reactContext;
+    // Identical errors inside this window are reported once
+    private static final long ERROR_COALESCE_MS = 1000;
 
-    public static void setReactContext(ReactContext context) {
+    private static volatile ReactContext reactContext;
+    private static volatile DeviceEventManagerModule.RCTDeviceEventEmitter jsEmitter;
+
+    // Data events handed to the bridge that the JS thread has not reached yet
+    private static final AtomicInteger pendingJsEvents = new AtomicInteger();
+    private static final Object jsAckLock = new Object();
+    private static final Runnable JS_ACK = () -> {
+        pendingJsEvents.decrementAndGet();
+        synchronized (jsAckLock) {
+            jsAckLock.notifyAll();
+        }
+    };
+
+    private static Boolean lastRecordingState;
+    private static boolean lastPausedState;
+    private static int lastSessionId;
+    private static String lastError;
+    private static long lastErrorTime;
+
+    public static synchronized void setReactContext(ReactContext context) {
         reactContext = context;
+        jsEmitter = null;
+        lastRecordingState = null;
+        lastPausedState = false;
+        lastSessionId = 0;
+        lastError = null;
+        pendingJsEvents.set(0);
+    }
+
+    public static int getPendingJsEvents() {
+        return pendingJsEvents.get();
+    }
+
+    /**
+     * Wait until fewer than {@code maxPending} data events are waiting for the JS thread.
+     * Returns false on timeout.
+     */
+    public static boolean awaitJsCapacity(int maxPending, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (jsAckLock) {
+            while (pendingJsEvents.get() >= maxPending) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                jsAckLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * PCM as a Base64 "data" event.
+     */
+    public static void sendAudioData(byte[] data, int offset, int length) {
+        ReactContext context = reactContext;
+        if (context != null) {
+            pendingJsEvents.incrementAndGet();
+            emit("data", Base64.encodeToString(data, offset, length, Base64.NO_WRAP));
+            // Queued behind the event on the JS thread, so it runs once JS got that far
+            context.runOnJSQueueThread(JS_ACK);
+        }
+    }
+
+    /**
+     * PCM as a "data" event carrying its place in the stream: {@code seq} numbers the data
+     * events, {@code framePosition} and {@code timestampUs} locate the first frame.
+     */
+    public static void sendAudioData(byte[] data, int offset, int length, long seq,
+                                     long framePosition, long timeNanos, long gaps) {
+        ReactContext context = reactContext;
+        if (context != null) {
+            pendingJsEvents.incrementAndGet();
+            WritableMap params = Arguments.createMap();
+            params.putString("data", Base64.encodeToString(data, offset, length, Base64.NO_WRAP));
+            params.putDouble("seq", seq);
+            params.putDouble("framePosition", framePosition);
+            params.putDouble("timestampUs", timeNanos / 1000);
+            params.putDouble("gaps", gaps);
+            emit("data", params);
+            context.runOnJSQueueThread(JS_ACK);
+        }
+    }
+
+    /**
+     * Encoded packet from the encoder stage, with its presentation time in microseconds.
+     */
+    public static void sendPacket(byte[] data, int length, long presentationTimeUs) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putString("data", Base64.encodeToString(data, 0, length, Base64.NO_WRAP));
+            params.putDouble("ptsUs", presentationTimeUs);
+            emit("packet", params);
+        }
+    }
+    /**
+     * A WAV file (or rotated segment) was finalized and is ready to use.
+     */
+    public static void sendFileSegment(String path, long dataBytes, long durationMs) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putString("path", path);
+            params.putDouble("bytes", dataBytes);
+            params.putDouble("durationMs", durationMs);
+            emit("fileSegment", params);
+        }
+    }
+    /**
+     * Session {@code sessionId} is fully torn down: every output drained and closed.
+     */
+    public static void sendStopped(int sessionId) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putInt("sessionId", sessionId);
+            emit("stopped", params);
+        }
+    }
+    /**
+     * Connection state of the native upload sink; {@code error} is null unless a connection
+     * attempt or send failed.
+     */
+    public static void sendUploadState(String state, @Nullable String error) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putString("state", state);
+            params.putString("error", error);
+            emit("uploadState", params);
+        }
+    }
+    public static void sendSpeechStart(float levelDb) {
+        sendSpeechEvent("speechStart", levelDb);
+    }
+    public static void sendSpeechEnd(float levelDb) {
+        sendSpeechEvent("speechEnd", levelDb);
+    }
+    private static void sendSpeechEvent(String eventName, float levelDb) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putDouble("levelDb", levelDb);
+            emit(eventName, params);
+        }
+    }
+    /**
+     * Levels of the interval the meter just finished, in dBFS.
+     */
+    public static void sendLevel(LevelMeter meter) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putDouble("peakDb", meter.getPeakDb());
+            params.putDouble("rmsDb", meter.getRmsDb());
+            if (meter.getBandCount() > 0) {
+                WritableArray bands = Arguments.createArray();
+                for (int i = 0; i < meter.getBandCount(); i++) {
+                    bands.pushDouble(meter.getBandDb(i));
+                }
+                params.putArray("bands", bands);
+            }
+            emit("level", params);
+        }
+    }
+    /**
+     * The lookback went live ({@code triggered}) or back to holding audio; {@code source} is
+     * "manual" or "vad".
+     */
+    public static void sendLookbackState(boolean triggered, String source) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putBoolean("triggered", triggered);
+            params.putString("source", source);
+            emit("lookback", params);
+        }
+    }
+    /**
+     * Notify JS that a chunk is ready in the shared ring (JSI transport).
+     */
+    public static void sendChunk(long sequence, int offset, int length,
+                                 long framePosition, long timeNanos, long gaps) {
+        if (reactContext != null) {
+            WritableMap params = Arguments.createMap();
+            params.putDouble("seq", sequence);
+            params.putInt("offset", offset);
+            params.putInt("length", length);
+            params.putDouble("framePosition", framePosition);
+            params.putDouble("timestampUs", timeNanos / 1000);
+            params.putDouble("gaps", gaps);
+            emit("chunk", params);
+        }
     }
-    public static void sendAudioData(String data) {
-        android.util.Log.d("AudioEventEmitter", "sendAudioData called. data.length=" + (data != null ? data.length() : "null") + ", reactContext=" + (reactContext != null));
+    /**
+     * Phase timings of a start or stop sequence; {@code type} is "start" or "stop".
+     */
+    public static void sendMetrics(String type, PhaseTimer timer) {
+        if (reactContext != null) {
+            WritableMap params = createPhaseMap(timer);
+            params.putString("type", type);
+            emit("metrics", params);
+        }
+    }
+
+    /**
+     * Periodic capture health snapshot while recording.
+     */
+    public static void sendHealth(CaptureHealth health, BoundedPcmQueue queue, @Nullable StreamingUploadSink upload) {
         if (reactContext != null) {
-            emit("data", data);
-        } else {
-            android.util.Log.e("AudioEventEmitter", "sendAudioData: reactContext is null!");
+            WritableMap params = createHealthMap(health, queue);
+            params.putString("type", "health");
+            if (upload != null) {
+                params.putMap("upload", createUploadMap(upload));
+            }
+            emit("metrics", params);
+        }
+    }
+
+    static WritableMap createHealthMap(CaptureHealth health, BoundedPcmQueue queue) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("bytesRead", health.getBytesRead());
+        map.putDouble("bytesEmitted", health.getBytesEmitted());
+        map.putDouble("overruns", health.getOverruns());
+        map.putDouble("framesLost", health.getFramesLost());
+        map.putDouble("processingDrops", health.getProcessingDrops());
+        map.putDouble("expectedReadPeriodMs", health.getExpectedPeriodNanos() / 1e6);
+        map.putInt("readBytes", health.getReadBytes());
+        map.putDouble("readSizeChanges", health.getReadSizeChanges());
+        map.putMap("readDuration", createHistogramMap(health.readDuration));
+        map.putMap("readJitter", createHistogramMap(health.readJitter));
+        map.putMap("emitLatency", createHistogramMap(health.emitLatency));
+        map.putDouble("queuedBytes", queue != null ? queue.getQueuedBytes() + queue.getSpilledBytes() : 0);
+        map.putDouble("maxQueuedBytes", queue != null ? queue.getMaxQueuedBytes() : 0);
+        map.putInt("pendingJsEvents", pendingJsEvents.get());
+        return map;
+    }
+
+    static WritableMap createUploadMap(StreamingUploadSink upload) {
+        WritableMap map = Arguments.createMap();
+        map.putString("url", upload.getUrl());
+        map.putString("state", upload.getState().name().toLowerCase(Locale.US));
+        map.putDouble("bytesSent", upload.getBytesSent());
+        map.putDouble("bytesReplayed", upload.getBytesReplayed());
+        map.putDouble("bytesDropped", upload.getDroppedBytes());
+        map.putDouble("spilledBytes", upload.getSpilledBytes());
+        map.putDouble("reconnects", upload.getReconnects());
+        map.putDouble("connectFailures", upload.getConnectFailures());
+        map.putDouble("throughputBps", upload.getThroughputBytesPerSecond());
+        map.putMap("sendLatency", createHistogramMap(upload.sendLatency));
+        map.putMap("connectLatency", createHistogramMap(upload.connectLatency));
+        return map;
+    }
+
+    private static WritableMap createHistogramMap(LatencyHistogram histogram) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", histogram.getCount());
+        map.putDouble("meanMs", histogram.getMeanNanos() / 1e6);
+        map.putDouble("p50Ms", histogram.getPercentileNanos(0.5) / 1e6);
+        map.putDouble("p90Ms", histogram.getPercentileNanos(0.9) / 1e6);
+        map.putDouble("p99Ms", histogram.getPercentileNanos(0.99) / 1e6);
+        map.putDouble("maxMs", histogram.getMaxNanos() / 1e6);
+        return map;
+    }
+
+    /**
+     * {@code {phases: [{name, durationMs, atMs}], totalMs}}, times relative to the start
+     * of the sequence.
+     */
+    static WritableMap createPhaseMap(PhaseTimer timer) {
+        WritableMap map = Arguments.createMap();
+        WritableArray phases = Arguments.createArray();
+        long total = 0;
+        synchronized (timer) {
+            for (int i = 0; i < timer.getPhaseCount(); i++) {
+                WritableMap phase = Arguments.createMap();
+                phase.putString("name", timer.getPhaseName(i));
+                phase.putDouble("durationMs", timer.getPhaseDurationNanos(i) / 1e6);
+                phase.putDouble("atMs", timer.getPhaseOffsetNanos(i) / 1e6);
+                phases.pushMap(phase);
+                total = timer.getPhaseOffsetNanos(i);
+            }
         }
+        map.putArray("phases", phases);
+        map.putDouble("totalMs", total / 1e6);
+        return map;
     }
-    public static void sendRecordingState(boolean isRecording) {
+    /**
+     * @param sessionId session the state belongs to, 0 when not recording
+     */
+    public static synchronized void sendRecordingState(boolean isRecording, boolean isPaused, int sessionId) {
+        // Module and service both report state changes; only forward real transitions
+        if (lastRecordingState != null && lastRecordingState == isRecording && lastPausedState == isPaused
+                && lastSessionId == sessionId) {
+            return;
+        }
         if (reactContext != null) {
+            lastRecordingState = isRecording;
+            lastPausedState = isPaused;
+            lastSessionId = sessionId;
             WritableMap params = Arguments.createMap();
             params.putBoolean("isRecording", isRecording);
+            params.putBoolean("isPaused", isPaused);
+            params.putInt("sessionId", sessionId);
             emit("recordingState", params);
         }
     }
-    public static void sendError(String error) {
+    public static synchronized void sendError(String error) {
+        long now = System.currentTimeMillis();
+        if (error != null && error.equals(lastError) && now - lastErrorTime < ERROR_COALESCE_MS) {
+            return;
+        }
+        lastError = error;
+        lastErrorTime = now;
         if (reactContext != null) {
             WritableMap params = Arguments.createMap();
             params.putString("error", error);
             emit("error", params);
         }
     }
-    private static void emit(String eventName, WritableMap params) {
-        if (reactContext != null) {
-            reactContext
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit(eventName, params);
+    private static void emit(String eventName, Object data) {
+        DeviceEventManagerModule.RCTDeviceEventEmitter emitter = getJsEmitter();
+        if (emitter != null) {
+            emitter.emit(eventName, data);
         }
     }
 
-    private static void emit(String eventName, String data) {
-        if (reactContext != null) {
-            reactContext
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit(eventName, data);
+    // getJSModule is a map lookup plus proxy creation; resolve it once per context
+    private static DeviceEventManagerModule.RCTDeviceEventEmitter getJsEmitter() {
+        DeviceEventManagerModule.RCTDeviceEventEmitter emitter = jsEmitter;
+        if (emitter == null) {
+            ReactContext context = reactContext;
+            if (context == null) {
+                return null;
+            }
+            emitter = context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
+            jsEmitter = emitter;
         }
+        return emitter;
     }
 }
@@ -0,0 +1,122 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Capture with blocking {@code AudioRecord.read} calls. Works on every Android version; its
+ * latency is bounded below by {@code AudioRecord.getMinBufferSize}.
+ */
+public class AudioRecordBackend implements CaptureBackend {
+    private static final String TAG = "AudioRecordBackend";
+
+    @Nullable
+    private final PhaseTimer timer;
+    private AudioRecord audioRecord;
+    private int sampleRate;
+    // API 24+, reused for every getTimestamp
+    private AudioTimestamp timestamp;
+
+    /**
+     * @param timer startup phases to mark, may be null
+     */
+    public AudioRecordBackend(@Nullable PhaseTimer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public String getName() {
+        return "audioRecord";
+    }
+
+    @Override
+    public int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize)
+            throws IOException {
+        int channelConfig = channels == 1 ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
+        if (Build.VERSION.SDK_INT < format.getMinSdk()) {
+            Log.e(TAG, format + " capture needs API " + format.getMinSdk());
+            throw new IOException(format + " capture is not supported on this Android version");
+        }
+        int audioFormat = format.getEncoding();
+
+        // Calculate buffer size (có thể tốn thời gian)
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+        mark("minBufferSize");
+        if (minBufferSize == AudioRecord.ERROR_BAD_VALUE) {
+            throw new IOException("Invalid audio configuration");
+        }
+
+        int actualBufferSize = Math.max(minBufferSize, bufferSize);
+        Log.d(TAG, "Creating AudioRecord with buffer size: " + actualBufferSize);
+
+        // AudioRecord creation (có thể tốn thời gian nhất)
+        audioRecord = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat, actualBufferSize);
+        mark("audioRecordInit");
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            release();
+            throw new IOException("AudioRecord initialization failed");
+        }
+        this.sampleRate = sampleRate;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            timestamp = new AudioTimestamp();
+        }
+        return actualBufferSize;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, int size) {
+        return audioRecord.read(dst, size);
+    }
+
+    @Override
+    public boolean getTimestamp(long[] positionAndNanos) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || timestamp == null) {
+            return false;
+        }
+        if (audioRecord.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC) != AudioRecord.SUCCESS) {
+            return false;
+        }
+        positionAndNanos[0] = timestamp.framePosition;
+        positionAndNanos[1] = timestamp.nanoTime;
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        audioRecord.stop();
+    }
+
+    @Override
+    public void release() {
+        if (audioRecord != null) {
+            try {
+                audioRecord.release();
+            } catch (Exception ignored) {}
+            audioRecord = null;
+        }
+    }
+
+    private void mark(String phase) {
+        if (timer != null) {
+            timer.mark(phase);
+        }
+    }
+}
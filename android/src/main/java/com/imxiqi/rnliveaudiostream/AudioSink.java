@@ -0,0 +1,33 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Consumer of the captured stream. Each sink runs on its own thread behind its own queue
+ * (see {@link SinkChannel}), so a slow sink only loses its own data.
+ *
+ * Register custom sinks with {@link RNLiveAudioStreamService#addSink}.
+ */
+public interface AudioSink {
+    /**
+     * Called on the sink thread before the first {@link #write}, with the format the sink
+     * will receive.
+     */
+    void open(int sampleRate, int channels, SampleFormat format) throws Exception;
+
+    /**
+     * One chunk of interleaved PCM. {@code data} is reused after the call returns.
+     */
+    void write(byte[] data, int offset, int length) throws Exception;
+
+    /**
+     * Called on the sink thread when no chunk arrived within the channel's poll interval,
+     * e.g. while capture is paused, so time-based work such as a batch window still runs.
+     */
+    default void onIdle(long nowNanos) throws Exception {
+    }
+
+    /**
+     * Called on the sink thread once the stream has ended and everything queued was written,
+     * or after a failed open/write.
+     */
+    void close();
+}
@@ -0,0 +1,327 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Byte-bounded FIFO of PCM chunks between the processing thread and the emitter.
+ *
+ * Chunks are stored length-prefixed in one preallocated circular array, so steady-state
+ * offer/take never allocate. What happens when a chunk does not fit is decided by the
+ * {@link OverflowPolicy}.
+ */
+public class BoundedPcmQueue {
+    public enum OverflowPolicy {
+        /** Evict the oldest queued chunks to make room */
+        DROP_OLDEST,
+        /** Discard the incoming chunk */
+        DROP_NEWEST,
+        /** Block the producer (the processing thread) until there is room */
+        BLOCK,
+        /** Append to a spill file and replay it once memory has drained */
+        SPILL;
+
+        public static OverflowPolicy fromString(String value) {
+            if ("dropNewest".equals(value)) return DROP_NEWEST;
+            if ("block".equals(value)) return BLOCK;
+            if ("spill".equals(value)) return SPILL;
+            return DROP_OLDEST;
+        }
+    }
+
+    private static final int HEADER_SIZE = 4;
+
+    private final byte[] storage;
+    private final OverflowPolicy policy;
+    private final File spillFile;
+    private final Object lock = new Object();
+
+    private int head;       // read position
+    private int tail;       // write position
+    private int used;       // bytes in storage, headers included
+    private int chunkCount;
+    private boolean closed;
+
+    // Spill state, only used with OverflowPolicy.SPILL
+    private FileChannel spillChannel;
+    private ByteBuffer spillHeader;
+    private long spillReadPosition;
+    private long spillWritePosition;
+
+    // Counters, payload bytes only
+    private long queuedBytes;
+    private long spilledBytes;
+    private long droppedBytes;
+    private long droppedChunks;
+    private long enqueuedBytes;
+    private long maxQueuedBytes;
+
+    public BoundedPcmQueue(int capacityBytes, OverflowPolicy policy, File spillFile) {
+        if (capacityBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacityBytes too small: " + capacityBytes);
+        }
+        if (policy == OverflowPolicy.SPILL && spillFile == null) {
+            throw new IllegalArgumentException("SPILL policy needs a spill file");
+        }
+        this.storage = new byte[capacityBytes];
+        this.policy = policy;
+        this.spillFile = spillFile;
+    }
+
+    public OverflowPolicy getPolicy() { return policy; }
+    public int getCapacity() { return storage.length; }
+
+    /**
+     * Enqueue a chunk. Returns false if it was dropped.
+     */
+    public boolean offer(byte[] src, int offset, int length) throws InterruptedException {
+        return offer(src, offset, null, length);
+    }
+
+    /**
+     * Enqueue the remaining bytes of {@code src} without an intermediate copy. The buffer
+     * position is not changed. Returns false if the chunk was dropped.
+     */
+    public boolean offer(ByteBuffer src) throws InterruptedException {
+        return offer(null, 0, src, src.remaining());
+    }
+
+    // Exactly one of array / buffer is set
+    private boolean offer(byte[] src, int offset, ByteBuffer buffer, int length) throws InterruptedException {
+        synchronized (lock) {
+            if (closed) {
+                return false;
+            }
+            enqueuedBytes += length;
+            int needed = length + HEADER_SIZE;
+            if (needed > storage.length) {
+                return drop(length);
+            }
+
+            if (spillWritePosition > spillReadPosition) {
+                // Older data is on disk already; keep FIFO order by spilling this one too
+                return spill(src, offset, buffer, length);
+            }
+
+            if (storage.length - used < needed) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        return drop(length);
+                    case DROP_OLDEST:
+                        while (storage.length - used < needed) {
+                            int evicted = readHeader(head);
+                            skip(evicted);
+                            droppedBytes += evicted;
+                            droppedChunks++;
+                        }
+                        break;
+                    case BLOCK:
+                        while (!closed && storage.length - used < needed) {
+                            lock.wait();
+                        }
+                        if (closed) {
+                            return false;
+                        }
+                        break;
+                    case SPILL:
+                        return spill(src, offset, buffer, length);
+                }
+            }
+
+            write(src, offset, buffer, length);
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Dequeue the oldest chunk into {@code dst}, waiting up to {@code timeoutMs}.
+     * Returns its length, 0 on timeout, or -1 once closed and drained.
+     */
+    public int take(byte[] dst, long timeoutMs) throws InterruptedException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (chunkCount == 0 && spillWritePosition == spillReadPosition) {
+                if (closed) {
+                    return -1;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                lock.wait(remaining);
+            }
+
+            int length;
+            if (chunkCount > 0) {
+                length = readHeader(head);
+                if (length > dst.length) {
+                    throw new IllegalArgumentException("Destination too small for chunk of " + length);
+                }
+                int position = (head + HEADER_SIZE) % storage.length;
+                copyOut(position, dst, length);
+                skip(length);
+            } else {
+                length = unspill(dst);
+            }
+            lock.notifyAll();
+            return length;
+        }
+    }
+
+    /**
+     * Stop accepting chunks and wake blocked producers/consumers. Queued data can still be taken.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Release the spill file. Call once the consumer is done.
+     */
+    public void dispose() {
+        synchronized (lock) {
+            closeSpill();
+        }
+    }
+
+    public long getQueuedBytes() { synchronized (lock) { return queuedBytes; } }
+    public long getSpilledBytes() { synchronized (lock) { return spilledBytes; } }
+    public long getDroppedBytes() { synchronized (lock) { return droppedBytes; } }
+    public long getDroppedChunks() { synchronized (lock) { return droppedChunks; } }
+    public long getEnqueuedBytes() { synchronized (lock) { return enqueuedBytes; } }
+    public long getMaxQueuedBytes() { synchronized (lock) { return maxQueuedBytes; } }
+
+    private boolean drop(int length) {
+        droppedBytes += length;
+        droppedChunks++;
+        return false;
+    }
+
+    private void write(byte[] src, int offset, ByteBuffer buffer, int length) {
+        writeHeader(tail, length);
+        int position = (tail + HEADER_SIZE) % storage.length;
+        int first = Math.min(length, storage.length - position);
+        if (buffer != null) {
+            int start = buffer.position();
+            buffer.get(storage, position, first);
+            buffer.get(storage, 0, length - first);
+            buffer.position(start);
+        } else {
+            System.arraycopy(src, offset, storage, position, first);
+            System.arraycopy(src, offset + first, storage, 0, length - first);
+        }
+        tail = (position + length) % storage.length;
+        used += length + HEADER_SIZE;
+        chunkCount++;
+        queuedBytes += length;
+        maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes + spilledBytes);
+    }
+
+    private void skip(int length) {
+        head = (head + HEADER_SIZE + length) % storage.length;
+        used -= length + HEADER_SIZE;
+        chunkCount--;
+        queuedBytes -= length;
+    }
+
+    private void copyOut(int position, byte[] dst, int length) {
+        int first = Math.min(length, storage.length - position);
+        System.arraycopy(storage, position, dst, 0, first);
+        System.arraycopy(storage, 0, dst, first, length - first);
+    }
+
+    private void writeHeader(int position, int value) {
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            storage[(position + i) % storage.length] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private int readHeader(int position) {
+        int value = 0;
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            value |= (storage[(position + i) % storage.length] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private boolean spill(byte[] src, int offset, ByteBuffer buffer, int length) {
+        try {
+            if (spillChannel == null) {
+                spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+                spillChannel.truncate(0);
+                spillHeader = ByteBuffer.allocate(HEADER_SIZE);
+            }
+            spillHeader.clear();
+            spillHeader.putInt(length);
+            spillHeader.flip();
+            spillWritePosition += spillChannel.write(spillHeader, spillWritePosition);
+            ByteBuffer payload = buffer != null ? buffer : ByteBuffer.wrap(src, offset, length);
+            int start = payload.position();
+            while (payload.hasRemaining()) {
+                spillWritePosition += spillChannel.write(payload, spillWritePosition);
+            }
+            payload.position(start);
+            spilledBytes += length;
+            maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes + spilledBytes);
+            lock.notifyAll();
+            return true;
+        } catch (IOException e) {
+            return drop(length);
+        }
+    }
+
+    private int unspill(byte[] dst) {
+        try {
+            spillHeader.clear();
+            readSpill(spillHeader);
+            spillHeader.flip();
+            int length = spillHeader.getInt();
+            if (length > dst.length) {
+                throw new IllegalArgumentException("Destination too small for chunk of " + length);
+            }
+            readSpill(ByteBuffer.wrap(dst, 0, length));
+            spilledBytes -= length;
+            if (spillReadPosition == spillWritePosition) {
+                // Drained: start over at the beginning of the file
+                spillChannel.truncate(0);
+                spillReadPosition = 0;
+                spillWritePosition = 0;
+            }
+            return length;
+        } catch (IOException e) {
+            // The rest of the spill is unreadable, count it as dropped
+            droppedBytes += spilledBytes;
+            spilledBytes = 0;
+            spillReadPosition = 0;
+            spillWritePosition = 0;
+            return 0;
+        }
+    }
+
+    private void readSpill(ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            int n = spillChannel.read(target, spillReadPosition);
+            if (n < 0) {
+                throw new IOException("Spill file truncated");
+            }
+            spillReadPosition += n;
+        }
+    }
+
+    private void closeSpill() {
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException ignored) {}
+            spillChannel = null;
+            spillFile.delete();
+        }
+    }
+}
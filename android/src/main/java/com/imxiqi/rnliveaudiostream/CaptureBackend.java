@@ -0,0 +1,53 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where the capture thread gets its PCM from: {@link AudioRecordBackend} (blocking reads
+ * from AudioRecord, any Android version) or {@link AAudioBackend} (AAudio callbacks in
+ * low-latency mode, Android 8.0+), chosen with {@code captureBackend}.
+ *
+ * open/start/stop/release run on the service's audio thread or, for a pause, on the
+ * capture thread; read and getTimestamp on the capture thread only. An opened backend can
+ * be started and stopped any number of times until it is released.
+ */
+public interface CaptureBackend {
+    /** Name used in logs and to tell whether a prepared backend still fits the config */
+    String getName();
+
+    /**
+     * Get ready to capture. Returns the size of the backend's own buffer in bytes, i.e. how
+     * much it holds before unread frames are lost.
+     *
+     * @param audioSource {@code MediaRecorder.AudioSource} value
+     * @param sampleRate  requested rate; see {@link #getSampleRate} for the one granted
+     * @param bufferSize  bytes the capture thread reads at a time, at most
+     * @throws IOException with a message fit for the user if the input cannot be opened
+     */
+    int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize)
+            throws IOException;
+
+    /** Rate actually captured at, valid after {@link #open} */
+    int getSampleRate();
+
+    void start() throws IOException;
+
+    /**
+     * Block until {@code size} bytes are captured and copy them to the start of {@code dst},
+     * a direct buffer; its position is not changed. Returns the bytes copied, fewer
+     * (possibly 0) once stopped, or a negative error code.
+     */
+    int read(ByteBuffer dst, int size);
+
+    /**
+     * Latest capture timestamp: a frame position of the input, counting every frame it
+     * captured, into {@code positionAndNanos[0]} and the {@code System.nanoTime} at which that
+     * frame was captured into {@code positionAndNanos[1]}. Returns false if none is available.
+     */
+    boolean getTimestamp(long[] positionAndNanos);
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,93 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Frame position and capture time of the captured stream.
+ *
+ * The frame position counts every frame since recording started, including frames
+ * AudioRecord lost to overruns, so each chunk can be placed exactly and missing audio shows
+ * up as a jump. Time spent paused is not part of the stream: frames continue where they
+ * stopped, only the capture time jumps.
+ *
+ * Capture times are on the {@code System.nanoTime} (CLOCK_MONOTONIC) clock. Each run, from
+ * startRecording to stop, starts with frames counted from the time recording started, and
+ * switches to AudioRecord.getTimestamp once one is available (API 24+), which accounts for
+ * input latency and keeps the estimate from drifting against the device clock.
+ *
+ * Capture thread only.
+ */
+public class CaptureClock {
+    private int sampleRate;
+    // Stream frame of the next frame read
+    private long position;
+    // Stream frame and time at which the current run started
+    private long runStartFrame;
+    private long runStartNanos;
+    // AudioRecord frame position of the run's first frame, once a timestamp was seen
+    private boolean hasBase;
+    private long runBasePosition;
+    // Latest AudioRecord timestamp of the run
+    private long anchorPosition;
+    private long anchorNanos;
+
+    /**
+     * Start a new session at frame 0.
+     */
+    public void reset(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+        position = 0;
+        runStartFrame = 0;
+        runStartNanos = 0;
+        hasBase = false;
+    }
+
+    /**
+     * AudioRecord started (or restarted after a pause) at {@code nanos}.
+     */
+    public void onStart(long nanos) {
+        runStartFrame = position;
+        runStartNanos = nanos;
+        hasBase = false;
+    }
+
+    public void onRead(int frames) {
+        position += frames;
+    }
+
+    /**
+     * Frames AudioRecord overwrote before they were read; the stream skips past them.
+     */
+    public void onFramesLost(long frames) {
+        position += frames;
+    }
+
+    /**
+     * An AudioTimestamp taken right after a read that ended at {@code readEndNanos}. A
+     * blocking read returns as soon as its data is there, so next to nothing is buffered at
+     * that point: frames captured by then minus frames read this run is an upper bound on
+     * where the run started in AudioRecord's numbering, and the smallest one seen is kept.
+     */
+    public void onTimestamp(long framePosition, long nanoTime, long readEndNanos) {
+        long capturedByReadEnd = framePosition + (readEndNanos - nanoTime) * sampleRate / 1000000000L;
+        long base = capturedByReadEnd - (position - runStartFrame);
+        if (!hasBase || base < runBasePosition) {
+            runBasePosition = base;
+            hasBase = true;
+        }
+        anchorPosition = framePosition;
+        anchorNanos = nanoTime;
+    }
+
+    /** Stream frame of the next frame read */
+    public long getPosition() { return position; }
+
+    /**
+     * Capture time of stream frame {@code frame} of the current run.
+     */
+    public long timeOf(long frame) {
+        if (!hasBase) {
+            return runStartNanos + (frame - runStartFrame) * 1000000000L / sampleRate;
+        }
+        long recordPosition = runBasePosition + frame - runStartFrame;
+        return anchorNanos + (recordPosition - anchorPosition) * 1000000000L / sampleRate;
+    }
+}
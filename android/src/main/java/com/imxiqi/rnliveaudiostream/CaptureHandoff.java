@@ -0,0 +1,205 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Hands captured buffers from the AudioRecord reader to the processing stage (DSP, VAD,
+ * sinks) without ever making the reader wait.
+ *
+ * A fixed pool of direct buffers circulates between the two threads: the reader claims a
+ * free block, reads into it and publishes it; the processing stage takes published blocks in
+ * order and recycles them. When processing falls behind and no block is free, the reader
+ * takes back the oldest published one and its audio is counted as dropped, so a stalled sink
+ * or a slow DSP step shows up as a gap in the stream instead of delaying the next read and
+ * making AudioRecord overrun.
+ *
+ * Between blocks the reader can publish a discontinuity (capture stopped for a pause), which
+ * the processing stage sees in order, and finally {@link #close}.
+ *
+ * Allocation-free after construction. One producer, one consumer. Plain Java so it can be
+ * exercised off-device.
+ */
+public class CaptureHandoff {
+    public static final int DATA = 0;
+    public static final int DISCONTINUITY = 1;
+
+    public static final class Block {
+        public final int kind;
+        public final ByteBuffer buffer;
+        /** Valid bytes in {@link #buffer} */
+        public int length;
+        /** Capture frame of the first frame */
+        public long captureFrame;
+        /** Capture time of the first frame, System.nanoTime clock */
+        public long timeNanos;
+        /** Gaps in the stream up to this block */
+        public long gaps;
+
+        Block(int kind, ByteBuffer buffer) {
+            this.kind = kind;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final Block DISCONTINUITY_MARKER = new Block(DISCONTINUITY, null);
+
+    private final Object lock = new Object();
+    private final Block[] free;
+    private int freeCount;
+    // Published blocks and markers, oldest at head. A marker only ever follows a block, so
+    // twice the pool always fits
+    private final Block[] ready;
+    private int head;
+    private int readyCount;
+    // Read into when every block is queued behind a marker; never published
+    private final Block spare;
+    private boolean closed;
+
+    private volatile long droppedBlocks;
+    private volatile long droppedBytes;
+
+    /**
+     * @param blockCount blocks in circulation, at least 2
+     * @param blockSize  bytes per block, the largest read
+     */
+    public CaptureHandoff(int blockCount, int blockSize) {
+        if (blockCount < 2) {
+            throw new IllegalArgumentException("blockCount must be at least 2: " + blockCount);
+        }
+        free = new Block[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            free[i] = newBlock(blockSize);
+        }
+        freeCount = blockCount;
+        ready = new Block[2 * blockCount + 1];
+        spare = newBlock(blockSize);
+    }
+
+    /** Blocks the processing stage did not get to in time */
+    public long getDroppedBlocks() { return droppedBlocks; }
+    public long getDroppedBytes() { return droppedBytes; }
+
+    /** Blocks published and not yet taken by the processing stage */
+    public int getQueuedBlocks() {
+        synchronized (lock) {
+            int queued = 0;
+            for (int i = 0; i < readyCount; i++) {
+                if (ready[(head + i) % ready.length].kind == DATA) {
+                    queued++;
+                }
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * Reader: a block to read into. Never blocks; if processing is behind, the oldest
+     * published block is dropped to make room.
+     */
+    public Block claim() {
+        synchronized (lock) {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (readyCount > 0 && ready[head].kind == DATA) {
+                Block oldest = ready[head];
+                ready[head] = null;
+                head = (head + 1) % ready.length;
+                readyCount--;
+                countDropped(oldest);
+                // Blocks still queued were stamped before this drop; the one now at the
+                // head no longer follows on from what processing took last
+                for (int i = 0; i < readyCount; i++) {
+                    Block queued = ready[(head + i) % ready.length];
+                    if (queued.kind == DATA) {
+                        queued.gaps++;
+                    }
+                }
+                return oldest;
+            }
+            return spare;
+        }
+    }
+
+    /**
+     * Reader: pass a filled block on to the processing stage.
+     */
+    public void publish(Block block) {
+        synchronized (lock) {
+            if (block == spare) {
+                countDropped(block);
+                return;
+            }
+            enqueue(block);
+        }
+    }
+
+    /**
+     * Reader: capture stopped and will continue later; blocks published after this do not
+     * follow on from those before.
+     */
+    public void publishDiscontinuity() {
+        synchronized (lock) {
+            if (readyCount > 0 && ready[(head + readyCount - 1) % ready.length] == DISCONTINUITY_MARKER) {
+                return;
+            }
+            enqueue(DISCONTINUITY_MARKER);
+        }
+    }
+
+    /**
+     * Reader: nothing more will be published. {@link #take} returns what is still queued,
+     * then null.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Processing stage: the next block or marker, waiting for one if needed, or null once
+     * closed and drained. Data blocks go back with {@link #recycle}.
+     */
+    public Block take() throws InterruptedException {
+        synchronized (lock) {
+            while (readyCount == 0 && !closed) {
+                lock.wait();
+            }
+            if (readyCount == 0) {
+                return null;
+            }
+            Block block = ready[head];
+            ready[head] = null;
+            head = (head + 1) % ready.length;
+            readyCount--;
+            return block;
+        }
+    }
+
+    public void recycle(Block block) {
+        if (block.kind != DATA) {
+            return;
+        }
+        synchronized (lock) {
+            free[freeCount++] = block;
+        }
+    }
+
+    private void enqueue(Block block) {
+        ready[(head + readyCount) % ready.length] = block;
+        readyCount++;
+        lock.notifyAll();
+    }
+
+    private void countDropped(Block block) {
+        droppedBlocks++;
+        droppedBytes += block.length;
+    }
+
+    private static Block newBlock(int size) {
+        return new Block(DATA, ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
+    }
+}
@@ -0,0 +1,158 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running health counters of one capture session: how long reads take, how regular they
+ * are, whether AudioRecord dropped frames, and how much of what was read reached JS.
+ *
+ * Written by the capture and emitter threads without locks or allocation; any thread
+ * may read a snapshot.
+ */
+public class CaptureHealth {
+    /** Duration of each AudioRecord.read call */
+    public final LatencyHistogram readDuration = new LatencyHistogram();
+    /** Deviation of the time between reads from the expected read period */
+    public final LatencyHistogram readJitter = new LatencyHistogram();
+    /** Time a chunk spends at the emitter: waiting for JS capacity plus the bridge call */
+    public final LatencyHistogram emitLatency = new LatencyHistogram();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesEmitted = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong framesLost = new AtomicLong();
+    private final AtomicLong processingDrops = new AtomicLong();
+    private final AtomicLong readSizeChanges = new AtomicLong();
+
+    // Capture thread only
+    private volatile long expectedPeriodNanos;
+    private volatile int readBytes;
+    private int bytesPerSecond;
+    private long lastJitterNanos;
+    private int frameSize;
+    private long bufferFrames;
+    private long lastReadEndNanos;
+    private long framesRead;
+    private long firstFramePosition = -1;
+    private long framesReadAtFirstPosition;
+    // Frames lost before the frame position baseline was last taken
+    private long framesLostBefore;
+
+    /**
+     * Start a new session.
+     *
+     * @param readBytes   bytes requested per read
+     * @param bufferBytes AudioRecord buffer size, the backlog it can hold before overrunning
+     */
+    public void reset(int bytesPerSecond, int frameSize, int readBytes, int bufferBytes) {
+        readDuration.reset();
+        readJitter.reset();
+        emitLatency.reset();
+        bytesRead.set(0);
+        bytesEmitted.set(0);
+        overruns.set(0);
+        framesLost.set(0);
+        processingDrops.set(0);
+        readSizeChanges.set(0);
+        this.bytesPerSecond = bytesPerSecond;
+        setReadBytes(readBytes);
+        this.frameSize = Math.max(1, frameSize);
+        this.bufferFrames = bufferBytes / this.frameSize;
+        lastReadEndNanos = 0;
+        lastJitterNanos = 0;
+        framesRead = 0;
+        firstFramePosition = -1;
+        framesReadAtFirstPosition = 0;
+        framesLostBefore = 0;
+    }
+
+    /**
+     * Capture was stopped and started again (pause/resume): the gap is not jitter and
+     * AudioRecord's frame position may start over, so both baselines are taken again. The
+     * counters keep running.
+     */
+    public void onCaptureRestarted() {
+        lastReadEndNanos = 0;
+        firstFramePosition = -1;
+        framesLostBefore = framesLost.get();
+    }
+
+    /**
+     * The capture thread reads {@code readBytes} at a time from now on (adaptive read size).
+     */
+    public void onReadSizeChanged(int readBytes) {
+        setReadBytes(readBytes);
+        readSizeChanges.incrementAndGet();
+        // The interval to the next read still belongs to the old size
+        lastReadEndNanos = 0;
+    }
+
+    private void setReadBytes(int readBytes) {
+        this.readBytes = readBytes;
+        this.expectedPeriodNanos = bytesPerSecond > 0 ? readBytes * 1000000000L / bytesPerSecond : 0;
+    }
+
+    public void onRead(long startNanos, long endNanos, int bytes) {
+        readDuration.record(endNanos - startNanos);
+        lastJitterNanos = 0;
+        if (lastReadEndNanos != 0 && expectedPeriodNanos > 0) {
+            lastJitterNanos = Math.abs(endNanos - lastReadEndNanos - expectedPeriodNanos);
+            readJitter.record(lastJitterNanos);
+        }
+        lastReadEndNanos = endNanos;
+        framesRead += bytes / frameSize;
+        bytesRead.addAndGet(bytes);
+    }
+
+    /**
+     * Compare the frames AudioRecord has captured ({@code AudioTimestamp.framePosition}) with
+     * the frames read so far. A backlog beyond the AudioRecord buffer means frames were
+     * overwritten before we read them.
+     */
+    public void onFramePosition(long framePosition) {
+        if (firstFramePosition < 0) {
+            firstFramePosition = framePosition;
+            framesReadAtFirstPosition = framesRead;
+            return;
+        }
+        long captured = framePosition - firstFramePosition;
+        long consumed = framesRead - framesReadAtFirstPosition;
+        long lost = framesLostBefore + captured - consumed - bufferFrames;
+        long counted = framesLost.get();
+        if (lost > counted) {
+            framesLost.set(lost);
+            overruns.incrementAndGet();
+        }
+    }
+
+    /**
+     * Captured chunks dropped so far because the processing thread fell behind the reads.
+     */
+    public void onProcessingDrops(long chunks) {
+        processingDrops.set(chunks);
+    }
+
+    public void onEmitted(int bytes, long latencyNanos) {
+        bytesEmitted.addAndGet(bytes);
+        emitLatency.record(latencyNanos);
+    }
+
+    /**
+     * Output that does not go through the emitter (encoder, JSI): counted, not timed.
+     */
+    public void onEmitted(int bytes) {
+        bytesEmitted.addAndGet(bytes);
+    }
+
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getBytesEmitted() { return bytesEmitted.get(); }
+    public long getOverruns() { return overruns.get(); }
+    public long getFramesLost() { return framesLost.get(); }
+    public long getProcessingDrops() { return processingDrops.get(); }
+    public long getExpectedPeriodNanos() { return expectedPeriodNanos; }
+    /** Bytes per read, changing over the session with an adaptive read size */
+    public int getReadBytes() { return readBytes; }
+    public long getReadSizeChanges() { return readSizeChanges.get(); }
+    /** Jitter of the latest read, 0 if it had no predecessor. Capture thread only */
+    public long getLastJitterNanos() { return lastJitterNanos; }
+}
@@ -0,0 +1,624 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One recording session from the capture backend to the sinks: the capture loop, which only
+ * reads and hands buffers over, and the processing loop, which runs format conversion, level
+ * metering, VAD, lookback, the ring and every sink channel.
+ *
+ * The owner creates the two threads and runs {@link #runCapture} and {@link #runProcessing}
+ * on them; the service does so with audio priorities, the off-device harness with plain
+ * threads. Everything that leaves the pipeline other than sink output goes to the
+ * {@link Listener}. Plain Java so it can be exercised off-device.
+ */
+public class CapturePipeline {
+    /**
+     * Events of the session, called on the capture or processing thread.
+     */
+    public interface Listener {
+        /** The session cannot go on; {@code cause} may be null */
+        void onError(String message, Throwable cause);
+
+        void onLevel(LevelMeter meter);
+
+        void onSpeechStart(float levelDb);
+
+        void onSpeechEnd(float levelDb);
+
+        void onLookbackState(boolean triggered, String trigger);
+
+        /** With ring output: the ring the session publishes into, before the first chunk */
+        void onRingAttached(AudioBufferRing ring);
+
+        void onRingDetached();
+
+        /** With ring output: a published slot, released as soon as this returns */
+        void onChunk(AudioBufferRing ring, long sequence);
+    }
+
+    private static final int RING_SLOT_COUNT = 8;
+    // With JSI the JS thread reads slots in place, so give it more room before a wrap; a
+    // lookback or pre-roll replay gets room for all of its history on top
+    private static final int JSI_RING_SLOT_COUNT = 32;
+    // Captured buffers in flight between the capture and processing threads
+    private static final int HANDOFF_BLOCK_COUNT = 8;
+    // How often the capture thread compares the input's frame position with what it read
+    private static final long TIMESTAMP_CHECK_NANOS = 100000000L;
+    // Skip first buffers to eliminate click sound
+    private static final int SKIP_BUFFER_COUNT = 2;
+
+    private static final int LOOKBACK_TRIGGER = 1;
+    private static final int LOOKBACK_ARM = 2;
+
+    private final AudioConfig config;
+    private final CaptureBackend backend;
+    private final CaptureHealth health;
+    private final PhaseTimer startupTimer;
+    private final Listener listener;
+    private final int captureSampleRate;
+    // Largest read: bufferSize, or the upper bound of the adaptive read size
+    private final int maxReadSize;
+    // Null with a fixed bufferSize
+    private final AdaptiveReadSize readSizer;
+    // Null when capture and delivery formats match
+    private final FormatConverter formatConverter;
+    // Bytes per ring slot, i.e. the largest chunk after conversion
+    private final int slotSize;
+    private final CaptureHandoff handoff;
+    private final CaptureClock clock = new CaptureClock();
+    private final AtomicInteger lookbackRequest = new AtomicInteger();
+
+    private SinkChannel[] channels = new SinkChannel[0];
+    private boolean ringOutput;
+
+    private volatile boolean running;
+    // Set by setPaused(): the capture thread stops the backend and waits on pauseLock
+    private volatile boolean paused;
+    private final Object pauseLock = new Object();
+    // Interrupted by the processing thread if it fails
+    private volatile Thread captureThread;
+
+    /**
+     * @param config        snapshot the session runs on
+     * @param backend       opened, not started
+     * @param startupTimer  gets the firstRead and skippedBuffers phases
+     */
+    public CapturePipeline(AudioConfig config, CaptureBackend backend, CaptureHealth health,
+                           PhaseTimer startupTimer, Listener listener) {
+        this.config = config;
+        this.backend = backend;
+        this.health = health;
+        this.startupTimer = startupTimer;
+        this.listener = listener;
+        this.captureSampleRate = backend.getSampleRate();
+
+        int bytesPerSample = config.getSampleFormat().getBytesPerSample();
+        // Buffers are sized for the largest read, so the read size can change without allocating
+        maxReadSize = config.getMaxReadBytes(captureSampleRate);
+        readSizer = config.isAdaptiveReadSize()
+                ? new AdaptiveReadSize(captureSampleRate, config.getChannels() * bytesPerSample,
+                        config.getTargetLatencyMs(), config.getMinBufferMs(), config.getMaxBufferMs())
+                : null;
+        if (captureSampleRate != config.getDeliverySampleRate()
+                || config.getChannels() != config.getDeliveryChannels()) {
+            formatConverter = new FormatConverter(captureSampleRate, config.getChannels(),
+                    config.getDeliverySampleRate(), config.getDeliveryChannels(),
+                    maxReadSize / (bytesPerSample * config.getChannels()));
+            slotSize = formatConverter.getMaxOutputFrames() * config.getDeliveryChannels() * bytesPerSample;
+        } else {
+            formatConverter = null;
+            slotSize = maxReadSize;
+        }
+        handoff = new CaptureHandoff(HANDOFF_BLOCK_COUNT, maxReadSize);
+    }
+
+    public int getCaptureSampleRate() { return captureSampleRate; }
+    public boolean isConverting() { return formatConverter != null; }
+    /** Largest chunk offered to a sink channel */
+    public int getSlotSize() { return slotSize; }
+    /** Bytes per read at the moment: bufferSize, or the adaptive read size */
+    public int getReadSize() { return readSizer != null ? readSizer.getReadBytes() : config.getBufferSize(); }
+    public CaptureHandoff getHandoff() { return handoff; }
+    public boolean isRunning() { return running; }
+    public boolean isPaused() { return paused; }
+
+    /**
+     * Where the processing loop sends its output: the channels, plus every ring slot to
+     * {@link Listener#onChunk} if {@code ringOutput} (the JSI transport). Call before
+     * {@link #start}.
+     */
+    public void setOutputs(SinkChannel[] channels, boolean ringOutput) {
+        this.channels = channels;
+        this.ringOutput = ringOutput;
+    }
+
+    /**
+     * Start capturing. The threads can be started after this returns.
+     */
+    public void start() throws IOException {
+        backend.start();
+        startupTimer.mark("startRecording");
+        clock.reset(captureSampleRate);
+        clock.onStart(System.nanoTime());
+        if (readSizer != null) {
+            readSizer.onStart(System.nanoTime());
+        }
+        paused = false;
+        running = true;
+    }
+
+    /**
+     * End the capture loop after its current read, waking it if paused. The processing loop
+     * then finishes what was handed over. The owner stops the backend.
+     */
+    public void stop() {
+        synchronized (pauseLock) {
+            running = false;
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns false if not running or already in that state.
+     */
+    public boolean setPaused(boolean paused) {
+        synchronized (pauseLock) {
+            if (!running || this.paused == paused) {
+                return false;
+            }
+            this.paused = paused;
+            pauseLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * With a lookback configured: send the held audio and go live. No effect when live.
+     */
+    public void triggerLookback() {
+        lookbackRequest.set(LOOKBACK_TRIGGER);
+    }
+
+    /**
+     * With a lookback configured: stop sending and go back to holding audio natively.
+     */
+    public void armLookback() {
+        lookbackRequest.set(LOOKBACK_ARM);
+    }
+
+    /**
+     * Called by the capture thread on pause: stop capturing, keep the backend open and wait
+     * for resume. Returns false if recording stopped meanwhile.
+     */
+    private boolean awaitResume() throws InterruptedException, IOException {
+        backend.stop();
+        synchronized (pauseLock) {
+            while (paused && running) {
+                pauseLock.wait();
+            }
+        }
+        if (!running) {
+            return false;
+        }
+        backend.start();
+        clock.onStart(System.nanoTime());
+        health.onCaptureRestarted();
+        if (readSizer != null) {
+            readSizer.onStart(System.nanoTime());
+        }
+        return true;
+    }
+
+    /**
+     * Reads the capture backend and hands each buffer, stamped with its place in the stream, to the
+     * processing thread. Never waits on anything but the read itself: if processing falls
+     * behind, the handoff drops the oldest buffer and the gap is counted.
+     */
+    public void runCapture() {
+        captureThread = Thread.currentThread();
+        int readSize = getReadSize();
+        int captureFrameSize = config.getChannels() * config.getSampleFormat().getBytesPerSample();
+
+        // Frame position of the input, for overrun detection and capture time
+        long[] timestamp = new long[2];
+        long lastTimestampCheck = 0;
+
+        int bufferCount = 0;
+        // Buffers still to skip after a resume, for the same click
+        int skipAfterResume = 0;
+        // Claimed and not yet published; skipped buffers are simply read over
+        CaptureHandoff.Block block = null;
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                if (paused) {
+                    // Processing closes the current utterance when it gets here
+                    handoff.publishDiscontinuity();
+                    if (!awaitResume()) {
+                        break;
+                    }
+                    skipAfterResume = SKIP_BUFFER_COUNT;
+                    continue;
+                }
+                if (block == null) {
+                    block = handoff.claim();
+                }
+                block.buffer.clear();
+                long readStart = System.nanoTime();
+                int bytesRead = backend.read(block.buffer, readSize);
+                long readEnd = System.nanoTime();
+
+                if (bytesRead > 0) {
+                    health.onRead(readStart, readEnd, bytesRead);
+                    int framesRead = bytesRead / captureFrameSize;
+                    clock.onRead(framesRead);
+                    if (readEnd - lastTimestampCheck >= TIMESTAMP_CHECK_NANOS) {
+                        lastTimestampCheck = readEnd;
+                        if (backend.getTimestamp(timestamp)) {
+                            long lostBefore = health.getFramesLost();
+                            health.onFramePosition(timestamp[0]);
+                            // Frames the input overwrote: everything after moves on by as much
+                            clock.onFramesLost(health.getFramesLost() - lostBefore);
+                            clock.onTimestamp(timestamp[0], timestamp[1], readEnd);
+                        }
+                    }
+                    if (readSizer != null && readSizer.onRead(readEnd, health.getLastJitterNanos(),
+                            health.getOverruns(), handoff.getDroppedBlocks(), handoff.getQueuedBlocks(),
+                            HANDOFF_BLOCK_COUNT)) {
+                        readSize = readSizer.getReadBytes();
+                        health.onReadSizeChanged(readSize);
+                    }
+                    long captureFrame = clock.getPosition() - framesRead;
+
+                    if (bufferCount == 0) {
+                        startupTimer.mark("firstRead");
+                    }
+                    if (++bufferCount <= SKIP_BUFFER_COUNT) {
+                        if (bufferCount == SKIP_BUFFER_COUNT) {
+                            startupTimer.mark("skippedBuffers");
+                        }
+                        continue;
+                    }
+                    if (skipAfterResume > 0) {
+                        skipAfterResume--;
+                        continue;
+                    }
+
+                    block.length = bytesRead;
+                    block.captureFrame = captureFrame;
+                    block.timeNanos = clock.timeOf(captureFrame);
+                    block.gaps = health.getOverruns() + handoff.getDroppedBlocks();
+                    handoff.publish(block);
+                    block = null;
+                    health.onProcessingDrops(handoff.getDroppedBlocks());
+                } else if (bytesRead < 0) {
+                    // A read cut short by stop() is not an error
+                    if (running) {
+                        listener.onError("Error reading audio data: " + bytesRead, null);
+                    }
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // stop() while paused
+                break;
+            } catch (Exception e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    listener.onError("Recording error: " + e.getMessage(), e);
+                }
+                break;
+            }
+        }
+
+        handoff.close();
+        captureThread = null;
+    }
+
+    /**
+     * Takes captured buffers from the capture thread, in order, and runs everything else on
+     * them: format conversion, level metering, VAD, lookback, the ring and every sink. Ends
+     * once the capture thread has finished and everything it handed over is processed.
+     */
+    public void runProcessing() {
+        boolean useJsi = ringOutput;
+        // Split once so the loop does not filter per chunk
+        List<SinkChannel> raw = new ArrayList<>();
+        List<SinkChannel> filtered = new ArrayList<>();
+        for (SinkChannel channel : this.channels) {
+            (channel.isBeforeVad() ? raw : filtered).add(channel);
+        }
+        SinkChannel[] rawChannels = raw.toArray(new SinkChannel[0]);
+        SinkChannel[] channels = filtered.toArray(new SinkChannel[0]);
+        FormatConverter converter = formatConverter;
+        SampleFormat format = config.getSampleFormat();
+
+        // Lookback: while armed, everything goes into a circular store and nothing further
+        PcmHistory lookback = null;
+        boolean vadTrigger = false;
+        boolean lookbackTriggered = false;
+        if (config.getLookbackMs() > 0) {
+            // Room for the lookback plus the chunk that fires the trigger
+            lookback = new PcmHistory(historyBytes(config.getLookbackMs()) + slotSize);
+            vadTrigger = AudioConfig.LOOKBACK_VAD.equals(config.getLookbackTrigger());
+        }
+
+        // Voice activity detection
+        VoiceActivityDetector vad = null;
+        PcmHistory preRoll = null;
+        boolean dropSilence = false;
+        if (!AudioConfig.VAD_OFF.equals(config.getVadMode()) || vadTrigger) {
+            vad = new VoiceActivityDetector(config.getDeliverySampleRate(), config.getDeliveryChannels(),
+                    config.getVadThresholdDb(), config.getVadHangoverMs());
+            dropSilence = AudioConfig.VAD_DROP.equals(config.getVadMode());
+            if (dropSilence) {
+                // Room for the pre-roll plus the chunk that starts the speech
+                preRoll = new PcmHistory(historyBytes(config.getVadPreRollMs()) + slotSize);
+            }
+        }
+
+        // Buffers are allocated once here and recycled for the whole session
+        int slotCount = RING_SLOT_COUNT;
+        if (useJsi) {
+            // JS reads slots in place some time after they are published, and a replay
+            // publishes its whole history at once: it must fit without wrapping over slots
+            // JS has not read yet
+            int replaySlots = 0;
+            if (lookback != null) {
+                replaySlots = (lookback.getCapacity() + slotSize - 1) / slotSize;
+            }
+            if (preRoll != null) {
+                replaySlots = Math.max(replaySlots, (preRoll.getCapacity() + slotSize - 1) / slotSize);
+            }
+            slotCount = Integer.highestOneBit(JSI_RING_SLOT_COUNT + replaySlots - 1) << 1;
+        }
+        AudioBufferRing ring = new AudioBufferRing(slotCount, slotSize);
+        if (useJsi) {
+            listener.onRingAttached(ring);
+        }
+
+        // Level metering of the delivered stream, whatever is sent on
+        LevelMeter meter = config.getLevelIntervalMs() > 0
+                ? new LevelMeter(config.getDeliverySampleRate(), config.getDeliveryChannels(),
+                        config.getLevelIntervalMs(), config.getLevelBands())
+                : null;
+
+        // DSP stages work on floats: bytes are decoded once after the read and, if the samples
+        // changed, encoded once into the ring slot
+        float[] captured = null;
+        float[] delivered = null;
+        if (converter != null || vad != null || meter != null) {
+            captured = new float[maxReadSize / format.getBytesPerSample()];
+            delivered = converter != null
+                    ? new float[converter.getMaxOutputFrames() * converter.getOutputChannels()] : captured;
+        }
+
+        // Stream position of each chunk in delivered frames
+        int deliveryFrameSize = config.getDeliveryChannels() * format.getBytesPerSample();
+        int deliveryRate = config.getDeliverySampleRate();
+        // Frames into and out of the converter so far: its output trails the input by the
+        // filter delay, which each chunk's position is moved back by
+        long convertedIn = 0;
+        long convertedOut = 0;
+        boolean failed = false;
+
+        while (true) {
+            CaptureHandoff.Block block = null;
+            try {
+                block = handoff.take();
+                if (block == null) {
+                    // Capture finished and everything it read is through
+                    break;
+                }
+                if (block.kind == CaptureHandoff.DISCONTINUITY) {
+                    // Paused mid-utterance: close it, the next one starts fresh
+                    if (vad != null) {
+                        if (vad.isSpeech()) {
+                            listener.onSpeechEnd(vad.getLevelDb());
+                        }
+                        vad.reset();
+                    }
+                    if (preRoll != null) {
+                        preRoll.clear();
+                    }
+                    if (lookback != null) {
+                        lookback.clear();
+                    }
+                    if (meter != null) {
+                        meter.reset();
+                    }
+                    continue;
+                }
+
+                int bytesRead = block.length;
+                ByteBuffer input = block.buffer;
+                input.limit(bytesRead);
+                input.position(0);
+                ByteBuffer slot = ring.claim();
+
+                // Place in the stream, carried by the ring slot and every sink chunk
+                long framePosition = block.captureFrame * deliveryRate / captureSampleRate;
+                long timeNanos = block.timeNanos;
+                long gaps = block.gaps;
+
+                int sampleCount = 0;
+                if (captured != null) {
+                    sampleCount = PcmSamples.toFloats(input, bytesRead, format, captured);
+                    if (converter != null) {
+                        long delay = convertedIn * deliveryRate / captureSampleRate - convertedOut;
+                        framePosition -= delay;
+                        timeNanos -= delay * 1000000000L / deliveryRate;
+                        int inputFrames = sampleCount / config.getChannels();
+                        int frames = converter.process(captured, inputFrames, delivered);
+                        convertedIn += inputFrames;
+                        convertedOut += frames;
+                        if (frames == 0) {
+                            continue;
+                        }
+                        sampleCount = frames * converter.getOutputChannels();
+                        bytesRead = PcmSamples.fromFloats(delivered, sampleCount, format, slot);
+                    }
+                }
+                if (converter == null) {
+                    slot.put(input);
+                }
+
+                if (meter != null) {
+                    // Also while armed or dropping silence: the meter shows what the mic hears
+                    int metered = 0;
+                    while (metered < sampleCount) {
+                        metered += meter.process(delivered, metered, sampleCount - metered);
+                        if (meter.poll()) {
+                            listener.onLevel(meter);
+                        }
+                    }
+                }
+
+                if (rawChannels.length > 0) {
+                    // Before VAD: these sinks get everything captured
+                    slot.limit(bytesRead);
+                    slot.position(0);
+                    for (SinkChannel channel : rawChannels) {
+                        channel.offer(slot, framePosition, timeNanos, gaps);
+                    }
+                }
+
+                int state = VoiceActivityDetector.SILENCE;
+                if (vad != null) {
+                    state = vad.process(delivered, 0, sampleCount);
+                    if (state == VoiceActivityDetector.SPEECH_START) {
+                        listener.onSpeechStart(vad.getLevelDb());
+                    } else if (state == VoiceActivityDetector.SPEECH_END) {
+                        listener.onSpeechEnd(vad.getLevelDb());
+                    }
+                }
+                slot.limit(bytesRead);
+                slot.position(0);
+                long endFrame = framePosition + bytesRead / deliveryFrameSize;
+                long endTime = timeNanos + (endFrame - framePosition) * 1000000000L / deliveryRate;
+
+                if (lookback != null) {
+                    int request = lookbackRequest.getAndSet(0);
+                    if (request == LOOKBACK_ARM && lookbackTriggered) {
+                        lookbackTriggered = false;
+                        listener.onLookbackState(false, AudioConfig.LOOKBACK_MANUAL);
+                    }
+                    if (!lookbackTriggered) {
+                        lookback.write(slot);
+                        boolean vadFired = vadTrigger && state == VoiceActivityDetector.SPEECH_START;
+                        if (request != LOOKBACK_TRIGGER && !vadFired) {
+                            // Armed: held natively, nothing goes out
+                            continue;
+                        }
+                        lookbackTriggered = true;
+                        listener.onLookbackState(true,
+                                vadFired ? AudioConfig.LOOKBACK_VAD : AudioConfig.LOOKBACK_MANUAL);
+                        // The last lookbackMs up to and including this chunk, then live
+                        replayHistory(ring, lookback, endFrame, endTime, gaps, deliveryFrameSize, deliveryRate,
+                                channels, useJsi);
+                        continue;
+                    }
+                    if (vadTrigger && state == VoiceActivityDetector.SPEECH_END) {
+                        // Utterance over: this chunk still goes out, then back to listening
+                        lookbackTriggered = false;
+                        listener.onLookbackState(false, AudioConfig.LOOKBACK_VAD);
+                    }
+                }
+
+                if (dropSilence) {
+                    if (!vad.isSpeech() && state != VoiceActivityDetector.SPEECH_END) {
+                        // Silent: only kept as pre-roll for the next utterance
+                        preRoll.write(slot);
+                        continue;
+                    }
+                    if (state == VoiceActivityDetector.SPEECH_START) {
+                        // Replay pre-roll and this chunk through the ring, oldest first
+                        preRoll.write(slot);
+                        replayHistory(ring, preRoll, endFrame, endTime, gaps, deliveryFrameSize, deliveryRate,
+                                channels, useJsi);
+                        continue;
+                    }
+                }
+
+                dispatch(ring, ring.publish(bytesRead, framePosition, timeNanos, gaps), channels, useJsi);
+            } catch (InterruptedException e) {
+                // The owner gave up waiting on a blocked sink
+                break;
+            } catch (Exception e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    listener.onError("Recording error: " + e.getMessage(), e);
+                }
+                failed = true;
+                break;
+            } finally {
+                if (block != null) {
+                    handoff.recycle(block);
+                }
+            }
+        }
+
+        if (failed) {
+            // Nothing would take what is read any more
+            Thread capture = captureThread;
+            if (capture != null) {
+                capture.interrupt();
+            }
+        }
+        if (vad != null && vad.isSpeech()) {
+            listener.onSpeechEnd(vad.getLevelDb());
+        }
+        if (useJsi) {
+            listener.onRingDetached();
+        }
+    }
+
+    // Whole frames of delivered PCM in durationMs, so a full history never starts mid-frame
+    private int historyBytes(int durationMs) {
+        int frameSize = config.getDeliveryChannels() * config.getSampleFormat().getBytesPerSample();
+        long bytes = (long) config.getBytesPerSecond() * durationMs / 1000;
+        return (int) (bytes - bytes % frameSize);
+    }
+
+    /**
+     * Send everything held in {@code history} through the ring, oldest first, stamped back
+     * from the end of the chunk that was written to it last.
+     */
+    private void replayHistory(AudioBufferRing ring, PcmHistory history, long endFrame, long endTimeNanos,
+                               long gaps, int frameSize, int sampleRate, SinkChannel[] channels, boolean useJsi)
+            throws InterruptedException {
+        while (history.size() > 0) {
+            long frames = history.size() / frameSize;
+            ByteBuffer slot = ring.claim();
+            int length = history.read(slot, ring.getSlotSize());
+            dispatch(ring, ring.publish(length, endFrame - frames, endTimeNanos - frames * 1000000000L / sampleRate,
+                    gaps), channels, useJsi);
+        }
+    }
+
+    /**
+     * Hand a published ring slot to JSI and every sink channel, then recycle it.
+     */
+    private void dispatch(AudioBufferRing ring, long sequence, SinkChannel[] channels, boolean useJsi)
+            throws InterruptedException {
+        if (useJsi) {
+            // JSI: JS reads the slot in place; the ring overwrites once it wraps
+            health.onEmitted(ring.length(sequence));
+            listener.onChunk(ring, sequence);
+        }
+        if (channels.length > 0) {
+            ByteBuffer slot = ring.get(sequence);
+            long framePosition = ring.framePosition(sequence);
+            long timeNanos = ring.timeNanos(sequence);
+            long gaps = ring.gaps(sequence);
+            for (SinkChannel channel : channels) {
+                // Each channel copies the chunk into its own queue; overflow follows its policy
+                channel.offer(slot, framePosition, timeNanos, gaps);
+            }
+        }
+        ring.release(sequence);
+    }
+}
@@ -0,0 +1,79 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Channel count conversion for interleaved PCM.
+ *
+ * Downmixing to mono averages all input channels, upmixing from mono duplicates the channel,
+ * and any other combination keeps the first channels (zero-filling extra output channels).
+ * Downmixing may be done in place.
+ */
+public final class ChannelMixer {
+    private ChannelMixer() {}
+
+    /**
+     * Returns the number of samples written, {@code frames * outputChannels}.
+     */
+    public static int mix(short[] input, int frames, int inputChannels, short[] output, int outputChannels) {
+        if (inputChannels == outputChannels) {
+            if (input != output) {
+                System.arraycopy(input, 0, output, 0, frames * inputChannels);
+            }
+        } else if (outputChannels == 1) {
+            for (int f = 0, src = 0; f < frames; f++) {
+                int sum = 0;
+                for (int c = 0; c < inputChannels; c++) {
+                    sum += input[src++];
+                }
+                output[f] = (short) (sum / inputChannels);
+            }
+        } else if (inputChannels == 1) {
+            // Backwards so it does not overwrite unread input when input == output
+            for (int f = frames - 1; f >= 0; f--) {
+                short v = input[f];
+                for (int c = outputChannels - 1; c >= 0; c--) {
+                    output[f * outputChannels + c] = v;
+                }
+            }
+        } else {
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < outputChannels; c++) {
+                    output[f * outputChannels + c] = c < inputChannels ? input[f * inputChannels + c] : 0;
+                }
+            }
+        }
+        return frames * outputChannels;
+    }
+
+    /**
+     * Float variant of {@link #mix(short[], int, int, short[], int)}.
+     */
+    public static int mix(float[] input, int frames, int inputChannels, float[] output, int outputChannels) {
+        if (inputChannels == outputChannels) {
+            if (input != output) {
+                System.arraycopy(input, 0, output, 0, frames * inputChannels);
+            }
+        } else if (outputChannels == 1) {
+            for (int f = 0, src = 0; f < frames; f++) {
+                float sum = 0;
+                for (int c = 0; c < inputChannels; c++) {
+                    sum += input[src++];
+                }
+                output[f] = sum / inputChannels;
+            }
+        } else if (inputChannels == 1) {
+            for (int f = frames - 1; f >= 0; f--) {
+                float v = input[f];
+                for (int c = outputChannels - 1; c >= 0; c--) {
+                    output[f * outputChannels + c] = v;
+                }
+            }
+        } else {
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < outputChannels; c++) {
+                    output[f * outputChannels + c] = c < inputChannels ? input[f * inputChannels + c] : 0f;
+                }
+            }
+        }
+        return frames * outputChannels;
+    }
+}
@@ -0,0 +1,69 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Streams the upload as the body of one POST with chunked transfer encoding. Each
+ * {@link #send} is flushed as its own HTTP chunk; {@link #close} ends the body and checks
+ * the response status.
+ */
+public class ChunkedHttpConnection implements UploadConnection {
+    private final HttpURLConnection connection;
+    private final OutputStream output;
+
+    private ChunkedHttpConnection(HttpURLConnection connection, OutputStream output) {
+        this.connection = connection;
+        this.output = output;
+    }
+
+    public static ChunkedHttpConnection open(String url, Map<String, String> headers, int timeoutMs)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(0);
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setUseCaches(false);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            // Connects and sends the request headers
+            OutputStream output = connection.getOutputStream();
+            return new ChunkedHttpConnection(connection, output);
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void send(byte[] data, int offset, int length) throws IOException {
+        output.write(data, offset, length);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            output.close();
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("Upload rejected: HTTP " + status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void abort() {
+        connection.disconnect();
+    }
+}
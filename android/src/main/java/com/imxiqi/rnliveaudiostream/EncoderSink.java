@@ -0,0 +1,37 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds the encoder stage from its own sink thread; packets go out through the stage's
+ * {@link EncoderStage.PacketSink}.
+ */
+public class EncoderSink implements AudioSink {
+    private final EncoderStage stage;
+    // Wraps the channel's chunk array, which is the same for every write
+    private ByteBuffer view;
+
+    public EncoderSink(EncoderStage stage) {
+        this.stage = stage;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels, SampleFormat format) {
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        if (view == null || view.array() != data) {
+            view = ByteBuffer.wrap(data);
+        }
+        view.limit(offset + length);
+        view.position(offset);
+        stage.write(view);
+    }
+
+    @Override
+    public void close() {
+        // Signals end of stream; the service waits for it before releasing the codec
+        stage.finish();
+    }
+}
@@ -0,0 +1,223 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cuts the captured PCM stream into fixed-size codec frames, copies them straight into the
+ * codec's input buffers and frames the encoded output as self-contained packets
+ * (ADTS for AAC, raw packets for Opus) with presentation timestamps.
+ *
+ * Timestamps are derived from the frame counter, so frames dropped because the codec had
+ * no free input buffer still advance time and show up as gaps. Allocation-free after
+ * construction. write()/finish() are called from the processing thread, packets arrive on
+ * the codec's thread.
+ */
+public class EncoderStage implements AudioCodec.PacketListener {
+    public static final String CODEC_AAC = "aac";
+    public static final String CODEC_OPUS = "opus";
+
+    public interface PacketSink {
+        void onPacket(byte[] data, int length, long presentationTimeUs);
+
+        void onError(String message);
+    }
+
+    private static final int ADTS_HEADER_SIZE = 7;
+    private static final int AAC_PROFILE_LC = 2;
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+    /**
+     * Largest packet handed to {@link PacketSink#onPacket}, header included: the most the
+     * 13-bit ADTS frame length can signal, far above what a codec frame needs at any
+     * supported bit rate. Larger ones are dropped whole and counted, see
+     * {@link #getDroppedPackets}.
+     */
+    public static final int MAX_PACKET_BYTES = 8191;
+
+    private final AudioCodec codec;
+    private final String codecName;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameSamples;
+    private final int frameBytes;
+    private final PacketSink sink;
+    private final byte[] packet = new byte[MAX_PACKET_BYTES];
+
+    // Recording thread state
+    private ByteBuffer input;
+    private int frameFill;
+    private long frameIndex;
+    private volatile long droppedFrames;
+
+    // Codec thread state
+    private volatile long packetCount;
+    private volatile long droppedPackets;
+    private volatile boolean endOfStream;
+    private final Object endOfStreamLock = new Object();
+
+    /**
+     * @param frameSamples samples per channel in one codec frame (1024 for AAC, 20 ms for Opus)
+     */
+    public EncoderStage(AudioCodec codec, String codecName, int sampleRate, int channels,
+                        int bytesPerSample, int frameSamples, PacketSink sink) {
+        if (CODEC_AAC.equals(codecName) && adtsSampleRateIndex(sampleRate) < 0) {
+            throw new IllegalArgumentException("Unsupported AAC sample rate: " + sampleRate);
+        }
+        this.codec = codec;
+        this.codecName = codecName;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameSamples = frameSamples;
+        this.frameBytes = frameSamples * channels * bytesPerSample;
+        this.sink = sink;
+    }
+
+    public int getFrameBytes() { return frameBytes; }
+    public long getDroppedFrames() { return droppedFrames; }
+    public long getPacketCount() { return packetCount; }
+    /** Packets too large to frame, dropped rather than cut short */
+    public long getDroppedPackets() { return droppedPackets; }
+
+    public void start() {
+        codec.start(this);
+    }
+
+    /**
+     * Feed captured PCM; consumes everything remaining in {@code pcm}.
+     */
+    public void write(ByteBuffer pcm) {
+        while (pcm.hasRemaining()) {
+            if (frameFill == 0) {
+                input = codec.dequeueInputBuffer();
+                if (input == null) {
+                    // Codec is behind: skip this frame but keep time moving
+                    droppedFrames++;
+                } else {
+                    input.clear();
+                }
+            }
+
+            int n = Math.min(pcm.remaining(), frameBytes - frameFill);
+            if (input != null) {
+                int limit = pcm.limit();
+                pcm.limit(pcm.position() + n);
+                input.put(pcm);
+                pcm.limit(limit);
+            } else {
+                pcm.position(pcm.position() + n);
+            }
+            frameFill += n;
+
+            if (frameFill == frameBytes) {
+                if (input != null) {
+                    codec.queueInputBuffer(input, frameBytes, presentationTimeUs(frameIndex), false);
+                }
+                frameIndex++;
+                frameFill = 0;
+                input = null;
+            }
+        }
+    }
+
+    /**
+     * Submit the partial last frame and signal end of stream.
+     */
+    public void finish() {
+        if (frameFill == 0 || input == null) {
+            input = codec.dequeueInputBuffer();
+            if (input != null) {
+                input.clear();
+            }
+            frameFill = 0;
+        }
+        if (input != null) {
+            codec.queueInputBuffer(input, frameFill, presentationTimeUs(frameIndex), true);
+        } else {
+            // No buffer to carry the EOS flag, nothing more will come out
+            signalEndOfStream();
+        }
+        input = null;
+        frameFill = 0;
+    }
+
+    /**
+     * Wait for the codec to drain after {@link #finish()}. Returns false on timeout.
+     */
+    public boolean awaitEndOfStream(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (endOfStreamLock) {
+            while (!endOfStream) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                endOfStreamLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public void release() {
+        codec.release();
+    }
+
+    @Override
+    public void onPacket(ByteBuffer data, long presentationTimeUs, boolean codecConfig, boolean endOfStream) {
+        // Config packets (AudioSpecificConfig / OpusHead) are implied by ADTS or the session options
+        int offset = CODEC_AAC.equals(codecName) ? ADTS_HEADER_SIZE : 0;
+        if (!codecConfig && data.remaining() > MAX_PACKET_BYTES - offset) {
+            // A truncated packet would not decode, and downstream queues are sized for the limit
+            droppedPackets++;
+            sink.onError("Encoder packet of " + data.remaining() + " bytes dropped, limit is "
+                    + (MAX_PACKET_BYTES - offset));
+        } else if (!codecConfig && data.remaining() > 0) {
+            int size = data.remaining();
+            if (offset > 0) {
+                writeAdtsHeader(packet, size + ADTS_HEADER_SIZE);
+            }
+            data.get(packet, offset, size);
+            packetCount++;
+            sink.onPacket(packet, offset + size, presentationTimeUs);
+        }
+        if (endOfStream) {
+            signalEndOfStream();
+        }
+    }
+
+    @Override
+    public void onError(String message) {
+        sink.onError(message);
+    }
+
+    private void signalEndOfStream() {
+        synchronized (endOfStreamLock) {
+            endOfStream = true;
+            endOfStreamLock.notifyAll();
+        }
+    }
+
+    private long presentationTimeUs(long frame) {
+        return frame * frameSamples * 1000000L / sampleRate;
+    }
+
+    private void writeAdtsHeader(byte[] dst, int packetLength) {
+        int rateIndex = adtsSampleRateIndex(sampleRate);
+        dst[0] = (byte) 0xFF;
+        dst[1] = (byte) 0xF1; // MPEG-4, layer 0, no CRC
+        dst[2] = (byte) (((AAC_PROFILE_LC - 1) << 6) | (rateIndex << 2) | (channels >> 2));
+        dst[3] = (byte) (((channels & 3) << 6) | (packetLength >> 11));
+        dst[4] = (byte) ((packetLength & 0x7FF) >> 3);
+        dst[5] = (byte) (((packetLength & 7) << 5) | 0x1F);
+        dst[6] = (byte) 0xFC;
+    }
+
+    static int adtsSampleRateIndex(int sampleRate) {
+        for (int i = 0; i < ADTS_SAMPLE_RATES.length; i++) {
+            if (ADTS_SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,63 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Converts captured samples to the delivery sample rate and channel count.
+ *
+ * Works on float samples so any capture encoding shares one path. Downmixing happens before
+ * resampling and upmixing after it, so the resampler always runs on the smaller channel
+ * count. Buffers are sized once for the largest input chunk.
+ */
+public class FormatConverter {
+    private final int inputChannels;
+    private final int outputChannels;
+    private final int mixChannels;
+    private final Resampler resampler;
+    private final int maxInputFrames;
+
+    private final float[] mixed;
+
+    /**
+     * @param maxInputFrames largest chunk passed to {@link #process}
+     */
+    public FormatConverter(int inputRate, int inputChannels, int outputRate, int outputChannels,
+                           int maxInputFrames) {
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        this.mixChannels = Math.min(inputChannels, outputChannels);
+        this.resampler = inputRate != outputRate ? new Resampler(inputRate, outputRate, mixChannels) : null;
+        this.maxInputFrames = maxInputFrames;
+        this.mixed = new float[maxInputFrames * mixChannels];
+    }
+
+    public int getOutputChannels() { return outputChannels; }
+
+    /**
+     * Largest number of frames one {@link #process} call can produce.
+     */
+    public int getMaxOutputFrames() {
+        return resampler != null ? resampler.getMaxOutputFrames(maxInputFrames) : maxInputFrames;
+    }
+
+    /**
+     * Convert {@code frames} interleaved input frames into {@code output}, which must hold
+     * {@link #getMaxOutputFrames} frames of the output channel count. Returns the frames
+     * written, which can be 0 while the resampler is still filling its window.
+     */
+    public int process(float[] input, int frames, float[] output) {
+        frames = Math.min(frames, maxInputFrames);
+        ChannelMixer.mix(input, frames, inputChannels, mixed, mixChannels);
+        if (resampler != null) {
+            frames = resampler.process(mixed, frames, output);
+        } else {
+            System.arraycopy(mixed, 0, output, 0, frames * mixChannels);
+        }
+        ChannelMixer.mix(output, frames, mixChannels, output, outputChannels);
+        return frames;
+    }
+
+    public void reset() {
+        if (resampler != null) {
+            resampler.reset();
+        }
+    }
+}
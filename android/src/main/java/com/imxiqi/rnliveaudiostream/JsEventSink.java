@@ -0,0 +1,135 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Delivers PCM to JS as Base64 "data" events, optionally batched, holding back while the JS
+ * thread is behind.
+ *
+ * With timestamps the event is an object that also carries the data event's sequence number
+ * and the frame position, capture time and gap count of its first frame. A batch only
+ * merges contiguous chunks, so every event covers one unbroken stretch of the stream.
+ */
+public class JsEventSink implements StampedSink {
+    // Data events allowed in flight to the JS thread before the sink holds back
+    private static final int MAX_PENDING_JS_EVENTS = 4;
+    private static final long WAIT_POLL_MS = 100;
+
+    private final int batchMs;
+    private final int maxBatchBytes;
+    private final int maxChunkBytes;
+    private final boolean timestamps;
+    private volatile boolean draining;
+
+    // Sink thread only
+    private PcmBatcher batcher;
+    private int sampleRate;
+    private int frameSize;
+    private long sequence;
+    // Where the pending batch starts in the stream
+    private long batchFrame;
+    private long batchTimeNanos;
+    private long batchGaps;
+
+    /**
+     * @param batchMs       batch window, 0 for none
+     * @param maxBatchBytes batch size limit, 0 to derive it from {@code batchMs}
+     * @param timestamps    send each event with its place in the stream
+     */
+    public JsEventSink(int batchMs, int maxBatchBytes, int maxChunkBytes, boolean timestamps) {
+        this.batchMs = batchMs;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxChunkBytes = maxChunkBytes;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Stop waiting for JS; what is still queued is sent as fast as it drains.
+     */
+    public void drain() {
+        draining = true;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels, SampleFormat format) {
+        this.sampleRate = sampleRate;
+        this.frameSize = channels * format.getBytesPerSample();
+        sequence = 0;
+        batcher = null;
+        if (batchMs > 0 || maxBatchBytes > 0) {
+            // Delivery size is decoupled from the AudioRecord read size
+            int batchBytes = maxBatchBytes > 0
+                    ? maxBatchBytes
+                    : (int) ((long) sampleRate * frameSize * batchMs / 1000) + maxChunkBytes;
+            batcher = new PcmBatcher(batchBytes, frameSize, batchMs * 1000000L, this::emitBatch);
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws InterruptedException {
+        awaitJs();
+        if (batcher != null) {
+            batcher.append(data, offset, length, System.nanoTime());
+        } else {
+            AudioEventEmitter.sendAudioData(data, offset, length);
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length, long framePosition, long timeNanos, long gaps)
+            throws InterruptedException {
+        if (!timestamps) {
+            write(data, offset, length);
+            return;
+        }
+        awaitJs();
+        if (batcher == null) {
+            AudioEventEmitter.sendAudioData(data, offset, length, sequence++, framePosition, timeNanos, gaps);
+            return;
+        }
+        if (batcher.size() > 0 && framePosition != batchFrame + batcher.size() / frameSize) {
+            // Audio is missing in between: close the batch before the jump
+            batcher.flush();
+        }
+        if (batcher.size() == 0) {
+            batchFrame = framePosition;
+            batchTimeNanos = timeNanos;
+        }
+        batchGaps = gaps;
+        batcher.append(data, offset, length, System.nanoTime());
+    }
+
+    @Override
+    public void onIdle(long nowNanos) {
+        // A partial batch would otherwise wait for the next chunk
+        if (batcher != null) {
+            batcher.flushIfDue(nowNanos);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (batcher != null) {
+            batcher.flush();
+            batcher = null;
+        }
+    }
+
+    private void emitBatch(byte[] batch, int length) {
+        if (!timestamps) {
+            AudioEventEmitter.sendAudioData(batch, 0, length);
+            return;
+        }
+        AudioEventEmitter.sendAudioData(batch, 0, length, sequence++, batchFrame, batchTimeNanos, batchGaps);
+        // A chunk split across two batches continues in the next one
+        long frames = length / frameSize;
+        batchFrame += frames;
+        batchTimeNanos += frames * 1000000000L / sampleRate;
+    }
+
+    // Hold back while JS is behind; the queue absorbs the difference meanwhile
+    private void awaitJs() throws InterruptedException {
+        while (!draining
+                && !AudioEventEmitter.awaitJsCapacity(MAX_PENDING_JS_EVENTS, WAIT_POLL_MS)) {
+            // keep waiting
+        }
+    }
+}
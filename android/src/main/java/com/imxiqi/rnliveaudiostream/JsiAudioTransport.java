@@ -0,0 +1,78 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.JavaScriptContextHolder;
+import com.facebook.react.bridge.ReactContext;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary PCM transport: exposes the capture ring to JS as a shared ArrayBuffer through a
+ * JSI host object (global.__RNLiveAudioStream) instead of Base64 "data" events.
+ *
+ * JS reads {seq, offset, length} descriptors with read(), copies the bytes out of the shared buffer and
+ * confirms with verify(seq) that the producer did not refill the slot meanwhile.
+ * If the native library is missing or install() was never called, the service keeps
+ * using the Base64 path.
+ */
+public class JsiAudioTransport {
+    private static final String TAG = "JsiAudioTransport";
+
+    private static boolean libraryLoaded;
+    private static volatile boolean installed;
+
+    static {
+        try {
+            System.loadLibrary("rnliveaudiostream");
+            libraryLoaded = true;
+        } catch (Throwable e) {
+            Log.w(TAG, "Native transport unavailable, falling back to Base64 events", e);
+            libraryLoaded = false;
+        }
+    }
+
+    /**
+     * Install the host object into the JS runtime. Must run on the JS thread.
+     */
+    public static boolean install(ReactContext context) {
+        if (!libraryLoaded) {
+            return false;
+        }
+        JavaScriptContextHolder holder = context.getJavaScriptContextHolder();
+        if (holder == null || holder.get() == 0) {
+            Log.w(TAG, "JS runtime not available");
+            return false;
+        }
+        nativeInstall(holder.get());
+        installed = true;
+        Log.d(TAG, "JSI transport installed");
+        return true;
+    }
+
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    /**
+     * Make {@code ring} the buffer visible to JS. The native side keeps the direct buffers
+     * alive for as long as JS holds an ArrayBuffer over them.
+     */
+    public static void attach(AudioBufferRing ring) {
+        if (!installed) {
+            return;
+        }
+        nativeAttach(ring.getStorage(), ring.getControl(), ring.getSlotSize(), ring.getSlotCount());
+    }
+
+    public static void detach() {
+        if (!installed) {
+            return;
+        }
+        nativeDetach();
+    }
+
+    private static native void nativeInstall(long jsContext);
+    private static native void nativeAttach(ByteBuffer storage, ByteBuffer control, int slotSize, int slotCount);
+    private static native void nativeDetach();
+}
@@ -0,0 +1,85 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of durations, safe to record into from the audio threads while
+ * another thread reads it.
+ *
+ * Bucket {@code i} holds values below {@code 2^i} microseconds (bucket 0: below 1 us), the
+ * last bucket everything above. Recording is a few atomic increments and never allocates;
+ * percentiles are reported as the upper bound of their bucket.
+ */
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    public long getCount() { return count.get(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+    public long getBucket(int index) { return buckets.get(index); }
+
+    public long getMeanNanos() {
+        long n = count.get();
+        return n > 0 ? sumNanos.get() / n : 0;
+    }
+
+    /**
+     * Upper bound of the bucket holding the {@code p}-th percentile (0..1), capped at the max.
+     */
+    public long getPercentileNanos(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundNanos(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Exclusive upper bound of bucket {@code index}, in nanoseconds.
+     */
+    public static long upperBoundNanos(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << index) * 1000L;
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        // Number of bits needed for micros, i.e. the smallest i with micros < 2^i
+        int index = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+}
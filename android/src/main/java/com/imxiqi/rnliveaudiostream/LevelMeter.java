@@ -0,0 +1,192 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Peak and RMS level, and optionally a coarse spectrum, of the stream over fixed intervals,
+ * for VU meters that should not have to decode PCM in JS.
+ *
+ * Intervals are counted in frames, so levels come at a steady rate in stream time however
+ * large the chunks are: {@link #process} stops at each interval boundary, and {@link #poll}
+ * tells when a new level is ready. Bands are RBJ band-pass filters on the channel average,
+ * log-spaced from 100 Hz to 10 kHz (or just below Nyquist).
+ *
+ * Allocation-free after construction; one instance per stream, driven by a single thread.
+ */
+public class LevelMeter {
+    public static final int MAX_BANDS = 16;
+
+    private static final float MIN_LEVEL_DB = -96f;
+    private static final double MIN_BAND_HZ = 100;
+    private static final double MAX_BAND_HZ = 10000;
+
+    private final int channels;
+    private final long intervalFrames;
+    private final int bandCount;
+    // Normalized biquad coefficients and state, one entry per band
+    private final float[] b0;
+    private final float[] a1;
+    private final float[] a2;
+    private final float[] x1;
+    private final float[] x2;
+    private final float[] y1;
+    private final float[] y2;
+    private final double[] bandEnergy;
+
+    // Running interval
+    private long frames;
+    private int channel;
+    private float frameSum;
+    private float peak;
+    private double energy;
+
+    // Last finished interval
+    private boolean ready;
+    private float peakDb = MIN_LEVEL_DB;
+    private float rmsDb = MIN_LEVEL_DB;
+    private final float[] bandDb;
+
+    /**
+     * @param intervalMs length of each measurement, e.g. 33 for 30 levels a second
+     * @param bands      spectrum bands, 0 for level only
+     */
+    public LevelMeter(int sampleRate, int channels, int intervalMs, int bands) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive: " + intervalMs);
+        }
+        this.channels = Math.max(1, channels);
+        this.intervalFrames = Math.max(1, (long) sampleRate * intervalMs / 1000);
+        this.bandCount = Math.max(0, Math.min(MAX_BANDS, bands));
+        b0 = new float[bandCount];
+        a1 = new float[bandCount];
+        a2 = new float[bandCount];
+        x1 = new float[bandCount];
+        x2 = new float[bandCount];
+        y1 = new float[bandCount];
+        y2 = new float[bandCount];
+        bandEnergy = new double[bandCount];
+        bandDb = new float[bandCount];
+
+        if (bandCount > 0) {
+            double high = Math.min(MAX_BAND_HZ, sampleRate * 0.45);
+            double ratio = Math.pow(high / MIN_BAND_HZ, 1.0 / bandCount);
+            // Constant-Q bands, each one ratio wide
+            double q = Math.sqrt(ratio) / (ratio - 1);
+            for (int i = 0; i < bandCount; i++) {
+                double center = MIN_BAND_HZ * Math.pow(ratio, i + 0.5);
+                double w0 = 2 * Math.PI * center / sampleRate;
+                double alpha = Math.sin(w0) / (2 * q);
+                double a0 = 1 + alpha;
+                b0[i] = (float) (alpha / a0);
+                a1[i] = (float) (-2 * Math.cos(w0) / a0);
+                a2[i] = (float) ((1 - alpha) / a0);
+                bandDb[i] = MIN_LEVEL_DB;
+            }
+        }
+    }
+
+    public int getBandCount() { return bandCount; }
+    /** Peak of the last interval in dBFS */
+    public float getPeakDb() { return peakDb; }
+    /** RMS of the last interval in dBFS */
+    public float getRmsDb() { return rmsDb; }
+    /** RMS of band {@code index} over the last interval in dBFS */
+    public float getBandDb(int index) { return bandDb[index]; }
+
+    /**
+     * Feed interleaved samples in [-1, 1] up to the next interval boundary. Returns how many
+     * were consumed; call again with the rest after checking {@link #poll}.
+     */
+    public int process(float[] samples, int offset, int count) {
+        int i = 0;
+        while (i < count) {
+            accumulate(samples[offset + i]);
+            i++;
+            if (channel == 0 && frames == intervalFrames) {
+                finishInterval();
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Same for 16-bit samples.
+     */
+    public int process(short[] samples, int offset, int count) {
+        int i = 0;
+        while (i < count) {
+            accumulate(samples[offset + i] / 32768f);
+            i++;
+            if (channel == 0 && frames == intervalFrames) {
+                finishInterval();
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * True once after each finished interval; the getters then hold its levels.
+     */
+    public boolean poll() {
+        boolean result = ready;
+        ready = false;
+        return result;
+    }
+
+    public void reset() {
+        frames = 0;
+        channel = 0;
+        frameSum = 0;
+        peak = 0;
+        energy = 0;
+        ready = false;
+        for (int i = 0; i < bandCount; i++) {
+            x1[i] = x2[i] = y1[i] = y2[i] = 0;
+            bandEnergy[i] = 0;
+        }
+    }
+
+    private void accumulate(float sample) {
+        float magnitude = Math.abs(sample);
+        if (magnitude > peak) {
+            peak = magnitude;
+        }
+        energy += sample * sample;
+        frameSum += sample;
+        if (++channel < channels) {
+            return;
+        }
+        channel = 0;
+        frames++;
+        if (bandCount > 0) {
+            float x = frameSum / channels;
+            for (int b = 0; b < bandCount; b++) {
+                // Band-pass with b1 = 0 and b2 = -b0
+                float y = b0[b] * (x - x2[b]) - a1[b] * y1[b] - a2[b] * y2[b];
+                x2[b] = x1[b];
+                x1[b] = x;
+                y2[b] = y1[b];
+                y1[b] = y;
+                bandEnergy[b] += y * y;
+            }
+        }
+        frameSum = 0;
+    }
+
+    private void finishInterval() {
+        peakDb = toDb(peak);
+        rmsDb = toDb(Math.sqrt(energy / (frames * channels)));
+        for (int b = 0; b < bandCount; b++) {
+            bandDb[b] = toDb(Math.sqrt(bandEnergy[b] / frames));
+            bandEnergy[b] = 0;
+        }
+        frames = 0;
+        peak = 0;
+        energy = 0;
+        ready = true;
+    }
+
+    private static float toDb(double value) {
+        return value > 0 ? Math.max(MIN_LEVEL_DB, (float) (20 * Math.log10(value))) : MIN_LEVEL_DB;
+    }
+}
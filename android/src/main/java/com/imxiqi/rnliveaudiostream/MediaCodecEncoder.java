@@ -0,0 +1,134 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link AudioCodec} backed by an asynchronous MediaCodec encoder.
+ *
+ * Free input buffer indices reported by the codec callback are kept in a small ring so the
+ * processing thread can grab one without blocking. Callbacks run on a dedicated thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class MediaCodecEncoder implements AudioCodec {
+    private static final String TAG = "MediaCodecEncoder";
+    private static final int MAX_FREE_INPUTS = 32;
+
+    private final MediaCodec codec;
+    private final MediaFormat format;
+    private final HandlerThread callbackThread;
+
+    private final int[] freeInputs = new int[MAX_FREE_INPUTS];
+    private int freeHead;
+    private int freeCount;
+    private int currentInput = -1;
+
+    /**
+     * @param codecName    {@link EncoderStage#CODEC_AAC} or {@link EncoderStage#CODEC_OPUS}
+     * @param maxInputSize bytes in one PCM frame
+     */
+    public MediaCodecEncoder(String codecName, int sampleRate, int channels, int bitRate, int maxInputSize)
+            throws IOException {
+        String mime = EncoderStage.CODEC_OPUS.equals(codecName)
+                ? MediaFormat.MIMETYPE_AUDIO_OPUS : MediaFormat.MIMETYPE_AUDIO_AAC;
+        format = MediaFormat.createAudioFormat(mime, sampleRate, channels);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, maxInputSize);
+        if (!EncoderStage.CODEC_OPUS.equals(codecName)) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+        codec = MediaCodec.createEncoderByType(mime);
+        callbackThread = new HandlerThread("AudioEncoderThread");
+        callbackThread.start();
+    }
+
+    @Override
+    public void start(final PacketListener listener) {
+        codec.setCallback(new MediaCodec.Callback() {
+            @Override
+            public void onInputBufferAvailable(MediaCodec mc, int index) {
+                synchronized (freeInputs) {
+                    if (freeCount < MAX_FREE_INPUTS) {
+                        freeInputs[(freeHead + freeCount) % MAX_FREE_INPUTS] = index;
+                        freeCount++;
+                    }
+                }
+            }
+
+            @Override
+            public void onOutputBufferAvailable(MediaCodec mc, int index, MediaCodec.BufferInfo info) {
+                try {
+                    ByteBuffer output = mc.getOutputBuffer(index);
+                    if (output != null) {
+                        output.limit(info.offset + info.size);
+                        output.position(info.offset);
+                        listener.onPacket(output, info.presentationTimeUs,
+                                (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0,
+                                (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0);
+                    }
+                    mc.releaseOutputBuffer(index, false);
+                } catch (IllegalStateException e) {
+                    // Codec released while output was pending
+                    Log.w(TAG, "Dropping output after release", e);
+                }
+            }
+
+            @Override
+            public void onError(MediaCodec mc, MediaCodec.CodecException e) {
+                Log.e(TAG, "Encoder error", e);
+                listener.onError("Encoder error: " + e.getDiagnosticInfo());
+            }
+
+            @Override
+            public void onOutputFormatChanged(MediaCodec mc, MediaFormat newFormat) {
+                Log.d(TAG, "Encoder output format: " + newFormat);
+            }
+        }, new Handler(callbackThread.getLooper()));
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        codec.start();
+    }
+
+    @Override
+    public ByteBuffer dequeueInputBuffer() {
+        int index;
+        synchronized (freeInputs) {
+            if (freeCount == 0) {
+                return null;
+            }
+            index = freeInputs[freeHead];
+            freeHead = (freeHead + 1) % MAX_FREE_INPUTS;
+            freeCount--;
+        }
+        currentInput = index;
+        return codec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(ByteBuffer buffer, int length, long presentationTimeUs, boolean endOfStream) {
+        if (currentInput < 0) {
+            return;
+        }
+        codec.queueInputBuffer(currentInput, 0, length, presentationTimeUs,
+                endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+        currentInput = -1;
+    }
+
+    @Override
+    public void release() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException ignored) {}
+        codec.release();
+        callbackThread.quitSafely();
+    }
+}
@@ -0,0 +1,77 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Gathers consecutive PCM chunks into one batch and hands it off when the batch is full
+ * or its time window has elapsed, whichever comes first.
+ *
+ * The batch array is allocated once; the sink must consume it synchronously.
+ * Not thread-safe, meant to be driven by a single thread.
+ */
+public class PcmBatcher {
+    public interface Sink {
+        void onBatch(byte[] data, int length);
+    }
+
+    private final byte[] batch;
+    private final long windowNanos;
+    private final Sink sink;
+    private int length;
+    private long batchStartNanos;
+
+    /**
+     * @param capacity    max bytes per batch, rounded down to whole frames so a full batch
+     *                    never splits a frame across two events
+     * @param frameSize   bytes per frame, all channels
+     * @param windowNanos max age of the oldest byte in a batch, 0 to flush on size only
+     */
+    public PcmBatcher(int capacity, int frameSize, long windowNanos, Sink sink) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (frameSize <= 0) {
+            throw new IllegalArgumentException("frameSize must be positive: " + frameSize);
+        }
+        // At least one frame, whatever maxBatchBytes asked for
+        this.batch = new byte[Math.max(frameSize, capacity - capacity % frameSize)];
+        this.windowNanos = windowNanos;
+        this.sink = sink;
+    }
+
+    public int getCapacity() { return batch.length; }
+    public int size() { return length; }
+
+    public void append(byte[] src, int offset, int count, long nowNanos) {
+        while (count > 0) {
+            if (length == 0) {
+                batchStartNanos = nowNanos;
+            }
+            int n = Math.min(count, batch.length - length);
+            System.arraycopy(src, offset, batch, length, n);
+            length += n;
+            offset += n;
+            count -= n;
+            if (length == batch.length) {
+                flush();
+            }
+        }
+        flushIfDue(nowNanos);
+    }
+
+    /**
+     * Hand off the pending batch if its window has elapsed, for when no chunk comes along
+     * to trigger it.
+     */
+    public void flushIfDue(long nowNanos) {
+        if (length > 0 && windowNanos > 0 && nowNanos - batchStartNanos >= windowNanos) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (length > 0) {
+            int n = length;
+            length = 0;
+            sink.onBatch(batch, n);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size FIFO of the most recent PCM bytes. Writes never block: once full, the oldest
+ * bytes are overwritten. Used to keep pre-roll audio while nothing is being delivered.
+ *
+ * Allocation-free after construction. Single thread.
+ */
+public class PcmHistory {
+    private final byte[] storage;
+    private int head;   // oldest byte
+    private int size;
+
+    public PcmHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        storage = new byte[capacity];
+    }
+
+    public int getCapacity() { return storage.length; }
+    public int size() { return size; }
+
+    /**
+     * Append everything remaining in {@code src}, dropping the oldest bytes if needed.
+     */
+    public void write(ByteBuffer src) {
+        int length = src.remaining();
+        if (length >= storage.length) {
+            // Only the tail fits
+            src.position(src.position() + length - storage.length);
+            src.get(storage, 0, storage.length);
+            head = 0;
+            size = storage.length;
+            return;
+        }
+        int overflow = size + length - storage.length;
+        if (overflow > 0) {
+            head = (head + overflow) % storage.length;
+            size -= overflow;
+        }
+        int tail = (head + size) % storage.length;
+        int first = Math.min(length, storage.length - tail);
+        src.get(storage, tail, first);
+        src.get(storage, 0, length - first);
+        size += length;
+    }
+
+    /**
+     * Move up to {@code max} of the oldest bytes into {@code dst}. Returns the count.
+     */
+    public int read(ByteBuffer dst, int max) {
+        int length = Math.min(Math.min(max, dst.remaining()), size);
+        int first = Math.min(length, storage.length - head);
+        dst.put(storage, head, first);
+        dst.put(storage, 0, length - first);
+        head = (head + length) % storage.length;
+        size -= length;
+        return length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
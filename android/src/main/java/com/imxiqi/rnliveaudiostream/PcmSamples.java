@@ -0,0 +1,123 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sample conversions between raw PCM bytes and typed arrays. Allocation-free.
+ */
+public final class PcmSamples {
+    private PcmSamples() {}
+
+    /**
+     * Decode {@code length} bytes of 16-bit PCM starting at {@code src.position()} into
+     * {@code dst}, in the buffer's byte order. The buffer position is not changed.
+     * Returns the number of samples written.
+     */
+    public static int toShorts(ByteBuffer src, int length, short[] dst) {
+        int count = Math.min(length / 2, dst.length);
+        int base = src.position();
+        for (int i = 0; i < count; i++) {
+            dst[i] = src.getShort(base + 2 * i);
+        }
+        return count;
+    }
+
+    /**
+     * Encode {@code count} samples as 16-bit PCM at {@code dst.position()}, in the buffer's
+     * byte order. The buffer position is not changed. Returns the number of bytes written.
+     */
+    public static int fromShorts(short[] src, int count, ByteBuffer dst) {
+        int base = dst.position();
+        for (int i = 0; i < count; i++) {
+            dst.putShort(base + 2 * i, src[i]);
+        }
+        return count * 2;
+    }
+
+    /**
+     * Decode {@code length} bytes of {@code format} PCM starting at {@code src.position()}
+     * into {@code dst} as floats in [-1, 1]. The buffer position is not changed. Packed 24-bit
+     * is read little-endian, as AudioRecord delivers it. Returns the number of samples written.
+     */
+    public static int toFloats(ByteBuffer src, int length, SampleFormat format, float[] dst) {
+        int count = Math.min(length / format.getBytesPerSample(), dst.length);
+        int base = src.position();
+        switch (format) {
+            case PCM_8BIT:
+                for (int i = 0; i < count; i++) {
+                    dst[i] = ((src.get(base + i) & 0xFF) - 128) / 128f;
+                }
+                break;
+            case PCM_16BIT:
+                for (int i = 0; i < count; i++) {
+                    dst[i] = src.getShort(base + 2 * i) / 32768f;
+                }
+                break;
+            case PCM_24BIT:
+                for (int i = 0, p = base; i < count; i++, p += 3) {
+                    int v = (src.get(p) & 0xFF) | (src.get(p + 1) & 0xFF) << 8 | src.get(p + 2) << 16;
+                    dst[i] = v / 8388608f;
+                }
+                break;
+            case PCM_32BIT:
+                for (int i = 0; i < count; i++) {
+                    dst[i] = src.getInt(base + 4 * i) / 2147483648f;
+                }
+                break;
+            case PCM_FLOAT:
+                for (int i = 0; i < count; i++) {
+                    dst[i] = src.getFloat(base + 4 * i);
+                }
+                break;
+        }
+        return count;
+    }
+
+    /**
+     * Encode {@code count} float samples as {@code format} PCM at {@code dst.position()},
+     * clipping to full scale. The buffer position is not changed. Returns the number of bytes
+     * written.
+     */
+    public static int fromFloats(float[] src, int count, SampleFormat format, ByteBuffer dst) {
+        int base = dst.position();
+        switch (format) {
+            case PCM_8BIT:
+                for (int i = 0; i < count; i++) {
+                    dst.put(base + i, (byte) (quantize(src[i], 128) + 128));
+                }
+                break;
+            case PCM_16BIT:
+                for (int i = 0; i < count; i++) {
+                    dst.putShort(base + 2 * i, (short) quantize(src[i], 32768));
+                }
+                break;
+            case PCM_24BIT:
+                for (int i = 0, p = base; i < count; i++, p += 3) {
+                    int v = quantize(src[i], 8388608);
+                    dst.put(p, (byte) v);
+                    dst.put(p + 1, (byte) (v >> 8));
+                    dst.put(p + 2, (byte) (v >> 16));
+                }
+                break;
+            case PCM_32BIT:
+                for (int i = 0; i < count; i++) {
+                    float v = src[i];
+                    dst.putInt(base + 4 * i, v >= 1f ? Integer.MAX_VALUE
+                            : (v <= -1f ? Integer.MIN_VALUE : (int) Math.round(v * 2147483648.0)));
+                }
+                break;
+            case PCM_FLOAT:
+                for (int i = 0; i < count; i++) {
+                    dst.putFloat(base + 4 * i, src[i]);
+                }
+                break;
+        }
+        return count * format.getBytesPerSample();
+    }
+
+    // Round to an integer sample of the given full scale, clipped to [-scale, scale - 1]
+    private static int quantize(float value, int scale) {
+        int v = Math.round(value * scale);
+        return v >= scale ? scale - 1 : (v < -scale ? -scale : v);
+    }
+}
@@ -0,0 +1,76 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.util.Locale;
+
+/**
+ * Records monotonic timestamps for the named phases of one start or stop sequence.
+ *
+ * Each {@link #mark} stores the time since {@link #begin}; the duration of a phase is the
+ * distance to the previous mark. Phases may be marked from different threads.
+ */
+public class PhaseTimer {
+    private static final int MAX_PHASES = 16;
+
+    private final String[] names = new String[MAX_PHASES];
+    private final long[] offsets = new long[MAX_PHASES];
+    private long originNanos;
+    private int count;
+
+    public synchronized void begin() {
+        originNanos = System.nanoTime();
+        count = 0;
+    }
+
+    /**
+     * Record the end of {@code phase}. Later marks of the same phase are ignored.
+     */
+    public synchronized void mark(String phase) {
+        if (count == MAX_PHASES || indexOf(phase) >= 0) {
+            return;
+        }
+        names[count] = phase;
+        offsets[count] = System.nanoTime() - originNanos;
+        count++;
+    }
+
+    public synchronized boolean has(String phase) {
+        return indexOf(phase) >= 0;
+    }
+
+    /**
+     * Nanoseconds from {@link #begin} to the mark of {@code phase}, or -1 if not reached.
+     */
+    public synchronized long getOffsetNanos(String phase) {
+        int i = indexOf(phase);
+        return i >= 0 ? offsets[i] : -1;
+    }
+
+    public synchronized int getPhaseCount() { return count; }
+    public synchronized String getPhaseName(int index) { return names[index]; }
+    public synchronized long getPhaseOffsetNanos(int index) { return offsets[index]; }
+
+    public synchronized long getPhaseDurationNanos(int index) {
+        return offsets[index] - (index > 0 ? offsets[index - 1] : 0);
+    }
+
+    /**
+     * One line per phase, for logcat.
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(String.format(Locale.US, "%-16s +%7.2f ms  @%7.2f ms%n", names[i],
+                    getPhaseDurationNanos(i) / 1e6, offsets[i] / 1e6));
+        }
+        return sb.toString();
+    }
+
+    private int indexOf(String phase) {
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(phase)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
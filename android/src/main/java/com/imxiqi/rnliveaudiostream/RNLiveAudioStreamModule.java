@@ -4,12 +4,14 @@ import android.content.pm.PackageManager;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder.AudioSource;
+import android.os.Build;
 import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -18,6 +20,7 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.io.File;
 import java.lang.Math;
 import java.util.HashMap;
 import java.util.Map;
@@ -63,12 +66,105 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
         if (options.hasKey("bitsPerSample")) {
             audioConfig.setBitsPerSample(options.getInt("bitsPerSample"));
         }
+        if (options.hasKey("sampleFormat")) {
+            audioConfig.setSampleFormat(options.getString("sampleFormat"));
+        }
         if (options.hasKey("audioSource")) {
             audioConfig.setAudioSource(options.getInt("audioSource"));
         }
         if (options.hasKey("bufferSize")) {
             audioConfig.setBufferSize(options.getInt("bufferSize"));
         }
+        if (options.hasKey("targetLatencyMs")) {
+            audioConfig.setTargetLatencyMs(options.getInt("targetLatencyMs"));
+        }
+        if (options.hasKey("minBufferMs")) {
+            audioConfig.setMinBufferMs(options.getInt("minBufferMs"));
+        }
+        if (options.hasKey("maxBufferMs")) {
+            audioConfig.setMaxBufferMs(options.getInt("maxBufferMs"));
+        }
+        if (options.hasKey("captureBackend")) {
+            audioConfig.setCaptureBackend(options.getString("captureBackend"));
+        }
+        if (options.hasKey("transport")) {
+            audioConfig.setTransport(options.getString("transport"));
+        }
+        if (options.hasKey("batchMs")) {
+            audioConfig.setBatchMs(options.getInt("batchMs"));
+        }
+        if (options.hasKey("maxBatchBytes")) {
+            audioConfig.setMaxBatchBytes(options.getInt("maxBatchBytes"));
+        }
+        if (options.hasKey("maxQueueBytes")) {
+            audioConfig.setMaxQueueBytes(options.getInt("maxQueueBytes"));
+        }
+        if (options.hasKey("overflowPolicy")) {
+            audioConfig.setOverflowPolicy(options.getString("overflowPolicy"));
+        }
+        if (options.hasKey("codec")) {
+            audioConfig.setCodec(options.getString("codec"));
+        }
+        if (options.hasKey("bitrate")) {
+            audioConfig.setBitRate(options.getInt("bitrate"));
+        }
+        if (options.hasKey("frameSize")) {
+            audioConfig.setFrameSize(options.getInt("frameSize"));
+        }
+        if (options.hasKey("vad")) {
+            audioConfig.setVadMode(options.getString("vad"));
+        }
+        if (options.hasKey("vadThresholdDb")) {
+            audioConfig.setVadThresholdDb((float) options.getDouble("vadThresholdDb"));
+        }
+        if (options.hasKey("vadHangoverMs")) {
+            audioConfig.setVadHangoverMs(options.getInt("vadHangoverMs"));
+        }
+        if (options.hasKey("vadPreRollMs")) {
+            audioConfig.setVadPreRollMs(options.getInt("vadPreRollMs"));
+        }
+        if (options.hasKey("lookbackMs")) {
+            audioConfig.setLookbackMs(options.getInt("lookbackMs"));
+        }
+        if (options.hasKey("lookbackTrigger")) {
+            audioConfig.setLookbackTrigger(options.getString("lookbackTrigger"));
+        }
+        if (options.hasKey("levelIntervalMs")) {
+            audioConfig.setLevelIntervalMs(options.getInt("levelIntervalMs"));
+        }
+        if (options.hasKey("levelBands")) {
+            audioConfig.setLevelBands(options.getInt("levelBands"));
+        }
+        if (options.hasKey("outputSampleRate")) {
+            audioConfig.setOutputSampleRate(options.getInt("outputSampleRate"));
+        }
+        if (options.hasKey("outputChannels")) {
+            audioConfig.setOutputChannels(options.getInt("outputChannels"));
+        }
+        if (options.hasKey("wavFile")) {
+            audioConfig.setWavFile(options.isNull("wavFile") ? null : resolvePath(options.getString("wavFile")));
+        }
+        if (options.hasKey("segmentDurationMs")) {
+            audioConfig.setSegmentDurationMs((long) options.getDouble("segmentDurationMs"));
+        }
+        if (options.hasKey("segmentMaxBytes")) {
+            audioConfig.setSegmentMaxBytes((long) options.getDouble("segmentMaxBytes"));
+        }
+        if (options.hasKey("emitData")) {
+            audioConfig.setEmitData(options.getBoolean("emitData"));
+        }
+        if (options.hasKey("timestamps")) {
+            audioConfig.setTimestamps(options.getBoolean("timestamps"));
+        }
+        if (options.hasKey("metrics")) {
+            audioConfig.setEmitMetrics(options.getBoolean("metrics"));
+        }
+        if (options.hasKey("metricsIntervalMs")) {
+            audioConfig.setMetricsIntervalMs(options.getInt("metricsIntervalMs"));
+        }
+        if (options.hasKey("upload")) {
+            setUploadOptions(options.isNull("upload") ? null : options.getMap("upload"));
+        }
         if (options.hasKey("notificationTitle")) {
             audioConfig.setNotificationTitle(options.getString("notificationTitle"));
         }
@@ -85,6 +181,42 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
         }
     }
 
+    // upload: null turns the upload sink off
+    private void setUploadOptions(@Nullable ReadableMap upload) {
+        if (upload == null || !upload.hasKey("url")) {
+            audioConfig.setUploadUrl(null);
+            return;
+        }
+        audioConfig.setUploadUrl(upload.getString("url"));
+        Map<String, String> headers = new HashMap<>();
+        if (upload.hasKey("headers") && !upload.isNull("headers")) {
+            for (Map.Entry<String, Object> header : upload.getMap("headers").toHashMap().entrySet()) {
+                if (header.getValue() != null) {
+                    headers.put(header.getKey(), String.valueOf(header.getValue()));
+                }
+            }
+        }
+        audioConfig.setUploadHeaders(headers);
+        if (upload.hasKey("encoded")) {
+            audioConfig.setUploadEncoded(upload.getBoolean("encoded"));
+        }
+        if (upload.hasKey("replayMs")) {
+            audioConfig.setUploadReplayMs(upload.getInt("replayMs"));
+        }
+        if (upload.hasKey("maxQueueBytes")) {
+            audioConfig.setUploadMaxQueueBytes(upload.getInt("maxQueueBytes"));
+        }
+        if (upload.hasKey("spillMaxBytes")) {
+            audioConfig.setUploadSpillMaxBytes((long) upload.getDouble("spillMaxBytes"));
+        }
+        if (upload.hasKey("sampleRate")) {
+            audioConfig.setUploadSampleRate(upload.getInt("sampleRate"));
+        }
+        if (upload.hasKey("channels")) {
+            audioConfig.setUploadChannels(upload.getInt("channels"));
+        }
+    }
+
     /**
      * Helper method để get resource ID từ name
      */
@@ -96,6 +228,41 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
         }
     }
 
+    // Relative paths are placed in the app's private files directory
+    private String resolvePath(String path) {
+        if (path == null || new File(path).isAbsolute()) {
+            return path;
+        }
+        return new File(reactContext.getFilesDir(), path).getAbsolutePath();
+    }
+
+    /**
+     * Install the JSI host object used by the "jsi" transport. Runs on the JS thread.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean install() {
+        return JsiAudioTransport.install(reactContext);
+    }
+
+    @ReactMethod
+    public void prepare(Promise promise) {
+        if (!hasAudioPermission()) {
+            String error = "Audio recording permission not granted";
+            AudioEventEmitter.sendError(error);
+            promise.reject("PERMISSION_ERROR", error);
+            return;
+        }
+
+        try {
+            // Service and AudioRecord stay up in standby until release()
+            RNLiveAudioStreamService.prepareService(reactContext);
+            promise.resolve("Prepared");
+        } catch (Exception e) {
+            AudioEventEmitter.sendError(e.getMessage());
+            promise.reject("PREPARE_ERROR", e.getMessage());
+        }
+    }
+
     @ReactMethod
     public void start(Promise promise) {
         if (!hasAudioPermission()) {
@@ -107,10 +274,13 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
 
         try {
             // Start foreground service
-            RNLiveAudioStreamService.startService(reactContext);
+            int sessionId = RNLiveAudioStreamService.startService(reactContext);
 
-            AudioEventEmitter.sendRecordingState(true);
-            promise.resolve("Started");
+            AudioEventEmitter.sendRecordingState(true, false, sessionId);
+            promise.resolve(sessionId);
+        } catch (IllegalStateException e) {
+            // One session at a time: restart() replaces it
+            promise.reject("ALREADY_RECORDING", e.getMessage());
         } catch (Exception e) {
             AudioEventEmitter.sendError(e.getMessage());
             promise.reject("START_ERROR", e.getMessage());
@@ -121,7 +291,7 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
     public void stop(Promise promise) {
         try {
             RNLiveAudioStreamService.stopService(reactContext);
-            AudioEventEmitter.sendRecordingState(false);
+            AudioEventEmitter.sendRecordingState(false, false, 0);
             promise.resolve("Stopped");
         } catch (Exception e) {
             AudioEventEmitter.sendError(e.getMessage());
@@ -129,6 +299,84 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Stop the current session and start a new one with the settings from the latest
+     * {@link #init}, without stopping the service. Resolves the new session id.
+     */
+    @ReactMethod
+    public void restart(Promise promise) {
+        if (!hasAudioPermission()) {
+            String error = "Audio recording permission not granted";
+            AudioEventEmitter.sendError(error);
+            promise.reject("PERMISSION_ERROR", error);
+            return;
+        }
+
+        try {
+            promise.resolve(RNLiveAudioStreamService.restartService(reactContext));
+        } catch (Exception e) {
+            AudioEventEmitter.sendError(e.getMessage());
+            promise.reject("RESTART_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * With {@code lookbackMs} set: send the last {@code lookbackMs} of audio followed by the
+     * live stream.
+     */
+    @ReactMethod
+    public void trigger(Promise promise) {
+        RNLiveAudioStreamService.triggerLookback();
+        promise.resolve("Triggered");
+    }
+
+    /**
+     * With {@code lookbackMs} set: stop sending and go back to listening into the lookback.
+     */
+    @ReactMethod
+    public void arm(Promise promise) {
+        RNLiveAudioStreamService.armLookback();
+        promise.resolve("Armed");
+    }
+
+    /**
+     * Stop capturing but keep the service, wake lock, AudioRecord and every output open, so
+     * {@link #resume} continues the same stream almost instantly.
+     */
+    @ReactMethod
+    public void pause(Promise promise) {
+        try {
+            RNLiveAudioStreamService.pauseService(reactContext);
+            promise.resolve("Paused");
+        } catch (Exception e) {
+            AudioEventEmitter.sendError(e.getMessage());
+            promise.reject("PAUSE_ERROR", e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void resume(Promise promise) {
+        try {
+            RNLiveAudioStreamService.resumeService(reactContext);
+            promise.resolve("Resumed");
+        } catch (Exception e) {
+            AudioEventEmitter.sendError(e.getMessage());
+            promise.reject("RESUME_ERROR", e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void release(Promise promise) {
+        try {
+            RNLiveAudioStreamService.releaseService(reactContext);
+            AudioEventEmitter.sendRecordingState(false, false, 0);
+            promise.resolve("Released");
+        } catch (Exception e) {
+            AudioEventEmitter.sendError(e.getMessage());
+            promise.reject("RELEASE_ERROR", e.getMessage());
+        }
+    }
+
     @ReactMethod
     public void resetConfig(Promise promise) {
         try {
@@ -139,6 +387,44 @@ public class RNLiveAudioStreamModule extends ReactContextBaseJavaModule {
         }
     }
 
+    @ReactMethod
+    public void getQueueStats(Promise promise) {
+        RecordingSession session = RNLiveAudioStreamService.getLastSession();
+        BoundedPcmQueue queue = session != null ? session.getQueue() : null;
+        // The policy the queue was built with, not whatever init() set since
+        AudioConfig config = session != null && session.getConfig() != null ? session.getConfig() : audioConfig;
+        WritableMap stats = Arguments.createMap();
+        stats.putString("overflowPolicy", config.getOverflowPolicy());
+        stats.putDouble("queuedBytes", queue != null ? queue.getQueuedBytes() : 0);
+        stats.putDouble("spilledBytes", queue != null ? queue.getSpilledBytes() : 0);
+        stats.putDouble("droppedBytes", queue != null ? queue.getDroppedBytes() : 0);
+        stats.putDouble("droppedChunks", queue != null ? queue.getDroppedChunks() : 0);
+        stats.putDouble("enqueuedBytes", queue != null ? queue.getEnqueuedBytes() : 0);
+        stats.putDouble("maxQueuedBytes", queue != null ? queue.getMaxQueuedBytes() : 0);
+        stats.putInt("pendingJsEvents", AudioEventEmitter.getPendingJsEvents());
+        promise.resolve(stats);
+    }
+
+    /**
+     * Phase timings of the last start and stop, in milliseconds, plus a capture health
+     * snapshot of the current (or last) session.
+     */
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        WritableMap metrics = Arguments.createMap();
+        metrics.putMap("start", AudioEventEmitter.createPhaseMap(RNLiveAudioStreamService.getStartupTimer()));
+        metrics.putMap("stop", AudioEventEmitter.createPhaseMap(RNLiveAudioStreamService.getStopTimer()));
+        RecordingSession session = RNLiveAudioStreamService.getLastSession();
+        metrics.putMap("health", session != null
+                ? AudioEventEmitter.createHealthMap(session.getHealth(), session.getQueue())
+                : AudioEventEmitter.createHealthMap(new CaptureHealth(), null));
+        StreamingUploadSink upload = session != null ? session.getUploadSink() : null;
+        metrics.putMap("upload", upload != null ? AudioEventEmitter.createUploadMap(upload) : null);
+        metrics.putString("device", Build.MANUFACTURER + " " + Build.MODEL);
+        metrics.putInt("sdkInt", Build.VERSION.SDK_INT);
+        promise.resolve(metrics);
+    }
+
     private boolean hasAudioPermission() {
         return ContextCompat.checkSelfPermission(reactContext,
                 android.Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
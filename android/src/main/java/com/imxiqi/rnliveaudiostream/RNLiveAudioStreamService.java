@@ -9,15 +9,14 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
+import android.media.AudioManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.PowerManager;
-import android.util.Base64;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -26,17 +25,91 @@ import androidx.core.app.NotificationCompat;
 
 import com.facebook.react.bridge.ReactContext;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RNLiveAudioStreamService extends Service {
     private static final String TAG = "RNLiveAudioStreamService";
     private static final int NOTIFICATION_ID = 1;
     private static final String CHANNEL_ID = "AudioRecordingChannel";
+    private static final String SPILL_FILE_NAME = "rnliveaudiostream-spill.pcm";
+    private static final long ENCODER_DRAIN_MS = 500;
+    // Native upload: connect/handshake timeout and reconnect backoff bounds
+    private static final int UPLOAD_TIMEOUT_MS = 10000;
+    private static final long UPLOAD_MIN_BACKOFF_MS = 500;
+    private static final long UPLOAD_MAX_BACKOFF_MS = 30000;
+    private static final long UPLOAD_SPILL_SEGMENT_BYTES = 4 * 1024 * 1024;
+    // Processing thread: how long stop() lets it finish what was handed over
+    private static final long PROCESSING_DRAIN_MS = 1000;
+
+    public static final String ACTION_PREPARE = "com.imxiqi.rnliveaudiostream.PREPARE";
+    public static final String EXTRA_SESSION_ID = "com.imxiqi.rnliveaudiostream.SESSION_ID";
+
+    // Set by prepare(): the service and its capture backend stay alive between recordings
+    private static volatile boolean standby;
+    // Phases of the last prepare or start, and of the last stop; each session has its own
+    private static volatile PhaseTimer startupTimer = new PhaseTimer();
+    private static volatile PhaseTimer stopTimer = new PhaseTimer();
+    // Session ids handed out by start()/restart(), and the one currently recording
+    private static final AtomicInteger lastSessionId = new AtomicInteger();
+    private static volatile int activeSessionId;
+    // Sessions started and not yet stopped, by id; start() refuses to add a second one
+    private static final Map<Integer, RecordingSession> liveSessions = new HashMap<>();
+    // Newest session, kept after it stopped for the stats of the last recording
+    private static volatile RecordingSession lastSession;
+    // Native sinks registered by the app, attached to every recording started afterwards
+    private static final Map<String, SinkRegistration> customSinks = new LinkedHashMap<>();
+    // The service while it is up, between onCreate and onDestroy; main thread only
+    private static RNLiveAudioStreamService running;
+
+    // Command for a service that is already up, run on the main thread
+    private interface ServiceCommand {
+        void run(RNLiveAudioStreamService service);
+    }
+
+    private static class SinkRegistration {
+        final AudioSink sink;
+        final SinkOptions options;
+
+        SinkRegistration(AudioSink sink, SinkOptions options) {
+            this.sink = sink;
+            this.options = options;
+        }
+    }
 
-    private AudioRecord audioRecord;
+    // AudioRecord or AAudio, see CaptureBackend
+    private CaptureBackend captureBackend;
+    // Config the current backend was opened for, so a prepared one is only reused if it matches
+    private String preparedKey;
+    private int preparedBufferSize;
     private volatile boolean isRecording = false;
     private volatile boolean isInitializing = false;
-    private Thread recordingThread;
+    // Session being started or recording in this service
+    private volatile RecordingSession recording;
+    // Capture and processing of the current session, see CapturePipeline
+    private volatile CapturePipeline pipeline;
+    // The capture thread only reads the backend and hands buffers over; conversion, DSP and
+    // the sinks run on the processing thread, so nothing they do delays the next read
+    private volatile Thread captureThread;
+    private Thread processingThread;
+    // Every consumer of the stream except JSI, each behind its own queue and thread
+    private volatile SinkChannel[] sinkChannels;
+    private JsEventSink jsSink;
+    // Upload fed with encoded packets from the codec thread rather than PCM from the processing thread
+    private volatile SinkChannel packetChannel;
+    private EncoderStage encoderStage;
+    private boolean useJsiTransport;
     private PowerManager.WakeLock wakeLock;
-    private AudioConfig audioConfig;
+    // Settings of the current session, a snapshot taken when it started
+    private volatile AudioConfig audioConfig;
 
     // Background thread cho audio operations
     private HandlerThread audioHandlerThread;
@@ -44,8 +117,248 @@ public class RNLiveAudioStreamService extends Service {
 
     private Notification cachedNotification;
 
-    public static void startService(ReactContext context) {
+    /**
+     * Start a recording session with a snapshot of the current {@link AudioConfig}. Returns
+     * its id.
+     *
+     * @throws IllegalStateException while another session is starting or recording
+     */
+    public static int startService(ReactContext context) {
+        RecordingSession session;
+        synchronized (liveSessions) {
+            if (!liveSessions.isEmpty()) {
+                throw new IllegalStateException("Session " + liveSessions.keySet().iterator().next()
+                        + " is still recording, stop() or restart() it first");
+            }
+            session = newSession();
+        }
+        try {
+            sendCommand(context, null, session.getId());
+        } catch (RuntimeException e) {
+            dropSession(session);
+            throw e;
+        }
+        return session.getId();
+    }
+
+    /**
+     * Stop the current session and start a new one with the current settings, keeping the
+     * service, its notification and wake lock. Starts one if nothing is recording. Returns
+     * the new session id.
+     */
+    public static int restartService(ReactContext context) {
+        RecordingSession session;
+        synchronized (liveSessions) {
+            endLiveSessions();
+            session = newSession();
+        }
+        int id = session.getId();
+        postCommand(service -> {
+            // Same service and notification; the new session picks up the current settings
+            service.stopRecording();
+            service.startRecordingAsync(id);
+        }, () -> {
+            // Nothing running: a plain start
+            try {
+                sendCommand(context, null, id);
+            } catch (RuntimeException e) {
+                dropSession(session);
+                AudioEventEmitter.sendError("Error restarting recording: " + e.getMessage());
+            }
+        });
+        return id;
+    }
+
+    // Caller holds liveSessions
+    private static RecordingSession newSession() {
+        RecordingSession session = new RecordingSession(lastSessionId.incrementAndGet());
+        session.getStartupTimer().begin();
+        liveSessions.put(session.getId(), session);
+        startupTimer = session.getStartupTimer();
+        lastSession = session;
+        return session;
+    }
+
+    /**
+     * Mark {@code session} as stopping: its stop phases start now and start() may start the
+     * next one. Its teardown still runs in the background, see {@link #teardown}.
+     */
+    private static void endSession(RecordingSession session) {
+        synchronized (liveSessions) {
+            if (liveSessions.remove(session.getId()) != null) {
+                session.getStopTimer().begin();
+                stopTimer = session.getStopTimer();
+            }
+        }
+    }
+
+    private static void endLiveSessions() {
+        synchronized (liveSessions) {
+            for (RecordingSession session : new ArrayList<>(liveSessions.values())) {
+                endSession(session);
+            }
+        }
+    }
+
+    // A session that never got to record
+    private static void dropSession(RecordingSession session) {
+        synchronized (liveSessions) {
+            liveSessions.remove(session.getId());
+        }
+    }
+
+    /**
+     * Session with this id while it is live, or the last session if it has that id; null
+     * otherwise.
+     */
+    @Nullable
+    public static RecordingSession getSession(int id) {
+        RecordingSession session = getLiveSession(id);
+        if (session != null) {
+            return session;
+        }
+        RecordingSession last = lastSession;
+        return last != null && last.getId() == id ? last : null;
+    }
+
+    @Nullable
+    private static RecordingSession getLiveSession(int id) {
+        synchronized (liveSessions) {
+            return liveSessions.get(id);
+        }
+    }
+
+    /** Current session, or the last one once it stopped; null before the first start() */
+    @Nullable
+    public static RecordingSession getLastSession() {
+        return lastSession;
+    }
+
+    @Nullable
+    private static CapturePipeline activePipeline() {
+        RecordingSession session = getSession(activeSessionId);
+        return session != null ? session.getPipeline() : null;
+    }
+
+    /**
+     * With a lookback configured: send the held audio and go live. No effect when live.
+     */
+    public static void triggerLookback() {
+        CapturePipeline current = activePipeline();
+        if (current != null) {
+            current.triggerLookback();
+        }
+    }
+
+    /**
+     * With a lookback configured: stop sending and go back to holding audio natively.
+     */
+    public static void armLookback() {
+        CapturePipeline current = activePipeline();
+        if (current != null) {
+            current.armLookback();
+        }
+    }
+
+    /** Id of the session recording now, 0 if none */
+    public static int getSessionId() {
+        return activeSessionId;
+    }
+
+    /**
+     * Start the service in standby with an opened capture backend, so a following
+     * {@link #startService} only has to start recording.
+     */
+    public static void prepareService(ReactContext context) {
+        standby = true;
+        PhaseTimer timer = new PhaseTimer();
+        timer.begin();
+        startupTimer = timer;
+        sendCommand(context, ACTION_PREPARE);
+    }
+
+    /**
+     * Stop capturing without tearing anything down; ignored unless recording.
+     */
+    public static void pauseService(ReactContext context) {
+        postCommand(service -> service.setPaused(true), null);
+    }
+
+    public static void resumeService(ReactContext context) {
+        postCommand(service -> service.setPaused(false), null);
+    }
+
+    public static PhaseTimer getStartupTimer() {
+        return startupTimer;
+    }
+
+    public static PhaseTimer getStopTimer() {
+        return stopTimer;
+    }
+
+    /**
+     * Register a native sink under {@code name}, replacing any sink of that name. It receives
+     * the stream of every recording started afterwards, in its own format and on its own thread.
+     */
+    public static void addSink(String name, AudioSink sink, SinkOptions options) {
+        synchronized (customSinks) {
+            customSinks.put(name, new SinkRegistration(sink, options != null ? options : new SinkOptions()));
+        }
+    }
+
+    public static void removeSink(String name) {
+        synchronized (customSinks) {
+            customSinks.remove(name);
+        }
+    }
+
+    public static boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * Stop recording. A prepared service stays in standby until {@link #releaseService}.
+     */
+    public static void stopService(ReactContext context) {
+        endLiveSessions();
+        if (standby) {
+            postCommand(RNLiveAudioStreamService::stopRecording, null);
+        } else {
+            context.stopService(new Intent(context, RNLiveAudioStreamService.class));
+        }
+    }
+
+    public static void releaseService(ReactContext context) {
+        standby = false;
+        endLiveSessions();
+        context.stopService(new Intent(context, RNLiveAudioStreamService.class));
+    }
+
+    private static void sendCommand(ReactContext context, @Nullable String action) {
+        sendCommand(context, action, 0);
+    }
+
+    /**
+     * Hand {@code command} to the running service on the main thread, or run
+     * {@code otherwise} there if none is up. Only starting the service goes through
+     * startForegroundService: every call obliges the service to call startForeground again,
+     * and from the background Android 12+ refuses it outright.
+     */
+    private static void postCommand(ServiceCommand command, @Nullable Runnable otherwise) {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            RNLiveAudioStreamService service = running;
+            if (service != null) {
+                command.run(service);
+            } else if (otherwise != null) {
+                otherwise.run();
+            }
+        });
+    }
+
+    private static void sendCommand(ReactContext context, @Nullable String action, int sessionId) {
         Intent serviceIntent = new Intent(context, RNLiveAudioStreamService.class);
+        serviceIntent.setAction(action);
+        serviceIntent.putExtra(EXTRA_SESSION_ID, sessionId);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             context.startForegroundService(serviceIntent);
@@ -54,16 +367,13 @@ public class RNLiveAudioStreamService extends Service {
         }
     }
 
-    public static void stopService(ReactContext context) {
-        Intent serviceIntent = new Intent(context, RNLiveAudioStreamService.class);
-        context.stopService(serviceIntent);
-    }
-
     @Override
     public void onCreate() {
         super.onCreate();
-        // Lấy config từ singleton
-        audioConfig = AudioConfig.getInstance();
+        running = this;
+        startupTimer.mark("serviceCreate");
+        // Lấy config từ singleton; each session takes its own snapshot when it starts
+        audioConfig = AudioConfig.getInstance().snapshot();
         // Tạo background thread cho audio operations
         audioHandlerThread = new HandlerThread("AudioServiceThread");
         audioHandlerThread.start();
@@ -85,8 +395,14 @@ public class RNLiveAudioStreamService extends Service {
             startForeground(NOTIFICATION_ID, createNotificationSync());
         }
 
-        // Async start recording để không block main thread
-        startRecordingAsync();
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_PREPARE.equals(action)) {
+            prepareAsync();
+        } else if (!startRecordingAsync(intent != null ? intent.getIntExtra(EXTRA_SESSION_ID, 0) : 0)
+                && !isRecording && !isInitializing && !standby) {
+            // stop() came first; nothing else keeps this service up
+            stopSelf(startId);
+        }
 
         return START_NOT_STICKY;
     }
@@ -94,6 +410,8 @@ public class RNLiveAudioStreamService extends Service {
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         Log.d(TAG, "onTaskRemoved: user removed task; stopping service");
+        standby = false;
+        endLiveSessions();
 
         // Ngắt ghi âm + nhả tài nguyên
         stopRecording();                  // bạn đã có hàm này
@@ -112,12 +430,21 @@ public class RNLiveAudioStreamService extends Service {
     @Override
     public void onDestroy() {
         Log.d(TAG, "onDestroy");
+        if (running == this) {
+            running = null;
+        }
+        standby = false;
         stopRecording();
         try { stopForeground(true); } catch (Exception ignore) {}
         releaseWakeLockAsync();
+        if (audioHandler != null) {
+            // A prepared backend is not covered by stopRecording()
+            audioHandler.post(this::releaseCapture);
+        }
         if (audioHandlerThread != null) {
+            // Still runs the teardown and releases queued above, without holding up the main
+            // thread; the stopped event reports when they are done
             audioHandlerThread.quitSafely();
-            try { audioHandlerThread.join(500); } catch (InterruptedException ignored) {}
         }
         super.onDestroy();
     }
@@ -229,168 +556,652 @@ public class RNLiveAudioStreamService extends Service {
         }
     }
 
-    private void startRecordingAsync() {
+    /**
+     * Start session {@code id} in the background. Returns false if it was stopped before it
+     * got here.
+     */
+    private boolean startRecordingAsync(int id) {
+        RecordingSession starting = getLiveSession(id);
+        // A session with a config was already picked up by an earlier command
+        if (starting == null || starting.getConfig() != null) {
+            Log.d(TAG, "Session " + id + " was stopped before it started");
+            return false;
+        }
         if (isRecording || isInitializing) {
             Log.w(TAG, "Recording already in progress or initializing");
-            return;
+            dropSession(starting);
+            return false;
         }
 
+        starting.getStartupTimer().mark("startCommand");
+        // The session keeps these settings whatever init() changes meanwhile
+        audioConfig = AudioConfig.getInstance().snapshot();
+        starting.setConfig(audioConfig);
+        recording = starting;
         isInitializing = true;
 
         // Chạy audio initialization trên background thread
         audioHandler.post(() -> {
+            if (!isInitializing || recording != starting) {
+                // Stopped (or restarted) before it got here
+                return;
+            }
             try {
                 Log.d(TAG, "Starting audio initialization...");
 
-                // Permission check
-                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
-                        != PackageManager.PERMISSION_GRANTED) {
-                    Log.e(TAG, "Audio permission not granted");
-                    AudioEventEmitter.sendError("Audio permission not granted");
+                int actualBufferSize = prepareCapture(starting.getStartupTimer());
+                if (actualBufferSize < 0) {
                     isInitializing = false;
+                    dropSession(starting);
                     return;
                 }
 
-                // Audio configuration
-                int channelConfig = audioConfig.getChannels() == 1 ?
-                        AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
-                int audioFormat = audioConfig.getBitsPerSample() == 8 ?
-                        AudioFormat.ENCODING_PCM_8BIT : AudioFormat.ENCODING_PCM_16BIT;
-
-                // Calculate buffer size (có thể tốn thời gian)
-                int minBufferSize = AudioRecord.getMinBufferSize(
-                        audioConfig.getSampleRate(), channelConfig, audioFormat);
-
-                if (minBufferSize == AudioRecord.ERROR_BAD_VALUE) {
-                    Log.e(TAG, "Invalid audio configuration");
-                    AudioEventEmitter.sendError("Invalid audio configuration");
-                    isInitializing = false;
-                    return;
+                CapturePipeline session = new CapturePipeline(audioConfig, captureBackend, starting.getHealth(),
+                        starting.getStartupTimer(), pipelineListener);
+                int captureSampleRate = session.getCaptureSampleRate();
+                if (session.isConverting()) {
+                    Log.d(TAG, "Converting " + captureSampleRate + " Hz/" + audioConfig.getChannels() + "ch to "
+                            + audioConfig.getDeliverySampleRate() + " Hz/" + audioConfig.getDeliveryChannels() + "ch");
                 }
 
-                int actualBufferSize = Math.max(minBufferSize, audioConfig.getBufferSize());
-
-                Log.d(TAG, "Creating AudioRecord with buffer size: " + actualBufferSize);
-
-                // AudioRecord creation (có thể tốn thời gian nhất)
-                audioRecord = new AudioRecord(
-                        audioConfig.getAudioSource(),
-                        audioConfig.getSampleRate(),
-                        channelConfig,
-                        audioFormat,
-                        actualBufferSize
-                );
-
-                if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                    Log.e(TAG, "AudioRecord initialization failed");
-                    AudioEventEmitter.sendError("AudioRecord initialization failed");
-                    if (audioRecord != null) {
-                        audioRecord.release();
-                        audioRecord = null;
-                    }
-                    isInitializing = false;
-                    return;
+                if (audioConfig.isAdaptiveReadSize()) {
+                    Log.d(TAG, "Adaptive read size, starting at " + session.getReadSize() + " bytes");
                 }
 
+                SinkChannel[] channels = createSinkChannels(starting, session.getSlotSize());
+                sinkChannels = channels;
+                session.setOutputs(channels, useJsiTransport);
+
                 // Start recording
-                audioRecord.startRecording();
+                session.start();
+                pipeline = session;
+                starting.setPipeline(session);
                 isRecording = true;
                 isInitializing = false;
+                activeSessionId = starting.getId();
+
+                for (SinkChannel channel : channels) {
+                    channel.start();
+                }
+                if (packetChannel != null) {
+                    packetChannel.start();
+                }
 
-                // Start recording thread
-                recordingThread = new Thread(this::recordingRunnable, "AudioRecordingThread");
-                recordingThread.setPriority(Thread.MAX_PRIORITY); // High priority cho audio
-                recordingThread.start();
+                // Start capture and processing threads
+                int captureFrameSize = audioConfig.getChannels() * audioConfig.getSampleFormat().getBytesPerSample();
+                starting.getHealth().reset(captureSampleRate * captureFrameSize, captureFrameSize,
+                        session.getReadSize(), actualBufferSize);
+                processingThread = newAudioThread(session::runProcessing, "AudioProcessingThread",
+                        Process.THREAD_PRIORITY_AUDIO);
+                processingThread.start();
+                captureThread = newAudioThread(session::runCapture, "AudioCaptureThread",
+                        Process.THREAD_PRIORITY_URGENT_AUDIO);
+                captureThread.start();
+
+                if (audioConfig.getMetricsIntervalMs() > 0) {
+                    audioHandler.postDelayed(healthReporter, audioConfig.getMetricsIntervalMs());
+                }
 
                 Log.d(TAG, "Audio recording started successfully");
 
-                // Notify success trên main thread
+                // Notify success trên main thread, unless already stopped again
                 new Handler(Looper.getMainLooper()).post(() -> {
-                    AudioEventEmitter.sendRecordingState(true);
+                    if (isRecording && recording == starting) {
+                        AudioEventEmitter.sendRecordingState(true, false, starting.getId());
+                    }
                 });
 
             } catch (Exception e) {
                 Log.e(TAG, "Error in startRecordingAsync", e);
                 AudioEventEmitter.sendError("Error starting recording: " + e.getMessage());
                 isInitializing = false;
+                dropSession(starting);
 
                 // Cleanup on error
-                if (audioRecord != null) {
-                    try {
-                        audioRecord.release();
-                    } catch (Exception ignored) {}
-                    audioRecord = null;
+                releaseCapture();
+                finishSinkChannels();
+                if (encoderStage != null) {
+                    encoderStage.release();
+                    encoderStage = null;
                 }
+                finishPacketChannel();
             }
         });
+        return true;
     }
 
+    /**
+     * One channel per consumer: encoder or JS events (unless emitData is off or JSI is used),
+     * the WAV file, the upload and registered native sinks.
+     */
+    private SinkChannel[] createSinkChannels(RecordingSession session, int slotSize) throws IOException {
+        List<SinkChannel> channels = new ArrayList<>();
+        CaptureHealth health = session.getHealth();
+        Runnable onFirstEmit = () -> onFirstEmit(session);
+        int sampleRate = audioConfig.getDeliverySampleRate();
+        int channelCount = audioConfig.getDeliveryChannels();
+        SampleFormat format = audioConfig.getSampleFormat();
+        SinkOptions streamOptions = new SinkOptions()
+                .setMaxQueueBytes(audioConfig.getMaxQueueBytes())
+                .setOverflowPolicy(BoundedPcmQueue.OverflowPolicy.fromString(audioConfig.getOverflowPolicy()));
+
+        // With emitData off nothing is streamed to JS (e.g. file-only recording)
+        boolean emitData = audioConfig.isEmitData();
+        boolean encoded = !AudioConfig.CODEC_PCM.equals(audioConfig.getCodec());
+        boolean uploadPackets = audioConfig.getUploadUrl() != null && audioConfig.isUploadEncoded() && encoded;
+        if (encoded && (emitData || uploadPackets)) {
+            encoderStage = createEncoderStage(emitData);
+            channels.add(new SinkChannel("encoder", new EncoderSink(encoderStage), streamOptions,
+                    sampleRate, channelCount, format, slotSize, new File(getCacheDir(), SPILL_FILE_NAME),
+                    health, onFirstEmit));
+        }
+
+        useJsiTransport = emitData && encoderStage == null
+                && AudioConfig.TRANSPORT_JSI.equals(audioConfig.getTransport())
+                && JsiAudioTransport.isInstalled();
+        if (emitData && encoderStage == null && !useJsiTransport) {
+            // Never let a stalled JS thread grow memory without bound
+            jsSink = new JsEventSink(audioConfig.getBatchMs(), audioConfig.getMaxBatchBytes(), slotSize,
+                    audioConfig.isTimestamps());
+            SinkChannel js = new SinkChannel("js", jsSink, streamOptions, sampleRate, channelCount, format,
+                    slotSize, new File(getCacheDir(), SPILL_FILE_NAME), health, onFirstEmit);
+            session.setQueue(js.getQueue());
+            channels.add(js);
+        }
+
+        if (audioConfig.getWavFile() != null) {
+            // The file gets everything captured, independent of VAD, and spills rather than drops
+            channels.add(new SinkChannel("file",
+                    new WavFileSink(audioConfig.getWavFile(), audioConfig.getSegmentDurationMs(),
+                            audioConfig.getSegmentMaxBytes()),
+                    new SinkOptions().setBeforeVad(true).setOverflowPolicy(BoundedPcmQueue.OverflowPolicy.SPILL),
+                    sampleRate, channelCount, format, slotSize, spillFile("file"), null, null));
+        }
+
+        if (audioConfig.getUploadUrl() != null) {
+            StreamingUploadSink upload = createUploadSink(uploadPackets);
+            session.setUploadSink(upload);
+            SinkOptions uploadOptions = new SinkOptions().setMaxQueueBytes(audioConfig.getUploadMaxQueueBytes());
+            if (uploadPackets) {
+                // Packets are offered from the codec thread, see createEncoderStage
+                packetChannel = new SinkChannel("upload", upload, uploadOptions, sampleRate, channelCount, format,
+                        Math.max(slotSize, EncoderStage.MAX_PACKET_BYTES), spillFile("upload"), null, null);
+            } else {
+                uploadOptions.setSampleRate(audioConfig.getUploadSampleRate())
+                        .setChannels(audioConfig.getUploadChannels());
+                channels.add(new SinkChannel("upload", upload, uploadOptions, sampleRate, channelCount, format,
+                        slotSize, spillFile("upload"), null, null));
+            }
+        }
+
+        synchronized (customSinks) {
+            for (Map.Entry<String, SinkRegistration> entry : customSinks.entrySet()) {
+                SinkRegistration registration = entry.getValue();
+                channels.add(new SinkChannel(entry.getKey(), registration.sink, registration.options,
+                        sampleRate, channelCount, format, slotSize, spillFile(entry.getKey()), null, null));
+            }
+        }
+        for (SinkChannel channel : channels) {
+            channel.setErrorListener(sinkErrorListener);
+        }
+        if (packetChannel != null) {
+            packetChannel.setErrorListener(sinkErrorListener);
+        }
+        return channels.toArray(new SinkChannel[0]);
+    }
+
+    private StreamingUploadSink createUploadSink(boolean packets) {
+        Map<String, String> headers = new LinkedHashMap<>(audioConfig.getUploadHeaders());
+        int bytesPerSecond = 0;
+        if (packets) {
+            if (!headers.containsKey("X-Audio-Format")) {
+                headers.put("X-Audio-Format", audioConfig.getCodec());
+            }
+            bytesPerSecond = audioConfig.getBitRate() / 8;
+        }
+        SpillLog spill = null;
+        long spillMaxBytes = audioConfig.getUploadSpillMaxBytes();
+        if (spillMaxBytes > 0) {
+            File directory = new File(getCacheDir(), "rnliveaudiostream-upload");
+            if (directory.isDirectory() || directory.mkdirs()) {
+                // Segments of an earlier session that did not close cleanly
+                File[] stale = directory.listFiles();
+                if (stale != null) {
+                    for (File file : stale) {
+                        file.delete();
+                    }
+                }
+                long segmentBytes = Math.min(UPLOAD_SPILL_SEGMENT_BYTES, Math.max(64 * 1024, spillMaxBytes / 8));
+                spill = new SpillLog(directory, "upload", segmentBytes, Math.max(segmentBytes, spillMaxBytes));
+            } else {
+                Log.w(TAG, "Cannot create upload spill directory, keeping the backlog in memory only");
+            }
+        }
+        return new StreamingUploadSink(audioConfig.getUploadUrl(), headers, audioConfig.getUploadReplayMs(),
+                bytesPerSecond, UPLOAD_TIMEOUT_MS, UPLOAD_MIN_BACKOFF_MS, UPLOAD_MAX_BACKOFF_MS, null,
+                (state, error) -> {
+                    String name = state.name().toLowerCase(Locale.US);
+                    if (error != null) {
+                        Log.w(TAG, "Upload " + name + ": " + error);
+                    } else {
+                        Log.d(TAG, "Upload " + name);
+                    }
+                    AudioEventEmitter.sendUploadState(name, error);
+                }, spill);
+    }
+
+    private void finishPacketChannel() {
+        SinkChannel channel = packetChannel;
+        packetChannel = null;
+        if (channel != null) {
+            channel.finish();
+        }
+    }
+
+    private File spillFile(String sinkName) {
+        return new File(getCacheDir(), "rnliveaudiostream-spill-" + sinkName.replaceAll("[^A-Za-z0-9_-]", "_") + ".pcm");
+    }
+
+    // Closes every channel, letting each sink drain what is queued
+    private void finishSinkChannels() {
+        SinkChannel[] channels = sinkChannels;
+        sinkChannels = null;
+        if (jsSink != null) {
+            jsSink.drain();
+            jsSink = null;
+        }
+        if (channels != null) {
+            for (SinkChannel channel : channels) {
+                channel.finish();
+            }
+        }
+    }
+
+    private void prepareAsync() {
+        if (!isRecording && !isInitializing) {
+            audioConfig = AudioConfig.getInstance().snapshot();
+        }
+        PhaseTimer timer = startupTimer;
+        audioHandler.post(() -> {
+            if (isRecording || isInitializing) {
+                return;
+            }
+            try {
+                if (prepareCapture(timer) >= 0) {
+                    Log.d(TAG, "Capture prepared:\n" + timer.summary());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error preparing capture", e);
+                AudioEventEmitter.sendError("Error preparing recording: " + e.getMessage());
+                releaseCapture();
+            }
+        });
+    }
+
+    /**
+     * Open the capture backend for the current config, or keep the prepared one if it still
+     * matches. Runs on the audio thread. Returns the backend's buffer size, or -1 after
+     * reporting the error.
+     */
+    private int prepareCapture(PhaseTimer timer) {
+        int sampleRate = resolveCaptureSampleRate();
+        SampleFormat format = audioConfig.getSampleFormat();
+        // With an adaptive read size the backend is opened for the largest read
+        int readBytes = audioConfig.getMaxReadBytes(sampleRate);
+        String key = audioConfig.getCaptureBackend() + "/" + audioConfig.getAudioSource() + "/" + sampleRate + "/"
+                + audioConfig.getChannels() + "/" + format + "/" + readBytes;
+        if (captureBackend != null && key.equals(preparedKey)) {
+            timer.mark("reusePrepared");
+            return preparedBufferSize;
+        }
+        releaseCapture();
+
+        // Permission check
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Audio permission not granted");
+            AudioEventEmitter.sendError("Audio permission not granted");
+            return -1;
+        }
+        timer.mark("permission");
+
+        CaptureBackend backend = null;
+        int actualBufferSize = -1;
+        if (AudioConfig.CAPTURE_AAUDIO.equals(audioConfig.getCaptureBackend())) {
+            if (AAudioBackend.supports(format)) {
+                backend = new AAudioBackend();
+                try {
+                    actualBufferSize = backend.open(audioConfig.getAudioSource(), sampleRate,
+                            audioConfig.getChannels(), format, readBytes);
+                    timer.mark("aaudioInit");
+                } catch (IOException e) {
+                    Log.w(TAG, e.getMessage() + ", falling back to AudioRecord");
+                    backend.release();
+                    backend = null;
+                }
+            } else {
+                Log.w(TAG, "AAudio cannot capture " + format + " on this device, using AudioRecord");
+            }
+        }
+        if (backend == null) {
+            backend = new AudioRecordBackend(timer);
+            try {
+                actualBufferSize = backend.open(audioConfig.getAudioSource(), sampleRate,
+                        audioConfig.getChannels(), format, readBytes);
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage());
+                AudioEventEmitter.sendError(e.getMessage());
+                return -1;
+            }
+        }
+
+        captureBackend = backend;
+        preparedKey = key;
+        preparedBufferSize = actualBufferSize;
+        return actualBufferSize;
+    }
+
+    /**
+     * The configured rate, or the device's native rate when a different output rate is
+     * requested, so the platform does not resample first.
+     */
+    private int resolveCaptureSampleRate() {
+        if (audioConfig.getOutputSampleRate() <= 0) {
+            return audioConfig.getSampleRate();
+        }
+        try {
+            AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+            String nativeRate = audioManager != null
+                    ? audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE) : null;
+            if (nativeRate != null) {
+                return Integer.parseInt(nativeRate);
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid native sample rate", e);
+        }
+        return audioConfig.getSampleRate();
+    }
+
+    private void releaseCapture() {
+        if (captureBackend != null) {
+            captureBackend.release();
+            captureBackend = null;
+        }
+        preparedKey = null;
+    }
+
+    /**
+     * @param emitPackets send packets to JS; packets also go to the upload when it takes them
+     */
+    private EncoderStage createEncoderStage(boolean emitPackets) throws IOException {
+        String codecName = audioConfig.getCodec();
+        boolean opus = EncoderStage.CODEC_OPUS.equals(codecName);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                || (opus && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q)) {
+            throw new IllegalStateException(codecName + " encoding is not supported on this Android version");
+        }
+        if (audioConfig.getSampleFormat() != SampleFormat.PCM_16BIT) {
+            throw new IllegalStateException("Encoding requires 16-bit PCM");
+        }
+
+        int sampleRate = audioConfig.getDeliverySampleRate();
+        int channels = audioConfig.getDeliveryChannels();
+        // AAC-LC frames are 1024 samples, Opus defaults to 20 ms
+        int frameSamples = audioConfig.getFrameSize() > 0
+                ? audioConfig.getFrameSize() : (opus ? sampleRate / 50 : 1024);
+        MediaCodecEncoder codec = new MediaCodecEncoder(codecName, sampleRate, channels,
+                audioConfig.getBitRate(), frameSamples * channels * 2);
+        EncoderStage stage = new EncoderStage(codec, codecName, sampleRate, channels, 2, frameSamples,
+                new EncoderStage.PacketSink() {
+                    @Override
+                    public void onPacket(byte[] data, int length, long presentationTimeUs) {
+                        if (emitPackets) {
+                            AudioEventEmitter.sendPacket(data, length, presentationTimeUs);
+                        }
+                        SinkChannel upload = packetChannel;
+                        if (upload != null) {
+                            try {
+                                upload.offer(ByteBuffer.wrap(data, 0, length));
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        AudioEventEmitter.sendError(message);
+                    }
+                });
+        stage.start();
+        Log.d(TAG, "Encoder started: " + codecName + ", " + frameSamples + " samples/frame");
+        return stage;
+    }
+
+    /**
+     * End the session. Only what cannot block runs here, usually on the main thread; waiting
+     * for the threads and sinks to drain is left to {@link #teardown} on the audio thread.
+     */
     private void stopRecording() {
         if (!isRecording && !isInitializing) return;
 
         Log.d(TAG, "Stopping recording...");
+        RecordingSession stopping = recording;
+        if (stopping == null) return;
+        // Begins the stop phases here when the stop did not come through the module
+        endSession(stopping);
+        stopping.getStopTimer().mark("stopCommand");
         isRecording = false;
         isInitializing = false;
-
-        // Stop trên background thread để tránh block
+        activeSessionId = 0;
+        recording = null;
+        CapturePipeline session = pipeline;
+        if (session != null) {
+            session.stop();
+        }
+        // Interrupt capture thread; processing then finishes what was handed over and ends
+        Thread capture = captureThread;
+        if (capture != null) {
+            capture.interrupt();
+        }
         if (audioHandler != null) {
-            audioHandler.post(() -> {
-                if (audioRecord != null) {
-                    try {
-                        audioRecord.stop();
-                        audioRecord.release();
-                        Log.d(TAG, "AudioRecord stopped and released");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error stopping AudioRecord", e);
-                    } finally {
-                        audioRecord = null;
-                    }
-                }
-            });
+            audioHandler.removeCallbacks(healthReporter);
+            // Runs after a start that was still initializing, and before the next session's
+            audioHandler.post(() -> teardown(stopping));
+        }
+    }
+
+    // Audio thread: wait for the capture and processing threads, the sinks and the encoder,
+    // each for a bounded time, then report the session as stopped
+    private void teardown(RecordingSession stopped) {
+        PhaseTimer stopTimer = stopped.getStopTimer();
+        // A start still initializing when the stop came has finished since
+        boolean startedLate = isRecording;
+        isRecording = false;
+        if (activeSessionId == stopped.getId()) {
+            activeSessionId = 0;
+        }
+        stopped.setPipeline(null);
+        audioHandler.removeCallbacks(healthReporter);
+        CapturePipeline session = pipeline;
+        pipeline = null;
+        if (session != null) {
+            session.stop();
+        }
+
+        if (captureBackend != null) {
+            boolean keep = false;
+            try {
+                captureBackend.stop();
+                // Stays initialized for the next start()
+                keep = standby;
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping capture", e);
+            }
+            if (keep) {
+                Log.d(TAG, "Capture stopped, kept prepared");
+            } else {
+                releaseCapture();
+                Log.d(TAG, "Capture stopped and released");
+            }
         }
+        stopTimer.mark("audioRecordStop");
 
-        // Interrupt recording thread
-        if (recordingThread != null) {
-            recordingThread.interrupt();
+        Thread capture = captureThread;
+        if (capture != null) {
+            capture.interrupt();
             try {
-                recordingThread.join(1000); // Wait max 1 second
+                capture.join(1000); // Wait max 1 second
             } catch (InterruptedException e) {
-                Log.w(TAG, "Interrupted while waiting for recording thread to finish");
+                Log.w(TAG, "Interrupted while waiting for capture thread to finish");
             }
-            recordingThread = null;
+            captureThread = null;
+            stopTimer.mark("captureThread");
+        }
+        if (processingThread != null) {
+            try {
+                processingThread.join(PROCESSING_DRAIN_MS);
+                if (processingThread.isAlive()) {
+                    // Held up by a blocking sink: give up on the rest
+                    Log.w(TAG, "Processing thread did not drain in time");
+                    processingThread.interrupt();
+                    processingThread.join(500);
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for processing thread to finish");
+            }
+            processingThread = null;
+            stopTimer.mark("processingThread");
         }
-    }
 
-    private void recordingRunnable() {
-        Log.d(TAG, "Recording thread started");
-        byte[] buffer = new byte[audioConfig.getBufferSize()];
-        int bufferCount = 0;
-        // Skip first buffers to eliminate click sound
-        final int SKIP_BUFFER_COUNT = 2;
+        // Let every sink drain what is queued; the encoder sink signals end of stream on close
+        if (sinkChannels != null) {
+            finishSinkChannels();
+            stopTimer.mark("sinkDrain");
+        }
 
-        while (isRecording && audioRecord != null && !Thread.currentThread().isInterrupted()) {
+        // Wait for the last encoded packets, then free the codec
+        if (encoderStage != null) {
             try {
-                int bytesRead = audioRecord.read(buffer, 0, buffer.length);
-
-                if (bytesRead > 0) {
-                    if (++bufferCount > SKIP_BUFFER_COUNT) {
-                        String base64Data = Base64.encodeToString(buffer, 0, bytesRead, Base64.NO_WRAP);
-                        AudioEventEmitter.sendAudioData(base64Data);
-                    }
-                } else if (bytesRead < 0) {
-                    Log.e(TAG, "Error reading audio data: " + bytesRead);
-                    AudioEventEmitter.sendError("Error reading audio data: " + bytesRead);
-                    break;
-                }
-            } catch (Exception e) {
-                if (!Thread.currentThread().isInterrupted()) {
-                    Log.e(TAG, "Exception in recording thread", e);
-                    AudioEventEmitter.sendError("Recording error: " + e.getMessage());
+                if (!encoderStage.awaitEndOfStream(ENCODER_DRAIN_MS)) {
+                    Log.w(TAG, "Encoder did not drain in time");
                 }
-                break;
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while draining encoder");
+            }
+            encoderStage.release();
+            encoderStage = null;
+            stopTimer.mark("encoderDrain");
+        }
+        if (packetChannel != null) {
+            finishPacketChannel();
+            stopTimer.mark("uploadDrain");
+        }
+
+        Log.d(TAG, "Stop phases:\n" + stopTimer.summary());
+        if (stopped.getConfig() != null && stopped.getConfig().isEmitMetrics()) {
+            AudioEventEmitter.sendMetrics("stop", stopTimer);
+        }
+        // Only if no later session has started reporting since
+        if (startedLate && activeSessionId == 0 && !isInitializing) {
+            AudioEventEmitter.sendRecordingState(false, false, 0);
+        }
+        AudioEventEmitter.sendStopped(stopped.getId());
+    }
+
+    private void setPaused(boolean paused) {
+        CapturePipeline session = pipeline;
+        RecordingSession current = recording;
+        if (!isRecording || session == null || current == null || !session.setPaused(paused)) {
+            return;
+        }
+        Log.d(TAG, paused ? "Pausing recording" : "Resuming recording");
+        AudioEventEmitter.sendRecordingState(true, paused, current.getId());
+    }
+
+    private final Runnable healthReporter = new Runnable() {
+        @Override
+        public void run() {
+            RecordingSession current = recording;
+            if (!isRecording || current == null) {
+                return;
             }
+            AudioEventEmitter.sendHealth(current.getHealth(), current.getQueue(), current.getUploadSink());
+            audioHandler.postDelayed(this, audioConfig.getMetricsIntervalMs());
+        }
+    };
+
+    // Called by whichever output gets the first chunk of the session out, possibly from a
+    // sink thread
+    private void onFirstEmit(@Nullable RecordingSession session) {
+        if (session == null || !session.markFirstEmit()) {
+            return;
+        }
+        PhaseTimer timer = session.getStartupTimer();
+        timer.mark("firstEmit");
+        Log.d(TAG, "Startup phases:\n" + timer.summary());
+        if (session.getConfig() != null && session.getConfig().isEmitMetrics()) {
+            AudioEventEmitter.sendMetrics("start", timer);
         }
+    }
 
-        Log.d(TAG, "Recording thread finished");
+    // Java thread priorities barely matter to the Android scheduler; the thread's nice value,
+    // which has to be set from the thread itself, does
+    private static Thread newAudioThread(Runnable body, String name, int priority) {
+        return new Thread(() -> {
+            Process.setThreadPriority(priority);
+            Log.d(TAG, name + " started");
+            body.run();
+            Log.d(TAG, name + " finished");
+        }, name);
     }
+
+    private final SinkChannel.ErrorListener sinkErrorListener =
+            (name, error) -> AudioEventEmitter.sendError("Sink " + name + " failed: " + error.getMessage());
+
+    // Session events from the capture and processing threads
+    private final CapturePipeline.Listener pipelineListener = new CapturePipeline.Listener() {
+        @Override
+        public void onError(String message, @Nullable Throwable cause) {
+            Log.e(TAG, message, cause);
+            AudioEventEmitter.sendError(message);
+        }
+
+        @Override
+        public void onLevel(LevelMeter meter) {
+            AudioEventEmitter.sendLevel(meter);
+        }
+
+        @Override
+        public void onSpeechStart(float levelDb) {
+            AudioEventEmitter.sendSpeechStart(levelDb);
+        }
+
+        @Override
+        public void onSpeechEnd(float levelDb) {
+            AudioEventEmitter.sendSpeechEnd(levelDb);
+        }
+
+        @Override
+        public void onLookbackState(boolean triggered, String trigger) {
+            AudioEventEmitter.sendLookbackState(triggered, trigger);
+        }
+
+        @Override
+        public void onRingAttached(AudioBufferRing ring) {
+            JsiAudioTransport.attach(ring);
+        }
+
+        @Override
+        public void onRingDetached() {
+            JsiAudioTransport.detach();
+        }
+
+        @Override
+        public void onChunk(AudioBufferRing ring, long sequence) {
+            onFirstEmit(recording);
+            AudioEventEmitter.sendChunk(sequence, ring.offsetOf(sequence), ring.length(sequence),
+                    ring.framePosition(sequence), ring.timeNanos(sequence), ring.gaps(sequence));
+        }
+    };
 }
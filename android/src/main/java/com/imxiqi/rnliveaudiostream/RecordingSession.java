@@ -0,0 +1,62 @@
+package com.imxiqi.rnliveaudiostream;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything that belongs to one recording, from start() until its teardown is done.
+ *
+ * start() and restart() create one per session id. Timers, health counters and stats
+ * sources live here rather than in statics, so a session still draining in the background
+ * keeps writing to its own counters while the next one starts.
+ *
+ * Only one session captures at a time; the JS events of all sessions share the one
+ * {@link AudioEventEmitter}.
+ */
+public class RecordingSession {
+    private final int id;
+    // Phases from the module call to the first chunk out
+    private final PhaseTimer startupTimer = new PhaseTimer();
+    // Phases from the stop call until everything is released
+    private final PhaseTimer stopTimer = new PhaseTimer();
+    private final CaptureHealth health = new CaptureHealth();
+    private final AtomicBoolean firstEmitReported = new AtomicBoolean();
+
+    // Snapshot taken when the service picks the session up
+    private volatile AudioConfig config;
+    // JS event queue and upload, for stats
+    private volatile BoundedPcmQueue queue;
+    private volatile StreamingUploadSink uploadSink;
+    private volatile CapturePipeline pipeline;
+
+    RecordingSession(int id) {
+        this.id = id;
+    }
+
+    public int getId() { return id; }
+    public PhaseTimer getStartupTimer() { return startupTimer; }
+    public PhaseTimer getStopTimer() { return stopTimer; }
+    public CaptureHealth getHealth() { return health; }
+
+    @Nullable
+    public AudioConfig getConfig() { return config; }
+    void setConfig(AudioConfig config) { this.config = config; }
+
+    @Nullable
+    public BoundedPcmQueue getQueue() { return queue; }
+    void setQueue(BoundedPcmQueue queue) { this.queue = queue; }
+
+    @Nullable
+    public StreamingUploadSink getUploadSink() { return uploadSink; }
+    void setUploadSink(StreamingUploadSink uploadSink) { this.uploadSink = uploadSink; }
+
+    @Nullable
+    public CapturePipeline getPipeline() { return pipeline; }
+    void setPipeline(CapturePipeline pipeline) { this.pipeline = pipeline; }
+
+    /** True the first time only: startup metrics are reported once per session */
+    boolean markFirstEmit() {
+        return firstEmitReported.compareAndSet(false, true);
+    }
+}
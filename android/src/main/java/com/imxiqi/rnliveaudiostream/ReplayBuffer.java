@@ -0,0 +1,182 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * The most recent chunks of an upload, kept so they can be sent again after a reconnect.
+ *
+ * Chunks keep their boundaries (one WebSocket message each) and their byte offset in the
+ * stream. A send cursor marks the next chunk to go out: {@link #peek} / {@link #advance}
+ * walk it forward, {@link #rewind} moves it back to the oldest chunk still held. When the
+ * buffer is full the oldest chunks are overwritten; those the cursor had not reached yet
+ * are counted as dropped.
+ *
+ * Allocation-free after construction. Single thread.
+ */
+public class ReplayBuffer {
+    private static final int HEADER_SIZE = 4;
+
+    private final byte[] storage;
+    private int head;           // oldest chunk
+    private int used;
+    private int chunkCount;
+    private long headOffset;    // stream offset of the oldest chunk
+
+    private int cursor;         // next chunk to send
+    private int cursorIndex;    // its index from head, == chunkCount when all were sent
+    private long cursorOffset;
+    private long droppedBytes;
+    private long nextOffset;
+
+    public ReplayBuffer(int capacity) {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        storage = new byte[capacity];
+    }
+
+    public int getCapacity() { return storage.length; }
+    public int getChunkCount() { return chunkCount; }
+    public long getDroppedBytes() { return droppedBytes; }
+    /** Stream offset of the next chunk {@link #peek} returns. */
+    public long getCursorOffset() { return cursorOffset; }
+    /** Stream offset after the last appended chunk. */
+    public long getEndOffset() { return nextOffset; }
+
+    public boolean hasPending() {
+        return cursorIndex < chunkCount;
+    }
+
+    /** Bytes appended that the cursor has not reached yet */
+    public long getPendingBytes() {
+        return nextOffset - cursorOffset;
+    }
+
+    /**
+     * Append a chunk, overwriting the oldest ones if needed. A chunk larger than the whole
+     * buffer is dropped.
+     */
+    public void append(byte[] data, int offset, int length) {
+        int needed = length + HEADER_SIZE;
+        if (needed > storage.length) {
+            droppedBytes += length;
+            return;
+        }
+        while (storage.length - used < needed) {
+            evict();
+        }
+
+        int tail = (head + used) % storage.length;
+        writeHeader(tail, length);
+        int position = (tail + HEADER_SIZE) % storage.length;
+        int first = Math.min(length, storage.length - position);
+        System.arraycopy(data, offset, storage, position, first);
+        System.arraycopy(data, offset + first, storage, 0, length - first);
+        if (cursorIndex == chunkCount) {
+            cursor = tail;
+            cursorOffset = nextOffset;
+        }
+        used += needed;
+        chunkCount++;
+        nextOffset += length;
+    }
+
+    /**
+     * Length of the chunk at the cursor, or -1 if everything was sent.
+     */
+    public int peekLength() {
+        return hasPending() ? readHeader(cursor) : -1;
+    }
+
+    /**
+     * Copy the chunk at the cursor into {@code dst} without moving the cursor. Returns its
+     * length, or -1 if everything was sent.
+     */
+    public int peek(byte[] dst) {
+        if (!hasPending()) {
+            return -1;
+        }
+        int length = readHeader(cursor);
+        if (length > dst.length) {
+            throw new IllegalArgumentException("Destination too small for chunk of " + length);
+        }
+        int position = (cursor + HEADER_SIZE) % storage.length;
+        int first = Math.min(length, storage.length - position);
+        System.arraycopy(storage, position, dst, 0, first);
+        System.arraycopy(storage, 0, dst, first, length - first);
+        return length;
+    }
+
+    /**
+     * Mark the chunk at the cursor as sent.
+     */
+    public void advance() {
+        if (!hasPending()) {
+            return;
+        }
+        int length = readHeader(cursor);
+        cursor = (cursor + HEADER_SIZE + length) % storage.length;
+        cursorIndex++;
+        cursorOffset += length;
+    }
+
+    /**
+     * Move the cursor back to the oldest chunk held, so it is all sent again. Returns the
+     * number of bytes that will be re-sent.
+     */
+    public long rewind() {
+        long replayed = cursorOffset - headOffset;
+        cursor = head;
+        cursorIndex = 0;
+        cursorOffset = headOffset;
+        return replayed;
+    }
+
+    public void clear() {
+        reset(0);
+        droppedBytes = 0;
+    }
+
+    /**
+     * Drop every chunk and continue at stream offset {@code offset}, e.g. after chunks were
+     * kept elsewhere. The dropped-bytes count is kept.
+     */
+    public void reset(long offset) {
+        head = 0;
+        used = 0;
+        chunkCount = 0;
+        cursor = 0;
+        cursorIndex = 0;
+        headOffset = offset;
+        cursorOffset = offset;
+        nextOffset = offset;
+    }
+
+    private void evict() {
+        int length = readHeader(head);
+        if (cursorIndex == 0) {
+            // Not sent yet
+            droppedBytes += length;
+            cursor = (head + HEADER_SIZE + length) % storage.length;
+            cursorOffset += length;
+        } else {
+            cursorIndex--;
+        }
+        head = (head + HEADER_SIZE + length) % storage.length;
+        used -= HEADER_SIZE + length;
+        chunkCount--;
+        headOffset += length;
+    }
+
+    private void writeHeader(int position, int value) {
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            storage[(position + i) % storage.length] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private int readHeader(int position) {
+        int value = 0;
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            value |= (storage[(position + i) % storage.length] & 0xff) << (8 * i);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,214 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.util.Arrays;
+
+/**
+ * Polyphase windowed-sinc sample rate converter for interleaved PCM.
+ *
+ * The rate ratio is reduced to L/M; output sample {@code n} sits at input time {@code n*M/L}
+ * and is filtered with one of L precomputed Kaiser-windowed sinc phases (quantized to
+ * {@link #MAX_PHASES} for awkward ratios). The low-pass cutoff follows the lower of the two
+ * Nyquist frequencies, and the filter is lengthened in proportion when decimating so the
+ * transition band stays narrow.
+ *
+ * Streaming: filter history is carried across calls, so chunks can be of any size.
+ * Allocation-free after construction. Not thread-safe.
+ */
+public class Resampler {
+    static final int MAX_PHASES = 1024;
+    // Taps on each side of the center at 1:1; multiplied by the decimation ratio
+    private static final int BASE_HALF_TAPS = 16;
+    private static final double KAISER_BETA = 8.0;
+    // Fraction of the output Nyquist frequency kept as passband
+    private static final double ROLLOFF = 0.9;
+    private static final int BLOCK_FRAMES = 1024;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int channels;
+    private final int up;       // L
+    private final int down;     // M
+    private final int halfTaps;
+    private final int taps;
+    private final int phases;
+    private final float[] coefficients;  // [phase][tap]
+
+    private final float[][] history;
+    private int filled;     // valid frames in history
+    private int position;   // history index of the next output's integer input time
+    private int phase;      // 0..up-1, fractional part of the next output's input time
+
+    public Resampler(int inputRate, int outputRate, int channels) {
+        if (inputRate <= 0 || outputRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid resampler config: " + inputRate + " -> "
+                    + outputRate + " Hz, " + channels + " channels");
+        }
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.channels = channels;
+        int g = gcd(inputRate, outputRate);
+        this.up = outputRate / g;
+        this.down = inputRate / g;
+
+        double ratio = Math.max(1.0, (double) down / up);
+        this.halfTaps = (int) Math.ceil(BASE_HALF_TAPS * ratio);
+        this.taps = 2 * halfTaps;
+        this.phases = Math.min(up, MAX_PHASES);
+        this.coefficients = new float[phases * taps];
+        // Cutoff in cycles per input sample
+        double cutoff = 0.5 * ROLLOFF / ratio;
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int p = 0; p < phases; p++) {
+            double fraction = (double) p / phases;
+            double sum = 0;
+            for (int j = 0; j < taps; j++) {
+                // Distance from the output time to input tap j
+                double t = fraction + halfTaps - 1 - j;
+                double w = t / halfTaps;
+                double window = Math.abs(w) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - w * w)) / i0Beta;
+                double h = 2 * cutoff * sinc(2 * cutoff * t) * window;
+                coefficients[p * taps + j] = (float) h;
+                sum += h;
+            }
+            // Unity gain at DC for every phase
+            for (int j = 0; j < taps; j++) {
+                coefficients[p * taps + j] /= (float) sum;
+            }
+        }
+
+        this.history = new float[channels][taps + BLOCK_FRAMES];
+        reset();
+    }
+
+    public int getInputRate() { return inputRate; }
+    public int getOutputRate() { return outputRate; }
+    public int getChannels() { return channels; }
+
+    /**
+     * Upper bound of output frames for {@code inputFrames} input frames.
+     */
+    public int getMaxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * up + down - 1) / down) + 1;
+    }
+
+    public void reset() {
+        for (float[] channel : history) {
+            Arrays.fill(channel, 0f);
+        }
+        // Pre-roll of zeros so the first output lines up with the first input frame
+        filled = halfTaps - 1;
+        position = halfTaps - 1;
+        phase = 0;
+    }
+
+    /**
+     * Resample {@code frames} interleaved frames. Returns the number of frames written to
+     * {@code output}, which must hold {@link #getMaxOutputFrames} frames.
+     */
+    public int process(short[] input, int frames, short[] output) {
+        int written = 0;
+        for (int offset = 0; offset < frames; offset += BLOCK_FRAMES) {
+            int block = Math.min(BLOCK_FRAMES, frames - offset);
+            for (int c = 0; c < channels; c++) {
+                float[] h = history[c];
+                int src = offset * channels + c;
+                for (int i = 0; i < block; i++, src += channels) {
+                    h[filled + i] = input[src];
+                }
+            }
+            filled += block;
+            written = drain(output, null, written);
+        }
+        return written;
+    }
+
+    /**
+     * Float variant of {@link #process(short[], int, short[])}.
+     */
+    public int process(float[] input, int frames, float[] output) {
+        int written = 0;
+        for (int offset = 0; offset < frames; offset += BLOCK_FRAMES) {
+            int block = Math.min(BLOCK_FRAMES, frames - offset);
+            for (int c = 0; c < channels; c++) {
+                float[] h = history[c];
+                int src = offset * channels + c;
+                for (int i = 0; i < block; i++, src += channels) {
+                    h[filled + i] = input[src];
+                }
+            }
+            filled += block;
+            written = drain(null, output, written);
+        }
+        return written;
+    }
+
+    // Produce every output whose filter window is fully inside the history, then drop consumed input
+    private int drain(short[] shortOutput, float[] floatOutput, int written) {
+        while (position + halfTaps < filled) {
+            int base = (phases == up ? phase : (int) ((long) phase * phases / up)) * taps;
+            int start = position - halfTaps + 1;
+            int dst = written * channels;
+            for (int c = 0; c < channels; c++) {
+                float[] h = history[c];
+                float acc = 0;
+                for (int j = 0; j < taps; j++) {
+                    acc += coefficients[base + j] * h[start + j];
+                }
+                if (shortOutput != null) {
+                    int v = Math.round(acc);
+                    shortOutput[dst + c] = (short) (v > Short.MAX_VALUE ? Short.MAX_VALUE
+                            : (v < Short.MIN_VALUE ? Short.MIN_VALUE : v));
+                } else {
+                    floatOutput[dst + c] = acc;
+                }
+            }
+            written++;
+            phase += down;
+            position += phase / up;
+            phase %= up;
+        }
+
+        // Keep only what the next outputs still need
+        int keep = position - halfTaps + 1;
+        if (keep > 0) {
+            // keep <= filled: the filter is always wider than one step of the input position
+            int remaining = filled - keep;
+            for (float[] h : history) {
+                System.arraycopy(h, keep, h, 0, remaining);
+            }
+            filled = remaining;
+            position -= keep;
+        }
+        return written;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
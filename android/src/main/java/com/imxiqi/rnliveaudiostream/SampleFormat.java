@@ -0,0 +1,45 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.media.AudioFormat;
+import android.os.Build;
+
+/**
+ * PCM sample encodings supported for capture, with their AudioRecord encoding and the
+ * minimum Android version that accepts them.
+ */
+public enum SampleFormat {
+    PCM_8BIT(1, false, AudioFormat.ENCODING_PCM_8BIT, 1),
+    PCM_16BIT(2, false, AudioFormat.ENCODING_PCM_16BIT, 1),
+    PCM_24BIT(3, false, AudioFormat.ENCODING_PCM_24BIT_PACKED, Build.VERSION_CODES.S),
+    PCM_32BIT(4, false, AudioFormat.ENCODING_PCM_32BIT, Build.VERSION_CODES.S),
+    PCM_FLOAT(4, true, AudioFormat.ENCODING_PCM_FLOAT, Build.VERSION_CODES.M);
+
+    private final int bytesPerSample;
+    private final boolean floatingPoint;
+    private final int encoding;
+    private final int minSdk;
+
+    SampleFormat(int bytesPerSample, boolean floatingPoint, int encoding, int minSdk) {
+        this.bytesPerSample = bytesPerSample;
+        this.floatingPoint = floatingPoint;
+        this.encoding = encoding;
+        this.minSdk = minSdk;
+    }
+
+    public int getBytesPerSample() { return bytesPerSample; }
+    public boolean isFloat() { return floatingPoint; }
+    public int getEncoding() { return encoding; }
+    public int getMinSdk() { return minSdk; }
+
+    public static SampleFormat from(int bitsPerSample, boolean floatingPoint) {
+        if (floatingPoint) {
+            return PCM_FLOAT;
+        }
+        switch (bitsPerSample) {
+            case 8: return PCM_8BIT;
+            case 24: return PCM_24BIT;
+            case 32: return PCM_32BIT;
+            default: return PCM_16BIT;
+        }
+    }
+}
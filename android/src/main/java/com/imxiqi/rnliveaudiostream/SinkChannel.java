@@ -0,0 +1,281 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.util.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Feeds one {@link AudioSink} from the processing thread through its own bounded queue and
+ * thread, converting to the sink's format on the way.
+ *
+ * The processing thread only copies each chunk into the queue; what happens when the sink
+ * falls behind is decided by that queue's overflow policy, so one slow sink never holds up
+ * capture or the other sinks. A sink that throws is closed and receives nothing more.
+ *
+ * For a {@link StampedSink} every chunk is queued behind a small header with its frame
+ * position, capture time and gap count, which the sink thread strips again.
+ */
+public class SinkChannel {
+    /**
+     * Told on the sink thread when the sink failed and was closed.
+     */
+    public interface ErrorListener {
+        void onSinkError(String name, Exception error);
+    }
+
+    private static final String TAG = "SinkChannel";
+    private static final long POLL_MS = 100;
+    private static final long JOIN_MS = 1000;
+    // framePosition, timeNanos, gaps
+    private static final int STAMP_SIZE = 24;
+
+    private final String name;
+    private final AudioSink sink;
+    private final BoundedPcmQueue queue;
+    private final boolean beforeVad;
+    private final int inputChannels;
+    private final int inputSampleRate;
+    private final int sampleRate;
+    private final int channels;
+    private final SampleFormat format;
+    private final CaptureHealth health;
+    private final Runnable onFirstWrite;
+    // Header plus chunk, assembled on the processing thread; null unless the sink is stamped
+    private final ByteBuffer stamped;
+
+    // Sink thread only
+    private final byte[] chunk;
+    private final ByteBuffer stampView;
+    private final FormatConverter converter;
+    private final float[] samples;
+    private final float[] converted;
+    private final byte[] output;
+    private final ByteBuffer chunkView;
+    private final ByteBuffer outputView;
+    // Frames into and out of the converter so far, for its filter delay
+    private long convertedIn;
+    private long convertedOut;
+
+    private Thread thread;
+    // Whoever comes last of finish() and the exiting sink thread frees the queue
+    private boolean finished;
+    private boolean exited;
+    private volatile ErrorListener errorListener;
+    private volatile boolean failed;
+    private volatile long bytesWritten;
+
+    /**
+     * @param sampleRate   rate of the PCM offered to the channel
+     * @param channels     channel count of the PCM offered to the channel
+     * @param maxChunkBytes largest chunk that will be offered
+     * @param spillFile    used with the spill overflow policy
+     * @param health       records write latency and emitted bytes, may be null
+     * @param onFirstWrite run on the sink thread after the first chunk was written, may be null
+     */
+    public SinkChannel(String name, AudioSink sink, SinkOptions options, int sampleRate, int channels,
+                       SampleFormat format, int maxChunkBytes, File spillFile,
+                       CaptureHealth health, Runnable onFirstWrite) {
+        this.name = name;
+        this.sink = sink;
+        this.beforeVad = options.isBeforeVad();
+        this.inputChannels = channels;
+        this.inputSampleRate = sampleRate;
+        this.sampleRate = options.getSampleRate() > 0 ? options.getSampleRate() : sampleRate;
+        this.channels = options.getChannels() > 0 ? options.getChannels() : channels;
+        this.format = format;
+        this.health = health;
+        this.onFirstWrite = onFirstWrite;
+        int header = sink instanceof StampedSink ? STAMP_SIZE : 0;
+        this.stamped = header > 0
+                ? ByteBuffer.allocateDirect(header + maxChunkBytes).order(ByteOrder.nativeOrder()) : null;
+        this.queue = new BoundedPcmQueue(Math.max(options.getMaxQueueBytes(), 4 * (header + maxChunkBytes + 4)),
+                options.getOverflowPolicy(), spillFile);
+
+        this.chunk = new byte[header + maxChunkBytes];
+        // The header is written in native order by the processing thread
+        this.stampView = ByteBuffer.wrap(chunk).order(ByteOrder.nativeOrder());
+        if (this.sampleRate != sampleRate || this.channels != channels) {
+            int frames = maxChunkBytes / (format.getBytesPerSample() * channels);
+            converter = new FormatConverter(sampleRate, channels, this.sampleRate, this.channels, frames);
+            samples = new float[frames * channels];
+            converted = new float[converter.getMaxOutputFrames() * this.channels];
+            output = new byte[converted.length * format.getBytesPerSample()];
+            // PcmSamples follows the buffer byte order; PCM is little-endian like the ring
+            chunkView = ByteBuffer.wrap(chunk, header, maxChunkBytes).slice().order(ByteOrder.nativeOrder());
+            outputView = ByteBuffer.wrap(output).order(ByteOrder.nativeOrder());
+        } else {
+            converter = null;
+            samples = null;
+            converted = null;
+            output = null;
+            chunkView = null;
+            outputView = null;
+        }
+    }
+
+    public String getName() { return name; }
+    public AudioSink getSink() { return sink; }
+    public BoundedPcmQueue getQueue() { return queue; }
+    public boolean isBeforeVad() { return beforeVad; }
+    public boolean isFailed() { return failed; }
+    public long getBytesWritten() { return bytesWritten; }
+
+    public void setErrorListener(ErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "AudioSink-" + name);
+        thread.start();
+    }
+
+    /**
+     * Queue the remaining bytes of {@code pcm}; its position is not changed. Called from the
+     * processing thread. Returns false if the chunk was dropped.
+     */
+    public boolean offer(ByteBuffer pcm) throws InterruptedException {
+        return offer(pcm, -1, -1, 0);
+    }
+
+    /**
+     * Queue a chunk along with where it belongs in the stream.
+     *
+     * @param framePosition stream frame the chunk starts at, in the rate offered to the channel
+     * @param timeNanos     capture time of its first frame
+     * @param gaps          capture overruns so far
+     */
+    public boolean offer(ByteBuffer pcm, long framePosition, long timeNanos, long gaps)
+            throws InterruptedException {
+        if (failed) {
+            return false;
+        }
+        if (stamped == null) {
+            return queue.offer(pcm);
+        }
+        stamped.clear();
+        stamped.putLong(framePosition);
+        stamped.putLong(timeNanos);
+        stamped.putLong(gaps);
+        stamped.put(pcm.duplicate());
+        stamped.flip();
+        return queue.offer(stamped);
+    }
+
+    /**
+     * Stop accepting chunks, let the sink drain what is queued, then free the queue. If the
+     * sink does not finish in time it is interrupted, and the queue is freed once its thread
+     * has actually exited.
+     */
+    public void finish() {
+        queue.close();
+        Thread sinkThread = thread;
+        thread = null;
+        if (sinkThread != null) {
+            try {
+                sinkThread.join(JOIN_MS);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for sink " + name);
+            }
+            if (sinkThread.isAlive()) {
+                Log.w(TAG, "Sink " + name + " did not drain in time");
+                sinkThread.interrupt();
+            }
+        }
+        synchronized (this) {
+            finished = true;
+            if (sinkThread == null || exited) {
+                queue.dispose();
+            }
+        }
+    }
+
+    private void run() {
+        Log.d(TAG, "Sink " + name + " started");
+        boolean firstWrite = true;
+        try {
+            sink.open(sampleRate, channels, format);
+            while (true) {
+                int length = queue.take(chunk, POLL_MS);
+                if (length < 0) {
+                    break;
+                }
+                if (length == 0) {
+                    sink.onIdle(System.nanoTime());
+                    continue;
+                }
+
+                int offset = 0;
+                long framePosition = 0;
+                long timeNanos = 0;
+                long gaps = 0;
+                if (stamped != null) {
+                    framePosition = stampView.getLong(0);
+                    timeNanos = stampView.getLong(8);
+                    gaps = stampView.getLong(16) + queue.getDroppedChunks();
+                    offset = STAMP_SIZE;
+                    length -= STAMP_SIZE;
+                }
+
+                byte[] data = chunk;
+                if (converter != null) {
+                    if (framePosition >= 0) {
+                        // The output trails the input by the filter delay, like in
+                        // CapturePipeline, so the chunk moves back by it
+                        long delay = convertedIn * sampleRate / inputSampleRate - convertedOut;
+                        framePosition = framePosition * sampleRate / inputSampleRate - delay;
+                        timeNanos -= delay * 1000000000L / sampleRate;
+                    }
+                    int count = PcmSamples.toFloats(chunkView, length, format, samples);
+                    int inputFrames = count / inputChannels;
+                    int frames = converter.process(samples, inputFrames, converted);
+                    convertedIn += inputFrames;
+                    convertedOut += frames;
+                    if (frames == 0) {
+                        continue;
+                    }
+                    length = PcmSamples.fromFloats(converted, frames * channels, format, outputView);
+                    data = output;
+                    offset = 0;
+                }
+
+                long start = System.nanoTime();
+                if (stamped != null) {
+                    ((StampedSink) sink).write(data, offset, length, framePosition, timeNanos, gaps);
+                } else {
+                    sink.write(data, 0, length);
+                }
+                bytesWritten += length;
+                if (health != null) {
+                    health.onEmitted(length, System.nanoTime() - start);
+                }
+                if (firstWrite) {
+                    firstWrite = false;
+                    if (onFirstWrite != null) {
+                        onFirstWrite.run();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Sink " + name + " interrupted");
+        } catch (Exception e) {
+            failed = true;
+            Log.e(TAG, "Sink " + name + " failed", e);
+            ErrorListener listener = errorListener;
+            if (listener != null) {
+                listener.onSinkError(name, e);
+            }
+        } finally {
+            sink.close();
+            synchronized (this) {
+                exited = true;
+                if (finished) {
+                    // finish() gave up waiting; the queue is no longer read
+                    queue.dispose();
+                }
+            }
+        }
+        Log.d(TAG, "Sink " + name + " finished");
+    }
+}
@@ -0,0 +1,65 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Per-sink settings: the format it wants and how its queue behaves when it falls behind.
+ */
+public class SinkOptions {
+    private int sampleRate = 0;
+    private int channels = 0;
+    private int maxQueueBytes = 1024 * 1024;
+    private BoundedPcmQueue.OverflowPolicy overflowPolicy = BoundedPcmQueue.OverflowPolicy.DROP_OLDEST;
+    private boolean beforeVad = false;
+
+    public int getSampleRate() { return sampleRate; }
+    public int getChannels() { return channels; }
+    public int getMaxQueueBytes() { return maxQueueBytes; }
+    public BoundedPcmQueue.OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+    public boolean isBeforeVad() { return beforeVad; }
+
+    /**
+     * Resample to this rate for this sink only; 0 keeps the delivery rate.
+     */
+    public SinkOptions setSampleRate(int sampleRate) {
+        if (sampleRate >= 0) {
+            this.sampleRate = sampleRate;
+        }
+        return this;
+    }
+
+    /**
+     * Mix to this channel count for this sink only; 0 keeps the delivery channels.
+     */
+    public SinkOptions setChannels(int channels) {
+        if (channels >= 0 && channels <= 2) {
+            this.channels = channels;
+        }
+        return this;
+    }
+
+    public SinkOptions setMaxQueueBytes(int maxQueueBytes) {
+        if (maxQueueBytes > 0) {
+            this.maxQueueBytes = maxQueueBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Note that {@link BoundedPcmQueue.OverflowPolicy#BLOCK} holds up the processing thread,
+     * and with it every other sink, while this sink is behind. Reads go on regardless; what
+     * processing cannot take in time is dropped and counted as a gap.
+     */
+    public SinkOptions setOverflowPolicy(BoundedPcmQueue.OverflowPolicy overflowPolicy) {
+        if (overflowPolicy != null) {
+            this.overflowPolicy = overflowPolicy;
+        }
+        return this;
+    }
+
+    /**
+     * Receive everything captured, including what VAD drops as silence.
+     */
+    public SinkOptions setBeforeVad(boolean beforeVad) {
+        this.beforeVad = beforeVad;
+        return this;
+    }
+}
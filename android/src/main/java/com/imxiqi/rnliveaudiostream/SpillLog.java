@@ -0,0 +1,345 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only log of chunks on disk, split into segment files, for backlogs that must not
+ * live in memory (e.g. an upload during a long network outage).
+ *
+ * Every chunk is stored as {@code [offset:8][length:4][payload]} and addressed by its stream
+ * offset, the same offset an upload reports in {@code X-Stream-Offset}. A read cursor can be
+ * positioned at any offset still held with {@link #seek} and walked with {@link #peek} /
+ * {@link #advance}. Segments are deleted whole once {@link #acknowledge}d, or oldest first
+ * when the log exceeds its size limit; chunks lost that way before the cursor reached them
+ * are counted as dropped.
+ *
+ * Memory use is one small entry per segment plus a sparse offset index inside each, no
+ * matter how much is on disk. Segment files are private to one log and removed by
+ * {@link #close}. Single thread.
+ */
+public class SpillLog {
+    private static final int HEADER_SIZE = 12;
+    // One index entry per this many bytes of segment file
+    private static final int INDEX_INTERVAL = 64 * 1024;
+
+    private static class Segment {
+        final File file;
+        final FileChannel channel;
+        final long startOffset;
+        long endOffset;
+        long size;
+        // Sparse (offset, file position) pairs, ascending
+        long[] indexOffsets = new long[8];
+        long[] indexPositions = new long[8];
+        int indexCount;
+
+        Segment(File file, FileChannel channel, long startOffset) {
+            this.file = file;
+            this.channel = channel;
+            this.startOffset = startOffset;
+            this.endOffset = startOffset;
+        }
+
+        void addIndex(long offset, long position) {
+            if (indexCount == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexCount * 2);
+            }
+            indexOffsets[indexCount] = offset;
+            indexPositions[indexCount] = position;
+            indexCount++;
+        }
+    }
+
+    private final File directory;
+    private final String prefix;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private int nextSegmentId;
+    private long sizeBytes;
+    private long droppedBytes;
+
+    // Read cursor: segment index and file position of the next chunk, or past the end
+    private int readSegment;
+    private long readPosition;
+    private long readOffset;
+    private long peekedOffset = -1;
+    private int peekedLength;
+
+    /**
+     * @param segmentBytes size at which a new segment file is started
+     * @param maxBytes     disk budget; the oldest segments are deleted beyond it
+     */
+    public SpillLog(File directory, String prefix, long segmentBytes, long maxBytes) {
+        if (segmentBytes <= HEADER_SIZE || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Invalid spill log size: " + segmentBytes + "/" + maxBytes);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getSizeBytes() { return sizeBytes; }
+    public int getSegmentCount() { return segments.size(); }
+    public long getDroppedBytes() { return droppedBytes; }
+    /** Offset of the next chunk the cursor returns */
+    public long getCursorOffset() { return readOffset; }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /** Oldest offset still held, or -1 if empty */
+    public long getStartOffset() {
+        return segments.isEmpty() ? -1 : segments.get(0).startOffset;
+    }
+
+    /** Offset after the last chunk, or -1 if empty */
+    public long getEndOffset() {
+        return segments.isEmpty() ? -1 : segments.get(segments.size() - 1).endOffset;
+    }
+
+    public boolean hasPending() {
+        return !segments.isEmpty() && readOffset < getEndOffset();
+    }
+
+    /**
+     * Append a chunk at stream offset {@code offset}, which must not be below the end of
+     * the log.
+     */
+    public void append(long offset, byte[] data, int position, int length) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment != null && offset < segment.endOffset) {
+            throw new IllegalArgumentException("Offset " + offset + " before end of log " + segment.endOffset);
+        }
+        boolean wasCaughtUp = !hasPending();
+        if (segment == null || segment.size >= segmentBytes) {
+            segment = openSegment(offset);
+        }
+        if (segment.size / INDEX_INTERVAL >= segment.indexCount) {
+            segment.addIndex(offset, segment.size);
+        }
+
+        header.clear();
+        header.putLong(offset);
+        header.putInt(length);
+        header.flip();
+        long filePosition = segment.size;
+        filePosition += writeFully(segment.channel, header, filePosition);
+        writeFully(segment.channel, ByteBuffer.wrap(data, position, length), filePosition);
+        segment.size += HEADER_SIZE + length;
+        segment.endOffset = offset + length;
+        sizeBytes += HEADER_SIZE + length;
+        if (wasCaughtUp) {
+            // Cursor was at the end: the new chunk is the next one to read
+            readSegment = segments.size() - 1;
+            readPosition = segment.size - HEADER_SIZE - length;
+            readOffset = offset;
+        }
+
+        while (sizeBytes > maxBytes && segments.size() > 1) {
+            deleteOldest(true);
+        }
+    }
+
+    /**
+     * Put the cursor on the chunk containing {@code offset}, or the first chunk after it.
+     * Offsets older than the log start at its oldest chunk.
+     */
+    public void seek(long offset) throws IOException {
+        peekedOffset = -1;
+        if (segments.isEmpty()) {
+            readOffset = Math.max(readOffset, offset);
+            return;
+        }
+        int s = segments.size() - 1;
+        while (s > 0 && segments.get(s).startOffset > offset) {
+            s--;
+        }
+        Segment segment = segments.get(s);
+        int i = segment.indexCount - 1;
+        while (i > 0 && segment.indexOffsets[i] > offset) {
+            i--;
+        }
+        readSegment = s;
+        readPosition = segment.indexCount > 0 ? segment.indexPositions[i] : 0;
+        readOffset = segment.indexCount > 0 ? segment.indexOffsets[i] : segment.startOffset;
+        // Walk the chunks from the index entry
+        while (readSegment < segments.size()) {
+            Segment current = segments.get(readSegment);
+            if (readPosition >= current.size) {
+                if (readSegment == segments.size() - 1) {
+                    readOffset = current.endOffset;
+                    return;
+                }
+                readSegment++;
+                readPosition = 0;
+                continue;
+            }
+            readHeader(current, readPosition);
+            long chunkOffset = header.getLong(0);
+            int length = header.getInt(8);
+            if (chunkOffset + length > offset) {
+                readOffset = chunkOffset;
+                return;
+            }
+            readPosition += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Length of the chunk at the cursor, or -1 if everything was read.
+     */
+    public int peekLength() throws IOException {
+        if (!hasPending()) {
+            return -1;
+        }
+        Segment segment = cursorSegment();
+        readHeader(segment, readPosition);
+        peekedOffset = header.getLong(0);
+        peekedLength = header.getInt(8);
+        return peekedLength;
+    }
+
+    /**
+     * Copy the chunk at the cursor into {@code dst} without moving the cursor. Returns its
+     * length, or -1 if everything was read.
+     */
+    public int peek(byte[] dst) throws IOException {
+        int length = peekLength();
+        if (length < 0) {
+            return -1;
+        }
+        if (length > dst.length) {
+            throw new IllegalArgumentException("Destination too small for chunk of " + length);
+        }
+        ByteBuffer target = ByteBuffer.wrap(dst, 0, length);
+        long position = readPosition + HEADER_SIZE;
+        FileChannel channel = cursorSegment().channel;
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Spill segment truncated");
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Move the cursor past the chunk returned by the last {@link #peek}.
+     */
+    public void advance() throws IOException {
+        if (peekedOffset < 0 && peekLength() < 0) {
+            return;
+        }
+        readPosition += HEADER_SIZE + peekedLength;
+        readOffset = peekedOffset + peekedLength;
+        peekedOffset = -1;
+        if (readPosition >= segments.get(readSegment).size && readSegment < segments.size() - 1) {
+            readSegment++;
+            readPosition = 0;
+        }
+    }
+
+    /**
+     * Delete every segment that ends at or before {@code offset}.
+     */
+    public void acknowledge(long offset) {
+        while (!segments.isEmpty() && segments.get(0).endOffset <= offset
+                && (segments.size() > 1 || !hasPending())) {
+            deleteOldest(false);
+        }
+    }
+
+    /**
+     * Delete all segments. The cursor stays at the end of what was appended.
+     */
+    public void clear() {
+        long end = getEndOffset();
+        while (!segments.isEmpty()) {
+            deleteOldest(false);
+        }
+        if (end >= 0) {
+            readOffset = end;
+        }
+        readSegment = 0;
+        readPosition = 0;
+        peekedOffset = -1;
+    }
+
+    public void close() {
+        while (!segments.isEmpty()) {
+            deleteOldest(false);
+        }
+    }
+
+    private Segment cursorSegment() {
+        Segment segment = segments.get(readSegment);
+        if (readPosition >= segment.size && readSegment < segments.size() - 1) {
+            readSegment++;
+            readPosition = 0;
+            segment = segments.get(readSegment);
+        }
+        return segment;
+    }
+
+    private Segment openSegment(long startOffset) throws IOException {
+        File file = new File(directory, prefix + "-" + nextSegmentId++ + ".log");
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        Segment segment = new Segment(file, channel, startOffset);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void deleteOldest(boolean countUnread) {
+        Segment segment = segments.remove(0);
+        sizeBytes -= segment.size;
+        if (readSegment > 0) {
+            readSegment--;
+        } else if (!segments.isEmpty()) {
+            if (countUnread) {
+                droppedBytes += segment.endOffset - Math.min(readOffset, segment.endOffset);
+            }
+            // The cursor was in the deleted segment: continue at the next one
+            readPosition = 0;
+            readOffset = Math.max(readOffset, segments.get(0).startOffset);
+        } else {
+            readPosition = 0;
+            readOffset = Math.max(readOffset, segment.endOffset);
+        }
+        peekedOffset = -1;
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            // Deleting anyway
+        }
+        segment.file.delete();
+    }
+
+    private void readHeader(Segment segment, long position) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (segment.channel.read(header, position + header.position()) < 0) {
+                throw new IOException("Spill segment truncated");
+            }
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        int written = 0;
+        while (source.hasRemaining()) {
+            written += channel.write(source, position + written);
+        }
+        return written;
+    }
+}
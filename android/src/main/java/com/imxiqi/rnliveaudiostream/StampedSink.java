@@ -0,0 +1,19 @@
+package com.imxiqi.rnliveaudiostream;
+
+/**
+ * Sink that wants to know where each chunk belongs in the stream. Its {@link SinkChannel}
+ * carries the position and capture time of every chunk through the queue and calls this
+ * {@code write} instead of the plain one.
+ */
+public interface StampedSink extends AudioSink {
+    /**
+     * @param framePosition frame of the stream the chunk starts at, in the sink's sample rate;
+     *                      counts lost, dropped and silence-skipped frames, so a jump means
+     *                      audio is missing
+     * @param timeNanos     capture time of the first frame, on the {@code System.nanoTime} clock
+     * @param gaps          times audio went missing so far: capture overruns, chunks processing
+     *                      fell behind on, plus chunks the sink's queue dropped
+     */
+    void write(byte[] data, int offset, int length, long framePosition, long timeNanos, long gaps)
+            throws Exception;
+}
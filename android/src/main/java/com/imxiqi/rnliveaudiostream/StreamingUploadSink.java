@@ -0,0 +1,352 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends the stream straight to a WebSocket ({@code ws://}, {@code wss://}) or chunked HTTP
+ * ({@code http://}, {@code https://}) endpoint from the sink thread, without going through JS.
+ *
+ * Every chunk first goes into a {@link ReplayBuffer} holding the last {@code replayMs} of the
+ * stream. When the connection drops, chunks keep accumulating there and the sink reconnects
+ * with exponential backoff; the new connection starts by re-sending everything still held,
+ * so what was in flight or captured while offline is not lost as long as the outage is
+ * shorter than the buffer. Each connection carries {@code X-Stream-Offset}, the stream
+ * offset of its first byte, so the server can drop the overlap.
+ *
+ * With a {@link SpillLog}, a backlog beyond half the replay buffer goes to disk instead:
+ * from then on chunks are appended to the log and sent from it, in order, until the upload
+ * has caught up, when it switches back to memory. Spilled chunks stay on disk for one
+ * replay window after they were sent, so a reconnect can resume from them, and are deleted
+ * after that. Memory use stays flat however long the outage lasts; only the log's disk
+ * budget limits it.
+ *
+ * The sink's own bounded queue is the one of its {@link SinkChannel}; while a send blocks
+ * on the network that queue fills and its overflow policy applies.
+ *
+ * No Android dependencies: state changes are reported through {@link Listener}.
+ */
+public class StreamingUploadSink implements AudioSink {
+    public enum State { CONNECTING, CONNECTED, DISCONNECTED, CLOSED }
+
+    public interface Listener {
+        void onStateChanged(State state, String error);
+    }
+
+    private static final int MIN_REPLAY_BYTES = 64 * 1024;
+
+    private final String url;
+    private final Map<String, String> headers;
+    private final int replayMs;
+    private final int bytesPerSecondOverride;
+    private final int timeoutMs;
+    private final long minBackoffMs;
+    private final long maxBackoffMs;
+    private final UploadConnection.Factory factory;
+    private final Listener listener;
+    private final SpillLog spill;
+
+    /** Duration of each send call, i.e. how long the network held up the sink thread */
+    public final LatencyHistogram sendLatency = new LatencyHistogram();
+    /** Time to establish each connection */
+    public final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    // Sink thread only
+    private ReplayBuffer replay;
+    private boolean spilling;
+    private long endOffset;
+    // Stream offset after the furthest byte ever sent; what a rewind re-sends lies below it
+    private long sentOffset;
+    private UploadConnection connection;
+    private byte[] scratch = new byte[8192];
+    private long backoffMs;
+    private long nextAttemptMillis;
+    private long pendingReplayBytes;
+    // Unsent bytes lost outside the buffers' own drop counts
+    private long lostBytes;
+    private boolean everConnected;
+    private String formatName;
+    private int sampleRate;
+    private int channels;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedNanos;
+    private volatile long bytesSent;
+    private volatile long bytesReplayed;
+    private volatile long reconnects;
+    private volatile long connectFailures;
+    private volatile long droppedBytes;
+    private volatile long spilledBytes;
+
+    /**
+     * @param url                    ws://, wss://, http:// or https:// endpoint
+     * @param headers                extra request headers, e.g. authorization
+     * @param replayMs               stream kept for re-sending after a reconnect
+     * @param bytesPerSecondOverride stream rate used to size the replay buffer, 0 to derive it
+     *                               from the PCM format (set it for encoded streams)
+     * @param spill                  disk backlog for long outages, may be null; closed with the sink
+     */
+    public StreamingUploadSink(String url, Map<String, String> headers, int replayMs,
+                               int bytesPerSecondOverride, int timeoutMs, long minBackoffMs, long maxBackoffMs,
+                               UploadConnection.Factory factory, Listener listener, SpillLog spill) {
+        this.url = url;
+        this.headers = headers != null ? new LinkedHashMap<>(headers) : new LinkedHashMap<String, String>();
+        this.replayMs = replayMs;
+        this.bytesPerSecondOverride = bytesPerSecondOverride;
+        this.timeoutMs = timeoutMs;
+        this.minBackoffMs = minBackoffMs;
+        this.maxBackoffMs = Math.max(minBackoffMs, maxBackoffMs);
+        this.factory = factory != null ? factory : UploadConnection.DEFAULT_FACTORY;
+        this.listener = listener;
+        this.spill = spill;
+    }
+
+    public String getUrl() { return url; }
+    public State getState() { return state; }
+    public long getBytesSent() { return bytesSent; }
+    public long getBytesReplayed() { return bytesReplayed; }
+    public long getReconnects() { return reconnects; }
+    public long getConnectFailures() { return connectFailures; }
+    /** Bytes lost because the connection stayed down longer than the replay buffer covers */
+    public long getDroppedBytes() { return droppedBytes; }
+    /** Bytes currently in the spill log */
+    public long getSpilledBytes() { return spilledBytes; }
+
+    /**
+     * Average upload rate since {@link #open}, including replayed bytes.
+     */
+    public long getThroughputBytesPerSecond() {
+        long elapsed = System.nanoTime() - openedNanos;
+        return openedNanos != 0 && elapsed > 0 ? bytesSent * 1000000000L / elapsed : 0;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels, SampleFormat format) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.formatName = format.isFloat() ? "f32le" : "s" + format.getBytesPerSample() * 8 + "le";
+        int bytesPerSecond = bytesPerSecondOverride > 0
+                ? bytesPerSecondOverride : sampleRate * channels * format.getBytesPerSample();
+        replay = new ReplayBuffer(Math.max(MIN_REPLAY_BYTES, (int) ((long) bytesPerSecond * replayMs / 1000)));
+        sendLatency.reset();
+        connectLatency.reset();
+        bytesSent = 0;
+        bytesReplayed = 0;
+        reconnects = 0;
+        connectFailures = 0;
+        droppedBytes = 0;
+        spilledBytes = 0;
+        spilling = false;
+        endOffset = 0;
+        sentOffset = 0;
+        backoffMs = minBackoffMs;
+        nextAttemptMillis = 0;
+        pendingReplayBytes = 0;
+        lostBytes = 0;
+        everConnected = false;
+        openedNanos = System.nanoTime();
+        setState(State.DISCONNECTED, null);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        if (spill != null && (spilling || replay.getPendingBytes() + length > replay.getCapacity() / 2)) {
+            // Falling behind: keep the backlog on disk, keep the memory for replay
+            try {
+                spill.append(endOffset, data, offset, length);
+                spilling = true;
+            } catch (IOException e) {
+                abandonSpill(e);
+                replay.append(data, offset, length);
+            }
+        } else {
+            replay.append(data, offset, length);
+        }
+        endOffset += length;
+        updateCounters();
+        if (connection == null && System.currentTimeMillis() >= nextAttemptMillis) {
+            connect();
+        }
+        if (connection != null) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        String closeError = null;
+        if (connection != null) {
+            flush();
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                closeError = e.getMessage();
+            }
+            connection = null;
+        }
+        if (replay != null) {
+            // Anything not sent by now is lost
+            lostBytes += replay.getPendingBytes() + (spilling ? spill.getEndOffset() - spill.getCursorOffset() : 0);
+            updateCounters();
+        }
+        if (spill != null) {
+            spill.close();
+            spilledBytes = 0;
+        }
+        setState(State.CLOSED, closeError);
+    }
+
+    private void connect() {
+        setState(State.CONNECTING, null);
+        if (everConnected) {
+            // Everything still held goes again; the server dedupes by X-Stream-Offset
+            rewind();
+        }
+        // Configured headers win, e.g. X-Audio-Format for an encoded stream
+        Map<String, String> request = new LinkedHashMap<>();
+        request.put("X-Audio-Format", formatName);
+        request.put("X-Audio-Sample-Rate", Integer.toString(sampleRate));
+        request.put("X-Audio-Channels", Integer.toString(channels));
+        request.putAll(headers);
+        request.put("X-Stream-Offset", Long.toString(replay.hasPending() || !spilling
+                ? replay.getCursorOffset() : spill.getCursorOffset()));
+
+        long start = System.nanoTime();
+        try {
+            connection = factory.open(url, request, timeoutMs);
+        } catch (IOException | RuntimeException e) {
+            connectFailures++;
+            scheduleRetry();
+            setState(State.DISCONNECTED, e.getMessage());
+            return;
+        }
+        connectLatency.record(System.nanoTime() - start);
+        if (everConnected) {
+            reconnects++;
+            bytesReplayed += pendingReplayBytes;
+        }
+        pendingReplayBytes = 0;
+        everConnected = true;
+        backoffMs = minBackoffMs;
+        setState(State.CONNECTED, null);
+    }
+
+    private void rewind() {
+        if (!spilling) {
+            pendingReplayBytes += replay.rewind();
+            return;
+        }
+        try {
+            long cursor = spill.getCursorOffset();
+            boolean joined = spill.getStartOffset() <= replay.getEndOffset();
+            spill.seek(spill.getStartOffset());
+            pendingReplayBytes += cursor - spill.getCursorOffset();
+            if (joined) {
+                // The log still joins up with memory: replay both. Rewound only once the
+                // seek worked, so a failed seek does not count sent bytes as lost
+                pendingReplayBytes += replay.rewind();
+            }
+        } catch (IOException e) {
+            abandonSpill(e);
+        }
+    }
+
+    // Send everything from the cursor on, memory first, then the spill log; on failure the
+    // connection is dropped and retried
+    private void flush() {
+        while (true) {
+            boolean fromSpill = !replay.hasPending() && spilling && spill.hasPending();
+            if (!fromSpill && !replay.hasPending()) {
+                break;
+            }
+            int length;
+            try {
+                length = fromSpill ? spill.peekLength() : replay.peekLength();
+                if (length > scratch.length) {
+                    scratch = new byte[length];
+                }
+                if (fromSpill) {
+                    spill.peek(scratch);
+                } else {
+                    replay.peek(scratch);
+                }
+            } catch (IOException e) {
+                abandonSpill(e);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                connection.send(scratch, 0, length);
+            } catch (IOException e) {
+                connection.abort();
+                connection = null;
+                // Reconnect right away once; back off if that fails too
+                nextAttemptMillis = 0;
+                setState(State.DISCONNECTED, e.getMessage());
+                return;
+            }
+            sendLatency.record(System.nanoTime() - start);
+            bytesSent += length;
+            sentOffset = Math.max(sentOffset, (fromSpill ? spill.getCursorOffset() : replay.getCursorOffset()) + length);
+            if (fromSpill) {
+                try {
+                    spill.advance();
+                    // Kept for one replay window after sending, then deleted
+                    spill.acknowledge(spill.getCursorOffset() - replay.getCapacity());
+                } catch (IOException e) {
+                    abandonSpill(e);
+                }
+            } else {
+                replay.advance();
+            }
+        }
+        if (spilling && !spill.hasPending()) {
+            // Caught up: back to memory
+            spill.clear();
+            spilling = false;
+            replay.reset(endOffset);
+        }
+        updateCounters();
+    }
+
+    // The log is unusable. Before the first spill memory still holds the whole stream and
+    // carries on as is; once spilling, memory ends where the log began, so both the log and
+    // what memory had not sent yet are lost and the stream continues at endOffset. Bytes a
+    // rewind was about to send again already went out once and are not counted
+    private void abandonSpill(IOException e) {
+        if (listener != null) {
+            listener.onStateChanged(state, "Spill log failed: " + e.getMessage());
+        }
+        if (spilling) {
+            lostBytes += Math.max(0, replay.getEndOffset() - Math.max(replay.getCursorOffset(), sentOffset))
+                    + Math.max(0, spill.getEndOffset() - Math.max(spill.getCursorOffset(), sentOffset));
+            replay.reset(endOffset);
+        }
+        spill.clear();
+        spilling = false;
+        updateCounters();
+    }
+
+    private void updateCounters() {
+        droppedBytes = replay.getDroppedBytes() + (spill != null ? spill.getDroppedBytes() : 0) + lostBytes;
+        spilledBytes = spill != null ? spill.getSizeBytes() : 0;
+    }
+
+    private void scheduleRetry() {
+        nextAttemptMillis = System.currentTimeMillis() + backoffMs;
+        backoffMs = Math.min(maxBackoffMs, backoffMs * 2);
+    }
+
+    private void setState(State state, String error) {
+        if (this.state == state && error == null) {
+            return;
+        }
+        this.state = state;
+        if (listener != null) {
+            listener.onStateChanged(state, error);
+        }
+    }
+}
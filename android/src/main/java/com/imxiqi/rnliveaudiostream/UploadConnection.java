@@ -0,0 +1,44 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One connection of a {@link StreamingUploadSink} to the server. Opened, written and closed
+ * from the sink thread; an IOException from any call means the connection is gone.
+ */
+public interface UploadConnection {
+    /**
+     * Send one chunk; for WebSocket that is one binary message.
+     */
+    void send(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * End the stream cleanly and wait briefly for the server to acknowledge.
+     */
+    void close() throws IOException;
+
+    /**
+     * Drop the connection without a clean close.
+     */
+    void abort();
+
+    interface Factory {
+        UploadConnection open(String url, Map<String, String> headers, int timeoutMs) throws IOException;
+    }
+
+    Factory DEFAULT_FACTORY = new Factory() {
+        @Override
+        public UploadConnection open(String url, Map<String, String> headers, int timeoutMs) throws IOException {
+            String lower = url.toLowerCase(Locale.US);
+            if (lower.startsWith("ws://") || lower.startsWith("wss://")) {
+                return WebSocketConnection.open(url, headers, timeoutMs);
+            }
+            if (lower.startsWith("http://") || lower.startsWith("https://")) {
+                return ChunkedHttpConnection.open(url, headers, timeoutMs);
+            }
+            throw new IOException("Unsupported upload URL: " + url);
+        }
+    };
+}
@@ -0,0 +1,194 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.util.Arrays;
+
+/**
+ * Energy + zero-crossing voice activity detector working on 16-bit or float PCM frames.
+ *
+ * A frame counts as speech when its level is above the threshold, or slightly below it with
+ * a zero-crossing rate typical of fricatives. The threshold follows a noise floor, the lowest
+ * level of any frame, speech or not, over the last couple of seconds, so steady background
+ * noise is not taken for speech even when it is louder than the threshold. After the last
+ * speech frame the detector stays in speech for the hangover period before reporting the end.
+ *
+ * Allocation-free; one instance per stream, driven by a single thread.
+ */
+public class VoiceActivityDetector {
+    public static final int SILENCE = 0;
+    public static final int SPEECH = 1;
+    public static final int SPEECH_START = 2;
+    public static final int SPEECH_END = 3;
+
+    private static final float MIN_LEVEL_DB = -96f;
+    // Threshold is at least this far above the tracked noise floor
+    private static final float NOISE_MARGIN_DB = 10f;
+    // Noise floor = minimum level over this window, kept as the minima of its sub-windows;
+    // speech has short pauses well within it, steady noise does not
+    private static final int NOISE_WINDOW_MS = 2000;
+    private static final int NOISE_SUBWINDOWS = 8;
+    // Quieter frames still count if they look like fricatives
+    private static final float FRICATIVE_MARGIN_DB = 6f;
+    private static final float FRICATIVE_MIN_ZCR = 0.15f;
+    private static final float FRICATIVE_MAX_ZCR = 0.5f;
+
+    private final int channels;
+    private final float thresholdDb;
+    private final long hangoverFrames;
+    private final long subwindowFrames;
+    // Minima of the last completed sub-windows, oldest overwritten first
+    private final float[] subwindowMinDb = new float[NOISE_SUBWINDOWS - 1];
+    private int oldestSubwindow;
+    private float currentMinDb;
+    private long currentFrames;
+
+    private boolean speech;
+    private long silentFrames;
+    private float noiseFloorDb = MIN_LEVEL_DB;
+    private float levelDb = MIN_LEVEL_DB;
+    private float zeroCrossingRate;
+
+    /**
+     * @param thresholdDb minimum level for speech, in dBFS (e.g. -45)
+     * @param hangoverMs  how long speech is held after the last active frame
+     */
+    public VoiceActivityDetector(int sampleRate, int channels, float thresholdDb, int hangoverMs) {
+        this.channels = channels;
+        this.thresholdDb = thresholdDb;
+        this.hangoverFrames = (long) sampleRate * hangoverMs / 1000;
+        this.subwindowFrames = Math.max(1, (long) sampleRate * NOISE_WINDOW_MS / 1000 / NOISE_SUBWINDOWS);
+        resetNoiseFloor();
+    }
+
+    public boolean isSpeech() { return speech; }
+    public float getLevelDb() { return levelDb; }
+    public float getZeroCrossingRate() { return zeroCrossingRate; }
+    public float getNoiseFloorDb() { return noiseFloorDb; }
+
+    /**
+     * Classify one block of interleaved samples. Returns {@link #SILENCE}, {@link #SPEECH},
+     * {@link #SPEECH_START} or {@link #SPEECH_END}.
+     */
+    public int process(short[] samples, int offset, int count) {
+        int frames = count / channels;
+        if (frames == 0) {
+            return speech ? SPEECH : SILENCE;
+        }
+
+        double sumSquares = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int s = samples[i];
+            sumSquares += s * s;
+        }
+        // Zero crossings on the first channel only
+        int crossings = 0;
+        int previous = samples[offset];
+        for (int i = offset + channels; i < offset + frames * channels; i += channels) {
+            int s = samples[i];
+            if ((s ^ previous) < 0) {
+                crossings++;
+            }
+            previous = s;
+        }
+
+        return classify(Math.sqrt(sumSquares / count) / 32768.0, crossings, frames);
+    }
+
+    /**
+     * Same as {@link #process(short[], int, int)} for float samples in [-1, 1].
+     */
+    public int process(float[] samples, int offset, int count) {
+        int frames = count / channels;
+        if (frames == 0) {
+            return speech ? SPEECH : SILENCE;
+        }
+
+        double sumSquares = 0;
+        for (int i = offset; i < offset + count; i++) {
+            float s = samples[i];
+            sumSquares += s * s;
+        }
+        int crossings = 0;
+        boolean previousNegative = samples[offset] < 0;
+        for (int i = offset + channels; i < offset + frames * channels; i += channels) {
+            boolean negative = samples[i] < 0;
+            if (negative != previousNegative) {
+                crossings++;
+            }
+            previousNegative = negative;
+        }
+
+        return classify(Math.sqrt(sumSquares / count), crossings, frames);
+    }
+
+    public void reset() {
+        speech = false;
+        silentFrames = 0;
+        levelDb = MIN_LEVEL_DB;
+        zeroCrossingRate = 0;
+        resetNoiseFloor();
+    }
+
+    // Until a whole window was seen the floor stays at the bottom, so speech from the first
+    // frame on is not taken for noise
+    private void resetNoiseFloor() {
+        Arrays.fill(subwindowMinDb, MIN_LEVEL_DB);
+        oldestSubwindow = 0;
+        currentMinDb = Float.MAX_VALUE;
+        currentFrames = 0;
+        noiseFloorDb = MIN_LEVEL_DB;
+    }
+
+    // rms relative to full scale
+    private int classify(double rms, int crossings, int frames) {
+        levelDb = rms > 0 ? (float) Math.max(MIN_LEVEL_DB, 20 * Math.log10(rms)) : MIN_LEVEL_DB;
+        zeroCrossingRate = (float) crossings / frames;
+        return update(frames, levelDb >= activeThresholdDb()
+                || (levelDb >= activeThresholdDb() - FRICATIVE_MARGIN_DB
+                && zeroCrossingRate >= FRICATIVE_MIN_ZCR && zeroCrossingRate <= FRICATIVE_MAX_ZCR));
+    }
+
+    private float activeThresholdDb() {
+        return Math.max(thresholdDb, noiseFloorDb + NOISE_MARGIN_DB);
+    }
+
+    private int update(int frames, boolean active) {
+        trackNoiseFloor(frames);
+
+        if (active) {
+            silentFrames = 0;
+            if (!speech) {
+                speech = true;
+                return SPEECH_START;
+            }
+            return SPEECH;
+        }
+        if (speech) {
+            silentFrames += frames;
+            if (silentFrames >= hangoverFrames) {
+                speech = false;
+                silentFrames = 0;
+                return SPEECH_END;
+            }
+            return SPEECH;
+        }
+        return SILENCE;
+    }
+
+    // Follows drops in noise at once and rises within one window, active frame or not. Runs
+    // after the frame was classified, so it applies from the next one
+    private void trackNoiseFloor(int frames) {
+        currentMinDb = Math.min(currentMinDb, levelDb);
+        currentFrames += frames;
+        if (currentFrames >= subwindowFrames) {
+            subwindowMinDb[oldestSubwindow] = currentMinDb;
+            oldestSubwindow = (oldestSubwindow + 1) % subwindowMinDb.length;
+            currentMinDb = Float.MAX_VALUE;
+            currentFrames = 0;
+        }
+        float floor = currentMinDb;
+        for (float min : subwindowMinDb) {
+            floor = Math.min(floor, min);
+        }
+        noiseFloorDb = floor;
+    }
+}
@@ -0,0 +1,55 @@
+package com.imxiqi.rnliveaudiostream;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the stream to WAV files through {@link WavFileWriter}.
+ */
+public class WavFileSink implements AudioSink {
+    private static final String TAG = "WavFileSink";
+
+    private final String path;
+    private final long segmentDurationMs;
+    private final long segmentMaxBytes;
+    private WavFileWriter writer;
+    private ByteBuffer view;
+
+    public WavFileSink(String path, long segmentDurationMs, long segmentMaxBytes) {
+        this.path = path;
+        this.segmentDurationMs = segmentDurationMs;
+        this.segmentMaxBytes = segmentMaxBytes;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels, SampleFormat format) throws IOException {
+        writer = new WavFileWriter(path, sampleRate, channels, format.getBytesPerSample() * 8, format.isFloat(),
+                segmentDurationMs, segmentMaxBytes, AudioEventEmitter::sendFileSegment);
+        writer.open();
+        Log.d(TAG, "Writing audio to " + writer.getSegmentPath());
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (view == null || view.array() != data) {
+            view = ByteBuffer.wrap(data);
+        }
+        view.limit(offset + length);
+        view.position(offset);
+        writer.write(view);
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing audio file", e);
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Streams PCM to WAV files through a FileChannel.
+ *
+ * Samples are staged in a large direct buffer and written in big batches. The RIFF and data
+ * sizes in the header are patched and synced periodically, so a recording cut short by a
+ * crash is still a valid file up to the last patch. Optionally rotates to a new segment
+ * file after a given duration or size; segments are named {@code <base>_000.wav},
+ * {@code <base>_001.wav}, ... Without rotation a recording that outgrows the 4 GB RIFF limit
+ * continues in {@code <base>_001.wav} and so on, next to the full file.
+ *
+ * Allocation-free while writing, apart from opening new segment files. Single thread.
+ */
+public class WavFileWriter {
+    public interface SegmentListener {
+        void onSegmentClosed(String path, long dataBytes, long durationMs);
+    }
+
+    private static final int HEADER_SIZE = 44;
+    private static final int STAGING_SIZE = 64 * 1024;
+    private static final long HEADER_PATCH_INTERVAL_NANOS = 1000000000L;
+    // RIFF sizes are 32-bit
+    private static final long MAX_DATA_BYTES = 0xFFFFFFFFL - 36;
+
+    private static final short FORMAT_PCM = 1;
+    private static final short FORMAT_IEEE_FLOAT = 3;
+
+    private final String path;
+    private final int sampleRate;
+    private final int channels;
+    private final int bitsPerSample;
+    private final short formatTag;
+    private final int blockAlign;
+    private final long maxSegmentBytes;
+    private final boolean rotate;
+    private final SegmentListener listener;
+
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer sizeField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel channel;
+    private String segmentPath;
+    private int segmentIndex;
+    private long dataBytes;
+    private long lastPatchNanos;
+
+    /**
+     * @param floatSamples    samples are 32-bit IEEE float rather than integer PCM
+     * @param maxSegmentMs    rotate after this much audio, 0 to disable
+     * @param maxSegmentBytes rotate after this many data bytes, 0 to disable
+     */
+    public WavFileWriter(String path, int sampleRate, int channels, int bitsPerSample, boolean floatSamples,
+                         long maxSegmentMs, long maxSegmentBytes, SegmentListener listener) {
+        this(path, sampleRate, channels, bitsPerSample, floatSamples, maxSegmentMs, maxSegmentBytes,
+                MAX_DATA_BYTES, listener);
+    }
+
+    /**
+     * @param maxDataBytes most data bytes one file can hold, the RIFF limit outside tests
+     */
+    WavFileWriter(String path, int sampleRate, int channels, int bitsPerSample, boolean floatSamples,
+                  long maxSegmentMs, long maxSegmentBytes, long maxDataBytes, SegmentListener listener) {
+        this.path = path;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitsPerSample = bitsPerSample;
+        this.formatTag = floatSamples ? FORMAT_IEEE_FLOAT : FORMAT_PCM;
+        this.blockAlign = channels * bitsPerSample / 8;
+        this.listener = listener;
+
+        long limit = maxDataBytes;
+        if (maxSegmentMs > 0) {
+            limit = Math.min(limit, (long) sampleRate * maxSegmentMs / 1000 * blockAlign);
+        }
+        if (maxSegmentBytes > 0) {
+            limit = Math.min(limit, maxSegmentBytes);
+        }
+        this.rotate = maxSegmentMs > 0 || maxSegmentBytes > 0;
+        // Never split a sample frame across segments
+        this.maxSegmentBytes = Math.max(blockAlign, limit - limit % blockAlign);
+    }
+
+    public String getSegmentPath() { return segmentPath; }
+    public long getDataBytes() { return dataBytes; }
+
+    public void open() throws IOException {
+        segmentIndex = 0;
+        openSegment();
+    }
+
+    /**
+     * Append everything remaining in {@code pcm}.
+     */
+    public void write(ByteBuffer pcm) throws IOException {
+        while (pcm.hasRemaining()) {
+            if (dataBytes + staging.position() >= maxSegmentBytes) {
+                closeSegment();
+                segmentIndex++;
+                openSegment();
+            }
+            long segmentRoom = maxSegmentBytes - dataBytes - staging.position();
+            int n = (int) Math.min(Math.min(pcm.remaining(), staging.remaining()), segmentRoom);
+            int limit = pcm.limit();
+            pcm.limit(pcm.position() + n);
+            staging.put(pcm);
+            pcm.limit(limit);
+            if (!staging.hasRemaining()) {
+                flushStaging();
+            }
+        }
+
+        long now = System.nanoTime();
+        if (now - lastPatchNanos >= HEADER_PATCH_INTERVAL_NANOS) {
+            flushStaging();
+            patchHeader();
+            lastPatchNanos = now;
+        }
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        // Without rotation only the RIFF limit gets here: continue next to the full file,
+        // never reopen (and truncate) it
+        segmentPath = rotate || segmentIndex > 0 ? segmentName(path, segmentIndex) : path;
+        File file = new File(segmentPath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        dataBytes = 0;
+        staging.clear();
+        writeHeader();
+        lastPatchNanos = System.nanoTime();
+    }
+
+    private void closeSegment() throws IOException {
+        try {
+            flushStaging();
+            patchHeader();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        if (listener != null) {
+            listener.onSegmentClosed(segmentPath, dataBytes, dataBytes * 1000 / ((long) sampleRate * blockAlign));
+        }
+    }
+
+    private void flushStaging() throws IOException {
+        staging.flip();
+        while (staging.hasRemaining()) {
+            dataBytes += channel.write(staging, HEADER_SIZE + dataBytes);
+        }
+        staging.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt(36);
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort(formatTag);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt(0);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private void patchHeader() throws IOException {
+        writeSize(4, 36 + dataBytes);
+        writeSize(40, dataBytes);
+        // Make data and sizes durable together so an interrupted file stays playable
+        channel.force(false);
+    }
+
+    private void writeSize(long position, long value) throws IOException {
+        sizeField.clear();
+        sizeField.putInt((int) value);
+        sizeField.flip();
+        while (sizeField.hasRemaining()) {
+            channel.write(sizeField, position + sizeField.position());
+        }
+    }
+
+    static String segmentName(String path, int index) {
+        String suffix = String.format(Locale.US, "_%03d", index);
+        int dot = path.lastIndexOf('.');
+        int slash = path.lastIndexOf(File.separatorChar);
+        if (dot > slash) {
+            return path.substring(0, dot) + suffix + path.substring(dot);
+        }
+        return path + suffix + ".wav";
+    }
+}
@@ -0,0 +1,368 @@
+package com.imxiqi.rnliveaudiostream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Minimal RFC 6455 client: sends each chunk as one masked binary message.
+ *
+ * A reader thread answers pings and the server's close; anything else the server sends is
+ * discarded. Only plain java.net, so it runs on the JVM as well as on Android.
+ */
+public class WebSocketConnection implements UploadConnection {
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int MAX_HEADER_BYTES = 14;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] mask = new byte[4];
+    private final int timeoutMs;
+    private final Object closeLock = new Object();
+
+    // Guarded by output
+    private byte[] frame = new byte[MAX_HEADER_BYTES + 8192];
+    private boolean closeSent;
+
+    private volatile boolean closeReceived;
+
+    private WebSocketConnection(Socket socket, InputStream input, int timeoutMs) throws IOException {
+        this.socket = socket;
+        this.input = input;
+        this.output = socket.getOutputStream();
+        this.timeoutMs = timeoutMs;
+    }
+
+    public static WebSocketConnection open(String url, Map<String, String> headers, int timeoutMs)
+            throws IOException {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid WebSocket URL: " + url, e);
+        }
+        boolean secure = "wss".equals(uri.getScheme().toLowerCase(Locale.US));
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IOException("Invalid WebSocket URL: " + url);
+        }
+        int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMs);
+            if (secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                ssl.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+                    throw new IOException("Hostname verification failed for " + host);
+                }
+                socket = ssl;
+            }
+
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            handshake(uri, host, port, secure, headers, socket.getOutputStream(), input);
+            // Reads block until the server sends something or the socket is closed
+            socket.setSoTimeout(0);
+
+            WebSocketConnection connection = new WebSocketConnection(socket, input, timeoutMs);
+            Thread reader = new Thread(connection::readLoop, "AudioUpload-WebSocket");
+            reader.setDaemon(true);
+            reader.start();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    @Override
+    public void send(byte[] data, int offset, int length) throws IOException {
+        writeFrame(OPCODE_BINARY, data, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            byte[] payload = {(byte) (CLOSE_NORMAL >> 8), (byte) CLOSE_NORMAL};
+            writeFrame(OPCODE_CLOSE, payload, 0, payload.length);
+            // The server answers with its own close frame once it has everything
+            synchronized (closeLock) {
+                long deadline = System.currentTimeMillis() + timeoutMs;
+                while (!closeReceived && !socket.isClosed()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    closeLock.wait(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void abort() {
+        closeQuietly(socket);
+    }
+
+    private void writeFrame(int opcode, byte[] data, int offset, int length) throws IOException {
+        synchronized (output) {
+            if (closeSent) {
+                throw new IOException("WebSocket is closing");
+            }
+            if (frame.length < MAX_HEADER_BYTES + length) {
+                frame = new byte[MAX_HEADER_BYTES + length];
+            }
+            int n = 0;
+            frame[n++] = (byte) (0x80 | opcode);
+            if (length < 126) {
+                frame[n++] = (byte) (0x80 | length);
+            } else if (length <= 0xffff) {
+                frame[n++] = (byte) (0x80 | 126);
+                frame[n++] = (byte) (length >> 8);
+                frame[n++] = (byte) length;
+            } else {
+                frame[n++] = (byte) (0x80 | 127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame[n++] = (byte) ((long) length >> shift);
+                }
+            }
+            // Client frames are always masked
+            random.nextBytes(mask);
+            System.arraycopy(mask, 0, frame, n, 4);
+            n += 4;
+            for (int i = 0; i < length; i++) {
+                frame[n + i] = (byte) (data[offset + i] ^ mask[i & 3]);
+            }
+            output.write(frame, 0, n + length);
+            output.flush();
+            if (opcode == OPCODE_CLOSE) {
+                closeSent = true;
+            }
+        }
+    }
+
+    private void readLoop() {
+        byte[] payload = new byte[125];
+        try {
+            while (true) {
+                int b0 = readByte();
+                int b1 = readByte();
+                int opcode = b0 & 0x0f;
+                long length = b1 & 0x7f;
+                if (length == 126) {
+                    length = (readByte() << 8) | readByte();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte();
+                    }
+                }
+                byte[] serverMask = null;
+                if ((b1 & 0x80) != 0) {
+                    serverMask = new byte[4];
+                    readFully(serverMask, 4);
+                }
+
+                if (opcode >= OPCODE_CLOSE) {
+                    // Control frames carry at most 125 bytes
+                    int n = (int) Math.min(length, payload.length);
+                    readFully(payload, n);
+                    skip(length - n);
+                    if (serverMask != null) {
+                        for (int i = 0; i < n; i++) {
+                            payload[i] ^= serverMask[i & 3];
+                        }
+                    }
+                    if (opcode == OPCODE_PING) {
+                        writeFrame(OPCODE_PONG, payload, 0, n);
+                    } else if (opcode == OPCODE_CLOSE) {
+                        onCloseReceived(payload, n);
+                        return;
+                    }
+                } else {
+                    // Nothing the server sends is needed by the upload
+                    skip(length);
+                }
+            }
+        } catch (IOException e) {
+            // Socket closed or broken; the next send fails and the sink reconnects
+        } finally {
+            closeQuietly(socket);
+            synchronized (closeLock) {
+                closeLock.notifyAll();
+            }
+        }
+    }
+
+    private void onCloseReceived(byte[] payload, int length) {
+        closeReceived = true;
+        synchronized (output) {
+            if (!closeSent) {
+                // Server-initiated close: echo it; the next send then fails
+                try {
+                    writeFrame(OPCODE_CLOSE, payload, 0, Math.min(length, 2));
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+        }
+    }
+
+    private int readByte() throws IOException {
+        int b = input.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private void readFully(byte[] dst, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = input.read(dst, read, length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+
+    private void skip(long length) throws IOException {
+        while (length > 0) {
+            long n = input.skip(length);
+            if (n <= 0) {
+                readByte();
+                n = 1;
+            }
+            length -= n;
+        }
+    }
+
+    private static void handshake(URI uri, String host, int port, boolean secure, Map<String, String> headers,
+                                  OutputStream output, InputStream input) throws IOException {
+        byte[] nonce = new byte[16];
+        new SecureRandom().nextBytes(nonce);
+        String key = base64(nonce);
+
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        boolean defaultPort = port == (secure ? 443 : 80);
+        StringBuilder request = new StringBuilder()
+                .append("GET ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append(defaultPort ? "" : ":" + port).append("\r\n")
+                .append("Upgrade: websocket\r\n")
+                .append("Connection: Upgrade\r\n")
+                .append("Sec-WebSocket-Key: ").append(key).append("\r\n")
+                .append("Sec-WebSocket-Version: 13\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+        output.write(request.toString().getBytes(LATIN_1));
+        output.flush();
+
+        String status = readLine(input);
+        String[] parts = status.split(" ", 3);
+        if (parts.length < 2 || !"101".equals(parts[1])) {
+            throw new IOException("WebSocket upgrade refused: " + status);
+        }
+        String accept = null;
+        for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && "sec-websocket-accept".equals(line.substring(0, colon).trim().toLowerCase(Locale.US))) {
+                accept = line.substring(colon + 1).trim();
+            }
+        }
+        if (!expectedAccept(key).equals(accept)) {
+            throw new IOException("Invalid Sec-WebSocket-Accept: " + accept);
+        }
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during WebSocket handshake");
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > 8192) {
+                throw new IOException("WebSocket handshake header too long");
+            }
+        }
+        return new String(line.toByteArray(), LATIN_1);
+    }
+
+    static String expectedAccept(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + ACCEPT_GUID).getBytes(LATIN_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // android.util.Base64 is not on the JVM and java.util.Base64 needs API 26
+    static String base64(byte[] data) {
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < data.length) b |= (data[i + 1] & 0xff) << 8;
+            if (i + 2 < data.length) b |= data[i + 2] & 0xff;
+            sb.append(alphabet.charAt((b >> 18) & 0x3f));
+            sb.append(alphabet.charAt((b >> 12) & 0x3f));
+            sb.append(i + 1 < data.length ? alphabet.charAt((b >> 6) & 0x3f) : '=');
+            sb.append(i + 2 < data.length ? alphabet.charAt(b & 0x3f) : '=');
+        }
+        return sb.toString();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveReadSizeTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_SIZE = 2;
+    private static final long MS = 1000000L;
+    private static final long SECOND = 1000 * MS;
+    private static final int CAPACITY = 8;
+
+    /** 20 ms target within [10, 160] ms: 640 bytes, 5120 at most */
+    private static AdaptiveReadSize newReadSize() {
+        AdaptiveReadSize readSize = new AdaptiveReadSize(SAMPLE_RATE, FRAME_SIZE, 20, 10, 160);
+        readSize.onStart(0);
+        return readSize;
+    }
+
+    @Test
+    public void targetIsClampedToBounds() {
+        assertEquals(320, new AdaptiveReadSize(SAMPLE_RATE, FRAME_SIZE, 5, 10, 160).getReadBytes());
+        assertEquals(5120, new AdaptiveReadSize(SAMPLE_RATE, FRAME_SIZE, 500, 10, 160).getReadBytes());
+        // Odd sizes round down to whole frames
+        assertEquals(1764, new AdaptiveReadSize(44100, 4, 10, 1, 100).getReadBytes());
+        assertEquals(5120, AdaptiveReadSize.maxReadBytes(SAMPLE_RATE, FRAME_SIZE, 10, 160));
+    }
+
+    @Test
+    public void overrunsDoubleReadSizeOncePerSettlePeriod() {
+        AdaptiveReadSize readSize = newReadSize();
+        assertEquals(640, readSize.getReadBytes());
+
+        // Too soon after the start to judge
+        assertFalse(readSize.onRead(500 * MS, 0, 1, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(SECOND, 0, 2, 0, 0, CAPACITY));
+        assertEquals(1280, readSize.getReadBytes());
+        assertFalse(readSize.onRead(1500 * MS, 0, 3, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(2 * SECOND, 0, 4, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(3 * SECOND, 0, 5, 0, 0, CAPACITY));
+        assertEquals(5120, readSize.getReadBytes());
+        // At the bound
+        assertFalse(readSize.onRead(4 * SECOND, 0, 6, 0, 0, CAPACITY));
+        assertEquals(5120, readSize.getReadBytes());
+    }
+
+    @Test
+    public void countersAreRunningTotals() {
+        AdaptiveReadSize readSize = newReadSize();
+        assertFalse(readSize.onRead(500 * MS, 0, 3, 2, 0, CAPACITY));
+        // Same totals as last time: nothing new went wrong
+        assertFalse(readSize.onRead(SECOND, 0, 3, 2, 0, CAPACITY));
+        assertFalse(readSize.onRead(2 * SECOND, 0, 3, 2, 0, CAPACITY));
+        assertEquals(640, readSize.getReadBytes());
+        // A new drop
+        assertTrue(readSize.onRead(3 * SECOND, 0, 3, 3, 0, CAPACITY));
+        assertEquals(1280, readSize.getReadBytes());
+    }
+
+    @Test
+    public void halfFullHandoffCountsAsTrouble() {
+        AdaptiveReadSize readSize = newReadSize();
+        assertFalse(readSize.onRead(SECOND, 0, 0, 0, CAPACITY / 2 - 1, CAPACITY));
+        assertTrue(readSize.onRead(SECOND + 20 * MS, 0, 0, 0, CAPACITY / 2, CAPACITY));
+        assertEquals(1280, readSize.getReadBytes());
+    }
+
+    @Test
+    public void sustainedJitterGrowsButOneLateReadDoesNot() {
+        AdaptiveReadSize readSize = newReadSize();
+        long now = SECOND;
+        // One read 30 ms late among on-time ones
+        assertFalse(readSize.onRead(now, 30 * MS, 0, 0, 0, CAPACITY));
+        for (int i = 0; i < 20; i++) {
+            now += 20 * MS;
+            assertFalse(readSize.onRead(now, 0, 0, 0, 0, CAPACITY));
+        }
+
+        // Every read 30 ms off a 20 ms period: the average crosses half a period within a few
+        int reads = 0;
+        boolean changed = false;
+        while (!changed && reads < 20) {
+            now += 20 * MS;
+            changed = readSize.onRead(now, 30 * MS, 0, 0, 0, CAPACITY);
+            reads++;
+        }
+        assertTrue(changed);
+        assertTrue("grew after " + reads + " reads", reads > 1);
+        assertEquals(1280, readSize.getReadBytes());
+    }
+
+    @Test
+    public void quietStretchStepsBackDownToTarget() {
+        AdaptiveReadSize readSize = newReadSize();
+        assertTrue(readSize.onRead(SECOND, 0, 1, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(2 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertEquals(2560, readSize.getReadBytes());
+
+        assertFalse(readSize.onRead(11 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(12 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertEquals(1920, readSize.getReadBytes());
+        // Each step waits for another quiet stretch
+        assertFalse(readSize.onRead(21 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(22 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertEquals(1440, readSize.getReadBytes());
+        assertTrue(readSize.onRead(32 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(42 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(52 * SECOND, 0, 2, 0, 0, CAPACITY));
+        // Never below the target
+        assertEquals(640, readSize.getReadBytes());
+        assertFalse(readSize.onRead(62 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertEquals(640, readSize.getReadBytes());
+    }
+
+    @Test
+    public void troubleRestartsTheQuietStretch() {
+        AdaptiveReadSize readSize = newReadSize();
+        assertTrue(readSize.onRead(SECOND, 0, 1, 0, 0, CAPACITY));
+        // Trouble while settling: no growth, but the quiet stretch counts from here
+        assertFalse(readSize.onRead(1500 * MS, 0, 2, 0, 0, CAPACITY));
+        assertFalse(readSize.onRead(11 * SECOND, 0, 2, 0, 0, CAPACITY));
+        assertTrue(readSize.onRead(11500 * MS, 0, 2, 0, 0, CAPACITY));
+        assertEquals(960, readSize.getReadBytes());
+    }
+}
@@ -0,0 +1,239 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class AudioBufferRingTest {
+    private static final int FRAME_SIZE = 4;
+
+    /**
+     * Stands in for AudioRecord.read(ByteBuffer, int): fills the buffer with a running byte
+     * counter so a reader can tell exactly which bytes it got.
+     */
+    private static final class FakeSource {
+        private long position;
+
+        int read(ByteBuffer dst, int size) {
+            int length = Math.min(size, dst.remaining());
+            for (int i = 0; i < length; i++) {
+                dst.put((byte) (position + i));
+            }
+            position += length;
+            return length;
+        }
+
+        long getFramePosition() { return position / FRAME_SIZE; }
+    }
+
+    private static long fill(AudioBufferRing ring, FakeSource source, int size) {
+        ByteBuffer slot = ring.claim();
+        assertNotNull(slot);
+        long frame = source.getFramePosition();
+        int read = source.read(slot, size);
+        return ring.publish(read, frame, frame * 1000, 0);
+    }
+
+    private static void assertCounter(ByteBuffer data, long start) {
+        for (int i = 0; data.hasRemaining(); i++) {
+            assertEquals("byte " + i, (byte) (start + i), data.get());
+        }
+    }
+
+    @Test
+    public void rejectsSlotCountNotPowerOfTwo() {
+        try {
+            new AudioBufferRing(6, 64);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void publishedSlotHoldsWhatWasRead() {
+        AudioBufferRing ring = new AudioBufferRing(4, 64);
+        FakeSource source = new FakeSource();
+
+        long first = fill(ring, source, 64);
+        long second = fill(ring, source, 40);
+
+        assertEquals(0, first);
+        assertEquals(1, second);
+        assertEquals(2, ring.pending());
+        assertEquals(64, ring.length(first));
+        assertEquals(40, ring.length(second));
+        assertEquals(16, ring.framePosition(second));
+        assertEquals(16000, ring.timeNanos(second));
+        assertCounter(ring.get(first), 0);
+        assertCounter(ring.get(second), 64);
+
+        byte[] copy = new byte[40];
+        assertEquals(40, ring.copyTo(second, copy, 0));
+        assertCounter(ByteBuffer.wrap(copy), 64);
+    }
+
+    @Test
+    public void claimReturnsNullWhenConsumerHoldsEverySlot() {
+        AudioBufferRing ring = new AudioBufferRing(4, 16);
+        FakeSource source = new FakeSource();
+        for (int i = 0; i < 4; i++) {
+            fill(ring, source, 16);
+        }
+
+        assertNull(ring.claim());
+
+        ring.release(1);
+        assertEquals(2, ring.pending());
+        assertEquals(4, fill(ring, source, 16));
+        assertEquals(5, fill(ring, source, 16));
+        assertNull(ring.claim());
+    }
+
+    @Test
+    public void slotsAreReusedInPlaceAcrossWraps() {
+        AudioBufferRing ring = new AudioBufferRing(4, 16);
+        FakeSource source = new FakeSource();
+        ByteBuffer[] seen = new ByteBuffer[4];
+        for (int i = 0; i < 100; i++) {
+            long sequence = fill(ring, source, 16);
+            assertEquals(i, sequence);
+            assertEquals((i % 4) * 16, ring.offsetOf(sequence));
+            ByteBuffer slot = ring.get(sequence);
+            if (seen[i % 4] == null) {
+                seen[i % 4] = slot;
+            }
+            assertSame(seen[i % 4], slot);
+            assertCounter(slot, i * 16L);
+            ring.release(sequence);
+        }
+    }
+
+    @Test
+    public void releasedAndUnpublishedSequencesAreNotReadable() {
+        AudioBufferRing ring = new AudioBufferRing(4, 16);
+        FakeSource source = new FakeSource();
+        fill(ring, source, 16);
+        fill(ring, source, 16);
+        ring.release(0);
+
+        for (long sequence : new long[] {0, 2}) {
+            try {
+                ring.get(sequence);
+                fail("sequence " + sequence);
+            } catch (IllegalStateException expected) {
+            }
+        }
+        try {
+            ring.release(2);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void controlBlockMirrorsPublishedSlots() {
+        AudioBufferRing ring = new AudioBufferRing(4, 64);
+        FakeSource source = new FakeSource();
+        ByteBuffer control = ring.getControl();
+        assertEquals(-1, control.getLong(0));
+
+        for (int i = 0; i < 6; i++) {
+            fill(ring, source, 32);
+            ring.release(i);
+        }
+
+        assertEquals(5, control.getLong(0));
+        int slot = 8 + (5 & 3) * 40;
+        // Even seqlock word: 2 * seq + 2
+        assertEquals(12, control.getLong(slot));
+        assertEquals(32, control.getInt(slot + 8));
+        assertEquals(40, control.getLong(slot + 16));
+        assertEquals(40000, control.getLong(slot + 24));
+
+        ring.reset();
+        assertEquals(-1, control.getLong(0));
+        assertEquals(0, control.getLong(slot));
+        assertEquals(-1, ring.getPublishedSequence());
+    }
+
+    @Test
+    public void claimMarksSlotWordOddUntilPublish() {
+        AudioBufferRing ring = new AudioBufferRing(2, 16);
+        FakeSource source = new FakeSource();
+        ByteBuffer control = ring.getControl();
+        fill(ring, source, 16);
+        fill(ring, source, 16);
+        ring.release(1);
+        assertEquals(2, control.getLong(8));
+
+        // Refilling slot 0 for sequence 2: a native reader of sequence 0 must see it change
+        ByteBuffer slot = ring.claim();
+        assertEquals(5, control.getLong(8));
+        assertEquals(1, control.getLong(0));
+        source.read(slot, 16);
+        ring.publish(16);
+        assertEquals(6, control.getLong(8));
+        assertEquals(2, control.getLong(0));
+        // Untouched slot keeps its word
+        assertEquals(4, control.getLong(8 + 40));
+    }
+
+    @Test
+    public void consumerThreadSeesEveryByteInOrder() throws Exception {
+        final AudioBufferRing ring = new AudioBufferRing(8, 48);
+        final int total = 20000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long next = 0;
+                    long expected = 0;
+                    while (next < total) {
+                        if (ring.getPublishedSequence() < next) {
+                            Thread.yield();
+                            continue;
+                        }
+                        assertEquals(expected / FRAME_SIZE, ring.framePosition(next));
+                        ByteBuffer data = ring.get(next);
+                        int length = data.remaining();
+                        assertCounter(data, expected);
+                        expected += length;
+                        ring.release(next++);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        consumer.start();
+
+        FakeSource source = new FakeSource();
+        for (int i = 0; i < total && failure.get() == null; ) {
+            ByteBuffer slot = ring.claim();
+            if (slot == null) {
+                Thread.yield();
+                continue;
+            }
+            long frame = source.getFramePosition();
+            // Vary the read size, always whole frames
+            int read = source.read(slot, FRAME_SIZE * (1 + i % 12));
+            ring.publish(read, frame, -1, 0);
+            i++;
+        }
+        consumer.join(10000);
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(total - 1, ring.getReleasedSequence());
+    }
+}
@@ -0,0 +1,172 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BoundedPcmQueueTest {
+    private static final int CHUNK_BYTES = 100;
+    // Three chunks with their 4-byte length headers
+    private static final int CAPACITY = 3 * (CHUNK_BYTES + 4);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Chunk {@code index}: every byte holds the index */
+    private static byte[] chunk(int index) {
+        byte[] data = new byte[CHUNK_BYTES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) index;
+        }
+        return data;
+    }
+
+    /** Take the next chunk and check it is chunk {@code index}, whole */
+    private static void assertTakes(BoundedPcmQueue queue, int index) throws InterruptedException {
+        byte[] dst = new byte[CHUNK_BYTES];
+        assertEquals(CHUNK_BYTES, queue.take(dst, 0));
+        for (byte b : dst) {
+            assertEquals((byte) index, b);
+        }
+    }
+
+    @Test
+    public void dropOldestEvictsTheOldestChunks() throws Exception {
+        BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.DROP_OLDEST, null);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offer(chunk(i), 0, CHUNK_BYTES));
+        }
+
+        assertEquals(2, queue.getDroppedChunks());
+        assertEquals(2L * CHUNK_BYTES, queue.getDroppedBytes());
+        assertEquals(3L * CHUNK_BYTES, queue.getQueuedBytes());
+        assertTakes(queue, 2);
+        assertTakes(queue, 3);
+        assertTakes(queue, 4);
+        assertEquals(0, queue.take(new byte[CHUNK_BYTES], 0));
+    }
+
+    @Test
+    public void dropNewestDiscardsTheIncomingChunk() throws Exception {
+        BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.DROP_NEWEST, null);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(chunk(i), 0, CHUNK_BYTES));
+        }
+        assertFalse(queue.offer(chunk(3), 0, CHUNK_BYTES));
+        assertFalse(queue.offer(chunk(4), 0, CHUNK_BYTES));
+
+        assertEquals(2, queue.getDroppedChunks());
+        assertEquals(5L * CHUNK_BYTES, queue.getEnqueuedBytes());
+        assertTakes(queue, 0);
+        assertTakes(queue, 1);
+        assertTakes(queue, 2);
+    }
+
+    @Test
+    public void blockHoldsTheProducerUntilThereIsRoom() throws Exception {
+        final BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.BLOCK, null);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(chunk(i), 0, CHUNK_BYTES));
+        }
+        final CountDownLatch offered = new CountDownLatch(1);
+        final AtomicBoolean accepted = new AtomicBoolean();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    accepted.set(queue.offer(chunk(3), 0, CHUNK_BYTES));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                offered.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+
+        assertTakes(queue, 0);
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        assertTrue(accepted.get());
+        assertEquals(0, queue.getDroppedChunks());
+        assertTakes(queue, 1);
+        assertTakes(queue, 2);
+        assertTakes(queue, 3);
+    }
+
+    @Test
+    public void closeReleasesBlockedProducer() throws Exception {
+        final BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.BLOCK, null);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(chunk(i), 0, CHUNK_BYTES);
+        }
+        final AtomicBoolean accepted = new AtomicBoolean(true);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    accepted.set(queue.offer(chunk(3), 0, CHUNK_BYTES));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+
+        queue.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(accepted.get());
+        // What was queued before the close still drains, then the end is signalled
+        assertTakes(queue, 0);
+        assertTakes(queue, 1);
+        assertTakes(queue, 2);
+        assertEquals(-1, queue.take(new byte[CHUNK_BYTES], 0));
+    }
+
+    @Test
+    public void spillKeepsFifoOrderAcrossMemoryAndFile() throws Exception {
+        File spillFile = new File(folder.getRoot(), "queue.spill");
+        BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.SPILL, spillFile);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(chunk(i), 0, CHUNK_BYTES));
+        }
+        assertEquals(3L * CHUNK_BYTES, queue.getQueuedBytes());
+        assertEquals(7L * CHUNK_BYTES, queue.getSpilledBytes());
+        assertEquals(10L * CHUNK_BYTES, queue.getMaxQueuedBytes());
+
+        assertTakes(queue, 0);
+        // Memory has room again, but older chunks are on disk: this one queues behind them
+        assertTrue(queue.offer(chunk(10), 0, CHUNK_BYTES));
+        assertEquals(8L * CHUNK_BYTES, queue.getSpilledBytes());
+        for (int i = 1; i <= 10; i++) {
+            assertTakes(queue, i);
+        }
+        assertEquals(0, queue.getSpilledBytes());
+        assertEquals(0, queue.getDroppedChunks());
+        // Drained: the file was cut back and starts over
+        assertEquals(0, spillFile.length());
+        assertTrue(queue.offer(chunk(11), 0, CHUNK_BYTES));
+        assertTakes(queue, 11);
+
+        queue.dispose();
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void chunkLargerThanTheQueueIsDropped() throws Exception {
+        BoundedPcmQueue queue = new BoundedPcmQueue(CAPACITY, BoundedPcmQueue.OverflowPolicy.BLOCK, null);
+        assertFalse(queue.offer(new byte[CAPACITY], 0, CAPACITY));
+        assertEquals(1, queue.getDroppedChunks());
+        assertEquals(CAPACITY, queue.getDroppedBytes());
+    }
+}
@@ -0,0 +1,175 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class CaptureHandoffTest {
+    private static final int BLOCK_SIZE = 256;
+
+    // Stands in for AudioRecord.read: stamps the block so the consumer can check it
+    private static void fill(CaptureHandoff.Block block, long frame) {
+        block.buffer.clear();
+        for (int i = 0; i < BLOCK_SIZE / 8; i++) {
+            block.buffer.putLong(frame + i);
+        }
+        block.buffer.flip();
+        block.length = BLOCK_SIZE;
+        block.captureFrame = frame;
+        block.timeNanos = System.nanoTime();
+    }
+
+    private static void assertStamped(CaptureHandoff.Block block) {
+        for (int i = 0; i < BLOCK_SIZE / 8; i++) {
+            assertEquals(block.captureFrame + i, block.buffer.getLong(i * 8));
+        }
+    }
+
+    @Test
+    public void captureThreadNeverWaitsForSlowSink() throws Exception {
+        final CaptureHandoff handoff = new CaptureHandoff(4, BLOCK_SIZE);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicLong taken = new AtomicLong();
+        final AtomicLong lastGaps = new AtomicLong(-1);
+
+        // A sink that needs 50 ms per block while capture delivers one every 5 ms
+        Thread processing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long lastFrame = -1;
+                    for (CaptureHandoff.Block block; (block = handoff.take()) != null; ) {
+                        assertStamped(block);
+                        assertTrue(block.captureFrame > lastFrame);
+                        assertTrue(block.gaps >= lastGaps.get());
+                        // A skipped block always shows up as a gap
+                        if (lastFrame >= 0 && block.captureFrame != lastFrame + BLOCK_SIZE) {
+                            assertTrue(block.gaps > lastGaps.get());
+                        }
+                        lastFrame = block.captureFrame;
+                        lastGaps.set(block.gaps);
+                        taken.incrementAndGet();
+                        Thread.sleep(50);
+                        handoff.recycle(block);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        }, "processing");
+        processing.start();
+
+        int reads = 200;
+        long worstNanos = 0;
+        long frame = 0;
+        for (int i = 0; i < reads; i++) {
+            long start = System.nanoTime();
+            CaptureHandoff.Block block = handoff.claim();
+            fill(block, frame);
+            block.gaps = handoff.getDroppedBlocks();
+            handoff.publish(block);
+            worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+            frame += BLOCK_SIZE;
+            Thread.sleep(5);
+        }
+        handoff.close();
+        processing.join(10000);
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        // Waiting on the sink even once would take about 50 ms
+        assertTrue("capture waited " + worstNanos / 1000000 + " ms", worstNanos < 20000000L);
+        assertTrue(handoff.getDroppedBlocks() > reads / 2);
+        assertEquals(reads, taken.get() + handoff.getDroppedBlocks());
+        assertEquals(handoff.getDroppedBlocks() * BLOCK_SIZE, handoff.getDroppedBytes());
+    }
+
+    @Test
+    public void fullPoolDropsOldestAndMarksQueuedBlocks() throws InterruptedException {
+        CaptureHandoff handoff = new CaptureHandoff(3, BLOCK_SIZE);
+        for (int i = 0; i < 3; i++) {
+            CaptureHandoff.Block block = handoff.claim();
+            fill(block, i * BLOCK_SIZE);
+            handoff.publish(block);
+        }
+        assertEquals(3, handoff.getQueuedBlocks());
+
+        CaptureHandoff.Block reused = handoff.claim();
+        assertEquals(0, reused.captureFrame);
+        assertEquals(1, handoff.getDroppedBlocks());
+        fill(reused, 3 * BLOCK_SIZE);
+        handoff.publish(reused);
+
+        CaptureHandoff.Block first = handoff.take();
+        assertEquals(BLOCK_SIZE, first.captureFrame);
+        assertEquals(1, first.gaps);
+        assertEquals(2 * BLOCK_SIZE, handoff.take().captureFrame);
+        assertSame(reused, handoff.take());
+    }
+
+    @Test
+    public void spareAbsorbsReadsWhenOnlyMarkersAreQueued() throws InterruptedException {
+        CaptureHandoff handoff = new CaptureHandoff(2, BLOCK_SIZE);
+        CaptureHandoff.Block a = handoff.claim();
+        fill(a, 0);
+        handoff.publish(a);
+        handoff.publishDiscontinuity();
+        // Repeated markers collapse into one
+        handoff.publishDiscontinuity();
+        CaptureHandoff.Block b = handoff.claim();
+        fill(b, BLOCK_SIZE);
+        handoff.publish(b);
+
+        // Processing holds a; the queue head is the marker, nothing can be taken back
+        assertSame(a, handoff.take());
+        CaptureHandoff.Block spare = handoff.claim();
+        assertNotSame(a, spare);
+        assertNotSame(b, spare);
+        fill(spare, 2 * BLOCK_SIZE);
+        handoff.publish(spare);
+        assertEquals(1, handoff.getDroppedBlocks());
+
+        assertEquals(CaptureHandoff.DISCONTINUITY, handoff.take().kind);
+        assertSame(b, handoff.take());
+        handoff.close();
+        assertNull(handoff.take());
+    }
+
+    @Test
+    public void closeLetsProcessingDrainThenEnds() throws Exception {
+        final CaptureHandoff handoff = new CaptureHandoff(4, BLOCK_SIZE);
+        final AtomicLong taken = new AtomicLong();
+        Thread processing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (CaptureHandoff.Block block; (block = handoff.take()) != null; ) {
+                        taken.incrementAndGet();
+                        handoff.recycle(block);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            CaptureHandoff.Block block = handoff.claim();
+            fill(block, i * BLOCK_SIZE);
+            handoff.publish(block);
+        }
+        handoff.close();
+        processing.start();
+        processing.join(5000);
+
+        assertEquals(3, taken.get());
+        assertEquals(0, handoff.getQueuedBlocks());
+    }
+}
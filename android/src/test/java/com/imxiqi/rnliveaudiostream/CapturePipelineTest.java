@@ -0,0 +1,313 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Drives the capture and processing loops on plain threads against a scripted backend, the
+ * way the service runs them.
+ */
+public class CapturePipelineTest {
+    private static final int SAMPLE_RATE = 16000;
+    // 20 ms of 16 kHz mono 16-bit
+    private static final int READ_BYTES = 640;
+    private static final long WAIT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Silence, one read every 2 ms, failing where told to */
+    private static final class FakeBackend implements CaptureBackend {
+        volatile boolean failStart;
+        // 1-based read that returns an error, 0 for none
+        volatile int failAtRead;
+        volatile int reads;
+        volatile int starts;
+        volatile int stops;
+        private volatile boolean started;
+
+        @Override
+        public String getName() {
+            return "fake";
+        }
+
+        @Override
+        public int open(int audioSource, int sampleRate, int channels, SampleFormat format, int bufferSize) {
+            return 2 * bufferSize;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public void start() throws IOException {
+            if (failStart) {
+                throw new IOException("Microphone in use");
+            }
+            starts++;
+            started = true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, int size) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            if (!started) {
+                return 0;
+            }
+            reads++;
+            if (reads == failAtRead) {
+                return -3;
+            }
+            for (int i = 0; i < size; i++) {
+                dst.put(i, (byte) 0);
+            }
+            return size;
+        }
+
+        @Override
+        public boolean getTimestamp(long[] positionAndNanos) {
+            return false;
+        }
+
+        @Override
+        public void stop() {
+            stops++;
+            started = false;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static final class CountingSink implements AudioSink {
+        volatile long bytes;
+
+        @Override
+        public void open(int sampleRate, int channels, SampleFormat format) {
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            bytes += length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    private final CapturePipeline.Listener listener = new CapturePipeline.Listener() {
+        @Override
+        public void onError(String message, Throwable cause) {
+            errors.add(message);
+        }
+
+        @Override
+        public void onLevel(LevelMeter meter) {
+        }
+
+        @Override
+        public void onSpeechStart(float levelDb) {
+        }
+
+        @Override
+        public void onSpeechEnd(float levelDb) {
+        }
+
+        @Override
+        public void onLookbackState(boolean triggered, String trigger) {
+        }
+
+        @Override
+        public void onRingAttached(AudioBufferRing ring) {
+        }
+
+        @Override
+        public void onRingDetached() {
+        }
+
+        @Override
+        public void onChunk(AudioBufferRing ring, long sequence) {
+        }
+    };
+
+    private FakeBackend backend;
+    private CountingSink sink;
+    private SinkChannel channel;
+    private CapturePipeline pipeline;
+    private Thread capture;
+    private Thread processing;
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(String what, Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(2);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        AudioConfig.getInstance().resetToDefaults();
+        AudioConfig config = AudioConfig.getInstance().setSampleRate(SAMPLE_RATE).setBufferSize(READ_BYTES).snapshot();
+        backend = new FakeBackend();
+        int bufferBytes = backend.open(config.getAudioSource(), SAMPLE_RATE, 1, config.getSampleFormat(), READ_BYTES);
+        CaptureHealth health = new CaptureHealth();
+        health.reset(SAMPLE_RATE * 2, 2, READ_BYTES, bufferBytes);
+        PhaseTimer timer = new PhaseTimer();
+        timer.begin();
+        pipeline = new CapturePipeline(config, backend, health, timer, listener);
+        sink = new CountingSink();
+        channel = new SinkChannel("count", sink, new SinkOptions(), SAMPLE_RATE, 1, config.getSampleFormat(),
+                pipeline.getSlotSize(), new File(folder.getRoot(), "spill.pcm"), health, null);
+        pipeline.setOutputs(new SinkChannel[] {channel}, false);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        AudioConfig.getInstance().resetToDefaults();
+        if (capture != null) {
+            pipeline.stop();
+            capture.interrupt();
+            capture.join(1000);
+            processing.join(1000);
+        }
+        channel.finish();
+    }
+
+    private void startThreads() {
+        channel.start();
+        processing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.runProcessing();
+            }
+        }, "AudioProcessingThread");
+        capture = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.runCapture();
+            }
+        }, "AudioCaptureThread");
+        processing.start();
+        capture.start();
+    }
+
+    @Test
+    public void failedStartLeavesPipelineStopped() {
+        backend.failStart = true;
+        try {
+            pipeline.start();
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertFalse(pipeline.isRunning());
+        assertFalse(pipeline.setPaused(true));
+        assertEquals(0, backend.starts);
+    }
+
+    @Test
+    public void readErrorEndsSessionAndIsReported() throws Exception {
+        backend.failAtRead = 10;
+        pipeline.start();
+        startThreads();
+
+        // Capture gives up by itself; processing finishes what was handed over, then ends
+        capture.join(WAIT_MS);
+        assertFalse(capture.isAlive());
+        processing.join(WAIT_MS);
+        assertFalse(processing.isAlive());
+        assertEquals(Collections.singletonList("Error reading audio data: -3"), errors);
+
+        channel.finish();
+        // Reads 1 and 2 are skipped for the start click, 10 failed
+        assertEquals(7L * READ_BYTES, sink.bytes);
+    }
+
+    @Test
+    public void pauseStopsBackendAndResumeStartsIt() throws Exception {
+        pipeline.start();
+        startThreads();
+        waitFor("first reads", new Condition() {
+            @Override
+            public boolean met() {
+                return backend.reads >= 5;
+            }
+        });
+
+        assertTrue(pipeline.setPaused(true));
+        waitFor("backend stop", new Condition() {
+            @Override
+            public boolean met() {
+                return backend.stops == 1;
+            }
+        });
+        int readsWhilePaused = backend.reads;
+        Thread.sleep(50);
+        assertEquals(readsWhilePaused, backend.reads);
+        assertTrue(pipeline.isPaused());
+        assertTrue(capture.isAlive());
+
+        assertTrue(pipeline.setPaused(false));
+        waitFor("backend restart", new Condition() {
+            @Override
+            public boolean met() {
+                return backend.starts == 2;
+            }
+        });
+        final int readsAfterResume = backend.reads;
+        waitFor("reads after resume", new Condition() {
+            @Override
+            public boolean met() {
+                return backend.reads > readsAfterResume + 5;
+            }
+        });
+
+        // Paused again, then stopped: the loop ends without starting the backend once more
+        assertTrue(pipeline.setPaused(true));
+        waitFor("second backend stop", new Condition() {
+            @Override
+            public boolean met() {
+                return backend.stops == 2;
+            }
+        });
+        pipeline.stop();
+        capture.join(WAIT_MS);
+        assertFalse(capture.isAlive());
+        processing.join(WAIT_MS);
+        assertFalse(processing.isAlive());
+        assertEquals(2, backend.starts);
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+}
@@ -0,0 +1,59 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ChannelMixerTest {
+    @Test
+    public void stereoDownmixAverages() {
+        short[] stereo = {1000, 3000, -2000, 2000, Short.MAX_VALUE, Short.MAX_VALUE, Short.MIN_VALUE, Short.MIN_VALUE};
+        short[] mono = new short[4];
+        assertEquals(4, ChannelMixer.mix(stereo, 4, 2, mono, 1));
+        assertArrayEquals(new short[] {2000, 0, Short.MAX_VALUE, Short.MIN_VALUE}, mono);
+
+        // In place
+        assertEquals(4, ChannelMixer.mix(stereo, 4, 2, stereo, 1));
+        assertEquals(2000, stereo[0]);
+        assertEquals(Short.MIN_VALUE, stereo[3]);
+
+        float[] floats = {0.5f, -0.5f, 1f, 0f, 0.25f, 0.75f};
+        float[] floatMono = new float[3];
+        ChannelMixer.mix(floats, 3, 2, floatMono, 1);
+        assertArrayEquals(new float[] {0f, 0.5f, 0.5f}, floatMono, 0f);
+    }
+
+    @Test
+    public void downmixCancelsOppositePhase() {
+        float[] stereo = new float[2 * 1600];
+        for (int i = 0; i < stereo.length; i += 2) {
+            stereo[i] = (float) (0.5 * Math.sin(2 * Math.PI * 1000 * i / 2 / 16000));
+            stereo[i + 1] = -stereo[i];
+        }
+        float[] mono = new float[stereo.length / 2];
+        ChannelMixer.mix(stereo, mono.length, 2, mono, 1);
+        for (float sample : mono) {
+            assertEquals(0f, sample, 0f);
+        }
+    }
+
+    @Test
+    public void monoUpmixDuplicatesInPlace() {
+        short[] samples = {1, 2, 3, 0, 0, 0};
+        assertEquals(6, ChannelMixer.mix(samples, 3, 1, samples, 2));
+        assertArrayEquals(new short[] {1, 1, 2, 2, 3, 3}, samples);
+    }
+
+    @Test
+    public void otherLayoutsKeepLeadingChannels() {
+        short[] quad = {1, 2, 3, 4, 5, 6, 7, 8};
+        short[] stereo = new short[4];
+        ChannelMixer.mix(quad, 2, 4, stereo, 2);
+        assertArrayEquals(new short[] {1, 2, 5, 6}, stereo);
+
+        short[] back = new short[8];
+        ChannelMixer.mix(stereo, 2, 2, back, 4);
+        assertArrayEquals(new short[] {1, 2, 0, 0, 5, 6, 0, 0}, back);
+    }
+}
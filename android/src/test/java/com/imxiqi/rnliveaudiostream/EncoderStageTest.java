@@ -0,0 +1,255 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EncoderStageTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 1;
+    private static final int BYTES_PER_SAMPLE = 2;
+    private static final int FRAME_SAMPLES = 320;
+    private static final int FRAME_BYTES = FRAME_SAMPLES * CHANNELS * BYTES_PER_SAMPLE;
+
+    /**
+     * Stands in for MediaCodec: hands out input buffers while it has some free and "encodes"
+     * each queued frame synchronously into a packet of {@code packetSize} bytes.
+     */
+    private static final class StubCodec implements AudioCodec {
+        final List<byte[]> frames = new ArrayList<>();
+        final List<Long> frameTimes = new ArrayList<>();
+        final List<Boolean> frameEos = new ArrayList<>();
+        int freeBuffers = Integer.MAX_VALUE;
+        int inputSize = FRAME_BYTES;
+        int packetSize = 10;
+        boolean released;
+        private PacketListener listener;
+
+        @Override
+        public void start(PacketListener listener) {
+            this.listener = listener;
+            // Like MediaCodec, the codec config comes out first
+            listener.onPacket(ByteBuffer.wrap(new byte[] {0x12, 0x10}), 0, true, false);
+        }
+
+        @Override
+        public ByteBuffer dequeueInputBuffer() {
+            if (freeBuffers == 0) {
+                return null;
+            }
+            freeBuffers--;
+            return ByteBuffer.allocate(inputSize);
+        }
+
+        @Override
+        public void queueInputBuffer(ByteBuffer buffer, int length, long presentationTimeUs, boolean endOfStream) {
+            byte[] frame = new byte[length];
+            buffer.flip();
+            buffer.get(frame);
+            frames.add(frame);
+            frameTimes.add(presentationTimeUs);
+            frameEos.add(endOfStream);
+            byte[] packet = new byte[length > 0 ? packetSize : 0];
+            Arrays.fill(packet, (byte) frames.size());
+            listener.onPacket(ByteBuffer.wrap(packet), presentationTimeUs, false, endOfStream);
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static final class RecordingSink implements EncoderStage.PacketSink {
+        final List<byte[]> packets = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onPacket(byte[] data, int length, long presentationTimeUs) {
+            packets.add(Arrays.copyOf(data, length));
+            times.add(presentationTimeUs);
+        }
+
+        @Override
+        public void onError(String message) {
+            errors.add(message);
+        }
+    }
+
+    private static ByteBuffer pcm(int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) (offset + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static EncoderStage opus(StubCodec codec, RecordingSink sink) {
+        EncoderStage stage = new EncoderStage(codec, EncoderStage.CODEC_OPUS, SAMPLE_RATE, CHANNELS,
+                BYTES_PER_SAMPLE, FRAME_SAMPLES, sink);
+        stage.start();
+        return stage;
+    }
+
+    @Test
+    public void cutsUnevenWritesIntoWholeFrames() {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+
+        int written = 0;
+        for (int size : new int[] {100, 700, 3, FRAME_BYTES * 2, 477}) {
+            ByteBuffer chunk = pcm(written, size);
+            stage.write(chunk);
+            assertFalse(chunk.hasRemaining());
+            written += size;
+        }
+
+        assertEquals(written / FRAME_BYTES, codec.frames.size());
+        for (int i = 0; i < codec.frames.size(); i++) {
+            assertArrayEquals(pcm(i * FRAME_BYTES, FRAME_BYTES).array(), codec.frames.get(i));
+            assertEquals(i * 20000L, (long) codec.frameTimes.get(i));
+            assertFalse(codec.frameEos.get(i));
+        }
+        assertEquals(0, stage.getDroppedFrames());
+    }
+
+    @Test
+    public void framesWithoutInputBufferAreDroppedButTimeMovesOn() {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+
+        codec.freeBuffers = 2;
+        stage.write(pcm(0, FRAME_BYTES * 5));
+        codec.freeBuffers = 1;
+        stage.write(pcm(0, FRAME_BYTES));
+
+        assertEquals(3, stage.getDroppedFrames());
+        assertEquals(3, codec.frames.size());
+        assertEquals(Arrays.asList(0L, 20000L, 100000L), codec.frameTimes);
+        assertEquals(Arrays.asList(0L, 20000L, 100000L), sink.times);
+    }
+
+    @Test
+    public void finishQueuesPartialFrameWithEndOfStream() throws InterruptedException {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+
+        stage.write(pcm(0, FRAME_BYTES + 100));
+        assertFalse(stage.awaitEndOfStream(0));
+        stage.finish();
+
+        assertTrue(stage.awaitEndOfStream(0));
+        assertEquals(2, codec.frames.size());
+        assertEquals(100, codec.frames.get(1).length);
+        assertEquals(20000L, (long) codec.frameTimes.get(1));
+        assertTrue(codec.frameEos.get(1));
+    }
+
+    @Test
+    public void finishWithoutInputBufferStillEndsTheStream() throws InterruptedException {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+
+        codec.freeBuffers = 0;
+        stage.finish();
+
+        assertTrue(stage.awaitEndOfStream(0));
+        assertTrue(codec.frames.isEmpty());
+    }
+
+    @Test
+    public void opusPacketsAreRawAndConfigIsSkipped() {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+
+        stage.write(pcm(0, FRAME_BYTES * 2));
+
+        assertEquals(2, sink.packets.size());
+        assertEquals(2, stage.getPacketCount());
+        byte[] expected = new byte[10];
+        Arrays.fill(expected, (byte) 2);
+        assertArrayEquals(expected, sink.packets.get(1));
+    }
+
+    @Test
+    public void aacPacketsCarryAdtsHeader() {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = new EncoderStage(codec, EncoderStage.CODEC_AAC, 44100, 2,
+                BYTES_PER_SAMPLE, 1024, sink);
+        stage.start();
+        codec.inputSize = stage.getFrameBytes();
+        codec.packetSize = 300;
+
+        stage.write(pcm(0, stage.getFrameBytes()));
+
+        assertEquals(1, sink.packets.size());
+        byte[] packet = sink.packets.get(0);
+        assertEquals(307, packet.length);
+        assertEquals((byte) 0xFF, packet[0]);
+        assertEquals((byte) 0xF1, packet[1]);
+        // LC profile, 44.1 kHz (index 4), channel configuration 2
+        assertEquals(1, (packet[2] & 0xC0) >> 6);
+        assertEquals(4, (packet[2] & 0x3C) >> 2);
+        int channels = ((packet[2] & 1) << 2) | ((packet[3] & 0xC0) >> 6);
+        assertEquals(2, channels);
+        int frameLength = ((packet[3] & 3) << 11) | ((packet[4] & 0xFF) << 3) | ((packet[5] & 0xE0) >> 5);
+        assertEquals(307, frameLength);
+        assertEquals(0, (long) sink.times.get(0));
+    }
+
+    @Test
+    public void oversizedPacketsAreDroppedAndCounted() {
+        StubCodec codec = new StubCodec();
+        RecordingSink sink = new RecordingSink();
+        EncoderStage stage = opus(codec, sink);
+        codec.packetSize = EncoderStage.MAX_PACKET_BYTES * 2;
+
+        stage.write(pcm(0, FRAME_BYTES));
+
+        assertEquals(0, sink.packets.size());
+        assertEquals(1, stage.getDroppedPackets());
+        assertEquals(1, sink.errors.size());
+
+        // Right at the limit still goes through whole
+        codec.packetSize = EncoderStage.MAX_PACKET_BYTES;
+        stage.write(pcm(FRAME_BYTES, FRAME_BYTES));
+        assertEquals(1, sink.packets.size());
+        assertEquals(EncoderStage.MAX_PACKET_BYTES, sink.packets.get(0).length);
+        assertEquals(1, stage.getDroppedPackets());
+    }
+
+    @Test
+    public void rejectsSampleRateAdtsCannotSignal() {
+        try {
+            new EncoderStage(new StubCodec(), EncoderStage.CODEC_AAC, 45000, 1, 2, 1024, new RecordingSink());
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(8, EncoderStage.adtsSampleRateIndex(16000));
+    }
+
+    @Test
+    public void releaseReleasesCodec() {
+        StubCodec codec = new StubCodec();
+        EncoderStage stage = opus(codec, new RecordingSink());
+        stage.release();
+        assertTrue(codec.released);
+    }
+}
@@ -0,0 +1,139 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LevelMeterTest {
+    private static final int SAMPLE_RATE = 16000;
+    // 160 frames per interval
+    private static final int INTERVAL_MS = 10;
+    private static final int INTERVAL_FRAMES = 160;
+    private static final float DELTA_DB = 0.01f;
+
+    /** {@code intervals} intervals, every sample of interval k at amplitude (k + 1) / 10 */
+    private static float[] steps(int channels, int intervals) {
+        float[] samples = new float[intervals * INTERVAL_FRAMES * channels];
+        for (int i = 0; i < samples.length; i++) {
+            float amplitude = (i / (INTERVAL_FRAMES * channels) + 1) / 10f;
+            // Alternate the sign so there is no DC to hide an off-by-one
+            samples[i] = (i % 2 == 0) ? amplitude : -amplitude;
+        }
+        return samples;
+    }
+
+    /** Feed {@code samples} in chunks of {@code chunk} and collect the peak of each interval */
+    private static List<Float> feed(LevelMeter meter, float[] samples, int chunk) {
+        List<Float> peaks = new ArrayList<Float>();
+        for (int start = 0; start < samples.length; start += chunk) {
+            int end = Math.min(samples.length, start + chunk);
+            int offset = start;
+            while (offset < end) {
+                offset += meter.process(samples, offset, end - offset);
+                if (meter.poll()) {
+                    peaks.add(meter.getPeakDb());
+                }
+            }
+        }
+        return peaks;
+    }
+
+    private static void assertSteps(List<Float> peaks, int intervals) {
+        assertEquals(intervals, peaks.size());
+        for (int k = 0; k < intervals; k++) {
+            float expected = (float) (20 * Math.log10((k + 1) / 10.0));
+            assertEquals("interval " + k, expected, peaks.get(k), DELTA_DB);
+        }
+    }
+
+    @Test
+    public void processStopsAtEachIntervalBoundary() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, INTERVAL_MS, 0);
+        float[] samples = steps(1, 3);
+
+        // One call covering all three intervals consumes only the first
+        assertEquals(INTERVAL_FRAMES, meter.process(samples, 0, samples.length));
+        assertTrue(meter.poll());
+        assertFalse(meter.poll());
+        assertEquals(-20f, meter.getPeakDb(), DELTA_DB);
+        assertEquals(-20f, meter.getRmsDb(), DELTA_DB);
+    }
+
+    @Test
+    public void intervalsLineUpHoweverChunksAreSplit() {
+        int[] chunks = {1, 7, 100, INTERVAL_FRAMES, INTERVAL_FRAMES + 1, 1000};
+        for (int chunk : chunks) {
+            LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, INTERVAL_MS, 0);
+            assertSteps(feed(meter, steps(1, 8), chunk), 8);
+        }
+    }
+
+    @Test
+    public void stereoIntervalsEndOnWholeFrames() {
+        // Odd chunk sizes split frames between calls
+        int[] chunks = {3, 159, 161, 321};
+        for (int chunk : chunks) {
+            LevelMeter meter = new LevelMeter(SAMPLE_RATE, 2, INTERVAL_MS, 0);
+            assertSteps(feed(meter, steps(2, 6), chunk), 6);
+        }
+    }
+
+    @Test
+    public void shortSamplesMatchFloatSamples() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, INTERVAL_MS, 0);
+        short[] samples = new short[2 * INTERVAL_FRAMES];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i < INTERVAL_FRAMES ? 3277 : -16384);
+        }
+
+        assertEquals(100, meter.process(samples, 0, 100));
+        assertFalse(meter.poll());
+        assertEquals(INTERVAL_FRAMES - 100, meter.process(samples, 100, samples.length - 100));
+        assertTrue(meter.poll());
+        assertEquals(-20f, meter.getPeakDb(), DELTA_DB);
+        assertEquals(INTERVAL_FRAMES, meter.process(samples, INTERVAL_FRAMES, INTERVAL_FRAMES));
+        assertTrue(meter.poll());
+        assertEquals(-6.02f, meter.getPeakDb(), DELTA_DB);
+    }
+
+    @Test
+    public void resetDropsThePartialInterval() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, INTERVAL_MS, 0);
+        float[] loud = new float[100];
+        Arrays.fill(loud, 0.9f);
+        assertEquals(100, meter.process(loud, 0, loud.length));
+        meter.reset();
+
+        // A full interval counts from the reset, and the loud samples are not in it
+        float[] samples = steps(1, 1);
+        assertEquals(INTERVAL_FRAMES, meter.process(samples, 0, samples.length));
+        assertTrue(meter.poll());
+        assertEquals(-20f, meter.getPeakDb(), DELTA_DB);
+    }
+
+    @Test
+    public void bandLevelFollowsToneFrequency() {
+        int bands = 8;
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, 100, bands);
+        float[] tone = new float[SAMPLE_RATE / 2];
+        for (int i = 0; i < tone.length; i++) {
+            tone[i] = (float) (0.5 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+        }
+        feed(meter, tone, 333);
+
+        int loudest = 0;
+        for (int b = 1; b < bands; b++) {
+            if (meter.getBandDb(b) > meter.getBandDb(loudest)) {
+                loudest = b;
+            }
+        }
+        // Bands are log-spaced from 100 Hz to 7.2 kHz: 1 kHz falls in band 4
+        assertEquals(4, loudest);
+    }
+}
@@ -0,0 +1,81 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PcmBatcherTest {
+    private static final class Collector implements PcmBatcher.Sink {
+        final List<byte[]> batches = new ArrayList<>();
+
+        @Override
+        public void onBatch(byte[] data, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, 0, copy, 0, length);
+            batches.add(copy);
+        }
+    }
+
+    @Test
+    public void capacityIsRoundedDownToWholeFrames() {
+        // 24-bit stereo: 6-byte frames, 1000 is not a multiple
+        Collector sink = new Collector();
+        PcmBatcher batcher = new PcmBatcher(1000, 6, 0, sink);
+        assertEquals(996, batcher.getCapacity());
+
+        byte[] chunk = new byte[600];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) i;
+        }
+        long written = 0;
+        for (int i = 0; i < 10; i++) {
+            batcher.append(chunk, 0, chunk.length, 0);
+            written += chunk.length;
+        }
+        batcher.flush();
+
+        long total = 0;
+        for (byte[] batch : sink.batches) {
+            assertEquals(0, batch.length % 6);
+            total += batch.length;
+        }
+        assertEquals(written, total);
+    }
+
+    @Test
+    public void capacityBelowOneFrameHoldsOneFrame() {
+        PcmBatcher batcher = new PcmBatcher(3, 8, 0, new Collector());
+        assertEquals(8, batcher.getCapacity());
+    }
+
+    @Test
+    public void windowFlushesOldBatch() {
+        Collector sink = new Collector();
+        PcmBatcher batcher = new PcmBatcher(640, 2, 20000000L, sink);
+        batcher.append(new byte[64], 0, 64, 0);
+        batcher.append(new byte[64], 0, 64, 10000000L);
+        assertEquals(0, sink.batches.size());
+
+        batcher.append(new byte[64], 0, 64, 20000000L);
+        assertEquals(1, sink.batches.size());
+        assertEquals(192, sink.batches.get(0).length);
+    }
+
+    @Test
+    public void flushIfDueEmitsBatchWithoutNextChunk() {
+        Collector sink = new Collector();
+        PcmBatcher batcher = new PcmBatcher(640, 2, 20000000L, sink);
+        batcher.append(new byte[64], 0, 64, 0);
+        batcher.flushIfDue(10000000L);
+        assertEquals(0, sink.batches.size());
+
+        batcher.flushIfDue(20000000L);
+        assertEquals(1, sink.batches.size());
+        assertEquals(64, sink.batches.get(0).length);
+        batcher.flushIfDue(40000000L);
+        assertEquals(1, sink.batches.size());
+    }
+}
@@ -0,0 +1,228 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResamplerTest {
+    private static final int SECONDS = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float[] sine(int rate, double freq, double amplitude, int channels) {
+        float[] out = new float[rate * SECONDS * channels];
+        for (int i = 0; i < rate * SECONDS; i++) {
+            for (int c = 0; c < channels; c++) {
+                // Second channel a quarter period behind so the channels differ
+                out[i * channels + c] = (float) (amplitude * Math.sin(2 * Math.PI * freq * i / rate - c * Math.PI / 2));
+            }
+        }
+        return out;
+    }
+
+    private static float[] resample(Resampler resampler, float[] input, int chunkFrames) {
+        int channels = resampler.getChannels();
+        int frames = input.length / channels;
+        float[] out = new float[resampler.getMaxOutputFrames(frames) * channels];
+        float[] chunk = new float[chunkFrames * channels];
+        float[] chunkOut = new float[resampler.getMaxOutputFrames(chunkFrames) * channels];
+        int written = 0;
+        for (int offset = 0; offset < frames; offset += chunkFrames) {
+            int n = Math.min(chunkFrames, frames - offset);
+            System.arraycopy(input, offset * channels, chunk, 0, n * channels);
+            int produced = resampler.process(chunk, n, chunkOut);
+            System.arraycopy(chunkOut, 0, out, written * channels, produced * channels);
+            written += produced;
+        }
+        float[] result = new float[written * channels];
+        System.arraycopy(out, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Amplitude of {@code freq} in one channel, and the rms of what is left after taking that
+     * sinusoid out, over the middle of the signal (clear of filter start-up).
+     */
+    private static double[] analyze(float[] signal, int channels, int channel, int rate, double freq) {
+        int frames = signal.length / channels;
+        int start = frames / 4;
+        int end = frames * 3 / 4;
+        double sin = 0;
+        double cos = 0;
+        for (int i = start; i < end; i++) {
+            double w = 2 * Math.PI * freq * i / rate;
+            sin += signal[i * channels + channel] * Math.sin(w);
+            cos += signal[i * channels + channel] * Math.cos(w);
+        }
+        int n = end - start;
+        double a = 2 * sin / n;
+        double b = 2 * cos / n;
+        double residual = 0;
+        for (int i = start; i < end; i++) {
+            double w = 2 * Math.PI * freq * i / rate;
+            double r = signal[i * channels + channel] - a * Math.sin(w) - b * Math.cos(w);
+            residual += r * r;
+        }
+        return new double[] {Math.sqrt(a * a + b * b), Math.sqrt(residual / n)};
+    }
+
+    private static double rms(float[] signal, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += signal[i] * signal[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    private static double db(double ratio) {
+        return 20 * Math.log10(ratio);
+    }
+
+    @Test
+    public void passbandIsFlatWhenDecimating() {
+        for (double freq : new double[] {100, 1000, 3000, 6000}) {
+            float[] out = resample(new Resampler(48000, 16000, 1), sine(48000, freq, 0.5, 1), 960);
+            double[] result = analyze(out, 1, 0, 16000, freq);
+            assertEquals(freq + " Hz gain", 0, db(result[0] / 0.5), 0.1);
+            assertTrue(freq + " Hz residual " + db(result[1] / 0.5), db(result[1] / 0.5) < -60);
+        }
+    }
+
+    @Test
+    public void aboveOutputNyquistIsRejected() {
+        // Would alias to 4 kHz and 1 kHz without the anti-aliasing filter
+        for (double freq : new double[] {12000, 15000}) {
+            float[] out = resample(new Resampler(48000, 16000, 1), sine(48000, freq, 0.5, 1), 960);
+            double level = db(rms(out, out.length / 4, out.length * 3 / 4) / (0.5 / Math.sqrt(2)));
+            assertTrue(freq + " Hz leaks at " + level + " dB", level < -60);
+        }
+    }
+
+    @Test
+    public void upsamplingKeepsToneAndAddsNoImages() {
+        float[] out = resample(new Resampler(16000, 44100, 1), sine(16000, 1000, 0.5, 1), 441);
+        double[] result = analyze(out, 1, 0, 44100, 1000);
+        assertEquals(0, db(result[0] / 0.5), 0.1);
+        // Images of 1 kHz around 16 kHz would show up in the residual
+        assertTrue(db(result[1] / 0.5) < -60);
+    }
+
+    @Test
+    public void outputLengthFollowsRatio() {
+        int[][] ratios = {{44100, 16000}, {16000, 48000}, {48000, 44100}, {8000, 8000}};
+        for (int[] ratio : ratios) {
+            float[] out = resample(new Resampler(ratio[0], ratio[1], 1), sine(ratio[0], 440, 0.5, 1), 1000);
+            // Only the filter's look-ahead is still held back
+            assertTrue(ratio[0] + " -> " + ratio[1] + ": " + out.length,
+                    out.length <= ratio[1] && out.length > ratio[1] - 64);
+        }
+    }
+
+    @Test
+    public void chunkSizeDoesNotChangeOutput() {
+        float[] input = sine(44100, 997, 0.5, 2);
+        float[] whole = resample(new Resampler(44100, 16000, 2), input, input.length / 2);
+        for (int chunk : new int[] {1, 7, 441, 4096}) {
+            float[] chunked = resample(new Resampler(44100, 16000, 2), input, chunk);
+            assertArrayEquals("chunk " + chunk, whole, chunked, 1e-6f);
+        }
+    }
+
+    @Test
+    public void channelsAreFilteredIndependently() {
+        float[] out = resample(new Resampler(48000, 16000, 2), sine(48000, 1000, 0.5, 2), 480);
+        double[] left = analyze(out, 2, 0, 16000, 1000);
+        double[] right = analyze(out, 2, 1, 16000, 1000);
+        assertEquals(0.5, left[0], 0.01);
+        assertEquals(0.5, right[0], 0.01);
+        assertTrue(db(left[1] / 0.5) < -60 && db(right[1] / 0.5) < -60);
+    }
+
+    @Test
+    public void shortOutputClipsInsteadOfWrapping() {
+        short[] input = new short[4800];
+        float[] floatInput = new float[input.length];
+        for (int i = 0; i < input.length; i++) {
+            // Full-scale square wave: the filter's ringing overshoots the 16-bit range
+            input[i] = (i / 24) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+            floatInput[i] = input[i];
+        }
+        Resampler resampler = new Resampler(48000, 16000, 1);
+        short[] out = new short[resampler.getMaxOutputFrames(input.length)];
+        int written = resampler.process(input, input.length, out);
+        float[] reference = resample(new Resampler(48000, 16000, 1), floatInput, input.length);
+
+        assertEquals(reference.length, written);
+        boolean clipped = false;
+        for (int i = 0; i < written; i++) {
+            float expected = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, reference[i]));
+            assertEquals("sample " + i, expected, out[i], 1f);
+            clipped |= reference[i] > Short.MAX_VALUE || reference[i] < Short.MIN_VALUE;
+        }
+        assertTrue(clipped);
+    }
+
+    /** Where the loudest sample landed, by the frame positions the channel stamped */
+    private static final class PeakSink implements StampedSink {
+        long peakFrame = -1;
+        int peak;
+
+        @Override
+        public void open(int sampleRate, int channels, SampleFormat format) {
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length, long framePosition, long timeNanos, long gaps) {
+            ByteBuffer samples = ByteBuffer.wrap(data, offset, length).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < length / 2; i++) {
+                int s = Math.abs(samples.getShort(offset + i * 2));
+                if (s > peak) {
+                    peak = s;
+                    peakFrame = framePosition + i;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void sinkChannelPositionsAccountForFilterDelay() throws Exception {
+        // A click at 0.5 s of 48 kHz, converted to 16 kHz for the sink, 20 ms chunks
+        int chunkFrames = 960;
+        PeakSink sink = new PeakSink();
+        SinkChannel channel = new SinkChannel("resampled", sink, new SinkOptions().setSampleRate(16000),
+                48000, 1, SampleFormat.PCM_16BIT, chunkFrames * 2, new File(folder.getRoot(), "spill.pcm"),
+                null, null);
+        channel.start();
+        ByteBuffer chunk = ByteBuffer.allocate(chunkFrames * 2).order(ByteOrder.nativeOrder());
+        for (int frame = 0; frame < 48000; frame += chunkFrames) {
+            chunk.clear();
+            for (int i = 0; i < chunkFrames; i++) {
+                chunk.putShort((short) (frame + i == 24000 ? 16384 : 0));
+            }
+            chunk.flip();
+            assertTrue(channel.offer(chunk, frame, 0, 0));
+        }
+        channel.finish();
+
+        // The filter's output trails its input; the stamps must not
+        assertTrue(sink.peak > 0);
+        assertEquals(8000, sink.peakFrame, 1);
+    }
+}
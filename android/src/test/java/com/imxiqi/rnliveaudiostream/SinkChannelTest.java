@@ -0,0 +1,153 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SinkChannelTest {
+    private static final int CHUNK_BYTES = 640;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Holds up its first write until released, whether interrupted or not */
+    private static final class StuckSink implements AudioSink {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile long bytes;
+
+        @Override
+        public void open(int sampleRate, int channels, SampleFormat format) {
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            entered.countDown();
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Like a blocking native call that ignores interrupts
+                }
+            }
+            bytes += length;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    /** Batches like JsEventSink, flushing a due batch when the channel goes idle */
+    private static final class BatchingSink implements AudioSink, PcmBatcher.Sink {
+        final CountDownLatch emitted = new CountDownLatch(1);
+        volatile int batchBytes;
+        private PcmBatcher batcher;
+
+        @Override
+        public void open(int sampleRate, int channels, SampleFormat format) {
+            batcher = new PcmBatcher(16 * CHUNK_BYTES, 2, 20000000L, this);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            batcher.append(data, offset, length, System.nanoTime());
+        }
+
+        @Override
+        public void onIdle(long nowNanos) {
+            batcher.flushIfDue(nowNanos);
+        }
+
+        @Override
+        public void onBatch(byte[] data, int length) {
+            batchBytes = length;
+            emitted.countDown();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void idleChannelLetsSinkFlushPartialBatch() throws Exception {
+        BatchingSink sink = new BatchingSink();
+        SinkChannel channel = new SinkChannel("batching", sink, new SinkOptions(), 16000, 1,
+                SampleFormat.PCM_16BIT, CHUNK_BYTES, new File(folder.getRoot(), "spill.pcm"), null, null);
+        channel.start();
+        assertTrue(channel.offer(ByteBuffer.allocate(CHUNK_BYTES)));
+
+        // No further chunk: the batch goes out on an idle poll, before finish() closes it
+        assertTrue(sink.emitted.await(5, TimeUnit.SECONDS));
+        assertEquals(CHUNK_BYTES, sink.batchBytes);
+        channel.finish();
+    }
+
+    @Test
+    public void queueOutlivesFinishUntilSinkThreadExits() throws Exception {
+        File spillFile = new File(folder.getRoot(), "spill.pcm");
+        StuckSink sink = new StuckSink();
+        // Smallest queue: a few chunks in memory
+        SinkOptions options = new SinkOptions().setMaxQueueBytes(1)
+                .setOverflowPolicy(BoundedPcmQueue.OverflowPolicy.SPILL);
+        SinkChannel channel = new SinkChannel("stuck", sink, options, 16000, 1, SampleFormat.PCM_16BIT,
+                CHUNK_BYTES, spillFile, null, null);
+        channel.start();
+
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+        assertTrue(channel.offer(chunk));
+        assertTrue(sink.entered.await(5, TimeUnit.SECONDS));
+        // Beyond the in-memory queue: goes to the spill file
+        for (int i = 0; i < 20; i++) {
+            assertTrue(channel.offer(chunk));
+        }
+        assertTrue(channel.getQueue().getSpilledBytes() > 0);
+
+        channel.finish();
+
+        // finish() gave up on the sink, but the sink thread still reads the spill file
+        assertTrue(spillFile.exists());
+        assertEquals(1, sink.closed.getCount());
+
+        sink.release.countDown();
+        assertTrue(sink.closed.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (spillFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(spillFile.exists());
+        assertEquals(21L * CHUNK_BYTES, sink.bytes);
+    }
+
+    @Test
+    public void finishFreesQueueOfDrainedSink() throws Exception {
+        File spillFile = new File(folder.getRoot(), "spill.pcm");
+        StuckSink sink = new StuckSink();
+        sink.release.countDown();
+        SinkOptions options = new SinkOptions().setOverflowPolicy(BoundedPcmQueue.OverflowPolicy.SPILL);
+        SinkChannel channel = new SinkChannel("quick", sink, options, 16000, 1, SampleFormat.PCM_16BIT,
+                CHUNK_BYTES, spillFile, null, null);
+        channel.start();
+        for (int i = 0; i < 10; i++) {
+            channel.offer(ByteBuffer.allocate(CHUNK_BYTES));
+        }
+
+        channel.finish();
+
+        assertEquals(0, sink.closed.getCount());
+        assertEquals(10L * CHUNK_BYTES, sink.bytes);
+        assertEquals(10L * CHUNK_BYTES, channel.getBytesWritten());
+    }
+}
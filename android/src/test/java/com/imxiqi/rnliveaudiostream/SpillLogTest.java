@@ -0,0 +1,146 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillLogTest {
+    private static final int CHUNK_BYTES = 100;
+    // Nine chunks with their 12-byte headers fill a segment
+    private static final long SEGMENT_BYTES = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("spill");
+    }
+
+    /** Chunk {@code index}: every byte holds the index, at offset index * CHUNK_BYTES */
+    private static byte[] chunk(int index) {
+        byte[] data = new byte[CHUNK_BYTES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) index;
+        }
+        return data;
+    }
+
+    private static void append(SpillLog log, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            log.append((long) i * CHUNK_BYTES, chunk(i), 0, CHUNK_BYTES);
+        }
+    }
+
+    /** Read the chunk at the cursor, check it is chunk {@code index} and move past it */
+    private static void assertReads(SpillLog log, int index) throws IOException {
+        assertEquals((long) index * CHUNK_BYTES, log.getCursorOffset());
+        byte[] dst = new byte[CHUNK_BYTES];
+        assertEquals(CHUNK_BYTES, log.peek(dst));
+        for (byte b : dst) {
+            assertEquals((byte) index, b);
+        }
+        log.advance();
+    }
+
+    @Test
+    public void readsEveryChunkInOrderAcrossSegments() throws IOException {
+        SpillLog log = new SpillLog(directory, "upload", SEGMENT_BYTES, 1 << 20);
+        append(log, 0, 30);
+
+        assertEquals(4, log.getSegmentCount());
+        assertEquals(4, directory.list().length);
+        assertEquals(0, log.getStartOffset());
+        assertEquals(30L * CHUNK_BYTES, log.getEndOffset());
+        for (int i = 0; i < 30; i++) {
+            assertReads(log, i);
+        }
+        assertFalse(log.hasPending());
+        assertEquals(-1, log.peek(new byte[CHUNK_BYTES]));
+
+        log.close();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void seekFindsTheChunkHoldingAnOffset() throws IOException {
+        SpillLog log = new SpillLog(directory, "upload", SEGMENT_BYTES, 1 << 20);
+        append(log, 0, 30);
+
+        // Inside chunk 15, in the second segment
+        log.seek(1550);
+        assertReads(log, 15);
+        assertReads(log, 16);
+        // Backwards into the first segment, on a chunk boundary
+        log.seek(300);
+        assertReads(log, 3);
+        // Before the log: its oldest chunk
+        log.seek(-100);
+        assertReads(log, 0);
+        // Last segment, then past the end
+        log.seek(2950);
+        assertReads(log, 29);
+        assertFalse(log.hasPending());
+        log.seek(5000);
+        assertFalse(log.hasPending());
+        assertEquals(30L * CHUNK_BYTES, log.getCursorOffset());
+        log.close();
+    }
+
+    @Test
+    public void acknowledgeDeletesWholeSegmentsOnly() throws IOException {
+        SpillLog log = new SpillLog(directory, "upload", SEGMENT_BYTES, 1 << 20);
+        append(log, 0, 30);
+        for (int i = 0; i < 20; i++) {
+            assertReads(log, i);
+        }
+
+        // The second segment ends at chunk 18; the third still holds unacknowledged chunks
+        log.acknowledge(1900);
+        assertEquals(2, log.getSegmentCount());
+        assertEquals(2, directory.list().length);
+        assertEquals(18L * CHUNK_BYTES, log.getStartOffset());
+        assertEquals(0, log.getDroppedBytes());
+        for (int i = 20; i < 30; i++) {
+            assertReads(log, i);
+        }
+
+        // Everything read and acknowledged: the last segment goes too
+        log.acknowledge(log.getEndOffset());
+        assertTrue(log.isEmpty());
+        assertEquals(0, directory.list().length);
+        log.close();
+    }
+
+    @Test
+    public void evictionCountsOnlyUnreadChunksAsDropped() throws IOException {
+        // Room for two segments
+        SpillLog log = new SpillLog(directory, "upload", SEGMENT_BYTES, 2 * SEGMENT_BYTES + 100);
+        append(log, 0, 5);
+        for (int i = 0; i < 5; i++) {
+            assertReads(log, i);
+        }
+        append(log, 5, 30);
+
+        assertTrue(log.getSizeBytes() <= 2 * SEGMENT_BYTES + 100);
+        assertEquals(log.getSegmentCount(), directory.list().length);
+        // Chunks 0-4 were read before their segment went; the rest up to the start were not
+        long start = log.getStartOffset();
+        assertEquals(start - 5 * CHUNK_BYTES, log.getDroppedBytes());
+        assertEquals(start, log.getCursorOffset());
+        for (int i = (int) (start / CHUNK_BYTES); i < 30; i++) {
+            assertReads(log, i);
+        }
+        log.close();
+    }
+}
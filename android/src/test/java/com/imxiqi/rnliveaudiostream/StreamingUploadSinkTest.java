@@ -0,0 +1,628 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the upload against servers on the loopback interface: a small WebSocket server that
+ * rebuilds the stream from {@code X-Stream-Offset} the way a real receiver would, and the
+ * JDK's HTTP server for the chunked POST.
+ */
+public class StreamingUploadSinkTest {
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHUNK_BYTES = 640;
+    // One chunk of 16 kHz mono 16-bit
+    private static final int CHUNK_MS = 20;
+    private static final long WAIT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LoopbackWebSocketServer server;
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Accepts WebSocket uploads and merges what every connection sends into one stream,
+     * dropping the overlap a reconnect re-sends and checking it matches what came before.
+     */
+    private static final class LoopbackWebSocketServer implements Runnable {
+        final ServerSocket socket;
+        final List<Socket> open = new ArrayList<>();
+        final List<Map<String, String>> requests = new ArrayList<>();
+        byte[] stream = new byte[1 << 20];
+        int received;
+        long gapBytes;
+        int mismatches;
+        int closeFrames;
+        volatile boolean refusing;
+
+        LoopbackWebSocketServer() throws IOException {
+            socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread accept = new Thread(this, "LoopbackWebSocketServer");
+            accept.setDaemon(true);
+            accept.start();
+        }
+
+        String url() {
+            return "ws://127.0.0.1:" + socket.getLocalPort() + "/audio";
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    final Socket client = socket.accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(client);
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        synchronized int connections() { return requests.size(); }
+        synchronized int received() { return received; }
+
+        /** Drop every open connection, as a network outage would */
+        synchronized void kill() throws IOException {
+            for (Socket client : open) {
+                client.close();
+            }
+            open.clear();
+        }
+
+        synchronized byte[] stream() {
+            return Arrays.copyOf(stream, received);
+        }
+
+        void close() throws IOException {
+            socket.close();
+            kill();
+        }
+
+        private void serve(Socket client) {
+            try {
+                InputStream input = new BufferedInputStream(client.getInputStream());
+                OutputStream output = client.getOutputStream();
+                Map<String, String> headers = new HashMap<>();
+                readLine(input);
+                for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+                }
+                if (refusing) {
+                    output.write("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\n\r\n".getBytes(LATIN_1));
+                    client.close();
+                    return;
+                }
+                synchronized (this) {
+                    requests.add(headers);
+                    open.add(client);
+                }
+                String accept = WebSocketConnection.expectedAccept(headers.get("sec-websocket-key"));
+                output.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(LATIN_1));
+                output.flush();
+
+                long position = Long.parseLong(headers.get("x-stream-offset"));
+                while (true) {
+                    int b0 = readByte(input);
+                    int b1 = readByte(input);
+                    long length = b1 & 0x7f;
+                    if (length == 126) {
+                        length = (readByte(input) << 8) | readByte(input);
+                    } else if (length == 127) {
+                        length = 0;
+                        for (int i = 0; i < 8; i++) {
+                            length = (length << 8) | readByte(input);
+                        }
+                    }
+                    byte[] mask = new byte[4];
+                    readFully(input, mask);
+                    byte[] payload = new byte[(int) length];
+                    readFully(input, payload);
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                    int opcode = b0 & 0x0f;
+                    if (opcode == 0x2) {
+                        merge(position, payload);
+                        position += payload.length;
+                    } else if (opcode == 0x8) {
+                        synchronized (this) {
+                            closeFrames++;
+                        }
+                        output.write(new byte[] {(byte) 0x88, 2, payload[0], payload[1]});
+                        output.flush();
+                        client.close();
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // Connection dropped
+            } finally {
+                synchronized (this) {
+                    open.remove(client);
+                }
+            }
+        }
+
+        private synchronized void merge(long offset, byte[] payload) {
+            int start = (int) offset;
+            if (start > received) {
+                gapBytes += start - received;
+                received = start;
+            }
+            int overlap = Math.max(0, Math.min(payload.length, received - start));
+            for (int i = 0; i < overlap; i++) {
+                if (stream[start + i] != payload[i]) {
+                    mismatches++;
+                    break;
+                }
+            }
+            if (start + payload.length > stream.length) {
+                stream = Arrays.copyOf(stream, Math.max(stream.length * 2, start + payload.length));
+            }
+            System.arraycopy(payload, overlap, stream, start + overlap, payload.length - overlap);
+            received = Math.max(received, start + payload.length);
+        }
+
+        private static String readLine(InputStream input) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for (int b = readByte(input); b != '\n'; b = readByte(input)) {
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return new String(line.toByteArray(), LATIN_1);
+        }
+
+        private static int readByte(InputStream input) throws IOException {
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private static void readFully(InputStream input, byte[] dst) throws IOException {
+            for (int read = 0; read < dst.length; ) {
+                int n = input.read(dst, read, dst.length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+        }
+    }
+
+    private interface Condition {
+        boolean met() throws Exception;
+    }
+
+    private static void waitFor(String what, Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackWebSocketServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    private StreamingUploadSink newSink(String url, SpillLog spill) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer test");
+        return new StreamingUploadSink(url, headers, 1000, 0, 2000, 5, 20, null,
+                new StreamingUploadSink.Listener() {
+                    @Override
+                    public void onStateChanged(StreamingUploadSink.State state, String error) {
+                        if (error != null) {
+                            errors.add(state + ": " + error);
+                        }
+                    }
+                }, spill);
+    }
+
+    /** Chunk {@code index} of the test stream: a running byte counter */
+    private static byte[] chunk(int index) {
+        byte[] data = new byte[CHUNK_BYTES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((index * CHUNK_BYTES + i) * 31 >> 3);
+        }
+        return data;
+    }
+
+    private static byte[] expected(int chunks) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks; i++) {
+            byte[] data = chunk(i);
+            stream.write(data, 0, data.length);
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Keep writing at the audio rate until the sink notices its connection is gone. Returns
+     * the index of the next chunk.
+     */
+    private static int writeUntilDisconnected(StreamingUploadSink sink, int next) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (sink.getState() == StreamingUploadSink.State.CONNECTED) {
+            assertTrue("drop not noticed", System.currentTimeMillis() < deadline);
+            sink.write(chunk(next), 0, CHUNK_BYTES);
+            next++;
+            Thread.sleep(CHUNK_MS);
+        }
+        return next;
+    }
+
+    @Test
+    public void streamsChunksInOrderWithFormatHeaders() throws Exception {
+        StreamingUploadSink sink = newSink(server.url(), null);
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        for (int i = 0; i < 100; i++) {
+            sink.write(chunk(i), 0, CHUNK_BYTES);
+        }
+        sink.close();
+
+        waitFor("close frame", new Condition() {
+            @Override
+            public boolean met() {
+                synchronized (server) {
+                    return server.closeFrames == 1;
+                }
+            }
+        });
+        assertArrayEquals(expected(100), server.stream());
+        Map<String, String> request = server.requests.get(0);
+        assertEquals("s16le", request.get("x-audio-format"));
+        assertEquals("16000", request.get("x-audio-sample-rate"));
+        assertEquals("1", request.get("x-audio-channels"));
+        assertEquals("0", request.get("x-stream-offset"));
+        assertEquals("Bearer test", request.get("authorization"));
+        assertEquals(StreamingUploadSink.State.CLOSED, sink.getState());
+        assertEquals(100L * CHUNK_BYTES, sink.getBytesSent());
+        assertEquals(0, sink.getReconnects());
+        assertEquals(100, sink.sendLatency.getCount());
+    }
+
+    @Test
+    public void reconnectReplaysWhatTheDroppedConnectionMayHaveLost() throws Exception {
+        final StreamingUploadSink sink = newSink(server.url(), null);
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        int written = 0;
+        for (; written < 50; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        waitFor("first 50 chunks", new Condition() {
+            @Override
+            public boolean met() {
+                return server.received() == 50 * CHUNK_BYTES;
+            }
+        });
+
+        server.kill();
+        // Sends into the dead socket succeed until the reset comes back
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (server.connections() < 2) {
+            assertTrue("no reconnect", System.currentTimeMillis() < deadline);
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+            written++;
+            Thread.sleep(CHUNK_MS);
+        }
+        for (int end = written + 50; written < end; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        sink.close();
+
+        final int total = written;
+        waitFor("whole stream", new Condition() {
+            @Override
+            public boolean met() {
+                return server.received() == total * CHUNK_BYTES;
+            }
+        });
+        assertArrayEquals(expected(total), server.stream());
+        assertEquals(0, server.gapBytes);
+        assertEquals(0, server.mismatches);
+        assertEquals(1, sink.getReconnects());
+        assertTrue(sink.getBytesReplayed() > 0);
+        assertEquals(0, sink.getDroppedBytes());
+        // The second connection starts inside what the first already delivered
+        long resumeOffset = Long.parseLong(server.requests.get(1).get("x-stream-offset"));
+        assertTrue(resumeOffset < 50L * CHUNK_BYTES);
+    }
+
+    @Test
+    public void outageLongerThanReplayBufferIsLostWithoutSpill() throws Exception {
+        StreamingUploadSink sink = newSink(server.url(), null);
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        sink.write(chunk(0), 0, CHUNK_BYTES);
+
+        server.refusing = true;
+        server.kill();
+        int written = writeUntilDisconnected(sink, 1);
+        // 1 s of replay at 32000 B/s is below the 64 KB minimum; outrun that
+        for (int end = written + 400; written < end; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        server.refusing = false;
+        final int total = written;
+        final StreamingUploadSink upload = sink;
+        waitFor("reconnect", new Condition() {
+            @Override
+            public boolean met() throws Exception {
+                upload.write(chunk(0), 0, 0);
+                return upload.getState() == StreamingUploadSink.State.CONNECTED;
+            }
+        });
+        sink.close();
+
+        waitFor("close frame", new Condition() {
+            @Override
+            public boolean met() {
+                synchronized (server) {
+                    return server.closeFrames == 1;
+                }
+            }
+        });
+        assertTrue(sink.getDroppedBytes() > 0);
+        assertTrue(server.gapBytes > 0);
+        assertEquals(0, server.mismatches);
+        // What did arrive is the tail of the stream at the right offsets
+        byte[] expected = expected(total);
+        byte[] stream = server.stream();
+        assertEquals(expected.length, stream.length);
+        assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 32 * 1024, expected.length),
+                Arrays.copyOfRange(stream, stream.length - 32 * 1024, stream.length));
+        assertTrue(sink.getConnectFailures() > 0);
+        assertTrue(!errors.isEmpty());
+    }
+
+    @Test
+    public void spillLogCarriesLongOutage() throws Exception {
+        File directory = folder.newFolder("spill");
+        SpillLog spill = new SpillLog(directory, "upload", 16 * 1024, 4 * 1024 * 1024);
+        StreamingUploadSink sink = newSink(server.url(), spill);
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        int written = 0;
+        for (; written < 20; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+
+        server.refusing = true;
+        server.kill();
+        // Writes at the audio rate until the sink sees the drop; anything "sent" into the
+        // dead socket before that is only recoverable from the replay window
+        written = writeUntilDisconnected(sink, written);
+        long maxSpilled = 0;
+        for (int end = written + 1000; written < end; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+            maxSpilled = Math.max(maxSpilled, sink.getSpilledBytes());
+        }
+        // Far more than the 64 KB replay buffer went to disk
+        assertTrue("spilled " + maxSpilled, maxSpilled > 256 * 1024);
+        assertTrue(directory.list().length > 1);
+
+        server.refusing = false;
+        final StreamingUploadSink upload = sink;
+        waitFor("reconnect", new Condition() {
+            @Override
+            public boolean met() throws Exception {
+                upload.write(chunk(0), 0, 0);
+                return upload.getState() == StreamingUploadSink.State.CONNECTED;
+            }
+        });
+        for (int end = written + 50; written < end; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        sink.close();
+
+        final int total = written;
+        waitFor("whole stream", new Condition() {
+            @Override
+            public boolean met() {
+                return server.received() == total * CHUNK_BYTES;
+            }
+        });
+        assertArrayEquals(expected(total), server.stream());
+        assertEquals(0, server.gapBytes);
+        assertEquals(0, server.mismatches);
+        assertEquals(0, sink.getDroppedBytes());
+        assertEquals(0, sink.getSpilledBytes());
+        assertEquals(0, directory.list().length);
+    }
+
+    /** A spill log whose disk fills up after {@code appends} chunks */
+    private static final class FailingSpillLog extends SpillLog {
+        private int appends;
+
+        FailingSpillLog(File directory, int appends) {
+            super(directory, "upload", 16 * 1024, 4 * 1024 * 1024);
+            this.appends = appends;
+        }
+
+        @Override
+        public void append(long offset, byte[] data, int position, int length) throws IOException {
+            if (appends == 0) {
+                throw new IOException("No space left on device");
+            }
+            appends--;
+            super.append(offset, data, position, length);
+        }
+    }
+
+    /** Keep writing chunks of length 0 until the sink has reconnected */
+    private static void reconnect(final StreamingUploadSink sink) throws Exception {
+        waitFor("reconnect", new Condition() {
+            @Override
+            public boolean met() throws Exception {
+                sink.write(chunk(0), 0, 0);
+                return sink.getState() == StreamingUploadSink.State.CONNECTED;
+            }
+        });
+    }
+
+    @Test
+    public void spillFailureBeforeSpillingKeepsTheReplayBuffer() throws Exception {
+        StreamingUploadSink sink = newSink(server.url(), new FailingSpillLog(folder.newFolder("spill"), 0));
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        sink.write(chunk(0), 0, CHUNK_BYTES);
+
+        server.refusing = true;
+        server.kill();
+        int written = writeUntilDisconnected(sink, 1);
+        // Past half the 64 KB replay buffer, where the sink turns to the log, but within it
+        for (; written < 90; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        assertTrue(errors.toString().contains("Spill log failed"));
+        server.refusing = false;
+        reconnect(sink);
+        sink.close();
+
+        final int total = written;
+        waitFor("whole stream", new Condition() {
+            @Override
+            public boolean met() {
+                return server.received() == total * CHUNK_BYTES;
+            }
+        });
+        assertArrayEquals(expected(total), server.stream());
+        assertEquals(0, server.gapBytes);
+        assertEquals(0, sink.getDroppedBytes());
+    }
+
+    @Test
+    public void spillFailureWhileSpillingCountsWhatMemoryHeld() throws Exception {
+        final int spilled = 20;
+        StreamingUploadSink sink = newSink(server.url(), new FailingSpillLog(folder.newFolder("spill"), spilled));
+        sink.open(SAMPLE_RATE, 1, SampleFormat.PCM_16BIT);
+        sink.write(chunk(0), 0, CHUNK_BYTES);
+
+        server.refusing = true;
+        server.kill();
+        int written = writeUntilDisconnected(sink, 1);
+        for (int end = written + 100; written < end; written++) {
+            sink.write(chunk(written), 0, CHUNK_BYTES);
+        }
+        server.refusing = false;
+        reconnect(sink);
+        sink.close();
+
+        waitFor("close frame", new Condition() {
+            @Override
+            public boolean met() {
+                synchronized (server) {
+                    return server.closeFrames == 1;
+                }
+            }
+        });
+        // The log and what memory held before it (half the replay buffer, less whatever went
+        // into the dead socket) are gone, and counted; nothing already sent is
+        assertTrue("dropped " + sink.getDroppedBytes(),
+                sink.getDroppedBytes() > spilled * CHUNK_BYTES + 16 * 1024);
+        assertTrue(server.gapBytes + " < " + sink.getDroppedBytes(), server.gapBytes >= sink.getDroppedBytes());
+        assertEquals(0, server.mismatches);
+        byte[] expected = expected(written);
+        byte[] stream = server.stream();
+        assertEquals(expected.length, stream.length);
+        int tail = 10 * CHUNK_BYTES;
+        assertArrayEquals(Arrays.copyOfRange(expected, expected.length - tail, expected.length),
+                Arrays.copyOfRange(stream, stream.length - tail, stream.length));
+    }
+
+    @Test
+    public void chunkedHttpPostCarriesTheStream() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final Map<String, String> request = new HashMap<>();
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        http.createContext("/audio", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (body) {
+                    request.put("method", exchange.getRequestMethod());
+                    request.put("offset", exchange.getRequestHeaders().getFirst("X-Stream-Offset"));
+                    request.put("format", exchange.getRequestHeaders().getFirst("X-Audio-Format"));
+                }
+                InputStream input = exchange.getRequestBody();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = input.read(buffer)) > 0; ) {
+                    synchronized (body) {
+                        body.write(buffer, 0, n);
+                    }
+                }
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+            }
+        });
+        http.start();
+        try {
+            StreamingUploadSink sink = newSink("http://127.0.0.1:" + http.getAddress().getPort() + "/audio", null);
+            sink.open(SAMPLE_RATE, 2, SampleFormat.PCM_FLOAT);
+            for (int i = 0; i < 100; i++) {
+                sink.write(chunk(i), 0, CHUNK_BYTES);
+            }
+            sink.close();
+
+            assertTrue(errors.toString(), errors.isEmpty());
+            synchronized (body) {
+                assertArrayEquals(expected(100), body.toByteArray());
+                assertEquals("POST", request.get("method"));
+                assertEquals("0", request.get("offset"));
+                assertEquals("f32le", request.get("format"));
+            }
+        } finally {
+            http.stop(0);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs the detector over the WAV fixtures in {@code resources/vad} (8 kHz mono 16-bit):
+ *
+ *   speech.wav       voiced speech at -20 dBFS from 0.5 to 1.0 s and 1.1 to 1.5 s over
+ *                    -70 dBFS noise, 2.5 s
+ *   quiet_tones.wav  -48 dBFS tones below a -45 dBFS threshold: 100 Hz from 0 to 0.5 s and
+ *                    1200 Hz (fricative-like zero-crossing rate) from 1.0 to 1.5 s, 2 s
+ */
+public class VoiceActivityDetectorTest {
+    private static final int BLOCK_MS = 20;
+    private static final float THRESHOLD_DB = -45f;
+
+    private static final class Wav {
+        final int sampleRate;
+        final int channels;
+        final short[] samples;
+
+        Wav(int sampleRate, int channels, short[] samples) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.samples = samples;
+        }
+    }
+
+    private static Wav load(String name) throws IOException {
+        InputStream in = VoiceActivityDetectorTest.class.getResourceAsStream("/vad/" + name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int n; (n = in.read(chunk)) > 0; ) {
+            bytes.write(chunk, 0, n);
+        }
+        in.close();
+
+        ByteBuffer wav = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        wav.position(12);
+        int sampleRate = 0;
+        int channels = 0;
+        while (wav.remaining() >= 8) {
+            int id = wav.getInt();
+            int size = wav.getInt();
+            if (id == 0x20746d66) { // "fmt "
+                int format = wav.getShort(wav.position());
+                channels = wav.getShort(wav.position() + 2);
+                sampleRate = wav.getInt(wav.position() + 4);
+                int bits = wav.getShort(wav.position() + 14);
+                if (format != 1 || bits != 16) {
+                    throw new IOException(name + " is not 16-bit PCM");
+                }
+            } else if (id == 0x61746164) { // "data"
+                short[] samples = new short[size / 2];
+                wav.asShortBuffer().get(samples);
+                return new Wav(sampleRate, channels, samples);
+            }
+            wav.position(wav.position() + size + (size & 1));
+        }
+        throw new IOException(name + " has no data chunk");
+    }
+
+    /** Start/end transitions as {kind, time in ms of the block that reported it} */
+    private static List<long[]> run(Wav wav, int hangoverMs, boolean asFloat) {
+        VoiceActivityDetector vad = new VoiceActivityDetector(wav.sampleRate, wav.channels, THRESHOLD_DB, hangoverMs);
+        int blockSamples = wav.sampleRate * BLOCK_MS / 1000 * wav.channels;
+        float[] floats = new float[blockSamples];
+        List<long[]> transitions = new ArrayList<>();
+        for (int offset = 0; offset + blockSamples <= wav.samples.length; offset += blockSamples) {
+            int state;
+            if (asFloat) {
+                for (int i = 0; i < blockSamples; i++) {
+                    floats[i] = wav.samples[offset + i] / 32768f;
+                }
+                state = vad.process(floats, 0, blockSamples);
+            } else {
+                state = vad.process(wav.samples, offset, blockSamples);
+            }
+            if (state == VoiceActivityDetector.SPEECH_START || state == VoiceActivityDetector.SPEECH_END) {
+                transitions.add(new long[] {state, offset / wav.channels * 1000L / wav.sampleRate});
+            }
+        }
+        return transitions;
+    }
+
+    private static void assertTransition(long[] transition, int kind, long fromMs, long toMs) {
+        assertEquals(kind, transition[0]);
+        assertTrue("at " + transition[1] + " ms, expected " + fromMs + "-" + toMs,
+                transition[1] >= fromMs && transition[1] <= toMs);
+    }
+
+    @Test
+    public void hangoverBridgesShortPause() throws IOException {
+        Wav wav = load("speech.wav");
+        for (boolean asFloat : new boolean[] {false, true}) {
+            List<long[]> transitions = run(wav, 300, asFloat);
+
+            assertEquals(2, transitions.size());
+            assertTransition(transitions.get(0), VoiceActivityDetector.SPEECH_START, 480, 520);
+            // Last active block ends at 1.5 s, then 300 ms of hangover
+            assertTransition(transitions.get(1), VoiceActivityDetector.SPEECH_END, 1760, 1820);
+        }
+    }
+
+    @Test
+    public void shortHangoverSplitsAtPause() throws IOException {
+        Wav wav = load("speech.wav");
+        for (boolean asFloat : new boolean[] {false, true}) {
+            List<long[]> transitions = run(wav, 40, asFloat);
+
+            assertEquals(4, transitions.size());
+            assertTransition(transitions.get(0), VoiceActivityDetector.SPEECH_START, 480, 520);
+            assertTransition(transitions.get(1), VoiceActivityDetector.SPEECH_END, 1000, 1080);
+            assertTransition(transitions.get(2), VoiceActivityDetector.SPEECH_START, 1080, 1120);
+            assertTransition(transitions.get(3), VoiceActivityDetector.SPEECH_END, 1500, 1580);
+        }
+    }
+
+    @Test
+    public void quietToneNeedsFricativeZeroCrossings() throws IOException {
+        Wav wav = load("quiet_tones.wav");
+        List<long[]> transitions = run(wav, 100, false);
+
+        // The 100 Hz tone stays silence, the 1200 Hz one passes as a fricative
+        assertEquals(2, transitions.size());
+        assertTransition(transitions.get(0), VoiceActivityDetector.SPEECH_START, 980, 1020);
+        assertTransition(transitions.get(1), VoiceActivityDetector.SPEECH_END, 1500, 1620);
+    }
+
+    @Test
+    public void steadyNoiseAboveThresholdEndsSpeech() {
+        // 1 s of noise at -70 dBFS, then 5 s at -40 dBFS, 5 dB over the threshold, as when a
+        // fan comes on
+        int sampleRate = 8000;
+        short[] samples = new short[6 * sampleRate];
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            double rms = i < sampleRate ? 0.000316 : 0.01;
+            samples[i] = (short) Math.round(random.nextGaussian() * rms * 32768);
+        }
+        List<long[]> transitions = run(new Wav(sampleRate, 1, samples), 300, false);
+
+        // Taken for speech until the noise fills the 2 s floor window, then released after
+        // the hangover instead of staying in speech for good
+        assertEquals(2, transitions.size());
+        assertTransition(transitions.get(0), VoiceActivityDetector.SPEECH_START, 980, 1020);
+        assertTransition(transitions.get(1), VoiceActivityDetector.SPEECH_END, 2900, 3400);
+    }
+
+    @Test
+    public void levelTracksFixture() throws IOException {
+        Wav wav = load("speech.wav");
+        VoiceActivityDetector vad = new VoiceActivityDetector(wav.sampleRate, 1, THRESHOLD_DB, 300);
+        int block = wav.sampleRate * BLOCK_MS / 1000;
+
+        // Inside the first voiced stretch
+        vad.process(wav.samples, wav.sampleRate * 3 / 4, block);
+        assertEquals(-20f, vad.getLevelDb(), 1f);
+        assertTrue(vad.isSpeech());
+
+        vad.reset();
+        assertFalse(vad.isSpeech());
+        vad.process(wav.samples, 0, block);
+        assertEquals(-70f, vad.getLevelDb(), 2f);
+        assertFalse(vad.isSpeech());
+    }
+}
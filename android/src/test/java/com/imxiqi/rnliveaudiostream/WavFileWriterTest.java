@@ -0,0 +1,106 @@
+package com.imxiqi.rnliveaudiostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavFileWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Segments implements WavFileWriter.SegmentListener {
+        final List<String> paths = new ArrayList<>();
+        final List<Long> bytes = new ArrayList<>();
+
+        @Override
+        public void onSegmentClosed(String path, long dataBytes, long durationMs) {
+            paths.add(path);
+            bytes.add(dataBytes);
+        }
+    }
+
+    // Running 16-bit sample counter, so every byte on disk can be traced back
+    private static void writeSamples(WavFileWriter writer, int from, int count) throws IOException {
+        ByteBuffer pcm = ByteBuffer.allocate(count * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            pcm.putShort((short) (from + i));
+        }
+        pcm.flip();
+        writer.write(pcm);
+    }
+
+    private static short[] readData(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int dataBytes = wav.getInt(40);
+            assertEquals(36 + dataBytes, wav.getInt(4));
+            assertEquals(44 + dataBytes, bytes.length);
+            short[] samples = new short[dataBytes / 2];
+            wav.position(44);
+            wav.asShortBuffer().get(samples);
+            return samples;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void reachingFileLimitWithoutRotationContinuesInNextFile() throws IOException {
+        File file = new File(folder.getRoot(), "take.wav");
+        Segments segments = new Segments();
+        // Rotation off, files limited to 1000 data bytes instead of 4 GB
+        WavFileWriter writer = new WavFileWriter(file.getPath(), 8000, 1, 16, false, 0, 0, 1000, segments);
+        writer.open();
+        int total = 1300;
+        for (int written = 0; written < total; written += 100) {
+            writeSamples(writer, written, 100);
+        }
+        writer.close();
+
+        // The full file is still there, untouched by the rollover
+        assertEquals(file.getPath(), segments.paths.get(0));
+        assertEquals(WavFileWriter.segmentName(file.getPath(), 1), segments.paths.get(1));
+        assertEquals(WavFileWriter.segmentName(file.getPath(), 2), segments.paths.get(2));
+        assertEquals(3, segments.paths.size());
+
+        int next = 0;
+        for (String path : segments.paths) {
+            short[] samples = readData(new File(path));
+            assertTrue(samples.length <= 500);
+            for (short sample : samples) {
+                assertEquals((short) next++, sample);
+            }
+        }
+        assertEquals(total, next);
+    }
+
+    @Test
+    public void rotationNumbersEverySegment() throws IOException {
+        File file = new File(folder.getRoot(), "take.wav");
+        Segments segments = new Segments();
+        WavFileWriter writer = new WavFileWriter(file.getPath(), 8000, 1, 16, false, 0, 400, segments);
+        writer.open();
+        writeSamples(writer, 0, 500);
+        writer.close();
+
+        assertEquals(3, segments.paths.size());
+        assertEquals(WavFileWriter.segmentName(file.getPath(), 0), segments.paths.get(0));
+        assertEquals(Long.valueOf(400), segments.bytes.get(0));
+        assertEquals(Long.valueOf(200), segments.bytes.get(2));
+        assertTrue(!file.exists());
+    }
+}
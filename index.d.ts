@@ -1,17 +1,270 @@
 declare module "react-native-live-audio-record" {
-  export type AudioEvent = "data" | "recordingState" | "error";
+  export type AudioEvent = "data" | "chunk" | "packet" | "speechStart" | "speechEnd" | "level" | "fileSegment" | "metrics" | "uploadState" | "lookback" | "recordingState" | "stopped" | "error";
   export type EventCallback<T> = (data: T) => void;
 
   export interface AudioEventDataMap {
-    data: string;
-    recordingState: { isRecording: boolean };
+    /** Base64 PCM, or a `TimestampedData` object with `timestamps: true` */
+    data: string | TimestampedData;
+    chunk: ChunkInfo;
+    packet: EncodedPacket;
+    speechStart: { levelDb: number };
+    speechEnd: { levelDb: number };
+    /** Levels in dBFS (-96 floor); `bands` low to high with `levelBands` set */
+    level: { peakDb: number; rmsDb: number; bands?: number[] };
+    fileSegment: FileSegment;
+    metrics: (PhaseMetrics & { type: "start" | "stop" }) | (CaptureHealth & { type: "health"; upload?: UploadStats });
+    uploadState: { state: UploadState; error: string | null };
+    lookback: { triggered: boolean; source: LookbackTrigger };
+    /** `sessionId` is the id `start()` / `restart()` resolved with, 0 once stopped */
+    recordingState: { isRecording: boolean; isPaused: boolean; sessionId: number };
+    /** Session `sessionId` is fully torn down: outputs drained, WAV file and upload closed (Android) */
+    stopped: { sessionId: number };
     error: { error: string };
   }
 
+  export interface ChunkInfo {
+    /** Monotonic chunk sequence number */
+    seq: number;
+    /** Byte offset of the chunk inside the shared buffer */
+    offset: number;
+    /** Valid bytes in the chunk */
+    length: number;
+    /** Frame of the stream the chunk starts at; see `TimestampedData` */
+    framePosition: number;
+    /** Capture time of the first frame in microseconds, `SystemClock.uptimeMillis()` base */
+    timestampUs: number;
+    /** Times audio went missing so far */
+    gaps: number;
+  }
+
+  export interface TimestampedData {
+    /** Base64 PCM */
+    data: string;
+    /** Monotonic `data` event sequence number */
+    seq: number;
+    /**
+     * Frame of the stream the chunk starts at, counted since `start()` in the delivered
+     * sample rate. Frames lost to overruns or dropped chunks and silence skipped by
+     * `vad: 'drop'` are counted, so a jump shows where audio is missing; paused time is not.
+     */
+    framePosition: number;
+    /**
+     * Capture time of the first frame in microseconds on the monotonic clock
+     * (`SystemClock.uptimeMillis()` base), from `AudioRecord.getTimestamp` where available
+     */
+    timestampUs: number;
+    /** Times audio went missing so far: capture overruns plus chunks dropped on the way to JS */
+    gaps: number;
+  }
+
+  export interface FileSegment {
+    /** Absolute path of the finished WAV file */
+    path: string;
+    /** PCM bytes in the data chunk */
+    bytes: number;
+    durationMs: number;
+  }
+
+  export interface Phase {
+    /**
+     * Start: `serviceCreate`, `startCommand`, `reusePrepared`, `permission`, `minBufferSize`,
+     * `audioRecordInit` (or `aaudioInit`), `startRecording`, `firstRead`, `skippedBuffers`, `firstEmit`.
+     * Stop: `stopCommand`, `captureThread`, `processingThread`, `sinkDrain`, `encoderDrain`, `uploadDrain`, `audioRecordStop`.
+     */
+    name: string;
+    /** Time since the previous phase */
+    durationMs: number;
+    /** Time since the `start()` / `stop()` call */
+    atMs: number;
+  }
+
+  export interface PhaseMetrics {
+    /** Phases reached, in order */
+    phases: Phase[];
+    totalMs: number;
+  }
+
+  export interface HistogramSnapshot {
+    count: number;
+    meanMs: number;
+    /** Percentiles are bucket upper bounds (powers of two in microseconds) */
+    p50Ms: number;
+    p90Ms: number;
+    p99Ms: number;
+    maxMs: number;
+  }
+
+  export interface CaptureHealth {
+    bytesRead: number;
+    /** Bytes handed to JS, the encoder or the JSI ring */
+    bytesEmitted: number;
+    /** Times AudioRecord was found to have overwritten unread frames */
+    overruns: number;
+    /** Estimated frames lost to overruns */
+    framesLost: number;
+    /** Captured chunks dropped because processing (DSP, sinks) fell behind the reads */
+    processingDrops: number;
+    /** Read period implied by `sampleRate` and the current read size */
+    expectedReadPeriodMs: number;
+    /** Bytes per read right now: `bufferSize`, or the size chosen with `targetLatencyMs` */
+    readBytes: number;
+    /** Times the adaptive read size changed this session */
+    readSizeChanges: number;
+    /** Duration of each `AudioRecord.read` */
+    readDuration: HistogramSnapshot;
+    /** Deviation of the time between reads from `expectedReadPeriodMs` */
+    readJitter: HistogramSnapshot;
+    /** Time a chunk waits at the emitter for JS, plus the bridge call */
+    emitLatency: HistogramSnapshot;
+    /** Queued + spilled bytes right now */
+    queuedBytes: number;
+    maxQueuedBytes: number;
+    pendingJsEvents: number;
+  }
+
+  export type UploadState = "connecting" | "connected" | "disconnected" | "closed";
+
+  export interface UploadStats {
+    url: string;
+    state: UploadState;
+    /** Bytes sent, replays included */
+    bytesSent: number;
+    /** Bytes sent again after reconnects */
+    bytesReplayed: number;
+    /** Bytes lost because the outage outlasted `replayMs` and the spill budget */
+    bytesDropped: number;
+    /** Backlog currently on disk */
+    spilledBytes: number;
+    reconnects: number;
+    connectFailures: number;
+    /** Average since the start of the recording */
+    throughputBps: number;
+    /** Duration of each network write */
+    sendLatency: HistogramSnapshot;
+    connectLatency: HistogramSnapshot;
+  }
+
+  export interface UploadOptions {
+    /** `ws://`, `wss://` (one binary message per chunk) or `http://`, `https://` (chunked POST) */
+    url: string;
+    /** Extra request headers, e.g. `Authorization` */
+    headers?: { [name: string]: string };
+    /**
+     * Send the `codec` packets instead of PCM.
+     * Default: `false`
+     */
+    encoded?: boolean;
+    /**
+     * Audio kept to re-send after a reconnect; also how long an outage can last without loss.
+     * Default: `5000`
+     */
+    replayMs?: number;
+    /**
+     * Bound of the upload's queue while the network is slower than capture.
+     * Default: `1048576`
+     */
+    maxQueueBytes?: number;
+    /**
+     * Disk budget for the backlog while the server is unreachable. Once the unsent backlog
+     * passes half of the `replayMs` buffer, chunks go to segment files in the cache
+     * directory until the upload catches up, so memory stays flat. `0` keeps it in memory.
+     * Default: `134217728` (128 MB)
+     */
+    spillMaxBytes?: number;
+    /** Resample the upload only. Default: `0` (delivery rate) */
+    sampleRate?: number;
+    /** Mix the upload only. Default: `0` (delivery channels) */
+    channels?: number;
+  }
+
+  export interface Metrics {
+    start: PhaseMetrics;
+    stop: PhaseMetrics;
+    health: CaptureHealth;
+    /** Native upload of the current or last recording, if any */
+    upload: UploadStats | null;
+    /** Manufacturer and model */
+    device: string;
+    sdkInt: number;
+  }
+
+  export type AudioCodec = "pcm" | "opus" | "aac";
+
+  export interface EncodedPacket {
+    /** Base64 packet: ADTS-framed AAC or a raw Opus packet */
+    data: string;
+    /** Presentation time in microseconds since the start of recording */
+    ptsUs: number;
+  }
+
+  export type VadMode = "off" | "mark" | "drop";
+  export type LookbackTrigger = "manual" | "vad";
+
+  export type OverflowPolicy = "dropOldest" | "dropNewest" | "block" | "spill";
+
+  export interface QueueStats {
+    overflowPolicy: OverflowPolicy;
+    /** Bytes waiting in memory */
+    queuedBytes: number;
+    /** Bytes waiting in the spill file */
+    spilledBytes: number;
+    droppedBytes: number;
+    droppedChunks: number;
+    enqueuedBytes: number;
+    /** High-water mark of queued + spilled bytes */
+    maxQueuedBytes: number;
+    /** `data` events sent but not yet reached by the JS thread */
+    pendingJsEvents: number;
+  }
+
   export interface IAudioRecord {
     init: (options: Options) => void;
-    start: () => Promise<string>;
+    /**
+     * Start the service in standby with an initialized recorder so `start()` begins almost
+     * immediately. Stays prepared across `stop()` until `release()`. Android only.
+     *
+     * Methods marked Android only reject with code `UNSUPPORTED` on other platforms.
+     */
+    prepare: () => Promise<string>;
+    /**
+     * Resolves with the id of the new session (Android). Rejects with `ALREADY_RECORDING`
+     * while another session is starting or recording; `restart()` replaces it instead.
+     */
+    start: () => Promise<number>;
+    /**
+     * Stop the current session and start a new one with the settings of the latest `init()`,
+     * keeping the service and its notification. Resolves with the new session id. Android only.
+     * Sessions never capture side by side, but `data` events of the old one can still arrive
+     * until its `stopped` event.
+     */
+    restart: () => Promise<number>;
+    /** With `lookbackMs`: deliver the buffered audio and go live. Android only. */
+    trigger: () => Promise<string>;
+    /** With `lookbackMs`: stop delivering and go back to listening. Android only. */
+    arm: () => Promise<string>;
     stop: () => Promise<string>;
+    /**
+     * Stop capturing but keep the service, recorder and outputs open; `resume()` continues
+     * the same stream almost immediately. Android only.
+     */
+    pause: () => Promise<string>;
+    /** Continue after `pause()`. Android only. */
+    resume: () => Promise<string>;
+    /** Leave standby and free the recorder kept by `prepare()`. Android only. */
+    release: () => Promise<string>;
+    /** Android only. */
+    getQueueStats: () => Promise<QueueStats>;
+    /**
+     * Phase timings of the last start and stop, and capture health of the current session.
+     * Android only.
+     */
+    getMetrics: () => Promise<Metrics>;
+    /** Shared ring memory when `transport` is `"jsi"`, otherwise null */
+    getBuffer: () => ArrayBuffer | null;
+    /** Next unread chunk from the shared ring, or null when caught up */
+    read: () => ChunkInfo | null;
+    /** Whether chunk `seq` is still intact in the shared buffer; check after copying it out */
+    verify: (seq: number) => boolean;
     on: <T extends AudioEvent>(event: T, callback: EventCallback<T extends keyof AudioEventDataMap ? AudioEventDataMap[T] : any>) => void;
     addListener: <T extends AudioEvent>(event: T, callback: EventCallback<T extends keyof AudioEventDataMap ? AudioEventDataMap[T] : any>) => void;
     removeListener: (event: AudioEvent) => void;
@@ -19,7 +272,9 @@ declare module "react-native-live-audio-record" {
   }
 
   export type AudioChannel = 1 | 2;
-  export type AudioBitsPerSample = 8 | 16;
+  export type AudioBitsPerSample = 8 | 16 | 24 | 32;
+  export type SampleFormat = "int" | "float";
+  export type AudioTransport = "base64" | "jsi";
 
   export interface Options {
     /**
@@ -36,15 +291,194 @@ declare module "react-native-live-audio-record" {
     /**
      * - 8: AudioFormat.ENCODING_PCM_8BIT
      * - 16: AudioFormat.ENCODING_PCM_16BIT
+     * - 24: AudioFormat.ENCODING_PCM_24BIT_PACKED (Android 12+)
+     * - 32: AudioFormat.ENCODING_PCM_32BIT (Android 12+)
      * Default: `16`
      */
     bitsPerSample: AudioBitsPerSample;
+    /**
+     * `float` captures 32-bit AudioFormat.ENCODING_PCM_FLOAT (Android 6+) regardless of
+     * `bitsPerSample`. Encoding with `codec` still needs 16-bit integer PCM.
+     * Default: `int`
+     */
+    sampleFormat?: SampleFormat;
     /**
      * - 6: VOICE_RECOGNITION
      */
     audioSource?: number;
-    wavFile: string;
     bufferSize?: number;
+    /**
+     * Android: size reads by latency instead of `bufferSize`. Reads start at this much audio
+     * and double while the input overruns, reads are irregular or processing lags behind,
+     * then step back down after 10 s without trouble. The current size is `readBytes` in the
+     * health metrics.
+     * Default: `0` (fixed `bufferSize`)
+     */
+    targetLatencyMs?: number;
+    /** Android: lower bound of the adaptive read size. Default: `10` */
+    minBufferMs?: number;
+    /** Android: upper bound of the adaptive read size. Default: `200` */
+    maxBufferMs?: number;
+    /**
+     * Android: `aaudio` captures through AAudio in low-latency mode (Android 8.0+), delivering
+     * each `bufferSize` as soon as it is captured instead of after AudioRecord's minimum
+     * buffer. Falls back to `audioRecord` where AAudio or the format is unavailable.
+     * Default: `audioRecord`
+     */
+    captureBackend?: "audioRecord" | "aaudio";
+    /**
+     * Deliver PCM at this rate, resampled natively. Capture then runs at the device's native
+     * rate instead of `sampleRate`. Works with every `bitsPerSample` and `sampleFormat`.
+     * Default: `0` (deliver at the capture rate)
+     */
+    outputSampleRate?: number;
+    /**
+     * Deliver PCM with this many channels: stereo is averaged down to mono, mono duplicated
+     * up to stereo. Works with every `bitsPerSample` and `sampleFormat`.
+     * Default: `0` (same as `channels`)
+     */
+    outputChannels?: AudioChannel | 0;
+    /**
+     * - `base64`: PCM chunks as Base64 strings in the `data` event
+     * - `jsi`: PCM stays in a shared ArrayBuffer, `chunk` events carry `{seq, offset, length}`
+     * Falls back to `base64` when the JSI bindings are unavailable.
+     * Default: `base64`
+     */
+    transport?: AudioTransport;
+    /**
+     * Max time (ms) PCM is held back to merge reads into one `data` event. 0 disables.
+     * Default: `0`
+     */
+    batchMs?: number;
+    /**
+     * Max bytes per `data` event when batching, rounded down to whole frames. Independent
+     * of `bufferSize`. 0 = no limit beyond what `batchMs` accumulates.
+     * Default: `0`
+     */
+    maxBatchBytes?: number;
+    /**
+     * Max bytes buffered between the recorder and JS when JS falls behind.
+     * Default: `1048576`
+     */
+    maxQueueBytes?: number;
+    /**
+     * What to do when the queue is full:
+     * - `dropOldest`: evict the oldest chunks
+     * - `dropNewest`: discard the new chunk
+     * - `block`: stall the processing thread, and with it every output, until there is
+     *   room. The microphone is still read meanwhile: capture hands its buffers over to
+     *   processing, which drops the oldest once it is more than a few behind and counts them
+     *   in `processingDrops` and `gaps`
+     * - `spill`: write overflow to a file in the cache dir and replay it later
+     * Default: `dropOldest`
+     */
+    overflowPolicy?: OverflowPolicy;
+    /**
+     * Encode on device and deliver `packet` events instead of `data`.
+     * `aac` needs Android 6+, `opus` Android 10+. Requires `bitsPerSample: 16`.
+     * Default: `pcm`
+     */
+    codec?: AudioCodec;
+    /**
+     * Encoder bitrate in bits per second.
+     * Default: `64000`
+     */
+    bitrate?: number;
+    /**
+     * Samples per channel in one encoded frame. 0 picks the codec default
+     * (1024 for AAC, 20 ms for Opus).
+     * Default: `0`
+     */
+    frameSize?: number;
+    /**
+     * Voice activity detection, on any `bitsPerSample` and `sampleFormat`:
+     * - `off`: disabled
+     * - `mark`: deliver everything, emit `speechStart` / `speechEnd`
+     * - `drop`: also suppress silent chunks; each utterance starts with `vadPreRollMs` of pre-roll
+     * Default: `off`
+     */
+    vad?: VadMode;
+    /**
+     * Minimum level counted as speech, in dBFS. Raised automatically above the noise floor.
+     * Default: `-45`
+     */
+    vadThresholdDb?: number;
+    /**
+     * How long speech is held after the last voiced chunk.
+     * Default: `300`
+     */
+    vadHangoverMs?: number;
+    /**
+     * Audio kept from before speech starts when `vad` is `drop`.
+     * Default: `200`
+     */
+    vadPreRollMs?: number;
+    /**
+     * Listen into a circular buffer of this many milliseconds without sending anything, and
+     * only deliver once triggered: first the buffered audio, then the live stream. Android only.
+     * Default: `0` (off)
+     */
+    lookbackMs?: number;
+    /**
+     * What triggers the lookback:
+     * - `manual`: `trigger()`; `arm()` goes back to listening
+     * - `vad`: speech detected natively; goes back to listening when the speech ends
+     * Default: `manual`
+     */
+    lookbackTrigger?: LookbackTrigger;
+    /**
+     * Emit a `level` event with peak and RMS level every this many milliseconds of audio,
+     * measured natively. Android only.
+     * Default: `0` (off)
+     */
+    levelIntervalMs?: number;
+    /**
+     * Add this many log-spaced spectrum bands (100 Hz to 10 kHz, up to 16) to each `level` event.
+     * Default: `0`
+     */
+    levelBands?: number;
+    /**
+     * Also write the recording to this WAV file natively. Relative paths are resolved
+     * against the app's files directory.
+     */
+    wavFile?: string | null;
+    /**
+     * Start a new WAV segment (`name_000.wav`, `name_001.wav`, ...) after this much audio.
+     * Default: `0` (single file)
+     */
+    segmentDurationMs?: number;
+    /**
+     * Start a new WAV segment once its data reaches this many bytes.
+     * Default: `0` (single file)
+     */
+    segmentMaxBytes?: number;
+    /**
+     * Stream audio to JS. Set to `false` with `wavFile` to only record to disk.
+     * Default: `true`
+     */
+    emitData?: boolean;
+    /**
+     * Send `data` events as `TimestampedData` objects with a sequence number, frame position,
+     * capture time and gap count (Android). `chunk` events always carry them.
+     * Default: `false`
+     */
+    timestamps?: boolean;
+    /**
+     * Send a `metrics` event once the first chunk is out after `start()`, and once `stop()`
+     * has finished.
+     * Default: `false`
+     */
+    metrics?: boolean;
+    /**
+     * Send a `metrics` event of type `health` this often while recording.
+     * Default: `0` (off)
+     */
+    metricsIntervalMs?: number;
+    /**
+     * Upload the stream natively to a WebSocket or chunked HTTP endpoint, without going
+     * through JS. `null` turns it off. Android only.
+     */
+    upload?: UploadOptions | null;
     /**
      * Title for the notification shown when recording in background
      */
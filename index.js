@@ -1,16 +1,56 @@
-import { NativeModules, NativeEventEmitter } from 'react-native';
+import { NativeModules, NativeEventEmitter, Platform } from 'react-native';
 const { RNLiveAudioStream } = NativeModules;
 const EventEmitter = new NativeEventEmitter(RNLiveAudioStream);
 
 const AudioRecord = {};
 
-AudioRecord.init = options => RNLiveAudioStream.init(options);
+// The iOS module only has init, start and stop; reject the rest instead of calling undefined
+const androidOnly = name => () => {
+  if (Platform.OS !== 'android') {
+    const error = new Error(`${name}() is only supported on Android`);
+    error.code = 'UNSUPPORTED';
+    return Promise.reject(error);
+  }
+  return RNLiveAudioStream[name]();
+};
+
+AudioRecord.init = options => {
+  // The JSI host object has to exist before the service starts writing to the ring
+  if (options && options.transport === 'jsi' && !global.__RNLiveAudioStream) {
+    RNLiveAudioStream.install && RNLiveAudioStream.install();
+  }
+  RNLiveAudioStream.init(options);
+};
+AudioRecord.prepare = androidOnly('prepare');
 AudioRecord.start = () => RNLiveAudioStream.start();
 AudioRecord.stop = () => RNLiveAudioStream.stop();
+AudioRecord.restart = androidOnly('restart');
+AudioRecord.trigger = androidOnly('trigger');
+AudioRecord.arm = androidOnly('arm');
+AudioRecord.pause = androidOnly('pause');
+AudioRecord.resume = androidOnly('resume');
+AudioRecord.release = androidOnly('release');
+AudioRecord.getQueueStats = androidOnly('getQueueStats');
+AudioRecord.getMetrics = androidOnly('getMetrics');
+
+// JSI transport: shared ring memory and pull-style reads
+AudioRecord.getBuffer = () => (global.__RNLiveAudioStream ? global.__RNLiveAudioStream.buffer : null);
+AudioRecord.read = () => (global.__RNLiveAudioStream ? global.__RNLiveAudioStream.read() : null);
+AudioRecord.verify = seq => (global.__RNLiveAudioStream ? global.__RNLiveAudioStream.verify(seq) : false);
 
 const eventsMap = {
   data: 'data',
+  chunk: 'chunk',
+  packet: 'packet',
+  speechStart: 'speechStart',
+  speechEnd: 'speechEnd',
+  level: 'level',
+  fileSegment: 'fileSegment',
+  metrics: 'metrics',
+  uploadState: 'uploadState',
+  lookback: 'lookback',
   recordingState: 'recordingState',
+  stopped: 'stopped',
   error: 'error'
 };
 